@@ -16,6 +16,7 @@ import javax.swing.UIManager;
 
 import common.Config;
 import common.Log;
+import telemetry.CompactionReport;
 //import decoder.FoxDecoder;
 
 /**
@@ -503,13 +504,15 @@ import common.Log;
 public class FoxTelemMain {
 
 	public static String HELP = "AMSAT Fox Telemetry Decoder. Version " + Config.VERSION +"\n\n"
-			+ "Usage: FoxTelem [-h][-v][-s] [logFileDir]\n"
+			+ "Usage: FoxTelem [-h][-v][-s][-c] [logFileDir]\n"
 			+ "-h show this help\n"
 			+ "-v display version information\n"
 			+ "-s automatically start the decoder\n"
+			+ "-c compact the payload files and exit, without starting the decoder\n"
 			+ "logFileDir - Start the decoder in this directory and use the settings stored there\n\n";
 	static String seriousErrorMsg;
 	static String logFileDir = null;
+	static boolean compact = false;
 	
 	static int REQUIRED_JAVA_VERSION = 8;
 	
@@ -543,6 +546,10 @@ public class FoxTelemMain {
 				Log.println("Command Line Switch: STARTED");
 				Config.startButtonPressed = true;
 			}
+			if (args[arg].equalsIgnoreCase("-c")) {
+				Log.println("Command Line Switch: COMPACT");
+				compact = true;
+			}
 			
 			} else {
 				// we have no more switches, so start reading command line paramaters
@@ -576,11 +583,36 @@ public class FoxTelemMain {
 		
 		Log.println("LogFileDir is:" + Config.logFileDirectory);
 
+		if (compact) {
+			compactPayloads();
+			initProgress.updateProgress(100);
+			System.exit(0);
+		}
+
 		
 		invokeGUI();
 		initProgress.updateProgress(100);
 	}
 
+	/**
+	 * Compact the payload files offline, with no decoder or GUI running, and print what was reclaimed
+	 */
+	static void compactPayloads() {
+		while (!Config.payloadStore.initialized()) {
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				e.printStackTrace(Log.getWriter());
+			}
+		}
+		CompactionReport report = Config.payloadStore.compact();
+		Config.payloadStore.flush();
+		if (report != null)
+			System.out.println(report.toString());
+		else
+			System.out.println("This payload store can not be compacted");
+	}
+
 	public void initialRun() {
 		
 //		EventQueue.invokeLater(new Runnable() {
@@ -16,7 +16,7 @@ public class FUNcubeHeader extends BitArray {
 	FUNcubeHeader() {
 		super(new BitArrayLayout());
 		MAX_BYTES = MAX_FC_HEADER_SIZE;
-		rawBits = new boolean[MAX_BYTES*8];
+		rawBits = new byte[MAX_BYTES];
 	}
 	
 	protected void init() { }
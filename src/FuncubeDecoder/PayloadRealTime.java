@@ -17,7 +17,7 @@ public class PayloadRealTime extends FramePart {
 		super(l, REAL_TIME_TYPE);
 		MAX_BYTES = MAX_RT_PAYLOAD_SIZE;
 		fieldValue = new int[layout.fieldName.length];
-		rawBits = new boolean[MAX_BYTES*8];
+		rawBits = new byte[MAX_BYTES];
 	}
 
 	
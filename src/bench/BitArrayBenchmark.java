@@ -0,0 +1,55 @@
+package bench;
+
+import test.BitArrayTest;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Time reading a frame of 12 bit fields from the packed bytes of a BitArray, compared to the boolean for each bit that
+ * the frames used to be held in.
+ *
+ */
+public class BitArrayBenchmark {
+
+	/**
+	 * Time reading 12 bit fields from the booleans and from the packed bytes
+	 */
+	public static void main(String[] args) {
+		BitArrayTest.Bits bits = BitArrayTest.makeBits(0);
+		int fields = BitArrayTest.BYTES*8/12;
+		int rounds = 200000;
+		long sum = 0;
+		for (int pass=0; pass < 3; pass++) { // the first passes warm up the JIT
+			long t0 = System.nanoTime();
+			for (int r=0; r < rounds; r++)
+				for (int f=0; f < fields; f++)
+					sum += bits.booleanLsb(f*12, 12);
+			long t1 = System.nanoTime();
+			for (int r=0; r < rounds; r++)
+				for (int f=0; f < fields; f++)
+					sum += bits.lsb(f*12, 12);
+			long t2 = System.nanoTime();
+			double values = (double)rounds * fields;
+			System.out.printf("12 bit fields: booleans %.1f ns/field, packed bytes %.1f ns/field%n",
+					(t1-t0)/values, (t2-t1)/values);
+		}
+		if (sum == 42) System.out.println(); // keep the results live
+	}
+}
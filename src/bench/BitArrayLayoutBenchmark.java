@@ -0,0 +1,69 @@
+package bench;
+
+import telemetry.BitArrayLayout;
+import telemetry.FramePart;
+import test.TestRecords;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Time reading every field of a record by name, with the BitArrayLayout index and with the linear scan it replaced,
+ * against resolving the positions once and reading the values by position.  The number of records read can be
+ * passed as the first argument, 20000 by default.
+ *
+ */
+public class BitArrayLayoutBenchmark {
+	static final int FIELDS = 80;
+
+	public static void main(String[] args) {
+		BitArrayLayout lay = TestRecords.makeLayout(FIELDS, 12);
+		int[] values = new int[FIELDS];
+		for (int i=0; i < FIELDS; i++)
+			values[i] = i * 3;
+		FramePart f = TestRecords.makeRecord(lay, 0, 100, values);
+		int records = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		String[] names = lay.fieldName;
+		long sum = 0;
+		for (int pass=0; pass < 3; pass++) { // the first passes warm up the JIT
+			long t0 = System.nanoTime();
+			for (int r=0; r < records; r++)
+				for (String name : names) {
+					int pos = TestRecords.linearFirst(lay, name);
+					sum += f.fieldValue[pos];
+				}
+			long t1 = System.nanoTime();
+			for (int r=0; r < records; r++)
+				for (String name : names)
+					sum += f.getRawValue(name);
+			long t2 = System.nanoTime();
+			int[] pos = new int[names.length];
+			for (int i=0; i < names.length; i++)
+				pos[i] = lay.getFirstPositionByName(names[i]);
+			for (int r=0; r < records; r++)
+				for (int i=0; i < pos.length; i++)
+					sum += f.getRawValue(pos[i]);
+			long t3 = System.nanoTime();
+			double reads = (double)records * names.length;
+			System.out.printf("%d fields: linear scan %.1f ns/value, hashed name %.1f ns/value, by position %.1f ns/value%n",
+					FIELDS, (t1-t0)/reads, (t2-t1)/reads, (t3-t2)/reads);
+		}
+		if (sum == 42) System.out.println(); // keep the results live
+	}
+}
@@ -0,0 +1,109 @@
+package bench;
+
+import java.util.Random;
+
+import common.Log;
+import decoder.CircularBuffer;
+import decoder.Code8b10b;
+import decoder.FoxBitStream;
+import test.CircularBufferTest;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Time the packed bit buffer against the ArrayList<Boolean> buffer it replaced, decoding a stream of 8b10b high
+ * speed frames in the way that the bit streams do.  The repo has no JMH, so this is a plain timing loop with warm up
+ * passes.  The number of frames can be passed as the first argument, 2000 by default.
+ *
+ */
+public class CircularBufferBenchmark {
+
+	/**
+	 * A stream of frames, each a sync word followed by 8b10b words, with the running disparity followed as the
+	 * spacecraft does.  Stands in for a recording of the demodulated bits
+	 */
+	static boolean[] makeStream(int frames, int wordsPerFrame) {
+		Random random = new Random(2);
+		boolean[] stream = new boolean[frames * (wordsPerFrame + 1) * 10];
+		int p = 0;
+		int rd = 0;
+		for (int f=0; f < frames; f++) {
+			for (boolean b : FoxBitStream.intToBin10(Code8b10b.FRAME))
+				stream[p++] = b;
+			for (int w=0; w < wordsPerFrame; w++) {
+				int word = Code8b10b.Encode_8b10b[rd][random.nextInt(256)];
+				rd = (word >> 10) & 1;
+				for (boolean b : FoxBitStream.intToBin10(word & 0x3ff))
+					stream[p++] = b;
+			}
+		}
+		return stream;
+	}
+
+	/**
+	 * Time adding a stream of frames to each buffer, looking for the sync word after each bit and reading the 10 bit
+	 * words of each frame that is found, then purging it
+	 */
+	public static void main(String[] args) {
+		Log.init("test.txt");
+		int wordsPerFrame = 5200 / 10 - 1; // the high speed frame
+		int distance = (wordsPerFrame + 1) * 10;
+		boolean[] stream = makeStream(args.length > 0 ? Integer.parseInt(args[0]) : 2000, wordsPerFrame);
+		for (int pass=0; pass < 3; pass++) {
+			long t0 = System.nanoTime();
+			CircularBufferTest.BooleanCircularBuffer old = new CircularBufferTest.BooleanCircularBuffer(distance * 5);
+			long sum = 0;
+			for (boolean b : stream) {
+				old.add(b);
+				int size = old.size();
+				if (size < distance + 10) continue;
+				boolean[] sync = new boolean[10];
+				for (int j=0; j < 10; j++)
+					sync[j] = old.get(size - 10 + j);
+				if (FoxBitStream.binToInt(sync) == Code8b10b.FRAME) {
+					for (int w = size - distance; w < size - 10; w += 10) {
+						boolean[] word = new boolean[10];
+						for (int j=0; j < 10; j++)
+							word[j] = old.get(w + j);
+						sum += FoxBitStream.binToInt(word);
+					}
+					old.incStartPointer(size - 10);
+				}
+			}
+			long t1 = System.nanoTime();
+			CircularBuffer bits = new CircularBuffer(distance * 5);
+			long sum2 = 0;
+			for (boolean b : stream) {
+				bits.add(b);
+				int size = bits.size();
+				if (size < distance + 10) continue;
+				if (bits.getBits(size - 10, 10) == Code8b10b.FRAME) {
+					for (int w = size - distance; w < size - 10; w += 10)
+						sum2 += bits.getBits(w, 10);
+					bits.incStartPointer(size - 10);
+				}
+			}
+			long t2 = System.nanoTime();
+			if (sum != sum2) System.out.println("ERROR: the buffers read different words");
+			System.out.printf("%d bits: Boolean buffer %.1f ms, packed buffer %.1f ms%n",
+					stream.length, (t1-t0)/1e6, (t2-t1)/1e6);
+		}
+	}
+}
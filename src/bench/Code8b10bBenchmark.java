@@ -0,0 +1,59 @@
+package bench;
+
+import java.util.Random;
+
+import decoder.Code8b10b;
+import test.Code8b10bTest;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Time decoding 10 bit words with the Code8b10b lookup table against searching the Encode_8b10b table for them, as
+ * the decoder used to.  One word in ten is random and mostly invalid.  The number of words can be passed as the first
+ * argument, a million by default.
+ *
+ */
+public class Code8b10bBenchmark {
+
+	/**
+	 * Time decoding a stream of valid and invalid words with the search and with the table
+	 */
+	public static void main(String[] args) {
+		Random random = new Random(4);
+		int[] words = new int[args.length > 0 ? Integer.parseInt(args[0]) : 1000000];
+		for (int i=0; i < words.length; i++)
+			words[i] = random.nextInt(10) == 0 ? random.nextInt(1024) : Code8b10b.Encode_8b10b[random.nextInt(2)][random.nextInt(256)] & 0x3ff;
+		for (int pass=0; pass < 3; pass++) {
+			long t0 = System.nanoTime();
+			long sum = 0;
+			for (int w : words)
+				sum += Code8b10bTest.searchDecode(w, false);
+			long t1 = System.nanoTime();
+			long sum2 = 0;
+			for (int w : words) {
+				int b = Code8b10b.lookup(w, false);
+				sum2 += b == Code8b10b.INVALID ? Code8b10bTest.NOT_FOUND : b;
+			}
+			long t2 = System.nanoTime();
+			if (sum != sum2) System.out.println("ERROR: the table decoded different bytes");
+			System.out.printf("%d words: search %.1f ms, table %.1f ms%n", words.length, (t1-t0)/1e6, (t2-t1)/1e6);
+		}
+	}
+}
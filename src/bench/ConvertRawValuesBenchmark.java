@@ -0,0 +1,68 @@
+package bench;
+
+import common.FoxSpacecraft;
+import common.Spacecraft;
+import telemetry.BitArrayLayout;
+import telemetry.FoxFramePart;
+import telemetry.PayloadRtValues;
+import test.TestRecords;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Time converting a column of raw values with convertRawValues() against calling convertRawValue() for each one, for
+ * the conversions that do the most work.  Run from the project directory so that the spacecraft files can be found.
+ *
+ */
+public class ConvertRawValuesBenchmark {
+
+	/**
+	 * Time converting a column of values one at a time and with the column conversion
+	 */
+	public static void main(String[] args) throws Exception {
+		FoxSpacecraft fox = TestRecords.loadFox1A();
+		FoxFramePart f = new PayloadRtValues(fox.getLayoutByName(Spacecraft.REAL_TIME_LAYOUT));
+		int[] conversions = {BitArrayLayout.CONVERT_V25_SENSOR, BitArrayLayout.CONVERT_BATTERY, BitArrayLayout.CONVERT_TEMP,
+				BitArrayLayout.CONVERT_RSSI, BitArrayLayout.CONVERT_MEMS_ROTATION};
+		int[] raw = new int[100000];
+		for (int i=0; i < raw.length; i++)
+			raw[i] = i % 4096;
+		double[] results = new double[raw.length];
+		double sum = 0;
+		for (int pass=0; pass < 3; pass++) { // the first passes warm up the JIT
+			for (int c : conversions) {
+				long t0 = System.nanoTime();
+				for (int r=0; r < 10; r++)
+					for (int i=0; i < raw.length; i++)
+						sum += f.convertRawValue("BATT_C_V", raw[i], c, fox);
+				long t1 = System.nanoTime();
+				for (int r=0; r < 10; r++) {
+					f.convertRawValues("BATT_C_V", raw, 0, raw.length, c, fox, results);
+					sum += results[r];
+				}
+				long t2 = System.nanoTime();
+				double values = 10.0 * raw.length;
+				System.out.printf("conversion %d: one at a time %.1f ns/value, column %.1f ns/value%n",
+						c, (t1-t0)/values, (t2-t1)/values);
+			}
+		}
+		if (sum == 42) System.out.println(); // keep the results live
+	}
+}
@@ -0,0 +1,62 @@
+package bench;
+
+import telemetry.LookUpTable;
+import test.LookUpTableTest;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Time converting raw values with the map iteration that LookUpTable used to do, the binary search that replaced it
+ * and a dense table.  The table file can be passed as the first argument, FOX1A_ihutemp.tab by default.
+ *
+ */
+public class LookUpTableBenchmark {
+
+	/**
+	 * Time converting every raw value with the map iteration, the binary search and the dense table
+	 */
+	public static void main(String[] args) throws Exception {
+		String file = args.length > 0 ? args[0] : "FOX1A_ihutemp.tab";
+		LookUpTableTest.Table t = new LookUpTableTest.Table(file);
+		LookUpTableTest.Table dense = new LookUpTableTest.Table(file);
+		dense.makeDense(0, LookUpTable.ADC_COUNTS-1);
+		int rounds = 2000;
+		double sum = 0;
+		for (int pass=0; pass < 3; pass++) { // the first passes warm up the JIT
+			long t0 = System.nanoTime();
+			for (int r=0; r < rounds; r++)
+				for (int x=0; x < LookUpTable.ADC_COUNTS; x++)
+					sum += t.mapLookupValue(x);
+			long t1 = System.nanoTime();
+			for (int r=0; r < rounds; r++)
+				for (int x=0; x < LookUpTable.ADC_COUNTS; x++)
+					sum += t.lookupValue(x);
+			long t2 = System.nanoTime();
+			for (int r=0; r < rounds; r++)
+				for (int x=0; x < LookUpTable.ADC_COUNTS; x++)
+					sum += dense.lookupValue(x);
+			long t3 = System.nanoTime();
+			double values = (double)rounds * LookUpTable.ADC_COUNTS;
+			System.out.printf("%s: map %.1f ns/value, binary search %.1f ns/value, dense %.1f ns/value%n",
+					file, (t1-t0)/values, (t2-t1)/values, (t3-t2)/values);
+		}
+		if (sum == 42) System.out.println(); // keep the results live
+	}
+}
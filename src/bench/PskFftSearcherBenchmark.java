@@ -0,0 +1,88 @@
+package bench;
+
+import static test.PskFftSearcherTest.*;
+
+import java.util.Random;
+
+import common.Log;
+import decoder.FoxBPSK.PskFftSearcher;
+import decoder.FoxBPSK.PskSearcherPool;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Compare the FFT carrier search with the brute force search of PskSearcherPool, on signals made with random data and
+ * noise by PskFftSearcherTest.  For each noise level it prints the time per search and how many windows it takes to
+ * lock.  The number of trials can be passed as the first argument, 50 by default.
+ *
+ */
+public class PskFftSearcherBenchmark {
+
+	/**
+	 * For each noise level, decode windows of a signal with a random carrier and timing until the search is within 50Hz
+	 * and 2 samples, which is locked.  Print the time per search and the mean number of windows it took to lock.
+	 * These are made up signals, not recordings of a pass, so they have no Doppler or fading.
+	 */
+	public static void main(String[] args) {
+		Log.init("test.txt");
+		int trials = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+		int maxWindows = 20;
+		double[] noises = {0.3, 1.0, 2.0, 3.0};
+		int threads = Runtime.getRuntime().availableProcessors();
+		PskSearcherPool pool = new PskSearcherPool(Math.min(threads, FTOTAL), BUFFER_SIZE, BUCKET_SIZE, SAMPLE_RATE);
+		PskFftSearcher fft = new PskFftSearcher(BUFFER_SIZE, BUCKET_SIZE, SAMPLE_RATE);
+		for (int pass=0; pass < 3; pass++) {
+			for (double noise : noises) {
+				Random random = new Random(4);
+				long poolTime = 0, fftTime = 0;
+				int poolSearches = 0, fftSearches = 0;
+				int poolWindows = 0, fftWindows = 0;
+				for (int t=0; t < trials; t++) {
+					double carrier = 800 + random.nextDouble() * 1400;
+					int timing = random.nextInt(BUCKET_SIZE);
+					boolean poolLocked = false, fftLocked = false;
+					for (int w=0; w < maxWindows && !(poolLocked && fftLocked); w++) {
+						double[] samples = makeSignal(carrier, timing, noise, random);
+						if (!poolLocked) {
+							long t0 = System.nanoTime();
+							pool.search(samples, START, STEP, FTOTAL);
+							poolTime += System.nanoTime() - t0;
+							poolSearches++;
+							poolWindows++;
+							poolLocked = Math.abs(pool.getFrequency() - carrier) <= 50 && timingError(pool.getSymphase(), timing) <= 2;
+						}
+						if (!fftLocked) {
+							long t0 = System.nanoTime();
+							fft.search(samples, START, STEP, FTOTAL);
+							fftTime += System.nanoTime() - t0;
+							fftSearches++;
+							fftWindows++;
+							fftLocked = Math.abs(fft.getFrequency() - carrier) <= 50 && timingError(fft.getSymphase(), timing) <= 2;
+						}
+					}
+				}
+				System.out.printf("noise %.1f: brute force on %d threads %.2f ms/search, %.2f windows to lock.  FFT %.2f ms/search, %.2f windows to lock%n",
+						noise, pool.getThreads(), poolTime/1e6/poolSearches, poolWindows/(double)trials,
+						fftTime/1e6/fftSearches, fftWindows/(double)trials);
+			}
+		}
+		pool.shutdown();
+	}
+}
@@ -0,0 +1,78 @@
+package bench;
+
+import static test.PskSearcherPoolTest.*;
+
+import java.util.Random;
+
+import common.Log;
+import decoder.FoxBPSK.PskSearcher;
+import decoder.FoxBPSK.PskSearcherPool;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Time carrier searches with the PskSearcherPool, whose threads wait between searches, against starting a new thread
+ * and searcher for each slice of the frequencies on every search, as the decoder did.  The number of searches can be
+ * passed as the first argument, 200 by default.
+ *
+ */
+public class PskSearcherPoolBenchmark {
+
+	/**
+	 * Time searches with the pool and with a new searcher and thread for each slice, as the decoder did
+	 */
+	public static void main(String[] args) throws Exception {
+		Log.init("test.txt");
+		int searches = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int threads = 4;
+		double[] samples = makeSignal(1500, 13, new Random(3));
+		PskSearcherPool pool = new PskSearcherPool(threads, BUFFER_SIZE, BUCKET_SIZE, SAMPLE_RATE);
+		final int perSlot = (FTOTAL + threads - 1) / threads;
+		for (int pass=0; pass < 3; pass++) {
+			long t0 = System.nanoTime();
+			for (int s=0; s < searches; s++) {
+				Thread[] workers = new Thread[threads];
+				final PskSearcher[] searchers = new PskSearcher[threads];
+				for (int slot=0; slot < threads; slot++) {
+					final int n = Math.min(perSlot, FTOTAL - perSlot * slot);
+					final double start = START + STEP * perSlot * slot;
+					final double[] data = samples;
+					searchers[slot] = new PskSearcher(BUFFER_SIZE, BUCKET_SIZE, SAMPLE_RATE);
+					final PskSearcher searcher = searchers[slot];
+					workers[slot] = new Thread(new Runnable() {
+						public void run() {
+							searcher.search(data, start, STEP, n);
+						}
+					});
+					workers[slot].start();
+				}
+				for (Thread t : workers)
+					t.join();
+			}
+			long t1 = System.nanoTime();
+			for (int s=0; s < searches; s++)
+				pool.search(samples, START, STEP, FTOTAL);
+			long t2 = System.nanoTime();
+			System.out.printf("%d searches on %d threads: new threads %.1f ms, pool %.1f ms%n",
+					searches, threads, (t1-t0)/1e6, (t2-t1)/1e6);
+		}
+		pool.shutdown();
+	}
+}
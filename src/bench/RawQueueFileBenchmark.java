@@ -0,0 +1,71 @@
+package bench;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+
+import telemetry.RawQueueFile;
+import test.RawQueueFileTest;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Time draining a backlog of frames from the raw frame queue with RawQueueFile, which truncates and compacts the
+ * file, compared to writing out the rest of the queue after every frame as the queue used to.  The number of frames
+ * can be passed as the first argument, 2000 by default.
+ *
+ */
+public class RawQueueFileBenchmark {
+
+	/**
+	 * Time draining a backlog of frames, writing the rest of the queue after each one as the queue used to, and
+	 * with the queue file
+	 */
+	public static void main(String[] args) throws Exception {
+		int frames = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		File log = File.createTempFile("rawframes", ".log");
+		ArrayList<String> queue = new ArrayList<String>();
+		for (int pass=0; pass < 3; pass++) {
+			queue.clear();
+			for (int i=0; i < frames; i++)
+				queue.add(RawQueueFileTest.frame(i, 1500)); // about the size of a saved DUV frame
+			long t0 = System.nanoTime();
+			while (queue.size() > 0) {
+				queue.remove(0);
+				FileWriter writer = new FileWriter(log, false);
+				for (String line : queue)
+					writer.write(line + "\n");
+				writer.close();
+			}
+			long t1 = System.nanoTime();
+			RawQueueFile file = RawQueueFileTest.open(log, queue);
+			for (int i=0; i < frames; i++)
+				file.append((RawQueueFileTest.frame(i, 1500) + "\n").getBytes());
+			long t2 = System.nanoTime();
+			for (int i=0; i < frames; i++)
+				file.removeHead();
+			long t3 = System.nanoTime();
+			System.out.printf("%d frames: rewriting the queue %.1f ms, queue file %.1f ms (plus %.1f ms to append them)%n",
+					frames, (t1-t0)/1e6, (t3-t2)/1e6, (t2-t1)/1e6);
+		}
+		log.delete();
+		new File(log.getPath() + RawQueueFile.OFFSET_EXT).delete();
+	}
+}
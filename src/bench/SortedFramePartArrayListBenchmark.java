@@ -0,0 +1,67 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import telemetry.BitArrayLayout;
+import telemetry.FoxFramePart;
+import telemetry.FramePart;
+import telemetry.SortedFramePartArrayList;
+import test.TestRecords;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Time the indexed lookups of SortedFramePartArrayList with a large number of records loaded, compared to a linear
+ * scan of the same records.  The number of records can be passed as the first argument, 200000 by default.
+ *
+ */
+public class SortedFramePartArrayListBenchmark {
+
+	public static void main(String[] args) {
+		BitArrayLayout layout = TestRecords.makeLayout(new String[] {"BATT_A_V"}, new int[] {12});
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		int lookups = 2000;
+		SortedFramePartArrayList list = new SortedFramePartArrayList(n);
+		for (int i=0; i < n; i++)
+			list.addToEnd(TestRecords.makeRecord(layout, FoxFramePart.TYPE_REAL_TIME, i / 50000, i % 50000 * 60, null, 1));
+		ArrayList<FramePart> copy = new ArrayList<FramePart>(list);
+		Random random = new Random(1);
+		int[] resets = new int[lookups];
+		long[] uptime = new long[lookups];
+		for (int i=0; i < lookups; i++) {
+			resets[i] = random.nextInt(n / 50000);
+			uptime[i] = random.nextInt(50000) * 60;
+		}
+		long sum = 0;
+		for (int pass=0; pass < 3; pass++) { // the first passes warm up the JIT
+			long t0 = System.nanoTime();
+			for (int i=0; i < lookups; i++)
+				sum += list.getNearestFrameIndex(1, uptime[i], resets[i]) + list.getFrameIndex(1, uptime[i], resets[i]);
+			long t1 = System.nanoTime();
+			for (int i=0; i < lookups; i++)
+				sum += TestRecords.linearNearest(copy, uptime[i], resets[i], 1) + TestRecords.linearFrameIndex(copy, uptime[i], resets[i]);
+			long t2 = System.nanoTime();
+			System.out.printf("%d records: indexed %.3f us/lookup, linear scan %.3f us/lookup%n",
+					n, (t1-t0)/1000.0/lookups/2, (t2-t1)/1000.0/lookups/2);
+		}
+		if (sum == 42) System.out.println(); // keep the results live
+	}
+}
@@ -0,0 +1,76 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import telemetry.BitArrayLayout;
+import telemetry.FramePart;
+import telemetry.SortedFramePartArrayList;
+import telemetry.SortedFramePartColumns;
+import test.SortedFramePartColumnsTest;
+import test.TestRecords;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Measure the heap used by a table of records held as frame parts, as SatPayloadTable used to, and held as columns.
+ * The records have the 60 field layout of SortedFramePartColumnsTest.  The number of records can be passed as the
+ * first argument, 100000 by default.  Run with a fixed heap, e.g. -Xmx1g, so that the collector is not resizing it
+ * between the measurements.
+ *
+ */
+public class SortedFramePartColumnsBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int records = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		BitArrayLayout lay = SortedFramePartColumnsTest.makeLayout();
+		Random random = new Random(0);
+		ArrayList<FramePart> parts = new ArrayList<FramePart>();
+		for (int i=0; i < records; i++) {
+			FramePart f = SortedFramePartColumnsTest.makeRecord(lay, random, i / 50000, i % 50000);
+			f.rawBits = null;
+			parts.add(f);
+		}
+		// The parts as they are loaded from disk also carry the raw bit array their constructor allocated
+		long base = usedHeap();
+		SortedFramePartArrayList list = new SortedFramePartArrayList(records);
+		for (int i=0; i < records; i++) {
+			FramePart f = parts.get(i);
+			list.add(TestRecords.makeRecord(lay, f.getType(), f.resets, f.uptime, f.getCaptureDate(), f.fieldValue));
+		}
+		long asParts = usedHeap() - base;
+		SortedFramePartColumns columns = new SortedFramePartColumns(records, SortedFramePartColumnsTest.factory(lay));
+		columns.addAll(parts);
+		columns.trimToSize();
+		long asColumns = usedHeap() - base - asParts;
+		System.out.printf("%d records of %d fields: frame parts %.1f MB (%d bytes/record), columns %.1f MB (%d bytes/record)%n",
+				records, lay.NUMBER_OF_FIELDS, asParts / 1e6, asParts / records, asColumns / 1e6, asColumns / records);
+		if (list.size() + columns.size() + parts.size() == 42) System.out.println(); // keep them all live
+	}
+
+	private static long usedHeap() throws InterruptedException {
+		Runtime rt = Runtime.getRuntime();
+		for (int i=0; i < 5; i++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+		return rt.totalMemory() - rt.freeMemory();
+	}
+}
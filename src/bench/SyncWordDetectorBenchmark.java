@@ -0,0 +1,64 @@
+package bench;
+
+import static test.SyncWordDetectorTest.*;
+
+import java.util.Random;
+
+import decoder.Code8b10b;
+import decoder.CodePRN;
+import decoder.FoxBitStream;
+import decoder.SyncWordDetector;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Time finding the 8b10b and PRN sync words in a stream of random bits with the SyncWordDetector shift register,
+ * compared to sliding a boolean[] window along the bits as the bit streams used to.  The length of the stream can be
+ * passed as the first argument, two million bits by default.
+ *
+ */
+public class SyncWordDetectorBenchmark {
+
+	/**
+	 * Time searching a stream for the PRN and 8b10b sync words with the window of bits and with the shift register
+	 */
+	public static void main(String[] args) {
+		int length = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+		Random random = new Random(2);
+		boolean[] fsk = makeStream(length, FoxBitStream.intToBin10(Code8b10b.FRAME), random);
+		boolean[] psk = makeStream(length, CodePRN.LONG_FRAME_PRN, random);
+		SyncWordDetector fskDetector = fskDetector(0);
+		SyncWordDetector prnDetector = prnDetector();
+		for (int pass=0; pass < 3; pass++) {
+			long t0 = System.nanoTime();
+			int n = findWithWindow(fsk, 10, false).size();
+			long t1 = System.nanoTime();
+			int n2 = findWithDetector(fsk, fskDetector).size();
+			long t2 = System.nanoTime();
+			int p = findWithWindow(psk, CodePRN.getSyncWordLength(), true).size();
+			long t3 = System.nanoTime();
+			int p2 = findWithDetector(psk, prnDetector).size();
+			long t4 = System.nanoTime();
+			if (n != n2 || p != p2) System.out.println("ERROR: found different sync words");
+			System.out.printf("%d bits: 8b10b window %.1f ms, register %.1f ms.  PRN window %.1f ms, register %.1f ms%n",
+					length, (t1-t0)/1e6, (t2-t1)/1e6, (t3-t2)/1e6, (t4-t3)/1e6);
+		}
+	}
+}
@@ -286,12 +286,19 @@ public class Config {
 	static public boolean splitCanPackets = true;
 	static public boolean retuneCenterFrequency = false;
 	static public boolean debugSegs = false; // set to true to print out every seg load
-	static public int timeUntilTableSegOffloaded = 60*1000;
 	static public boolean turboWavFilePlayback = false;
 	static public boolean debugDDE = false;
 	static public int newResetCheckThreshold = 60; // seconds tolerance to match the spacecrafts clock for reset check
 	static public int newResetCheckUptimeMax = 15000;
 	
+	// V1.09
+	static public boolean useBinarySegments = false; // convert full payload segments to the binary format at startup.  Older versions can not read them
+	static public int payloadGroupCommitPeriod = 500; // ms that new payload records are held before they are written to disk together
+	static public int payloadFsyncPolicy = 1; // 0 never force to disk, 1 force at each group commit, 2 force every record.  See SegmentJournal
+	static public int segmentCacheSize = 64; // MB of payload records that can be loaded in memory before segments are offloaded
+	static public int serverBatchSize = 20; // frames sent to the server on one connection, 1 sends each frame on its own connection
+	static public int bpskSearchThreads = 0; // threads that search for the BPSK carrier, 0 for one for each processor
+	
 	public static boolean missing() { 
 		File aFile = new File(Config.homeDirectory + File.separator + propertiesFileName );
 		if(!aFile.exists()){
@@ -740,11 +747,18 @@ public class Config {
 		// V1.08
 		properties.setProperty("retuneCenterFrequency", Boolean.toString(retuneCenterFrequency));
 		properties.setProperty("debugSegs", Boolean.toString(debugSegs));
-		properties.setProperty("timeUntilTableSegOffloaded", Integer.toString(timeUntilTableSegOffloaded));
 		properties.setProperty("turboWavFilePlayback", Boolean.toString(turboWavFilePlayback));
 		properties.setProperty("newResetCheckThreshold", Integer.toString(newResetCheckThreshold));
 		properties.setProperty("newResetCheckUptimeMax", Integer.toString(newResetCheckUptimeMax));
 		
+		// V1.09
+		properties.setProperty("useBinarySegments", Boolean.toString(useBinarySegments));
+		properties.setProperty("payloadGroupCommitPeriod", Integer.toString(payloadGroupCommitPeriod));
+		properties.setProperty("payloadFsyncPolicy", Integer.toString(payloadFsyncPolicy));
+		properties.setProperty("segmentCacheSize", Integer.toString(segmentCacheSize));
+		properties.setProperty("serverBatchSize", Integer.toString(serverBatchSize));
+		properties.setProperty("bpskSearchThreads", Integer.toString(bpskSearchThreads));
+		
 		store();
 	}
 	
@@ -933,11 +947,18 @@ public class Config {
 		// V1.08
 		retuneCenterFrequency = Boolean.parseBoolean(getProperty("retuneCenterFrequency"));
 		debugSegs = Boolean.parseBoolean(getProperty("debugSegs"));
-		timeUntilTableSegOffloaded = Integer.parseInt(getProperty("timeUntilTableSegOffloaded"));
 		turboWavFilePlayback = Boolean.parseBoolean(getProperty("turboWavFilePlayback"));
 		newResetCheckThreshold = Integer.parseInt(getProperty("newResetCheckThreshold"));
 		newResetCheckUptimeMax = Integer.parseInt(getProperty("newResetCheckUptimeMax"));
 		
+		// V1.09
+		useBinarySegments = Boolean.parseBoolean(getProperty("useBinarySegments"));
+		payloadGroupCommitPeriod = Integer.parseInt(getProperty("payloadGroupCommitPeriod"));
+		payloadFsyncPolicy = Integer.parseInt(getProperty("payloadFsyncPolicy"));
+		segmentCacheSize = Integer.parseInt(getProperty("segmentCacheSize"));
+		serverBatchSize = Integer.parseInt(getProperty("serverBatchSize"));
+		bpskSearchThreads = Integer.parseInt(getProperty("bpskSearchThreads"));
+		
 		} catch (NumberFormatException nf) {
 			catchException();
 		} catch (NullPointerException nf) {
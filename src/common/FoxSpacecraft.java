@@ -303,10 +303,18 @@ public class FoxSpacecraft extends Spacecraft{
 
 	
 	public SatPos getSatellitePosition(int reset, long uptime) throws PositionCalcException {
+		return getSatellitePosition(reset, uptime, true);
+	}
+
+	/**
+	 * As above, but the position is only read from and stored in the cache if useCache is true.  Used when the
+	 * position of every record is needed once, e.g. to export the whole history, so the cache does not fill up
+	 */
+	public SatPos getSatellitePosition(int reset, long uptime, boolean useCache) throws PositionCalcException {
 		// We need to construct a date for the historical time of this WOD record
 		DateTime timeNow = getUtcDateTimeForReset(reset, uptime);
 		if (timeNow == null) return null;
-		SatPos satellitePosition = positionCache.getPosition(timeNow.getMillis());
+		SatPos satellitePosition = useCache ? positionCache.getPosition(timeNow.getMillis()) : null;
 		if (satellitePosition != null) {
 			return satellitePosition;
 		}
@@ -316,7 +324,8 @@ public class FoxSpacecraft extends Spacecraft{
 		final Satellite satellite = SatelliteFactory.createSatellite(tle);
         satellitePosition = satellite.getPosition(Config.GROUND_STATION, timeNow.toDate());
 //        Log.println("Cache value");
-        positionCache.storePosition(timeNow.getMillis(), satellitePosition);
+        if (useCache)
+        	positionCache.storePosition(timeNow.getMillis(), satellitePosition);
 		return satellitePosition;
 	}
 	
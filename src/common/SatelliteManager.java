@@ -21,6 +21,7 @@ import java.util.regex.Pattern;
 import javax.swing.JOptionPane;
 
 import FuncubeDecoder.FUNcubeSpacecraft;
+import decoder.SourceIQ;
 import gui.MainWindow;
 import gui.ProgressPanel;
 import predict.FoxTLE;
@@ -331,6 +332,21 @@ public class SatelliteManager implements Runnable {
 		return s.hasHerci();
 	}
 
+	/**
+	 * The BPSK decoder does not know which spacecraft it is decoding until it has a frame, so it finds the carrier with
+	 * the FFT if any spacecraft that we track in a BPSK mode has that set
+	 * @return
+	 */
+	public boolean useBpskFftAcquisition() {
+		for (int i=0; i < spacecraftList.size(); i++) {
+			Spacecraft sat = spacecraftList.get(i);
+			if (sat.user_track && sat.user_bpskFftAcquisition
+					&& (sat.user_mode == SourceIQ.MODE_PSK_NC || sat.user_mode == SourceIQ.MODE_PSK_COSTAS))
+				return true;
+		}
+		return false;
+	}
+
 	public boolean haveSpacecraftDisplayName(String name) {
 		for (int i=0; i < spacecraftList.size(); i++) {
 			if (spacecraftList.get(i).user_display_name.equalsIgnoreCase(name))
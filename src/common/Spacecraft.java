@@ -159,6 +159,7 @@ public abstract class Spacecraft implements Comparable<Spacecraft> {
 	public String user_keps_name = "Fox-1A";
 	public int user_priority = 9; // set to low priority so new spacecraft are not suddenly ahead of old ones
 	public boolean user_track = true; // default is we track a satellite
+	public boolean user_bpskFftAcquisition = false; // find the BPSK carrier and symbol timing with the FFT rather than the brute force search
 	public double user_telemetryDownlinkFreqkHz = 145980;
 	public double user_minFreqBoundkHz = 145970;
 	public double user_maxFreqBoundkHz = 145990;
@@ -466,6 +467,7 @@ public abstract class Spacecraft implements Comparable<Spacecraft> {
 				lookupTableFilename[i] = getProperty("lookupTable"+i+".filename");
 				lookupTable[i] = new LookUpTable(lookupTableFilename[i]);
 				lookupTable[i].name = getProperty("lookupTable"+i);
+				lookupTable[i].makeDense(0, LookUpTable.ADC_COUNTS-1);
 			}
 			
 			String t = getOptionalProperty("track");
@@ -551,6 +553,11 @@ public abstract class Spacecraft implements Comparable<Spacecraft> {
 				user_track = true;
 			else 
 				user_track = Boolean.parseBoolean(t);
+			String fft = getOptionalUserProperty("bpskFftAcquisition");
+			if (fft == null) 
+				user_bpskFftAcquisition = false;
+			else 
+				user_bpskFftAcquisition = Boolean.parseBoolean(fft);
 			String serv = getOptionalUserProperty("localServer");
 			if (serv == null) 
 				user_localServer = null;
@@ -703,6 +710,7 @@ public abstract class Spacecraft implements Comparable<Spacecraft> {
 		user_properties.setProperty("minFreqBoundkHz", Double.toString(user_minFreqBoundkHz));
 		user_properties.setProperty("maxFreqBoundkHz", Double.toString(user_maxFreqBoundkHz));
 		user_properties.setProperty("track", Boolean.toString(user_track));
+		user_properties.setProperty("bpskFftAcquisition", Boolean.toString(user_bpskFftAcquisition));
 		user_properties.setProperty("user_mode", Integer.toString(user_mode));
 		
 		if (user_localServer != null) {
@@ -8,8 +8,10 @@ import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * 
@@ -47,6 +49,13 @@ public class TlmServer {
 
 	public static final int TIMEOUT_CONNECT = 5000; // 5s timeout on trying to connect
 	public static final int TIMEOUT_CONNECTION = 2000; // 2s timeout for blocking read while connected
+	public static final int TIMEOUT_PROBE = 200; // ms to wait for a server to close the connection after the first frame of a batch
+	public static final int PIPELINE_DEPTH = 4; // frames sent in a batch before the ACK of the first is read
+
+	// Whether the server takes more than one frame on a connection.  Servers before 1.09 close it after the first ACK
+	private static final int BATCH_UNKNOWN = 0;
+	private static final int BATCH_YES = 1;
+	private static final int BATCH_NO = 2;
 
 	String hostName;
 	int portNumber;
@@ -55,6 +64,7 @@ public class TlmServer {
 	Socket socket = null;
 	OutputStream out = null;
 	InputStream in = null;
+	int batchSupport = BATCH_UNKNOWN;
 	
 	public TlmServer(String hostName, int portNumber, boolean autoClose, boolean waitForAck) {
 		this.hostName = hostName;
@@ -64,14 +74,18 @@ public class TlmServer {
 	}
 
 	public void setHostName(String hostName) {
-		if (this.hostName != hostName)
+		if (this.hostName != hostName) {
 			close();
+			batchSupport = BATCH_UNKNOWN;
+		}
 		this.hostName = hostName;
 	}
 	
 	public void setPort(int port) {
-		if (this.portNumber != port)
+		if (this.portNumber != port) {
 			close();
+			batchSupport = BATCH_UNKNOWN;
+		}
 		this.portNumber = port;
 	}
 		
@@ -127,15 +141,8 @@ public class TlmServer {
 	public boolean sendToServer(byte[] buffer, int protocol) throws UnknownHostException, IOException {
 		boolean success = false;
 		if (protocol == TCP) {
-			if (autoClose || socket == null) {
-				socket = new Socket();
-				socket.connect(new InetSocketAddress(hostName, portNumber), TIMEOUT_CONNECT);
-				if (waitForAck) // then we need a timeout on the read
-					socket.setSoTimeout(TIMEOUT_CONNECTION);
-				
-				out = socket.getOutputStream();
-				in = socket.getInputStream();
-			}
+			if (autoClose || socket == null)
+				connect();
 
 			out.write(buffer);
 			if (waitForAck)
@@ -159,6 +166,78 @@ public class TlmServer {
 		}
 	}
 	
+	private void connect() throws UnknownHostException, IOException {
+		socket = new Socket();
+		socket.connect(new InetSocketAddress(hostName, portNumber), TIMEOUT_CONNECT);
+		if (waitForAck) // then we need a timeout on the read
+			socket.setSoTimeout(TIMEOUT_CONNECTION);
+		
+		out = socket.getOutputStream();
+		in = socket.getInputStream();
+	}
+	
+	/**
+	 * Send a batch of frames to the server on one connection.  Up to PIPELINE_DEPTH frames are sent before the ACK of
+	 * the first is read, and the ACKs come back in order.  Sending stops at the first frame that is not acknowledged, so
+	 * that the queue can remove the frames that were sent from its head.
+	 * 
+	 * A server that takes one frame per connection, as all of them did before, closes the connection once it has sent
+	 * the ACK of the first frame.  The first batch sent to a server checks for that by waiting TIMEOUT_PROBE ms after
+	 * the first ACK.  If the connection closes then after that this server is only sent one frame per call, exactly
+	 * as sendToServer(byte[], int) does.  That is also the case for UDP and for servers that do not send an ACK.
+	 * 
+	 * @param frames - the frames from the head of the queue
+	 * @param protocol
+	 * @return the number of frames, from the start of the list, that the server acknowledged
+	 */
+	public int sendToServer(List<byte[]> frames, int protocol) throws UnknownHostException, IOException {
+		if (frames.size() == 0) return 0;
+		if (protocol != TCP || !waitForAck || !autoClose || frames.size() == 1 || batchSupport == BATCH_NO)
+			return sendToServer(frames.get(0), protocol) ? 1 : 0;
+		int sent = 0;
+		int acked = 0;
+		try {
+			connect();
+			if (batchSupport == BATCH_UNKNOWN) {
+				out.write(frames.get(sent++));
+				if (!waitForAck()) return 0;
+				acked++;
+				socket.setSoTimeout(TIMEOUT_PROBE);
+				try {
+					in.read(); // a server that takes one frame closes the connection
+					batchSupport = BATCH_NO;
+				} catch (SocketTimeoutException e) {
+					batchSupport = BATCH_YES; // the server is waiting for the next frame
+				} catch (IOException e) {
+					batchSupport = BATCH_NO;
+				}
+				if (batchSupport == BATCH_NO) {
+					Log.println("Server " + hostName + " takes one frame per connection");
+					return acked;
+				}
+				socket.setSoTimeout(TIMEOUT_CONNECTION);
+			}
+			while (acked < frames.size()) {
+				while (sent < frames.size() && sent - acked < PIPELINE_DEPTH)
+					out.write(frames.get(sent++));
+				if (!waitForAck()) break;
+				acked++;
+			}
+			if (acked == 0)
+				batchSupport = BATCH_UNKNOWN; // check again next time, in case the server has changed
+			return acked;
+		} catch (IOException e) {
+			if (acked == 0) {
+				batchSupport = BATCH_UNKNOWN; // check again next time, in case the server has changed
+				throw e;
+			}
+			Log.println("Batch to " + hostName + " stopped after " + acked + " frames: " + e.getMessage());
+			return acked;
+		} finally {
+			close();
+		}
+	}
+	
 	public static final int[] OK = {0x4F,0x4D,0x0D,0x0A};
 	public static final int[] FAIL = {0x46,0x41,0x0D,0x0A};
 	
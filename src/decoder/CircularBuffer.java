@@ -1,7 +1,5 @@
 package decoder;
 
-import java.util.ArrayList;
-
 import common.Log;
 /**
  * 
@@ -24,9 +22,10 @@ import common.Log;
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  *
  * 
- * This is a circular buffer that looks like an ArrayList.  This is not the most efficient implementation,
- * but was chosen because it was easy to port the existing code.  If this gives performance issues then it
- * may need porting in the future.
+ * This is a circular buffer of bits.  The bits are packed 64 to a long, with the first bit of each long in the
+ * most significant bit, and the size of the buffer is rounded up to a power of two so that a position wraps around
+ * with a mask rather than a modulo.  A run of up to 32 bits can be read as an int with getBits(), which reads at
+ * most two longs, rather than one bit at a time.
  * 
  * We use two pointers to remember where we are in the array.
  * At any point in time there is a virtual array that starts from the readPointer and ends at the writePointer.
@@ -37,26 +36,27 @@ import common.Log;
  * @author chris.e.thompson g0kla/ac2cz
  *
  */
-@SuppressWarnings("serial")
-public class CircularBuffer extends ArrayList<Boolean> {
-	int bufferSize = 0;; 
+public class CircularBuffer {
+	int bufferSize = 0;
+	int mask = 0; // bufferSize - 1, to wrap a position around the array
 	int startPointer = 0;
 	int endPointer = -1;
-	
+	private long[] bits;
 	
 	public CircularBuffer(int initialSize) {
-		super(initialSize);
-		bufferSize = initialSize;
+		bufferSize = 64;
+		while (bufferSize < initialSize)
+			bufferSize = bufferSize << 1;
+		mask = bufferSize - 1;
+		bits = new long[bufferSize >>> 6];
 		startPointer = bufferSize -1; // initialize this to the end of the array, otherwise we can not write data to it
-		for (int i=0; i< bufferSize; i++)
-			super.add(false);
-		Log.println("Created circular buffer with " + initialSize + " bits");
+		Log.println("Created circular buffer with " + bufferSize + " bits");
 	}
 	
 	public int getStartPointer() { return startPointer; }
 	public int getEndPointer() { return endPointer; }
 	
-	public boolean add(Boolean o) {
+	public boolean add(boolean o) {
 		endPointer++;
 		if (endPointer == bufferSize)
 			endPointer = 0;
@@ -67,28 +67,60 @@ public class CircularBuffer extends ArrayList<Boolean> {
 				endPointer = bufferSize-1;
 			throw new IndexOutOfBoundsException("End pointer has reached start pointer");
 		}
-		super.set(endPointer, o);
+		setBit(endPointer, o);
 		return true;
 	}
 	
 	private int incPointer(int pointer, int amount) {
-		int p = pointer + amount;
-		if (p >= bufferSize) {
-			// We need to wrap aroung the array
-			p = p % bufferSize;
-		}
-		return p;
+		return (pointer + amount) & mask;
+	}
+	
+	private void setBit(int p, boolean o) {
+		long bit = 1L << (63 - (p & 63));
+		if (o)
+			bits[p >>> 6] |= bit;
+		else
+			bits[p >>> 6] &= ~bit;
 	}
 	
 	/**
 	 * This returns the ith element of the virtual array.  
 	 */
-	public Boolean get(int i) {
+	public boolean get(int i) {
 		if (i > size())
 			throw new IndexOutOfBoundsException("Attempt to read past end pointer");
 		
 		int p = incPointer(startPointer, i);
-		return super.get(p);
+		return (bits[p >>> 6] << (p & 63)) < 0;
+	}
+	
+	/**
+	 * Set the ith element of the virtual array
+	 */
+	public void set(int i, boolean o) {
+		if (i > size())
+			throw new IndexOutOfBoundsException("Attempt to write past end pointer");
+		setBit(incPointer(startPointer, i), o);
+	}
+	
+	/**
+	 * Return n bits of the virtual array from position i as an int.  The bit at position i is the most significant,
+	 * so this gives the same value as reading the bits one at a time into FoxBitStream.binToInt().
+	 * @param i
+	 * @param n - from 0 to 32 bits
+	 * @return
+	 */
+	public int getBits(int i, int n) {
+		if (n == 0) return 0;
+		if (i + n - 1 > size())
+			throw new IndexOutOfBoundsException("Attempt to read past end pointer");
+		int p = incPointer(startPointer, i);
+		int word = p >>> 6;
+		int offset = p & 63;
+		long value = (bits[word] << offset) >>> (64 - n);
+		if (offset + n > 64) // the rest of the bits are at the start of the next long, which may wrap around
+			value = value | (bits[(word + 1) & (bits.length - 1)] >>> (128 - offset - n));
+		return (int)value;
 	}
 	
 	/** 
@@ -104,14 +136,6 @@ public class CircularBuffer extends ArrayList<Boolean> {
 	 * can read backwards from the end in the bitStream
 	 */
 	public int size() {
-		int size = 0;
-		if (endPointer >= startPointer)
-			size = endPointer - startPointer;
-		else {
-			size = bufferSize - startPointer; // distance from start to end of the real array
-			size = size + endPointer;  //  add the distance from the start to the write pointer
-		}
-		return size;
-		
+		return (endPointer - startPointer) & mask;
 	}
 }
@@ -549,6 +549,47 @@ public class Code8b10b {
 		   /* ff */ 0x54e,
 		} };
 	
+	public static final int INVALID = -1; // lookup() value for a word that is not in the table
+	public static final int NO_RD = -99; // running disparity for a word that is not in the table
+	
+	/*
+	 * Direct lookup tables for the 10 bit words, built from Encode_8b10b.  Where a word is in both columns the rd=0
+	 * column is used, as the search through the table did.  decodeTable[flip][word] is the byte, or INVALID.
+	 * nextRdTable[rd][word] is the running disparity after the word if it is valid in column rd, otherwise NO_RD
+	 */
+	private static final int[][] decodeTable = new int[2][1024];
+	private static final int[][] nextRdTable = new int[2][1024];
+	private static final int[] rdSenseTable = new int[1024];
+	static {
+		for (int w=0; w < 1024; w++) {
+			decodeTable[0][w] = INVALID;
+			decodeTable[1][w] = INVALID;
+			nextRdTable[0][w] = NO_RD;
+			nextRdTable[1][w] = NO_RD;
+			rdSenseTable[w] = NO_RD;
+		}
+		for (int rd=1; rd>=0; rd--) // so that the rd=0 column is used when a word is in both
+			for (int i=255; i>=0; i--) {
+				int word = Encode_8b10b[rd][i] & 0x3ff;
+				decodeTable[0][word] = i;
+				decodeTable[1][~word & 0x3ff] = i;
+				rdSenseTable[word] = rd;
+				nextRdTable[rd][word] = (Encode_8b10b[rd][i] >> 10) & 1;
+			}
+	}
+	
+	/**
+	 * Given a 10 bit word, return the byte it encodes
+	 * @param word - the 10 bit word
+	 * @param flip - the bits were received inverted
+	 * @return - the byte, 0 to 255, or INVALID if the word is not in the Encode_8b10b table
+	 */
+	public static int lookup(int word, boolean flip) {
+		if (flip) return decodeTable[1][word & 0x3ff]; // the table is indexed by the word as received
+		if ((word & ~0x3ff) != 0) return INVALID;
+		return decodeTable[0][word];
+	}
+	
 	/**
 	 * Given a 10 bit word, look it up in the Encode_8b10b matrix and return the value
 	 * @param word - the 10 bit word
@@ -557,15 +598,10 @@ public class Code8b10b {
 	 * 
 	 */
 	public static byte decode(int word, boolean flip) throws LookupException {
-		if (flip) word = ~word & 0x3ff;
-		for (int rd=0; rd<2; rd++)
-			for (int i=0; i<256; i++) {
-				int testValue = Encode_8b10b[rd][i];
-				if ((testValue & 0x3ff) == word) {				
-					return (byte)i; // return the position in the lookup table where we found the code word
-				}
-			}
-		throw new LookupException();
+		int b = lookup(word, flip);
+		if (b == INVALID)
+			throw new LookupException();
+		return (byte)b;
 	}
 	
 	public static void printAll10bwords() {
@@ -604,19 +640,32 @@ public class Code8b10b {
 	 */
 	public static int getNextRd(int word, boolean flip) {
 		if (flip) word = ~word & 0x3ff;
-		for (int rd=0; rd<2; rd++)
-			for (int i=0; i<256; i++) {
-				int testValue = Encode_8b10b[rd][i];
-				if ((testValue & 0x3ff) == word) {				
-					int state = (testValue >> 10) & 1;
-					return state;
-				}
-			}
-		return -99; // error state - we did not find the RD sense
-		
-		
-		
-		
+		if ((word & ~0x3ff) != 0) return NO_RD;
+		int rd = rdSenseTable[word];
+		if (rd == NO_RD) return NO_RD; // error state - we did not find the RD sense
+		return nextRdTable[rd][word];
+	}
+	
+	/**
+	 * Follow the Running Disparity through a word.  If the word was not one that the encoder could send after a word
+	 * that left the running disparity at rd, then a bit error has been made in it, or in a word before it that still
+	 * decoded, even if the word itself is valid.
+	 * @param word
+	 * @param rd - the running disparity before the word, or NO_RD if it is not known
+	 * @param flip
+	 * @return the running disparity after the word, or NO_RD if the word is not valid for rd.  If rd is NO_RD then
+	 * the running disparity after the word if the word gives it on its own, otherwise NO_RD
+	 */
+	public static int getNextRd(int word, int rd, boolean flip) {
+		if (flip) word = ~word & 0x3ff;
+		if ((word & ~0x3ff) != 0) return NO_RD;
+		if (rd == 0 || rd == 1) return nextRdTable[rd][word];
+		// A word in both columns that leaves the running disparity as it was does not tell us what it is
+		int rd0 = nextRdTable[0][word];
+		int rd1 = nextRdTable[1][word];
+		if (rd0 == NO_RD) return rd1;
+		if (rd1 == NO_RD || rd1 == rd0) return rd0;
+		return NO_RD;
 	}
 	
 	/**
@@ -626,14 +675,8 @@ public class Code8b10b {
 	 */
 	public static int getRdSense10b(int word, boolean flip) {
 		if (flip) word = ~word & 0x3ff;
-		for (int rd=0; rd<2; rd++)
-			for (int i=0; i<256; i++) {
-				int testValue = Encode_8b10b[rd][i];
-				if ((testValue & 0x3ff) == word) {				
-					return rd;
-				}
-			}
-		return -99; // error state - we did not find the RD sense
+		if ((word & ~0x3ff) != 0) return NO_RD;
+		return rdSenseTable[word]; // NO_RD is the error state - we did not find the RD sense
 	}
 	
 }
@@ -12,6 +12,15 @@ public class CodePRN {
 	public static final int SHORT_CORRELATION_THRESHOLD = 11;  // Accept the SYNC VECTOR if this correlation - 13 = 1 bit missed 11 = 2, 9 = 3 missed, 7 = 4
 	public static final int FAIL = -99999;
 	
+	/**
+	 * The number of bits of the SYNC word that can be wrong and still correlate above the threshold.  Each wrong bit
+	 * takes 2 from the correlation
+	 * @return
+	 */
+	public static final int getSyncWordBitErrors() {
+		return (getSyncWordLength() - LONG_CORRELATION_THRESHOLD - 1) / 2;
+	}
+	
 	public static final int getSyncWordLength() {
 		//int len = SHORT_FRAME_PRN.length;
 		//if (Config.useLongPRN)
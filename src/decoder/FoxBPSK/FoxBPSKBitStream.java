@@ -2,8 +2,10 @@ package decoder.FoxBPSK;
 
 import java.util.Date;
 
+import decoder.CodePRN;
 import decoder.Decoder;
 import decoder.HighSpeedBitStream;
+import decoder.SyncWordDetector;
 import telemetry.Frame;
 import telemetry.FrameProcessException;
 import telemetry.FoxBPSK.FoxBPSKFrame;
@@ -30,7 +32,6 @@ import telemetry.FoxBPSK.FoxBPSKFrame;
  *
  *
  */
-@SuppressWarnings("serial")
 public class FoxBPSKBitStream extends HighSpeedBitStream {
 	public static final int SLOW_SPEED_SYNC_WORD_DISTANCE = 5720; 
 	public static final int FRAME_LENGTH = 572; 
@@ -50,7 +51,9 @@ public class FoxBPSKBitStream extends HighSpeedBitStream {
 		rsPadding[0] = 64;
 		rsPadding[1] = 64;
 		rsPadding[2] = 65;
-		findFramesWithPRN = true;
+		// The PRN is only matched in one polarity, with as many bits wrong as the correlation threshold allows
+		SYNC_WORD_BIT_ERRORS = CodePRN.getSyncWordBitErrors();
+		syncDetector = new SyncWordDetector(CodePRN.LONG_FRAME_SYNC, syncWordLength, SYNC_WORD_BIT_ERRORS, false);
 	}
 	
 	/**
@@ -64,13 +64,11 @@ public class FoxBPSKDotProdDecoder extends Decoder {
 	double gain = 1;	
 	int chunk = 0;
 	public int SEARCH_INTERVAL = 0; //set by window length. 16;  // 512 symbols gives 16, 128 gives 64, 40 gives 204, ie 256
-	public static final int NSEARCHERS = 4;
 	public static final double CENTER_CARRIER = 1500;         // Center of carrier frequency search range
 	static final double CARRIER_SEARCH_RANGE = 800;    // Limits of search range above and below Carrier frequency, stay below 2400 which is twice the carrier to avoid false lock
 	int Ftotal = (int) (2 * CARRIER_SEARCH_RANGE/100.0d + 1);
-	int Fperslot = (Ftotal+NSEARCHERS-1)/NSEARCHERS;
-	PskSearcher[] searchers = new PskSearcher[NSEARCHERS];
-	Thread[] searcherThreads = new Thread[NSEARCHERS];
+	PskSearcherPool searchers; // the threads for the brute force search, started once
+	PskFftSearcher fftSearcher; // or we find the carrier and timing with the FFT, if the spacecraft is set to
 	
 	double phase_inc_start, phase_inc_stop, phase_inc_step;
 	DotProduct matchedFilter;
@@ -152,9 +150,20 @@ public class FoxBPSKDotProdDecoder extends Decoder {
 		phase_inc_start = (CENTER_CARRIER - CARRIER_SEARCH_RANGE) * 2 * Math.PI / (double) currentSampleRate;
 		phase_inc_stop = (CENTER_CARRIER + CARRIER_SEARCH_RANGE) * 2 * Math.PI / (double) currentSampleRate;
 		phase_inc_step = 2 * Math.PI * 100 / (double) currentSampleRate; // 100Hz - how much to increase phase for each searcher
-		Fperslot = (Ftotal+NSEARCHERS-1)/NSEARCHERS;
 		
 		matchedFilter = new DotProduct();
+		if (searchers != null)
+			searchers.shutdown();
+		searchers = null;
+		fftSearcher = null;
+		if (Config.satManager != null && Config.satManager.useBpskFftAcquisition()) {
+			fftSearcher = new PskFftSearcher(BUFFER_SIZE, bucketSize, currentSampleRate);
+			Log.println("BPSK carrier search with the FFT");
+			return;
+		}
+		int threads = Config.bpskSearchThreads > 0 ? Config.bpskSearchThreads : Runtime.getRuntime().availableProcessors();
+		searchers = new PskSearcherPool(Math.min(threads, Ftotal), BUFFER_SIZE, bucketSize, currentSampleRate); // no more threads than frequencies
+		Log.println("BPSK carrier search on " + searchers.getThreads() + " threads");
 	}
 
 	protected void resetWindowData() {
@@ -193,44 +202,21 @@ public class FoxBPSKDotProdDecoder extends Decoder {
 
 		// Perform a brute force search periodically
 		if (chunk % SEARCH_INTERVAL == 0) {
-			int slot;
 	        double maxenergy_value;
-	        int slots;
-	        int fleft;
 	        int newSymphase = symphase;
 	        double newCarrier = carrier;
 	        
-	        cphase_inc = phase_inc_start;
-	        fleft = Ftotal;
-	        for (slot=0; fleft > 0 && slot < NSEARCHERS; slot++) {
-	        	searchers[slot] = new PskSearcher(abBufferDoubleFiltered, cphase_inc, phase_inc_step, 
-	        			min(Fperslot,fleft), BUFFER_SIZE, bucketSize, currentSampleRate);
-	        	
-	        	cphase_inc += phase_inc_step * searchers[slot].getNfreq();
-	        	fleft -= searchers[slot].getNfreq();
-	        	searcherThreads[slot] = new Thread(searchers[slot]); 
-	        	searcherThreads[slot].setName("Searcher Thread:" + slot);
-	        	searcherThreads[slot].setUncaughtExceptionHandler(Log.uncaughtExHandler);
-	        	searcherThreads[slot].start();
-	        	searchers[slot].run();
-	        }
-	        
-	        // Find the winner
-	        slots = slot;
-	        maxenergy_value = -99E99;
-	        for(slot=0;slot < slots;slot++){
-	        	try {
-					searcherThreads[slot].join();
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-				}
-	        	if(searchers[slot].getEnergy() >= maxenergy_value){
-	        		maxenergy_value = searchers[slot].getEnergy();
-// NOT USED	        		cphase_inc = searchers[slot].getCphaseInc();
-	        		newSymphase = searchers[slot].getSymphase();
-	        		newCarrier = searchers[slot].getFrequency();
-	        	}
-	        	searchers[slot].stop();
+	        if (fftSearcher != null) {
+	        	fftSearcher.search(abBufferDoubleFiltered, phase_inc_start, phase_inc_step, Ftotal);
+	        	maxenergy_value = fftSearcher.getEnergy();
+	        	newSymphase = fftSearcher.getSymphase();
+	        	newCarrier = fftSearcher.getFrequency();
+	        } else {
+	        	// Each worker searches a slice of the frequencies and we wait for the winner
+	        	searchers.search(abBufferDoubleFiltered, phase_inc_start, phase_inc_step, Ftotal);
+	        	maxenergy_value = searchers.getEnergy();
+	        	newSymphase = searchers.getSymphase();
+	        	newCarrier = searchers.getFrequency();
 	        }
 	        
 	        // Dont adjust symphase or carrier unless carrier has changed
@@ -495,14 +481,6 @@ public class FoxBPSKDotProdDecoder extends Decoder {
 	}
 
 
-	private int min(int a, int b) {
-		if (a < b)
-			return a;
-		else
-			return b;
-	}
-
-
 	public static double average (double avg, double new_sample, int N) {
 		avg -= avg / N;
 		avg += new_sample / N;
@@ -597,6 +575,13 @@ public class FoxBPSKDotProdDecoder extends Decoder {
 	}
 
 
+	@Override
+	public void cleanup() {
+		super.cleanup();
+		if (searchers != null)
+			searchers.shutdown();
+	}
+
 	public double getFrequency() { return nco.getFrequency(); }
 //	public double getFrequency() { return cos.getFrequency(); }
 	public int getOffset() { return symphase; }
@@ -0,0 +1,232 @@
+package decoder.FoxBPSK;
+
+import org.jtransforms.fft.DoubleFFT_1D;
+
+import filter.CosOscillator;
+import filter.DotProduct;
+import filter.SinOscillator;
+
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Finds the PSK carrier and symbol timing with FFTs, rather than demodulating at every carrier frequency and symbol
+ * offset as PskSearcher does.
+ *
+ * Squaring a BPSK signal removes the modulation, because the phase is 0 or pi, and leaves a tone at twice the
+ * carrier.  Squaring the noise as well makes it much worse though, so first we FFT the window of samples and keep
+ * only the bins that the signal can be in, which also gives us the analytic signal when we transform it back.  We
+ * square that, FFT it again and take the biggest bin between twice the lowest and twice the highest carrier that we
+ * search.  The peak is interpolated between the bins, so the carrier is not limited to the 100Hz steps of the brute
+ * force search.
+ *
+ * The samples are then downconverted once at that carrier and correlated with the matched filter, for every sample
+ * at once, by multiplying their FFT with the FFT of the filter.  The symbol timing is the offset that gives the most
+ * differentially demodulated energy, as with PskSearcher, but each offset only has to add up the symbols.
+ *
+ * The search gives the same outputs as PskSearcher so the decoder can use either.  Nothing is allocated for a search.
+ *
+ * @author chris
+ *
+ */
+public class PskFftSearcher {
+	double energy;            // Total demodulator output energy (output)
+	double cphase_inc;           // Carrier frequency increment (output)
+	int symphase;             // Optimum Symbol timing offset (output)
+	double frequency; // carrier frequency (output)
+	static final double SIGNAL_BANDWIDTH = 800; // Hz either side of the carrier, 1200bps root raised cosine is within 600 * (1 + rolloff)
+	int Ntaps;
+	int BUFFER_SIZE;
+	int bucketSize;
+	int sampleRate;
+
+	// Allocated once and used for every search
+	int fftSize;
+	DoubleFFT_1D fft;
+	double[] window;
+	double[] analytic; // the signal in the search range, then its square, then the spectrum of the square
+	double[] baseband; // complex baseband, then correlated with the matched filter
+	double[] filterSpectrum; // conjugate of the FFT of the matched filter
+
+	CosOscillator cos;
+	SinOscillator sin;
+
+	public PskFftSearcher(int BUFFER_SIZE, int bucketSize, int sampleRate) {
+		this.BUFFER_SIZE = BUFFER_SIZE;
+		this.bucketSize = bucketSize;
+		this.sampleRate = sampleRate;
+
+		fftSize = 1;
+		while (fftSize < BUFFER_SIZE)
+			fftSize *= 2;
+		fft = new DoubleFFT_1D(fftSize);
+		analytic = new double[2*fftSize];
+		baseband = new double[2*fftSize];
+
+		// Hann window, so that the tone does not leak into the bins that we interpolate between
+		window = new double[BUFFER_SIZE];
+		for (int i=0; i < BUFFER_SIZE; i++)
+			window[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / (BUFFER_SIZE - 1));
+
+		// The filter is real, so its conjugate spectrum correlates the I and Q channels together
+		DotProduct matchedFilter = new DotProduct();
+		Ntaps = matchedFilter.getNumOfTaps();
+		filterSpectrum = new double[2*fftSize];
+		for (int i=0; i < Ntaps && i < fftSize; i++)
+			filterSpectrum[2*i] = matchedFilter.getCoeff(i);
+		fft.complexForward(filterSpectrum);
+		for (int k=0; k < fftSize; k++)
+			filterSpectrum[2*k+1] = -filterSpectrum[2*k+1];
+
+		cos = new CosOscillator(sampleRate, 0.0);
+		sin = new SinOscillator(sampleRate, 0.0);
+	}
+
+	public double getEnergy() { return energy; }
+	public double getCphaseInc() { return cphase_inc; }
+	public int getSymphase() { return symphase; }
+	public double getFrequency() { return frequency; }
+
+	/**
+	 * Search the same carrier frequencies as PskSearcher, but with the FFT
+	 * @param samples - samples to be processed (input)
+	 * @param cphase_inc_start - lowest carrier frequency (phase increment / sample) (input)
+	 * @param cphase_inc_step - increment of carrier frequency in the brute force search (input)
+	 * @param nfreq - Number of frequencies in the brute force search, so the highest is start + step * (nfreq-1) (input)
+	 */
+	public void search(double[] samples, double cphase_inc_start, double cphase_inc_step, int nfreq) {
+		double minFreq = cphase_inc_start * sampleRate / (2 * Math.PI);
+		double maxFreq = (cphase_inc_start + cphase_inc_step * (nfreq-1)) * sampleRate / (2 * Math.PI);
+		frequency = findCarrier(samples, minFreq, maxFreq);
+		cphase_inc = frequency * 2 * Math.PI / (double) sampleRate;
+		findSymbolTiming(samples);
+	}
+
+	/**
+	 * Filter the samples to the search range, square them and find the tone at twice the carrier
+	 * @return the carrier frequency
+	 */
+	private double findCarrier(double[] samples, double minFreq, double maxFreq) {
+		int i;
+		for (i=0; i < BUFFER_SIZE; i++) {
+			analytic[2*i] = samples[i] * window[i];
+			analytic[2*i+1] = 0;
+		}
+		for (i=2*BUFFER_SIZE; i < analytic.length; i++)
+			analytic[i] = 0;
+		fft.complexForward(analytic);
+
+		// Keep the positive frequencies that a carrier in the range and its sidebands can have, so we get the analytic
+		// signal of the part of the band with the spacecraft in it
+		double binBandwidth = sampleRate / (double) fftSize;
+		int lowBin = (int)Math.floor((minFreq - SIGNAL_BANDWIDTH) / binBandwidth);
+		int highBin = (int)Math.ceil((maxFreq + SIGNAL_BANDWIDTH) / binBandwidth);
+		for (int k=0; k < fftSize; k++)
+			if (k < lowBin || k > highBin || k >= fftSize/2) {
+				analytic[2*k] = 0;
+				analytic[2*k+1] = 0;
+			}
+		fft.complexInverse(analytic, true);
+
+		// (a + jb)^2 puts the tone at twice the carrier, with no image at minus twice the carrier
+		for (i=0; i < fftSize; i++) {
+			double a = analytic[2*i], b = analytic[2*i+1];
+			analytic[2*i] = a*a - b*b;
+			analytic[2*i+1] = 2*a*b;
+		}
+		fft.complexForward(analytic);
+
+		int firstBin = Math.max(2, (int)Math.ceil(2 * minFreq / binBandwidth));
+		int lastBin = Math.min(fftSize - 2, (int)Math.floor(2 * maxFreq / binBandwidth));
+		int peak = firstBin;
+		double peakPower = -1;
+		for (int k=firstBin; k <= lastBin; k++) {
+			double power = binPower(k);
+			if (power > peakPower) {
+				peakPower = power;
+				peak = k;
+			}
+		}
+
+		// Fit a parabola to the log of the power in the peak and the bins either side.  This is close for a Hann window
+		double delta = 0;
+		double l = binPower(peak-1), c = peakPower, r = binPower(peak+1);
+		if (l > 0 && c > 0 && r > 0) {
+			l = Math.log(l);
+			c = Math.log(c);
+			r = Math.log(r);
+			double d = l - 2*c + r;
+			if (d < 0)
+				delta = 0.5 * (l - r) / d;
+			if (delta > 0.5) delta = 0.5;
+			if (delta < -0.5) delta = -0.5;
+		}
+		double carrier = (peak + delta) * binBandwidth / 2;
+		if (carrier < minFreq) carrier = minFreq;
+		if (carrier > maxFreq) carrier = maxFreq;
+		return carrier;
+	}
+
+	private double binPower(int k) {
+		return analytic[2*k] * analytic[2*k] + analytic[2*k+1] * analytic[2*k+1];
+	}
+
+	/**
+	 * Downconvert at the carrier, correlate with the matched filter through the FFT and find the symbol offset with the
+	 * most energy
+	 */
+	private void findSymbolTiming(double[] samples) {
+		int i;
+		cos.setPhaseIncrement(cphase_inc);
+		sin.setPhaseIncrement(cphase_inc);
+		cos.setPhase(0);
+		sin.setPhase(0);
+		for (i=0; i < BUFFER_SIZE; i++) {
+			baseband[2*i] = samples[i] * cos.nextSample();
+			baseband[2*i+1] = samples[i] * sin.nextSample();
+		}
+		for (i=2*BUFFER_SIZE; i < baseband.length; i++)
+			baseband[i] = 0;
+
+		// Correlate, so that baseband[2n] and [2n+1] are what matchedFilter.dotprod() gives for I and Q at offset n
+		fft.complexForward(baseband);
+		for (int k=0; k < fftSize; k++) {
+			double a = baseband[2*k], b = baseband[2*k+1];
+			double c = filterSpectrum[2*k], d = filterSpectrum[2*k+1];
+			baseband[2*k] = a*c - b*d;
+			baseband[2*k+1] = a*d + b*c;
+		}
+		fft.complexInverse(baseband, true);
+
+		energy = 0;
+		symphase = -1;
+		for (int offset=0; offset < bucketSize; offset++) { // For every symbol timing offset
+			double tlast_i = 0, tlast_q = 0;
+			double offsetEnergy = 0;
+			for (int bb_p = offset; bb_p + Ntaps < BUFFER_SIZE; bb_p += bucketSize) { // For every symbol in the buffer
+				double fi = baseband[2*bb_p];
+				double fq = baseband[2*bb_p+1];
+				// Dot product of previous and current center complex samples gives differentially demodulated symbol
+				double symbol = fi * tlast_i + fq * tlast_q;
+				offsetEnergy += symbol * symbol;
+				tlast_i = fi;
+				tlast_q = fq;
+			}
+			if (offsetEnergy >= energy) { // Guarantee at least one will be taken
+				energy = offsetEnergy;
+				symphase = offset;
+			}
+		}
+	}
+
+}
@@ -25,12 +25,8 @@ import filter.SinOscillator;
  * @author chris
  *
  */
-public class PskSearcher implements Runnable {
+public class PskSearcher {
 	double energy;            // Total demodulator output energy (output)
-	double[] samples;         // samples to be processed by this job (input)
-	double cphase_inc_start;     // First carrier frequency to try (phase increment / sample, 2^32 = 2 pi radians) (input)
-	double cphase_inc_step;      // Increment of carrier frequency to try (phase increment / sample, 2^32 = 2 pi radians) (input)
-	int nfreq;                // Number of frequencies to search, starting at cphase_inc_start (input)
 	double cphase_inc;           // Optimum carrier frequency increment (output)
 	int symphase;             // Optimum Symbol timing offset (output)
 	int Ntaps;
@@ -38,51 +34,40 @@ public class PskSearcher implements Runnable {
 	int bucketSize;
 	double frequency; // carrier frequency of max energy
 	
+	// Allocated once and used for every search
+	double[] baseband_i;
+	double[] baseband_q;
 	DotProduct matchedFilter;
 	
 	CosOscillator cos;
 	SinOscillator sin;
 	
-	boolean running = true;
-	public boolean done = false;
-
-	public PskSearcher(double[] samples, double cphase_inc_start, double cphase_inc_step, int nfreq,
-			int BUFFER_SIZE, int bucketSize, int sampleRate) {
-		this.samples = samples;
-		this.cphase_inc_start = cphase_inc_start;
-		this.cphase_inc_step = cphase_inc_step;
-		this.nfreq = nfreq;
+	public PskSearcher(int BUFFER_SIZE, int bucketSize, int sampleRate) {
 		this.BUFFER_SIZE = BUFFER_SIZE;
 		this.bucketSize = bucketSize;
+		baseband_i = new double[BUFFER_SIZE];
+		baseband_q = new double[BUFFER_SIZE];
 		
 		matchedFilter = new DotProduct();
 		Ntaps = matchedFilter.getNumOfTaps();
 		
-		cos = new CosOscillator(sampleRate, cphase_inc_start);
-		sin = new SinOscillator(sampleRate, cphase_inc_start);
-		
-		//Log.println("SEARCHER STARTED: Start Freq: " + cos.getFrequency());
-		//Log.println("  searching: " + nfreq + " steps");
-		//double endInc = cphase_inc_step * nfreq;
-		//double endFreq = endInc * sampleRate / (2 * Math.PI);
-		//Log.println("  to: " + (cos.getFrequency() + endFreq));
+		cos = new CosOscillator(sampleRate, 0.0);
+		sin = new SinOscillator(sampleRate, 0.0);
 	}
 
-	public synchronized double getEnergy() { return energy; }
-	public synchronized int getNfreq() { return nfreq; }
-	public synchronized double getCphaseInc() { return cphase_inc; }
-	public synchronized int getSymphase() { return symphase; }
-	public synchronized double getFrequency() { return frequency; }
+	public double getEnergy() { return energy; }
+	public double getCphaseInc() { return cphase_inc; }
+	public int getSymphase() { return symphase; }
+	public double getFrequency() { return frequency; }
 	
-	public void stop() {
-		running = false;
-	}
-
-	@Override
-	public void run() {
-
-		double[] baseband_i = new double[BUFFER_SIZE];
-		double[] baseband_q = new double[BUFFER_SIZE];
+	/**
+	 * Search a slice of carrier frequencies for the one and the symbol timing that give the most energy
+	 * @param samples - samples to be processed (input)
+	 * @param cphase_inc_start - First carrier frequency to try (phase increment / sample, 2^32 = 2 pi radians) (input)
+	 * @param cphase_inc_step - Increment of carrier frequency to try (phase increment / sample, 2^32 = 2 pi radians) (input)
+	 * @param nfreq - Number of frequencies to search, starting at cphase_inc_start (input)
+	 */
+	public void search(double[] samples, double cphase_inc_start, double cphase_inc_step, int nfreq) {
 		double cphase_inc;
 		int j;
 
@@ -137,21 +122,6 @@ public class PskSearcher implements Runnable {
 			}
 			//Log.println("  PHASE:"+this.cphase_inc +" Freq: " + cos.getFrequency() + " E:" + energy);
 		}
-
-		done = true;
-		running = false;
-		// wait to allow data to be collected
-		while(running) {
-			try {
-				Thread.sleep(1);
-			} catch (InterruptedException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
-		}
-		//Log.println("SEARCHER ENDED: End Freq: " + cos.getFrequency());
-		//Log.println("  Start Phase: "+cphase_inc_start+" Inc:"+this.cphase_inc +" E:" + energy + " O:" + symphase);
 	}
 
-
 }
@@ -0,0 +1,166 @@
+package decoder.FoxBPSK;
+
+import common.Log;
+
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * A set of threads that search for the PSK carrier.  They are started with the decoder and wait for each search,
+ * rather than a thread being started for each part of every search.  A search is split into slices of the carrier
+ * frequencies.  Each worker takes the next slice that has not been searched and searches it with its own PskSearcher,
+ * which keeps its buffers from one search to the next.  When the last slice is done the decoder is woken up and the
+ * slice with the most energy wins.  Nothing is allocated for a search.
+ *
+ * @author chris
+ *
+ */
+public class PskSearcherPool {
+	private final PskSearcher[] searchers; // one for each worker
+	private final Thread[] workers;
+
+	// The search that the workers are doing
+	private double[] samples;
+	private double cphase_inc_start;
+	private double cphase_inc_step;
+	private int nfreq;
+	private int Fperslot;
+	private int slices = 0;
+	private int nextSlice = 0;
+	private int remaining = 0; // slices that have not finished
+	private boolean running = true;
+
+	// The result for each slice
+	private final double[] sliceEnergy;
+	private final int[] sliceSymphase;
+	private final double[] sliceFrequency;
+	private int best = 0;
+
+	/**
+	 * @param threads - the number of workers
+	 * @param BUFFER_SIZE
+	 * @param bucketSize
+	 * @param sampleRate
+	 */
+	public PskSearcherPool(int threads, int BUFFER_SIZE, int bucketSize, int sampleRate) {
+		if (threads < 1)
+			threads = 1;
+		searchers = new PskSearcher[threads];
+		workers = new Thread[threads];
+		sliceEnergy = new double[threads];
+		sliceSymphase = new int[threads];
+		sliceFrequency = new double[threads];
+		for (int w=0; w < threads; w++) {
+			searchers[w] = new PskSearcher(BUFFER_SIZE, bucketSize, sampleRate);
+			final int worker = w;
+			workers[w] = new Thread(new Runnable() {
+				public void run() {
+					work(worker);
+				}
+			});
+			workers[w].setName("Searcher Thread:" + w);
+			workers[w].setDaemon(true);
+			workers[w].setUncaughtExceptionHandler(Log.uncaughtExHandler);
+			workers[w].start();
+		}
+	}
+
+	public int getThreads() { return workers.length; }
+
+	/**
+	 * Search the carrier frequencies and wait for the workers to finish
+	 * @param samples - they must not change until the search returns
+	 * @param cphase_inc_start - the first carrier frequency, as a phase increment per sample
+	 * @param cphase_inc_step - the increment between the frequencies
+	 * @param nfreq - the number of frequencies
+	 */
+	public synchronized void search(double[] samples, double cphase_inc_start, double cphase_inc_step, int nfreq) {
+		this.samples = samples;
+		this.cphase_inc_start = cphase_inc_start;
+		this.cphase_inc_step = cphase_inc_step;
+		this.nfreq = nfreq;
+		Fperslot = (nfreq + workers.length - 1) / workers.length;
+		slices = (nfreq + Fperslot - 1) / Fperslot;
+		nextSlice = 0;
+		remaining = slices;
+		notifyAll();
+		boolean interrupted = false;
+		while (remaining > 0 && running) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				interrupted = true; // the workers are still using the samples, so we have to wait for them
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+
+		// Find the winner
+		best = 0;
+		for (int s=1; s < slices; s++)
+			if (sliceEnergy[s] >= sliceEnergy[best])
+				best = s;
+	}
+
+	public synchronized double getEnergy() { return sliceEnergy[best]; }
+	public synchronized int getSymphase() { return sliceSymphase[best]; }
+	public synchronized double getFrequency() { return sliceFrequency[best]; }
+
+	/**
+	 * Stop the workers once they have finished the slices they are searching
+	 */
+	public synchronized void shutdown() {
+		running = false;
+		notifyAll();
+	}
+
+	private void work(int worker) {
+		PskSearcher searcher = searchers[worker];
+		while (true) {
+			int slice;
+			double[] samples;
+			double start;
+			int n;
+			synchronized (this) {
+				while (running && nextSlice >= slices) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						// keep waiting until we are shut down
+					}
+				}
+				if (!running) return;
+				slice = nextSlice++;
+				samples = this.samples;
+				start = cphase_inc_start + cphase_inc_step * Fperslot * slice;
+				n = Math.min(Fperslot, nfreq - Fperslot * slice);
+			}
+			boolean searched = false;
+			try {
+				searcher.search(samples, start, cphase_inc_step, n);
+				searched = true;
+			} catch (RuntimeException e) {
+				// This slice can not win, but we still finish it rather than leave the decoder waiting
+				e.printStackTrace(Log.getWriter());
+			}
+			synchronized (this) {
+				sliceEnergy[slice] = searched ? searcher.getEnergy() : -99E99;
+				sliceSymphase[slice] = searcher.getSymphase();
+				sliceFrequency[slice] = searcher.getFrequency();
+				remaining--;
+				if (remaining == 0)
+					notifyAll();
+			}
+		}
+	}
+}
@@ -38,7 +38,6 @@ import telemetry.SlowSpeedHeader;
 
  *
  */
-@SuppressWarnings("serial")
 public abstract class FoxBitStream extends BitStream {
 
 	/* used only for testing erasures and RS corrections
@@ -57,15 +56,13 @@ public abstract class FoxBitStream extends BitStream {
 	
 	protected static int SYNC_WORD_BIT_TOLERANCE = 0; // if we are within this many bits, then try to decode the frame.  Set by Constructor
 	
-	protected int syncWordbitPosition = 0; // The position in the 10 bit word when we are searching for SYNC words bit by bit
-	protected boolean[] syncWord = new boolean[SYNC_WORD_LENGTH]; // The SYNC_WORD_LENGTH bit word used to find SYNC words, selected from the end of the bitStream
+	protected int SYNC_WORD_BIT_ERRORS = 0; // accept a SYNC word with up to this many bits wrong.  Set by Constructor
+	protected SyncWordDetector syncDetector; // holds the last SYNC_WORD_LENGTH bits of the bitStream to find SYNC words
 	protected boolean alreadyTriedToFlipBits = false; // only try to flip the bits once, otherwise we willl try to double process every failed RS word
 	
 	private long millisecondsBetweenSyncWords;
 	private double millisecondsPerBit;
 	
-	protected boolean findFramesWithPRN = false;
-	
 	/**
 	 * Initialize the array with enough room to hold 6 frames worth of bits
 	 * We should never reach this because we purge bits once we exceed 4 frames in length
@@ -74,7 +71,7 @@ public abstract class FoxBitStream extends BitStream {
 		super(size, dec, syncWordDistance);
 		SYNC_WORD_LENGTH = syncWordLength;
 		DATA_WORD_LENGTH = wordLength;
-		syncWord = new boolean[syncWordLength];
+		syncDetector = new SyncWordDetector(Code8b10b.FRAME, syncWordLength, SYNC_WORD_BIT_ERRORS, true); // FRAME or NOT_FRAME
 		this.millisecondsPerBit = millisecondsPerBit;
 		millisecondsBetweenSyncWords = (long) (millisecondsPerBit * SYNC_WORD_DISTANCE);
 	}
@@ -90,28 +87,18 @@ public abstract class FoxBitStream extends BitStream {
 	public boolean findSyncMarkers(int windowLength) {
 		boolean found = false;
 		if (this.size() < SYNC_WORD_LENGTH) return false;
+		syncDetector.reset(this.size()-windowLength);
 		for (int i=this.size()-windowLength; i < this.size(); i++) {
-			syncWord[syncWordbitPosition++] = this.get(i);
-			if (syncWordbitPosition > SYNC_WORD_LENGTH-1) {
-				syncWordbitPosition = SYNC_WORD_LENGTH-1;
-				// Check the last SYNC_WORD_LENGTH bits in the bit stream for the end of frame market
-				int word = binToInt(syncWord);
-				if ((findFramesWithPRN && CodePRN.probabllyFrameMarker(syncWord ) ) ||
-				//if ((findFramesWithPRN && (word == CodePRN.FRAME )) ||
-				//if ((findFramesWithPRN && CodePRN.equals(syncWord ) ) ||
-				!findFramesWithPRN && (word == Code8b10b.FRAME || word == Code8b10b.NOT_FRAME)) {
-					found = true;
-					//if (!haveSyncWordAtBit(i+1)) {
-						syncWords.add(i+1);
-						if (Config.debugFrames) {
-							Log.println("SYNC WORD "+ syncWords.size() + " ADDED AT: "+ (i+1) + " total:" + (totalBits + i + 1));
-							printBitArray(syncWord);
-						}
-					//}
-				} 
-				// now shift the bits and continue looking for frame marker
-				for (int k=1; k<SYNC_WORD_LENGTH; k++)
-					syncWord[k-1] = syncWord[k];
+			// Check the last SYNC_WORD_LENGTH bits in the bit stream for the end of frame market
+			if (syncDetector.add(this.get(i))) {
+				found = true;
+				//if (!haveSyncWordAtBit(i+1)) {
+					syncWords.add(i+1);
+					if (Config.debugFrames) {
+						Log.println("SYNC WORD "+ syncWords.size() + " ADDED AT: "+ (i+1) + " total:" + (totalBits + i + 1));
+						printBitArray(syncDetector.getBits());
+					}
+				//}
 			} 
 		}
 		return found;
@@ -222,59 +209,48 @@ public abstract class FoxBitStream extends BitStream {
 		if (this.size() < SYNC_WORD_LENGTH) return null; // not enough bits yet
 		
 		ArrayList<Frame> frames = null;
-		syncWordbitPosition = 0;
-		syncWord = new boolean[SYNC_WORD_LENGTH]; // re-init each search
+		syncDetector.reset(this.size()-windowLength-SYNC_WORD_LENGTH); // re-init each search
 		
 		// We look for a new sync word in the current window of bits.  We add each bit one by one
 		// and see if the previous N bits are the sync word.  We might have just the last bit in this window
 		for (int i=this.size()-windowLength-SYNC_WORD_LENGTH; i < this.size(); i++) {
 			if (i < 0) return null; // not enough bits.  We may have purged mid attempt?
-			syncWord[syncWordbitPosition++] = this.get(i);
-			if (syncWordbitPosition > SYNC_WORD_LENGTH-1) {
-				syncWordbitPosition = SYNC_WORD_LENGTH-1;
-				// Check the last SYNC_WORD_LENGTH bits in the bit stream for the end of frame market
-				int word = binToInt(syncWord);
-				if ((findFramesWithPRN && CodePRN.probabllyFrameMarker(syncWord ) ) ||
-				//if ((findFramesWithPRN && (word == CodePRN.FRAME )) ||
-				//if ((findFramesWithPRN && CodePRN.equals(syncWord ) ) ||
-						!findFramesWithPRN && (word == Code8b10b.FRAME || word == Code8b10b.NOT_FRAME)) {
-					// We found a sync word
-					Date timeOfSync = Calendar.getInstance().getTime();
-					if (Config.debugFrames) {
-						Log.println("SYNC WORD "+ syncWords.size() + " ADDED AT: "+ (i+1) + " total:" + (totalBits + i + 1) + " at: " + timeOfSync);
-						int last = 0;
-						for (int s : syncWords) {
-							Log.print(s + "-" + (s-last)+", ");
-							last = s;
-						}
-						Log.println("");
-						printBitArray(syncWord);
+			// Check the last SYNC_WORD_LENGTH bits in the bit stream for the end of frame market
+			if (syncDetector.add(this.get(i))) {
+				// We found a sync word
+				Date timeOfSync = Calendar.getInstance().getTime();
+				if (Config.debugFrames) {
+					Log.println("SYNC WORD "+ syncWords.size() + " ADDED AT: "+ (i+1) + " total:" + (totalBits + i + 1) + " at: " + timeOfSync
+							+ " bit errors: " + syncDetector.getBitErrors() + (syncDetector.isInverted() ? " inverted" : ""));
+					int last = 0;
+					for (int s : syncWords) {
+						Log.print(s + "-" + (s-last)+", ");
+						last = s;
 					}
-					alreadyTriedToFlipBits = false; // reset the flag, in case we need to flip the bit stream
-					frames = tryToProcessFrames(timeOfSync, i+1);
-					if (!(Config.mode == SourceIQ.MODE_PSK_NC || Config.mode == SourceIQ.MODE_PSK_COSTAS))
-						if (frames == null || frames.isEmpty()) {
-							if (!alreadyTriedToFlipBits) {
-								alreadyTriedToFlipBits = true;
+					Log.println("");
+					printBitArray(syncDetector.getBits());
+				}
+				alreadyTriedToFlipBits = false; // reset the flag, in case we need to flip the bit stream
+				frames = tryToProcessFrames(timeOfSync, i+1);
+				if (!(Config.mode == SourceIQ.MODE_PSK_NC || Config.mode == SourceIQ.MODE_PSK_COSTAS))
+					if (frames == null || frames.isEmpty()) {
+						if (!alreadyTriedToFlipBits) {
+							alreadyTriedToFlipBits = true;
+							decoder.flipReceivedBits = !decoder.flipReceivedBits;
+							//Log.println("..trying Flipped bits");
+							frames = tryToProcessFrames(timeOfSync, i+1);
+							if (frames != null && !frames.isEmpty()) {
+								// it worked, so flip the whole bitstream and we carry on
+								Log.println("DECODER: Flipped bits");
+								// flip any bits left
+								flipBitStream();
+							} else {
+								// was not a flip bit issue
 								decoder.flipReceivedBits = !decoder.flipReceivedBits;
-								//Log.println("..trying Flipped bits");
-								frames = tryToProcessFrames(timeOfSync, i+1);
-								if (frames != null && !frames.isEmpty()) {
-									// it worked, so flip the whole bitstream and we carry on
-									Log.println("DECODER: Flipped bits");
-									// flip any bits left
-									flipBitStream();
-								} else {
-									// was not a flip bit issue
-									decoder.flipReceivedBits = !decoder.flipReceivedBits;
-								}
-							} 
-					}
-					// we do not exit as we have to add the remaining bits in the window, which are the start of the next frame
-				} 
-				// now shift the bits and continue looking for frame marker
-				for (int k=1; k<SYNC_WORD_LENGTH; k++)
-					syncWord[k-1] = syncWord[k];
+							}
+						} 
+				}
+				// we do not exit as we have to add the remaining bits in the window, which are the start of the next frame
 			} 
 		}
 //		if (frames !=null && frames.size() > 1) { // then reverse the order or the timestamps are back to front
@@ -483,6 +459,23 @@ public abstract class FoxBitStream extends BitStream {
 
 	}
 
+	/**
+	 * Add the positions of the valid words that broke the running disparity to the erasures, as many as there is room
+	 * for below MAX_ERASURES.  These are only a hint, so they are used when the RS decode has failed without them
+	 * @param erasures - the positions of the invalid words
+	 * @param numberOfErasures
+	 * @param hints - the positions of the words that broke the running disparity, in the order they were found
+	 * @param numberOfHints
+	 * @return the erasure positions
+	 */
+	protected static int[] addDisparityHints(int[] erasures, int numberOfErasures, int[] hints, int numberOfHints) {
+		int n = Math.min(numberOfErasures + numberOfHints, MAX_ERASURES-1);
+		int[] positions = new int[n];
+		System.arraycopy(erasures, 0, positions, 0, numberOfErasures);
+		System.arraycopy(hints, 0, positions, numberOfErasures, n - numberOfErasures);
+		return positions;
+	}
+
 	/**
 	 * Decode the 10b word that starts at position j and extends to j+9
 	 * @param j
@@ -492,7 +485,7 @@ public abstract class FoxBitStream extends BitStream {
 	protected byte processWord(int j) throws LookupException {
 		if (Config.debugBits) printBitArray(get10Bits(j));
 
-		int word = binToInt(get10Bits(j));
+		int word = getBits(j, 10);
 		byte word8b;
 		try {
 			word8b = Code8b10b.decode(word, decoder.flipReceivedBits);
@@ -550,12 +543,8 @@ public abstract class FoxBitStream extends BitStream {
 	 * @return
 	 */
 	public boolean[] get10Bits(int n) {
-		if (this.size() > n + 9) {
-			boolean[] b = new boolean[10];
-			for (int j=0; j < 10; j++)
-				b[j] = this.get(n+j);
-			return b;
-		}
+		if (this.size() > n + 9)
+			return intToBin10(getBits(n, 10));
 		return null;
 	}
 	
@@ -565,10 +554,7 @@ public abstract class FoxBitStream extends BitStream {
 	 */
 	public boolean[] last10() {
 		if (!has10()) return null;
-		boolean[] b = new boolean[10];
-		for (int j=0; j < 10; j++)
-			b[j] = this.get(this.size()-10+j);
-		return b;
+		return intToBin10(getBits(this.size()-10, 10));
 	}
 	
 	/**
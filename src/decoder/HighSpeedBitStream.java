@@ -41,7 +41,6 @@ import telemetry.HighSpeedFrame;
  * This bit stream is used for any bitstream with multiple RS Codewords, including the 9600bps FSK and 1200bps PSK streams
  *
  */
-@SuppressWarnings("serial")
 public class HighSpeedBitStream extends FoxBitStream {
 	public static int HIGH_SPEED_SYNC_WORD_DISTANCE = 52730; // 52790 - 6 bytes of header, 4600 data bytes, 672 parity bytes for 21 code words + 10 bit SYNC word
 	public static final int NUMBER_OF_RS_CODEWORDS = 21;
@@ -107,6 +106,9 @@ public class HighSpeedBitStream extends FoxBitStream {
 			erasurePositions[q] = new int[RsCodeWord.DATA_BYTES];
 		}
 		int[] numberOfErasures = new int[numberOfRsCodeWords];
+		int[][] disparityHints = new int[numberOfRsCodeWords][MAX_ERASURES];
+		int[] numberOfHints = new int[numberOfRsCodeWords];
+		int rd = Code8b10b.NO_RD; // the running disparity, once we have followed it from a valid word
 		
 		if (rawFrame.length != (SYNC_WORD_DISTANCE-this.SYNC_WORD_LENGTH)/10)
 			Log.println("WARNING: Frame length " + rawFrame.length + " bytes is different to default SYNC word distance "+ (SYNC_WORD_DISTANCE/10-1));
@@ -132,8 +134,13 @@ public class HighSpeedBitStream extends FoxBitStream {
 			byte b8 = -1;
 			try {
 				b8 = processWord(j);
+				// A valid word that the encoder could not send after the last one is a likely error, in this word or just before it
+				int nextRd = Code8b10b.getNextRd(getBits(j, 10), rd, decoder.flipReceivedBits);
+				if (nextRd == Code8b10b.NO_RD && rd != Code8b10b.NO_RD && numberOfHints[rsNum] < MAX_ERASURES)
+					disparityHints[rsNum][numberOfHints[rsNum]++] = f;
+				rd = nextRd; // not known after a word that broke it, until a word that gives it
 			} catch (LookupException e) {
-				
+				rd = Code8b10b.NO_RD;
 				if (Config.useRSerasures) {
 					// This is an invalid word, so process an erasure
 					// Put the position in the erasurePositions array
@@ -186,8 +193,25 @@ public class HighSpeedBitStream extends FoxBitStream {
 				totalRsErasures += numberOfErasures[i];
 				//Log.println("LAST ERASURE: " + lastErasureNumber);
 				if (Config.useRSfec) {								
+					RsCodeWord retry = null;
+					int[] erasures = null;
+					if (Config.useRSerasures && numberOfHints[i] > 0 && numberOfErasures[i] < MAX_ERASURES-1) {
+						// The decoder changes the code word and the erasures, so copy them first
+						retry = new RsCodeWord(codeWords[i]);
+						erasures = addDisparityHints(erasurePositions[i], numberOfErasures[i], disparityHints[i], numberOfHints[i]);
+					}
 					if (Config.useRSerasures) codeWords[i].setErasurePositions(erasurePositions[i], numberOfErasures[i]);
 					codeWords[i].decode();  
+					if (!codeWords[i].validDecode() && retry != null) {
+						// Try again with the words that broke the running disparity erased too
+						retry.setErasurePositions(erasures, erasures.length);
+						retry.decode();
+						if (retry.validDecode()) {
+							if (Config.debugFrames || Config.debugRS) Log.println("RS DECODE FOR HS WORD " + i + " NEEDED " + (erasures.length - numberOfErasures[i]) + " DISPARITY ERASURES");
+							totalRsErasures += erasures.length - numberOfErasures[i];
+							codeWords[i] = retry;
+						}
+					}
 					totalRsErrors += codeWords[i].getNumberOfCorrections();
 					//Log.println("LAST ERRORS: " + lastErrorsNumber);
 					if (!codeWords[i].validDecode()) {
@@ -30,7 +30,6 @@ import fec.RsCodeWord;
  *
  *
  */
-@SuppressWarnings("serial")
 public class SlowSpeedBitStream extends FoxBitStream {
 	public static int SLOW_SPEED_SYNC_WORD_DISTANCE = 970; // 10*(SlowSpeedFrame.getMaxBytes())+SYNC_WORD_LENGTH; // Also note this is the default value, but the actual is loaded from the config file
 	
@@ -48,6 +47,9 @@ public class SlowSpeedBitStream extends FoxBitStream {
 		byte[] rawFrame = new byte[SlowSpeedFrame.getMaxBytes()]; // The decoded 8b bytes ready to be passed to the fec decoder
 		int[] erasurePositions = new int[SlowSpeedFrame.getMaxBytes()];
 		int numberOfErasures = 0;
+		int[] disparityHints = new int[MAX_ERASURES];
+		int numberOfHints = 0;
+		int rd = Code8b10b.NO_RD; // the running disparity, once we have followed it from a valid word
 		
 		if (rawFrame.length != SYNC_WORD_DISTANCE/10-1)
 			Log.println("ERROR: Frame length " + rawFrame.length + " bytes is different to SYNC word distance "+ (SYNC_WORD_DISTANCE/10-1));
@@ -71,7 +73,13 @@ public class SlowSpeedBitStream extends FoxBitStream {
 			if (numberOfErasures < MAX_ERASURES) // otherwise we can fast forward to end of this frame, it is bad
 				try {
 					b8 = processWord(j);
+					// A valid word that the encoder could not send after the last one is a likely error, in this word or just before it
+					int nextRd = Code8b10b.getNextRd(getBits(j, 10), rd, decoder.flipReceivedBits);
+					if (nextRd == Code8b10b.NO_RD && rd != Code8b10b.NO_RD && numberOfHints < MAX_ERASURES)
+						disparityHints[numberOfHints++] = f;
+					rd = nextRd; // not known after a word that broke it, until a word that gives it
 				} catch (LookupException e) {
+					rd = Code8b10b.NO_RD;
 					if (Config.useRSerasures) {
 						// This is an invalid word, so process an erasure
 						// Put the position in the erasurePositions array
@@ -91,9 +99,28 @@ public class SlowSpeedBitStream extends FoxBitStream {
 			// Initialize a code word with the raw data and the amount of pre-padding required for our partial code words
 			RsCodeWord rs = new RsCodeWord(rawFrame, RsCodeWord.DATA_BYTES-SlowSpeedFrame.MAX_HEADER_SIZE-SlowSpeedFrame.MAX_PAYLOAD_SIZE /*159*/);
 			if (Config.useRSfec) {								
+				RsCodeWord retry = null;
+				int[] erasures = null;
+				if (Config.useRSerasures && numberOfHints > 0 && numberOfErasures < MAX_ERASURES-1) {
+					// The decoder changes the code word and the erasures, so copy them first
+					retry = new RsCodeWord(rs);
+					erasures = addDisparityHints(erasurePositions, numberOfErasures, disparityHints, numberOfHints);
+				}
 				if (Config.useRSerasures) 
 					rs.setErasurePositions(erasurePositions, numberOfErasures);
-				rawFrame = rs.decode();
+				byte[] decoded = rs.decode();
+				if (!rs.validDecode() && retry != null) {
+					// Try again with the words that broke the running disparity erased too
+					retry.setErasurePositions(erasures, erasures.length);
+					byte[] retried = retry.decode();
+					if (retry.validDecode()) {
+						if (Config.debugFrames || Config.debugRS) Log.println("RS DECODE NEEDED " + (erasures.length - numberOfErasures) + " DISPARITY ERASURES");
+						numberOfErasures = erasures.length;
+						rs = retry;
+						decoded = retried;
+					}
+				}
+				rawFrame = decoded;
 			}
 			if (rs.validDecode()) {
 				SlowSpeedFrame slowSpeedFrame = new SlowSpeedFrame();  // This creates empty frame with STP date to now
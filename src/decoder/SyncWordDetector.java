@@ -0,0 +1,118 @@
+package decoder;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Finds a sync word of up to 64 bits in a stream of bits.  The last bits are held in a long as a shift register, the
+ * most recent bit in the lowest position, so the sync word is written with its first bit as the most significant.
+ * Each time a bit is added the register is compared with the sync word by counting the bits that differ.  It is a
+ * match if no more than the tolerance are wrong.  If both polarities are accepted then the inverted sync word also
+ * matches, as it does for the 8b10b FRAME and NOT_FRAME words.
+ *
+ * After a match, the position of the bit after the sync word, the number of bits that were wrong and whether it was
+ * inverted can be read until the next bit is added.  Nothing is allocated as bits are added.
+ *
+ */
+public class SyncWordDetector {
+	private final long syncWord;
+	private final long mask;
+	private final int length;
+	private int tolerance;
+	private final boolean bothPolarities;
+
+	private long register = 0;
+	private int bits = 0; // the bits in the register, until it is full
+	private int position = 0; // the position of the next bit
+	private int bitErrors = 0;
+	private boolean inverted = false;
+
+	/**
+	 * @param syncWord - the bits of the sync word, the first in the highest position
+	 * @param length - the number of bits in the sync word, up to 64
+	 * @param tolerance - the number of bits that can be wrong
+	 * @param bothPolarities - also match the inverted sync word
+	 */
+	public SyncWordDetector(long syncWord, int length, int tolerance, boolean bothPolarities) {
+		if (length < 1 || length > 64)
+			throw new IllegalArgumentException("A sync word must be between 1 and 64 bits, not " + length);
+		this.length = length;
+		mask = length == 64 ? -1L : (1L << length) - 1;
+		this.syncWord = syncWord & mask;
+		this.tolerance = tolerance;
+		this.bothPolarities = bothPolarities;
+	}
+
+	/**
+	 * Empty the register, so that a sync word has to be made from the bits added after this
+	 * @param position - the position of the next bit to be added
+	 */
+	public void reset(int position) {
+		register = 0;
+		bits = 0;
+		this.position = position;
+	}
+
+	/**
+	 * Shift a bit into the register and check the last length bits for the sync word
+	 * @param bit
+	 * @return true if they are the sync word
+	 */
+	public boolean add(boolean bit) {
+		register = ((register << 1) | (bit ? 1 : 0)) & mask;
+		position++;
+		if (bits < length) {
+			bits++;
+			if (bits < length) return false;
+		}
+		int errors = Long.bitCount(register ^ syncWord);
+		boolean flipped = bothPolarities && length - errors < errors;
+		if (flipped) errors = length - errors;
+		if (errors > tolerance) return false;
+		bitErrors = errors;
+		inverted = flipped;
+		return true;
+	}
+
+	/**
+	 * @return the position after the last bit added, which is the first bit after a sync word that was just found
+	 */
+	public int getPosition() { return position; }
+	public int getBitErrors() { return bitErrors; }
+	public boolean isInverted() { return inverted; }
+	public int getLength() { return length; }
+	public int getTolerance() { return tolerance; }
+	public void setTolerance(int tolerance) { this.tolerance = tolerance; }
+
+	/**
+	 * @return the last length bits, the first in the highest position
+	 */
+	public long getRegister() { return register; }
+
+	/**
+	 * For debugging, the last length bits with the first in position 0
+	 * @return
+	 */
+	public boolean[] getBits() {
+		boolean[] b = new boolean[length];
+		for (int i=0; i < length; i++)
+			b[i] = ((register >>> (length-1-i)) & 1) == 1;
+		return b;
+	}
+}
@@ -89,6 +89,18 @@ public class RsCodeWord  {
 		numberOfCorrections = 0;
 	}
 	
+	/**
+	 * Copy a code word before it is decoded, so that it can be decoded again with different erasures if the decode
+	 * fails.  Decoding corrects the bytes in place.
+	 * @param word
+	 */
+	public RsCodeWord(RsCodeWord word) {
+		RSPAD = word.RSPAD;
+		nextByte = word.nextByte;
+		System.arraycopy(word.rsCodeWord, 0, rsCodeWord, 0, NN);
+		numberOfCorrections = 0;
+	}
+	
 	public String toString() {
 		String s = "RS SIZE: " + DATA_BYTES + "/" + NN + " PAD:" + RSPAD + "\n";
 		for(int i = 0; i < NN; i++){
@@ -153,9 +165,9 @@ public class RsCodeWord  {
 	 */
 	public void setErasurePositions(int[] pos, int n) {
 		erasurePositions = pos;
+		numberOfErasures = n;
 		for (int i=0; i < numberOfErasures; i++)
 			erasurePositions[i] += RSPAD;
-		numberOfErasures = n;
 	}
 	
 	/* This decoder has evolved extensively through the work of Phil Karn.  It draws
@@ -1869,6 +1869,10 @@ public class DotProduct {
 		return coeffs.length;
 	}
 	
+	public double getCoeff(int i) {
+		return coeffs[i];
+	}
+	
 	/**
 	 * Calculate the dot product of the coefficients and a chunk of data
 	 * For efficiency we pass a reference to the larger array and the current offset
@@ -70,71 +70,43 @@ public abstract class GraphCanvas extends MapPanel {
 		if (graphFrame.fieldName2 != null)
 			totalFields += graphFrame.fieldName2.length;
 		boolean reverse=false;
-		graphData = new double[graphFrame.fieldName.length][][];
-		for (int i=0; i<graphFrame.fieldName.length; i++) {
-			if (graphFrame.SAMPLES > showDialogThreshold)
-				fileProgress.updateProgress((int)(100*i/totalFields));
-			if (graphFrame.showLatest == GraphFrame.SHOW_LIVE)
-				reverse=true;
-			if (payloadType == FoxFramePart.TYPE_REAL_TIME)
-				graphData[i] = Config.payloadStore.getRtGraphData(graphFrame.fieldName[i], graphFrame.SAMPLES, graphFrame.fox, graphFrame.START_RESET, graphFrame.START_UPTIME, false, reverse);
-			else if (payloadType == FoxFramePart.TYPE_MAX_VALUES)
-				graphData[i] = Config.payloadStore.getMaxGraphData(graphFrame.fieldName[i], graphFrame.SAMPLES, graphFrame.fox, graphFrame.START_RESET, graphFrame.START_UPTIME, false, reverse);
-			else if (payloadType == FoxFramePart.TYPE_MIN_VALUES)
-				graphData[i] = Config.payloadStore.getMinGraphData(graphFrame.fieldName[i], graphFrame.SAMPLES, graphFrame.fox, graphFrame.START_RESET, graphFrame.START_UPTIME, false, reverse);
-			else if (payloadType == FoxFramePart.TYPE_RAD_EXP_DATA)
-				graphData[i] = Config.payloadStore.getGraphData(graphFrame.fieldName[i], graphFrame.SAMPLES, graphFrame.fox, graphFrame.START_RESET, graphFrame.START_UPTIME, Spacecraft.RAD_LAYOUT, true, reverse);
-			else if (payloadType == FoxFramePart.TYPE_RAD_TELEM_DATA)
-				graphData[i] = Config.payloadStore.getRadTelemGraphData(graphFrame.fieldName[i], graphFrame.SAMPLES, (FoxSpacecraft)graphFrame.fox, graphFrame.START_RESET, graphFrame.START_UPTIME, false, reverse);
-			else if (payloadType == FoxFramePart.TYPE_HERCI_SCIENCE_HEADER)
-				graphData[i] = Config.payloadStore.getHerciScienceHeaderGraphData(graphFrame.fieldName[i], graphFrame.SAMPLES, (FoxSpacecraft)graphFrame.fox, graphFrame.START_RESET, graphFrame.START_UPTIME, false, reverse);
-			else if  (payloadType == SatMeasurementStore.RT_MEASUREMENT_TYPE) 
-				graphData[i] = Config.payloadStore.getMeasurementGraphData(graphFrame.fieldName[i], graphFrame.SAMPLES, (FoxSpacecraft)graphFrame.fox, graphFrame.START_RESET, graphFrame.START_UPTIME, reverse);
-			else if  (payloadType == SatMeasurementStore.PASS_MEASUREMENT_TYPE) 
-				graphData[i] = Config.payloadStore.getPassMeasurementGraphData(graphFrame.fieldName[i], graphFrame.SAMPLES, (FoxSpacecraft)graphFrame.fox, graphFrame.START_RESET, graphFrame.START_UPTIME, reverse);
-			else if  (payloadType == FoxFramePart.TYPE_WOD) 
-				graphData[i] = Config.payloadStore.getGraphData(graphFrame.fieldName[i], graphFrame.SAMPLES, graphFrame.fox, graphFrame.START_RESET, graphFrame.START_UPTIME, Spacecraft.WOD_LAYOUT, true, reverse);
-			else if  (payloadType == FoxFramePart.TYPE_WOD_RAD_TELEM_DATA) 
-				graphData[i] = Config.payloadStore.getGraphData(graphFrame.fieldName[i], graphFrame.SAMPLES, graphFrame.fox, graphFrame.START_RESET, graphFrame.START_UPTIME, Spacecraft.WOD_RAD2_LAYOUT, false, reverse);
-			else if (payloadType == FoxFramePart.TYPE_WOD_RAD)
-				graphData[i] = Config.payloadStore.getGraphData(graphFrame.fieldName[i], graphFrame.SAMPLES, graphFrame.fox, graphFrame.START_RESET, graphFrame.START_UPTIME, Spacecraft.WOD_RAD_LAYOUT, true, reverse);
-			else if (payloadType == FoxFramePart.TYPE_UW_EXPERIMENT)
-				graphData[i] = Config.payloadStore.getGraphData(graphFrame.fieldName[i], graphFrame.SAMPLES, graphFrame.fox, graphFrame.START_RESET, graphFrame.START_UPTIME, Spacecraft.CAN_LAYOUT, true, reverse);
-			else if (payloadType == FoxFramePart.TYPE_UW_WOD_EXPERIMENT)
-				graphData[i] = Config.payloadStore.getGraphData(graphFrame.fieldName[i], graphFrame.SAMPLES, graphFrame.fox, graphFrame.START_RESET, graphFrame.START_UPTIME, Spacecraft.WOD_CAN_LAYOUT, true, reverse);
-			
+		if (graphFrame.showLatest == GraphFrame.SHOW_LIVE)
+			reverse=true;
+		// A line graph only needs a point per pixel column, so long ranges can come from the rollups
+		int width = 0;
+		if (graphFrame.plotType == GraphFrame.GRAPH_PLOT)
+			width = getWidth();
+		String layout = getLayoutName();
+		if (layout != null) {
+			// All of the fields come from the same records, so fetch them together with one pass through the records
+			graphData = Config.payloadStore.getGraphData(graphFrame.fieldName, graphFrame.SAMPLES, graphFrame.fox, graphFrame.START_RESET, graphFrame.START_UPTIME, layout, hasPositionData(), reverse, width);
+			if (graphData == null)
+				graphData = new double[graphFrame.fieldName.length][][];
 			if (graphFrame.plotType == GraphFrame.EARTH_PLOT)
-				graphData[i] = addPositionData(graphData[i]);
+				for (int i=0; i<graphFrame.fieldName.length; i++)
+					graphData[i] = addPositionData(graphData[i]);
+		} else {
+			graphData = new double[graphFrame.fieldName.length][][];
+			for (int i=0; i<graphFrame.fieldName.length; i++) {
+				if (graphFrame.SAMPLES > showDialogThreshold)
+					fileProgress.updateProgress((int)(100*i/totalFields));
+				graphData[i] = getGraphData(graphFrame.fieldName[i], reverse);
+				if (graphFrame.plotType == GraphFrame.EARTH_PLOT)
+					graphData[i] = addPositionData(graphData[i]);
+			}
 		}
 
 		graphData2 = null;
 		if (graphFrame.fieldName2 != null && graphFrame.fieldName2.length > 0) {
-			graphData2 = new double[graphFrame.fieldName2.length][][];
-			for (int i=0; i<graphFrame.fieldName2.length; i++) {
-				if (graphFrame.SAMPLES > showDialogThreshold)
-					fileProgress.updateProgress((int)(100*i+graphFrame.fieldName.length/totalFields));
-				if (payloadType == FoxFramePart.TYPE_REAL_TIME)
-					graphData2[i] = Config.payloadStore.getRtGraphData(graphFrame.fieldName2[i], graphFrame.SAMPLES, graphFrame.fox, graphFrame.START_RESET, graphFrame.START_UPTIME, false, reverse);
-				else if (payloadType == FoxFramePart.TYPE_MAX_VALUES)
-					graphData2[i] = Config.payloadStore.getMaxGraphData(graphFrame.fieldName2[i], graphFrame.SAMPLES, graphFrame.fox, graphFrame.START_RESET, graphFrame.START_UPTIME, false, reverse);
-				else if (payloadType == FoxFramePart.TYPE_MIN_VALUES)
-					graphData2[i] = Config.payloadStore.getMinGraphData(graphFrame.fieldName2[i], graphFrame.SAMPLES, graphFrame.fox, graphFrame.START_RESET, graphFrame.START_UPTIME, false, reverse);
-				else if (payloadType == FoxFramePart.TYPE_RAD_TELEM_DATA)
-					graphData2[i] = Config.payloadStore.getRadTelemGraphData(graphFrame.fieldName2[i], graphFrame.SAMPLES, (FoxSpacecraft)graphFrame.fox, graphFrame.START_RESET, graphFrame.START_UPTIME, false, reverse);
-				else if (payloadType == FoxFramePart.TYPE_HERCI_SCIENCE_HEADER)
-					graphData2[i] = Config.payloadStore.getHerciScienceHeaderGraphData(graphFrame.fieldName2[i], graphFrame.SAMPLES, (FoxSpacecraft)graphFrame.fox, graphFrame.START_RESET, graphFrame.START_UPTIME, false, reverse);
-				else if  (payloadType == SatMeasurementStore.RT_MEASUREMENT_TYPE) 
-					graphData2[i] = Config.payloadStore.getMeasurementGraphData(graphFrame.fieldName2[i], graphFrame.SAMPLES, (FoxSpacecraft)graphFrame.fox, graphFrame.START_RESET, graphFrame.START_UPTIME, reverse);
-				else if  (payloadType == SatMeasurementStore.PASS_MEASUREMENT_TYPE) 
-					graphData2[i] = Config.payloadStore.getPassMeasurementGraphData(graphFrame.fieldName2[i], graphFrame.SAMPLES, (FoxSpacecraft)graphFrame.fox, graphFrame.START_RESET, graphFrame.START_UPTIME, reverse);
-				else if (payloadType == FoxFramePart.TYPE_WOD)
-					graphData2[i] = Config.payloadStore.getGraphData(graphFrame.fieldName2[i], graphFrame.SAMPLES, graphFrame.fox, graphFrame.START_RESET, graphFrame.START_UPTIME, Spacecraft.WOD_LAYOUT, true, reverse);
-				else if (payloadType == FoxFramePart.TYPE_WOD_RAD_TELEM_DATA)
-					graphData2[i] = Config.payloadStore.getGraphData(graphFrame.fieldName2[i], graphFrame.SAMPLES, graphFrame.fox, graphFrame.START_RESET, graphFrame.START_UPTIME, Spacecraft.WOD_RAD2_LAYOUT, false, reverse);		
-				else if (payloadType == FoxFramePart.TYPE_UW_EXPERIMENT)
-					graphData2[i] = Config.payloadStore.getGraphData(graphFrame.fieldName2[i], graphFrame.SAMPLES, graphFrame.fox, graphFrame.START_RESET, graphFrame.START_UPTIME, Spacecraft.CAN_LAYOUT, false, reverse);		
-				else if (payloadType == FoxFramePart.TYPE_UW_WOD_EXPERIMENT)
-					graphData2[i] = Config.payloadStore.getGraphData(graphFrame.fieldName2[i], graphFrame.SAMPLES, graphFrame.fox, graphFrame.START_RESET, graphFrame.START_UPTIME, Spacecraft.WOD_CAN_LAYOUT, false, reverse);		
+			if (layout != null) {
+				graphData2 = Config.payloadStore.getGraphData(graphFrame.fieldName2, graphFrame.SAMPLES, graphFrame.fox, graphFrame.START_RESET, graphFrame.START_UPTIME, layout, false, reverse, width);
+			} else {
+				graphData2 = new double[graphFrame.fieldName2.length][][];
+				for (int i=0; i<graphFrame.fieldName2.length; i++) {
+					if (graphFrame.SAMPLES > showDialogThreshold)
+						fileProgress.updateProgress((int)(100*i+graphFrame.fieldName.length/totalFields));
+					graphData2[i] = getGraphData(graphFrame.fieldName2[i], reverse);
+				}
 			}
 		}
 		
@@ -148,6 +120,46 @@ public abstract class GraphCanvas extends MapPanel {
 	
 	}
 	
+	/**
+	 * The layout for payload types that are stored as a table of records, so that all of the fields on the graph can
+	 * be fetched together.  Null for the types that are calculated or stored in another way
+	 */
+	private String getLayoutName() {
+		if (payloadType == FoxFramePart.TYPE_REAL_TIME) return Spacecraft.REAL_TIME_LAYOUT;
+		if (payloadType == FoxFramePart.TYPE_MAX_VALUES) return Spacecraft.MAX_LAYOUT;
+		if (payloadType == FoxFramePart.TYPE_MIN_VALUES) return Spacecraft.MIN_LAYOUT;
+		if (payloadType == FoxFramePart.TYPE_RAD_EXP_DATA) return Spacecraft.RAD_LAYOUT;
+		if (payloadType == FoxFramePart.TYPE_WOD) return Spacecraft.WOD_LAYOUT;
+		if (payloadType == FoxFramePart.TYPE_WOD_RAD_TELEM_DATA) return Spacecraft.WOD_RAD2_LAYOUT;
+		if (payloadType == FoxFramePart.TYPE_WOD_RAD) return Spacecraft.WOD_RAD_LAYOUT;
+		if (payloadType == FoxFramePart.TYPE_UW_EXPERIMENT) return Spacecraft.CAN_LAYOUT;
+		if (payloadType == FoxFramePart.TYPE_UW_WOD_EXPERIMENT) return Spacecraft.WOD_CAN_LAYOUT;
+		return null;
+	}
+	
+	/**
+	 * True if the records of this payload type hold the position of the spacecraft
+	 */
+	private boolean hasPositionData() {
+		return payloadType == FoxFramePart.TYPE_RAD_EXP_DATA || payloadType == FoxFramePart.TYPE_WOD || payloadType == FoxFramePart.TYPE_WOD_RAD
+				|| payloadType == FoxFramePart.TYPE_UW_EXPERIMENT || payloadType == FoxFramePart.TYPE_UW_WOD_EXPERIMENT;
+	}
+	
+	/**
+	 * Fetch one field for the payload types that do not have a layout
+	 */
+	private double[][] getGraphData(String name, boolean reverse) {
+		if (payloadType == FoxFramePart.TYPE_RAD_TELEM_DATA)
+			return Config.payloadStore.getRadTelemGraphData(name, graphFrame.SAMPLES, (FoxSpacecraft)graphFrame.fox, graphFrame.START_RESET, graphFrame.START_UPTIME, false, reverse);
+		else if (payloadType == FoxFramePart.TYPE_HERCI_SCIENCE_HEADER)
+			return Config.payloadStore.getHerciScienceHeaderGraphData(name, graphFrame.SAMPLES, (FoxSpacecraft)graphFrame.fox, graphFrame.START_RESET, graphFrame.START_UPTIME, false, reverse);
+		else if  (payloadType == SatMeasurementStore.RT_MEASUREMENT_TYPE) 
+			return Config.payloadStore.getMeasurementGraphData(name, graphFrame.SAMPLES, (FoxSpacecraft)graphFrame.fox, graphFrame.START_RESET, graphFrame.START_UPTIME, reverse);
+		else if  (payloadType == SatMeasurementStore.PASS_MEASUREMENT_TYPE) 
+			return Config.payloadStore.getPassMeasurementGraphData(name, graphFrame.SAMPLES, (FoxSpacecraft)graphFrame.fox, graphFrame.START_RESET, graphFrame.START_UPTIME, reverse);
+		return null;
+	}
+	
 	/**
 	 * Add Lat Lon from stored data or by calculation if needed
 	 * Ask the user if its a lot of data
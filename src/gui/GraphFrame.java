@@ -47,6 +47,8 @@ import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
 import javax.swing.border.EmptyBorder;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.JCheckBox;
@@ -54,6 +56,7 @@ import javax.swing.JComboBox;
 
 import telemetry.BitArrayLayout;
 import telemetry.FoxFramePart;
+import telemetry.PayloadCsvWriter;
 import telemetry.PayloadStore;
 import common.Config;
 import common.Log;
@@ -1380,6 +1383,20 @@ public class GraphFrame extends JFrame implements WindowListener, ActionListener
 			}
 			if (file != null) {
 				Config.csvCurrentDirectory = file.getParent();
+				if (layout != null && fox.getLayoutIdxByName(layout.name) != Spacecraft.ERROR_IDX) {
+					// A stored payload, so the whole history can be exported rather than just the graph
+					Object[] options = {"Graph data", "All " + layout.name + " records"};
+					int n = JOptionPane.showOptionDialog(this,
+							"Save the data on the graph, or every stored " + layout.name + " record?",
+							"Save CSV", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE, null, options, options[0]);
+					if (n == JOptionPane.NO_OPTION) {
+						exportAllToCSV(file);
+						file = null;
+					} else if (n != JOptionPane.YES_OPTION)
+						file = null;
+				}
+			}
+			if (file != null) {
 				try {
 					saveToCSV(file);
 				} catch (IOException e1) {
@@ -1587,6 +1604,57 @@ public class GraphFrame extends JFrame implements WindowListener, ActionListener
 		
 	}
 	
+	/**
+	 * Export every stored record of the payload that this graph is from.  The store writes the records a segment at
+	 * a time, so this runs in the background with a progress monitor that can cancel it
+	 * @param aFile
+	 */
+	private void exportAllToCSV(final File aFile) {
+		final ProgressMonitor monitor = new ProgressMonitor(this, "Saving all " + layout.name + " records to " + aFile.getName(), "", 0, 100);
+		final String layoutName = layout.name;
+		final boolean converted = !Config.displayRawValues;
+		final boolean positionData = plotType == EARTH_PLOT;
+		btnCSV.setEnabled(false);
+		Thread exportThread = new Thread(new Runnable() {
+			public void run() {
+				Writer output = null;
+				try {
+					output = new BufferedWriter(new FileWriter(aFile, false));
+					long rows = Config.payloadStore.exportToCSV(fox.foxId, layoutName, output, converted, positionData,
+							new PayloadCsvWriter.Progress() {
+						public boolean update(final long rows, final long total) {
+							SwingUtilities.invokeLater(new Runnable() {
+								public void run() {
+									monitor.setProgress((int)(100 * rows / Math.max(total, 1)));
+									monitor.setNote(rows + " of " + total + " records");
+								}
+							});
+							return !monitor.isCanceled();
+						}
+					});
+					Log.println("Exported " + rows + " " + layoutName + " records to " + aFile.getPath());
+				} catch (IOException e) {
+					Log.errorDialog("ERROR WRITING FILE", e.toString());
+					e.printStackTrace(Log.getWriter());
+				} finally {
+					try {
+						if (output != null) output.close();
+					} catch (IOException e) {
+						e.printStackTrace(Log.getWriter());
+					}
+					SwingUtilities.invokeLater(new Runnable() {
+						public void run() {
+							monitor.close();
+							btnCSV.setEnabled(true);
+						}
+					});
+				}
+			}
+		});
+		exportThread.setUncaughtExceptionHandler(Log.uncaughtExHandler);
+		exportThread.start();
+	}
+	
 	/*
 	 * Copy the graph panel to the clipboard
 	 */
@@ -25,6 +25,7 @@ import javax.swing.JMenuBar;
 import javax.swing.JMenu;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 import javax.swing.JTabbedPane;
 
 import java.awt.event.ItemListener;
@@ -58,6 +59,7 @@ import org.rauschig.jarchivelib.ArchiverFactory;
 import macos.MacAboutHandler;
 import macos.MacPreferencesHandler;
 import macos.MacQuitHandler;
+import telemetry.CompactionReport;
 import telemetry.LayoutLoadException;
 import telemetry.SatPayloadStore;
 
@@ -119,6 +121,7 @@ public class MainWindow extends JFrame implements ActionListener, ItemListener,
 	JMenuBar menuBar;
 	JMenuItem mntmSettings;
 	static JMenuItem mntmDelete;
+	static JMenuItem mntmCompact;
 	JMenu mnHelp;
 	JMenuItem mntmManual;
 	JMenuItem mntmLeaderboard;
@@ -275,6 +278,33 @@ public class MainWindow extends JFrame implements ActionListener, ItemListener,
 		Config.fileProgress.updateProgress(100);
 	}
 
+	/**
+	 * Compact the payload files in the background.  The decoder can keep running, so the user is told when it is done
+	 */
+	private void compactPayloads() {
+		mntmCompact.setEnabled(false);
+		Thread compactThread = new Thread(new Runnable() {
+			public void run() {
+				CompactionReport report = null;
+				try {
+					report = Config.payloadStore.compact();
+				} finally {
+					// Swing components must only be changed on the event dispatch thread
+					final CompactionReport done = report;
+					SwingUtilities.invokeLater(new Runnable() {
+						public void run() {
+							mntmCompact.setEnabled(true);
+							if (done != null)
+								Log.infoDialog("Payload Files Compacted", done.toString());
+						}
+					});
+				}
+			}
+		});
+		compactThread.setUncaughtExceptionHandler(Log.uncaughtExHandler);
+		compactThread.start();
+	}
+
 	public static void enableSourceSelection(boolean t) {
 		mntmLoadWavFile.setEnabled(t);
 		mntmImportStp.setEnabled(t);
@@ -404,6 +434,10 @@ public class MainWindow extends JFrame implements ActionListener, ItemListener,
 		mnFile.add(mntmDelete);
 		mntmDelete.addActionListener(this);
 
+		mntmCompact = new JMenuItem("Compact Payload Files");
+		mnFile.add(mntmCompact);
+		mntmCompact.addActionListener(this);
+
 		mnFile.addSeparator();
 		
 		mntmLoadWavFile = new JMenuItem("Load Wav File");
@@ -606,6 +640,7 @@ public class MainWindow extends JFrame implements ActionListener, ItemListener,
 	private void shutdown() {
 		if (Config.satPC != null) Config.satPC.disconnect();
 		inputTab.shutdown();
+		if (Config.payloadStore != null) Config.payloadStore.flush();
 		Log.println("Window Closed");
 		Log.close();
 		saveProperties();
@@ -706,6 +741,10 @@ public class MainWindow extends JFrame implements ActionListener, ItemListener,
 			}
 		}
 		
+		if (e.getSource() == mntmCompact) {
+			compactPayloads();
+		}
+		
 		ArrayList<Spacecraft> sats = Config.satManager.getSpacecraftList();
 		
 		for (int i=0; i<sats.size(); i++) {
@@ -84,6 +84,7 @@ public class SpacecraftFrame extends JDialog implements ItemListener, ActionList
 	
 	JCheckBox useIHUVBatt;
 	JCheckBox track;
+	JCheckBox bpskFftAcquisition;
 	JComboBox<String> cbMode;
 	
 	JButton btnCancel;
@@ -258,6 +259,7 @@ public class SpacecraftFrame extends JDialog implements ItemListener, ActionList
 		maxFreqBoundkHz = addSettingsRow(rightPanel1, 15, "Upper Freq Bound (kHz)", 
 				"The upper frequency boundry when we are searching for the spacecraft signal", ""+sat.user_maxFreqBoundkHz);
 		track = addCheckBoxRow("Track when Find Signal Enabled", "When Find Signal is enabled include this satellite in the search", sat.user_track, rightPanel1 );
+		bpskFftAcquisition = addCheckBoxRow("Find BPSK Carrier with FFT", "Find the BPSK carrier and symbol timing with an FFT rather than searching every frequency", sat.user_bpskFftAcquisition, rightPanel1 );
 		rightPanel1.add(new Box.Filler(new Dimension(10,10), new Dimension(100,400), new Dimension(100,500)));
 
 		JPanel rightPanel2 = new JPanel();
@@ -530,6 +532,7 @@ public class SpacecraftFrame extends JDialog implements ItemListener, ActionList
 						sat.user_localServerPort = Integer.parseInt(localServerPort.getText());
 				}
 				sat.user_track = track.isSelected();
+				sat.user_bpskFftAcquisition = bpskFftAcquisition.isSelected();
 
 				if (dispose) {
 					sat.save();
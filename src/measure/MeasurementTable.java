@@ -0,0 +1,642 @@
+package measure;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.StringTokenizer;
+
+import common.Config;
+import common.Log;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The measurements of one type, read from their log a segment at a time.  The log is written in date order, as it
+ * always has been, and an index beside it holds the byte offset, length, number of records and latest reset/uptime
+ * of each segment of SEGMENT_SIZE records.  Only the last segment, which receives new measurements, is always in
+ * memory.  Other segments are read when a query needs them, at most MAX_LOADED_SEGMENTS are held at once, and they
+ * are offloaded once they have not been used for OFFLOAD_PERIOD.
+ *
+ * The index holds every segment but the last, so it is only rewritten when a segment fills.  When the table is opened
+ * the log after the indexed segments is read to find the last segment, which also picks up any records that were
+ * appended by an earlier version.  A record with the same date as the one before it is skipped, as the sorted list
+ * used to do.  If a record is earlier than the one before it then the log is rewritten in date order once.
+ *
+ */
+public class MeasurementTable {
+
+	public static final int SEGMENT_SIZE = 1000; // records in each segment
+	public static final int MAX_LOADED_SEGMENTS = 8; // segments held in memory, not counting the last one
+	public static final long OFFLOAD_PERIOD = 60*1000; // ms that a segment is held after it was last used
+	public static final String IDX_EXT = ".idx";
+
+	private final String fileName;
+	private final int type;
+	private ArrayList<MeasurementSeg> segs = new ArrayList<MeasurementSeg>();
+	private int size = 0; // records in all of the segments
+	private long useCount = 0; // orders the segments by when they were last used
+	private boolean open = false;
+
+	/**
+	 * A run of records in the log.  The records are null when the segment is not loaded.
+	 */
+	static class MeasurementSeg {
+		long offset; // the byte offset in the log of the first record
+		long length; // the bytes in the log up to the next segment
+		int records;
+		int maxReset = Integer.MIN_VALUE; // the latest reset/uptime in the segment.  The records are in date order, so
+		long maxUptime = Long.MIN_VALUE;  // this is not always the reset/uptime of the last one
+		long lastDate = Long.MIN_VALUE; // the date of the last record, in ms
+		SortedMeasurementArrayList loaded;
+		long lastUsed;
+		long lastUsedTime;
+
+		MeasurementSeg(long offset) {
+			this.offset = offset;
+		}
+
+		MeasurementSeg(StringTokenizer st) {
+			offset = Long.parseLong(st.nextToken());
+			length = Long.parseLong(st.nextToken());
+			records = Integer.parseInt(st.nextToken());
+			maxReset = Integer.parseInt(st.nextToken());
+			maxUptime = Long.parseLong(st.nextToken());
+			lastDate = Long.parseLong(st.nextToken());
+		}
+
+		void add(Measurement m) {
+			records++;
+			if (compare(m.reset, m.uptime, maxReset, maxUptime) > 0) {
+				maxReset = m.reset;
+				maxUptime = m.uptime;
+			}
+			if (m.date != null)
+				lastDate = m.date.getTime();
+		}
+
+		String toFile() {
+			return offset + "," + length + "," + records + "," + maxReset + "," + maxUptime + "," + lastDate;
+		}
+	}
+
+	/**
+	 * Create the table for this log.  Nothing is read until the table is opened
+	 * @param fileName - the log, relative to the log file directory
+	 * @param type - RT_MEASUREMENT_TYPE or PASS_MEASUREMENT_TYPE, records of other types in the log are ignored
+	 */
+	public MeasurementTable(String fileName, int type) {
+		this.fileName = fileName;
+		this.type = type;
+	}
+
+	private String getPath() {
+		if (!Config.logFileDirectory.equalsIgnoreCase(""))
+			return Config.logFileDirectory + File.separator + fileName;
+		return fileName;
+	}
+
+	/**
+	 * Read the index and the last segment of the log, creating the log if it does not exist
+	 * @throws IOException
+	 */
+	public synchronized void open() throws IOException {
+		if (open) return;
+		File log = new File(getPath());
+		if (!log.exists())
+			log.createNewFile();
+		segs = loadIdx(log.length());
+		size = 0;
+		for (MeasurementSeg seg : segs)
+			size = size + seg.records;
+		int indexed = segs.size();
+		long from = indexed == 0 ? 0 : segs.get(indexed-1).offset + segs.get(indexed-1).length;
+		if (!scan(log, from)) {
+			sortLog(log);
+			segs.clear();
+			size = 0;
+			indexed = 0;
+			scan(log, 0);
+		}
+		if (segs.size() > 0 && getTail().loaded == null)
+			loadSeg(getTail()); // nothing was appended after the indexed segments, so the last of them receives new records
+		if (segs.size() - 1 > indexed)
+			saveIdx();
+		open = true;
+	}
+
+	/**
+	 * Read the log from this offset, adding segments for the records that are found.  The records of the last segment
+	 * are kept, as that is the one that receives new measurements
+	 * @param log
+	 * @param from
+	 * @return false if a record is earlier than the one before it, in which case the log needs to be sorted
+	 * @throws IOException
+	 */
+	private boolean scan(File log, long from) throws IOException {
+		long prevDate = segs.size() == 0 ? Long.MIN_VALUE : segs.get(segs.size()-1).lastDate;
+		MeasurementSeg seg = null;
+		int corrupt = 0;
+		LineReader in = new LineReader(new FileInputStream(log), from);
+		try {
+			long offset = in.position();
+			String line;
+			while ((line = in.readLine()) != null) {
+				Measurement m = null;
+				try {
+					m = parse(line, false);
+				} catch (NumberFormatException e) {
+					corrupt++;
+				} catch (NoSuchElementException e) {
+					corrupt++;
+				}
+				if (m != null && m.type == type) {
+					if (m.date != null) {
+						if (m.date.getTime() < prevDate) return false;
+						if (m.date.getTime() == prevDate) {
+							offset = in.position();
+							continue; // a duplicate
+						}
+						prevDate = m.date.getTime();
+					}
+					if (seg == null || seg.records >= SEGMENT_SIZE) {
+						if (seg != null) {
+							seg.length = offset - seg.offset;
+							seg.loaded = null;
+						}
+						seg = new MeasurementSeg(offset);
+						seg.loaded = new SortedMeasurementArrayList(SEGMENT_SIZE);
+						segs.add(seg);
+					}
+					seg.loaded.add(m);
+					seg.add(m);
+					size++;
+				}
+				offset = in.position();
+			}
+			if (seg != null) {
+				seg.length = offset - seg.offset;
+				touch(seg);
+			}
+		} finally {
+			in.close();
+		}
+		if (corrupt > 0)
+			Log.errorDialog("ERROR: Corrupted record",
+					"Could not read " + corrupt + " records in logfile " + log.getName() + ", it appears to be corrupt.  If this is test data \nuse File>Delete Payloads once FoxTelem has started" +
+					"\nThese records will be ignored.");
+		return true;
+	}
+
+	/**
+	 * Rewrite the log in date order without duplicate records.  This is only needed if the clock went backwards
+	 * while measurements were being logged.
+	 * @param log
+	 * @throws IOException
+	 */
+	private void sortLog(File log) throws IOException {
+		Log.println("Sorting measurement log: " + log.getName());
+		SortedMeasurementArrayList records = new SortedMeasurementArrayList(SEGMENT_SIZE);
+		LineReader in = new LineReader(new FileInputStream(log), 0);
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				try {
+					Measurement m = parse(line, false);
+					if (m != null && m.type == type)
+						records.add(m);
+				} catch (NumberFormatException e) {
+					// ignored here, it is reported when the sorted log is read
+				} catch (NoSuchElementException e) {
+					// ignored
+				}
+			}
+		} finally {
+			in.close();
+		}
+		File tmp = new File(log.getPath() + ".tmp");
+		Writer output = new BufferedWriter(new FileWriter(tmp));
+		try {
+			for (Measurement m : records)
+				output.write(toFile(m) + "\n");
+		} finally {
+			output.close();
+		}
+		Files.move(tmp.toPath(), log.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		new File(getPath() + IDX_EXT).delete();
+	}
+
+	/**
+	 * Read the index.  If it is missing, can not be read or covers more than the log holds then the log is read from
+	 * the start and the index is written again
+	 * @param logLength
+	 * @return the indexed segments
+	 */
+	private ArrayList<MeasurementSeg> loadIdx(long logLength) {
+		ArrayList<MeasurementSeg> idx = new ArrayList<MeasurementSeg>();
+		File file = new File(getPath() + IDX_EXT);
+		if (!file.exists()) return idx;
+		LineReader in = null;
+		try {
+			in = new LineReader(new FileInputStream(file), 0);
+			String line;
+			long end = 0;
+			while ((line = in.readLine()) != null) {
+				if (line.length() == 0) continue;
+				MeasurementSeg seg = new MeasurementSeg(new StringTokenizer(line, ","));
+				if (seg.offset != end) throw new NumberFormatException("Segment at " + seg.offset + " does not follow the segment before");
+				end = seg.offset + seg.length;
+				idx.add(seg);
+			}
+			if (end > logLength) throw new NumberFormatException("Index covers " + end + " bytes but the log has " + logLength);
+			return idx;
+		} catch (RuntimeException e) {
+			Log.println("Rebuilding the measurement index for " + fileName + ": " + e);
+		} catch (IOException e) {
+			Log.println("Rebuilding the measurement index for " + fileName + ": " + e);
+		} finally {
+			if (in != null)
+				try {
+					in.close();
+				} catch (IOException e) {
+					e.printStackTrace(Log.getWriter());
+				}
+		}
+		return new ArrayList<MeasurementSeg>();
+	}
+
+	/**
+	 * Write the index of every segment but the last.  A new index is written and moved over the old one, so that the
+	 * index on disk is always complete
+	 * @throws IOException
+	 */
+	private void saveIdx() throws IOException {
+		StringBuilder entries = new StringBuilder();
+		for (int i=0; i < segs.size()-1; i++)
+			entries.append(segs.get(i).toFile() + "\n");
+		File tmp = new File(getPath() + IDX_EXT + ".tmp");
+		FileOutputStream output = new FileOutputStream(tmp);
+		try {
+			output.write(entries.toString().getBytes(StandardCharsets.UTF_8));
+		} finally {
+			output.close();
+		}
+		Files.move(tmp.toPath(), new File(getPath() + IDX_EXT).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private MeasurementSeg getTail() {
+		if (segs.size() == 0) return null;
+		return segs.get(segs.size()-1);
+	}
+
+	private void touch(MeasurementSeg seg) {
+		seg.lastUsed = ++useCount;
+		seg.lastUsedTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Make sure this segment is in memory, offloading the least recently used segment if too many are loaded
+	 * @param seg
+	 * @throws IOException
+	 */
+	private void loadSeg(MeasurementSeg seg) throws IOException {
+		touch(seg);
+		if (seg.loaded != null) return;
+		byte[] bytes = new byte[(int)seg.length];
+		RandomAccessFile file = new RandomAccessFile(getPath(), "r");
+		try {
+			file.seek(seg.offset);
+			file.readFully(bytes);
+		} finally {
+			file.close();
+		}
+		SortedMeasurementArrayList records = new SortedMeasurementArrayList(seg.records);
+		LineReader in = new LineReader(new ByteArrayInputStream(bytes), 0);
+		String line;
+		while ((line = in.readLine()) != null) {
+			try {
+				Measurement m = parse(line, false);
+				if (m != null && m.type == type)
+					records.add(m);
+			} catch (NumberFormatException e) {
+				// reported when the segment was indexed
+			} catch (NoSuchElementException e) {
+				// reported when the segment was indexed
+			}
+		}
+		seg.loaded = records;
+		if (records.size() != seg.records) {
+			// a measurement that could not be saved, or one in the same second as the last, is not read back
+			size = size + records.size() - seg.records;
+			seg.records = records.size();
+			if (seg != getTail())
+				saveIdx();
+		}
+		int loaded = 0;
+		MeasurementSeg oldest = null;
+		for (MeasurementSeg s : segs)
+			if (s.loaded != null && s != getTail()) {
+				loaded++;
+				if (oldest == null || s.lastUsed < oldest.lastUsed)
+					oldest = s;
+			}
+		if (loaded > MAX_LOADED_SEGMENTS)
+			oldest.loaded = null;
+	}
+
+	/**
+	 * Offload the segments that have not been used recently.  The last segment is always kept
+	 */
+	public synchronized void offloadSegments() {
+		long now = System.currentTimeMillis();
+		for (int i=0; i < segs.size()-1; i++)
+			if (segs.get(i).loaded != null && now - segs.get(i).lastUsedTime > OFFLOAD_PERIOD)
+				segs.get(i).loaded = null;
+	}
+
+	public synchronized int getNumberOfLoadedSegments() {
+		int loaded = 0;
+		for (MeasurementSeg seg : segs)
+			if (seg.loaded != null) loaded++;
+		return loaded;
+	}
+
+	public synchronized int getNumberOfSegments() { return segs.size(); }
+
+	public synchronized int size() { return size; }
+
+	/**
+	 * Save a measurement to the log and add it to the last segment, starting a new segment if that one is full
+	 * @param m
+	 * @return false if a measurement with the same date is already held
+	 * @throws IOException
+	 */
+	public synchronized boolean add(Measurement m) throws IOException {
+		open();
+		MeasurementSeg tail = getTail();
+		Measurement latest = getLatest();
+		if (latest != null && m.date != null && latest.date != null && m.date.getTime() <= latest.date.getTime()) {
+			// The clock went backwards, so put the log back in date order
+			try {
+				save(m);
+			} finally {
+				if (m.date.getTime() < latest.date.getTime()) {
+					open = false;
+					sortLog(new File(getPath()));
+					open();
+				}
+			}
+			return false;
+		}
+		long offset = new File(getPath()).length();
+		try {
+			save(m);
+		} catch (IOException e) {
+			// NEED TO SET A FLAG HERE THAT IS THEN SEEN BY THE GUI WHEN IT POLLS FOR RESULTS
+			e.printStackTrace(Log.getWriter());
+		}
+		if (tail == null || tail.records >= SEGMENT_SIZE) {
+			if (tail != null)
+				tail.length = offset - tail.offset;
+			tail = new MeasurementSeg(offset);
+			tail.loaded = new SortedMeasurementArrayList(SEGMENT_SIZE);
+			segs.add(tail);
+			if (segs.size() > 1)
+				saveIdx();
+		}
+		tail.loaded.add(m);
+		tail.add(m);
+		tail.length = new File(getPath()).length() - tail.offset;
+		touch(tail);
+		size++;
+		return true;
+	}
+
+	/**
+	 * Save a measurement to the end of the log
+	 * @param m
+	 * @throws IOException
+	 */
+	private void save(Measurement m) throws IOException {
+		SatMeasurementStore.save(m, fileName);
+	}
+
+	private static String toFile(Measurement m) {
+		if (m instanceof RtMeasurement)
+			return ((RtMeasurement)m).toFile();
+		return ((PassMeasurement)m).toFile();
+	}
+
+	public synchronized Measurement getLatest() throws IOException {
+		open();
+		MeasurementSeg tail = getTail();
+		if (tail == null || tail.loaded.size() == 0) return null;
+		return tail.loaded.get(tail.loaded.size()-1);
+	}
+
+	/**
+	 * Return the index of the first record at or after this reset/uptime, searching only the segment that holds it.
+	 * As with the sorted list, a reset/uptime after the last record gives the last record.
+	 * @param id
+	 * @param uptime
+	 * @param resets
+	 * @return the index, or -1 if there are no records
+	 * @throws IOException
+	 */
+	public synchronized int getNearestFrameIndex(int id, long uptime, int resets) throws IOException {
+		open();
+		if (size == 0) return -1;
+		Measurement last = getLatest();
+		if (last != null && compare(resets, uptime, last.reset, last.uptime) > 0) return size-1;
+		int base = 0;
+		for (MeasurementSeg seg : segs) {
+			if (seg.records > 0 && compare(resets, uptime, seg.maxReset, seg.maxUptime) <= 0) {
+				loadSeg(seg);
+				for (int i=0; i < seg.loaded.size(); i++) {
+					Measurement m = seg.loaded.get(i);
+					if (compare(resets, uptime, m.reset, m.uptime) <= 0)
+						return base + i;
+				}
+			}
+			base = base + seg.records;
+		}
+		return -1;
+	}
+
+	/**
+	 * Return the number of records from one reset/uptime to another.  Only the segments that hold the two ends are read.
+	 * @param reset
+	 * @param uptime
+	 * @param toReset
+	 * @param toUptime
+	 * @return
+	 * @throws IOException
+	 */
+	public synchronized int getNumberOfPayloadsBetweenTimestamps(int reset, long uptime, int toReset, long toUptime) throws IOException {
+		open();
+		if (size == 0) return 0;
+		int start = getNearestFrameIndex(0, uptime, reset);
+		int end = getNearestFrameIndex(0, toUptime, toReset);
+		if (end == -1) end = size;
+		if (start < end)
+			return end - start;
+		return 0;
+	}
+
+	/**
+	 * Return the records from one index up to, but not including, another.  Only the segments that hold them are read.
+	 * @param start
+	 * @param end
+	 * @return the records in date order
+	 * @throws IOException
+	 */
+	public synchronized List<Measurement> getRecords(int start, int end) throws IOException {
+		open();
+		ArrayList<Measurement> records = new ArrayList<Measurement>(Math.max(end - start, 0));
+		int base = 0;
+		for (MeasurementSeg seg : segs) {
+			if (base >= end) break;
+			if (base + seg.records > start) {
+				loadSeg(seg);
+				for (int i=Math.max(start - base, 0); i < seg.loaded.size() && base + i < end; i++)
+					records.add(seg.loaded.get(i));
+			}
+			base = base + seg.records;
+		}
+		return records;
+	}
+
+	/**
+	 * Remove the log and its index from disk.  The table is empty afterwards
+	 * @throws IOException
+	 */
+	public synchronized void delete() throws IOException {
+		SatMeasurementStore.remove(getPath());
+		SatMeasurementStore.remove(getPath() + IDX_EXT);
+		segs = new ArrayList<MeasurementSeg>();
+		size = 0;
+		open = false;
+	}
+
+	/**
+	 * Parse a line of a measurement log
+	 * @param line
+	 * @param load103 - the line is from a pass log written by version 1.03
+	 * @return the measurement, or null if the line is blank or of an unknown type
+	 */
+	static Measurement parse(String line, boolean load103) {
+		if (line.length() == 0) return null;
+		StringTokenizer st = new StringTokenizer(line, ",");
+		String date = st.nextToken();
+		int id = Integer.valueOf(st.nextToken()).intValue();
+		int reset = Integer.valueOf(st.nextToken()).intValue();
+		long uptime = Long.valueOf(st.nextToken()).longValue();
+		int type = Integer.valueOf(st.nextToken()).intValue();
+
+		// We should never get this situation, but good to check..
+		if (Config.satManager.getSpacecraft(id) == null) {
+			Log.errorDialog("FATAL", "Attempting to Load payloads from the Payload store for satellite with Fox Id: " + id
+					+ "\n when no sattellite with that FoxId is configured.  Add this spacecraft to the satellite directory and restart FoxTelem."
+					+ "\nProgram will now exit");
+			System.exit(1);
+		}
+		if (type == SatMeasurementStore.RT_MEASUREMENT_TYPE || type == 1) {  // 1 is the legacy type
+			return new RtMeasurement(id, date, reset, uptime, SatMeasurementStore.RT_MEASUREMENT_TYPE, st);
+		}
+		if (type == SatMeasurementStore.PASS_MEASUREMENT_TYPE || type == 2) {  // 2 is the legacy type
+			PassMeasurement rt = null;
+			if (load103) {
+				rt = new PassMeasurement(id, date, reset, uptime, SatMeasurementStore.PASS_MEASUREMENT_TYPE, null);
+				rt.load103(st);
+			} else {
+				rt = new PassMeasurement(id, date, reset, uptime, SatMeasurementStore.PASS_MEASUREMENT_TYPE, st);
+			}
+			return rt;
+		}
+		return null;
+	}
+
+	/**
+	 * Compare two reset/uptimes
+	 * @return negative, zero or positive as the first is before, the same as or after the second
+	 */
+	static int compare(int reset, long uptime, int reset2, long uptime2) {
+		if (reset != reset2) return reset < reset2 ? -1 : 1;
+		if (uptime != uptime2) return uptime < uptime2 ? -1 : 1;
+		return 0;
+	}
+
+	/**
+	 * Reads the lines of a log and keeps track of the byte offset of the next one.  The logs are written in ASCII.
+	 */
+	static class LineReader {
+		private final InputStream in;
+		private long position;
+		private final StringBuilder line = new StringBuilder();
+
+		LineReader(InputStream in, long from) throws IOException {
+			this.in = new BufferedInputStream(in);
+			long skip = from;
+			while (skip > 0) {
+				long n = this.in.skip(skip);
+				if (n <= 0) break;
+				skip = skip - n;
+			}
+			position = from - skip;
+		}
+
+		long position() { return position; }
+
+		/**
+		 * @return the next line without its line ending, or null at the end of the file.  An unfinished last line
+		 * is returned as it is
+		 */
+		String readLine() throws IOException {
+			line.setLength(0);
+			int c;
+			boolean read = false;
+			while ((c = in.read()) != -1) {
+				position++;
+				read = true;
+				if (c == '\n') break;
+				if (c != '\r') line.append((char)c);
+			}
+			if (!read) return null;
+			return line.toString();
+		}
+
+		void close() throws IOException {
+			in.close();
+		}
+	}
+}
@@ -121,10 +121,9 @@ public class PassMeasurement extends Measurement {
 			Log.println("FoxId: " + id + " is not setup in the measurement store.  Can not create pass measurement");
 			return 0;
 		}
-		for (int i=0; i < layout.fieldName.length; i++) {
-			if (name.equalsIgnoreCase(layout.fieldName[i]))
-				return fieldValue[i];
-		}
+		int pos = layout.getFirstPositionByName(name);
+		if (pos != BitArrayLayout.ERROR_POSITION)
+			return fieldValue[pos];
 		return ERR;
 	}
 	
@@ -7,6 +7,7 @@ import java.util.NoSuchElementException;
 import java.util.StringTokenizer;
 import java.util.TimeZone;
 
+import telemetry.BitArrayLayout;
 import telemetry.FoxFramePart;
 import common.Config;
 import common.Log;
@@ -98,10 +99,9 @@ public class RtMeasurement extends Measurement {
 	}
 	
 	public double getRawValue(String name) {
-		for (int i=0; i < layout.fieldName.length; i++) {
-			if (name.equalsIgnoreCase(layout.fieldName[i]))
-				return fieldValue[i];
-		}
+		int pos = layout.getFirstPositionByName(name);
+		if (pos != BitArrayLayout.ERROR_POSITION)
+			return fieldValue[pos];
 		return -1;
 	}
 	
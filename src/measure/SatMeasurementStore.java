@@ -5,13 +5,12 @@ import gui.MainWindow;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.StringTokenizer;
 
 import javax.swing.JOptionPane;
 
@@ -61,25 +60,33 @@ public class SatMeasurementStore {
 	public String rtFileName;
 	public String passFileName;
 	
-	SortedMeasurementArrayList rtRecords;
-	SortedMeasurementArrayList passRecords;
+	MeasurementTable rtRecords;
+	MeasurementTable passRecords;
 	
 	boolean updatedRt = false;
 	boolean updatedPass = false;
+	private volatile boolean loaded = false; // the indexes and the last segment of each log have been read
 
 	/**
-	 * Create the payload store this this fox id
+	 * Create the measurement store for this fox id.  The logs are not read until loadRecords() is called, either by
+	 * the payload store once it has started or by the first caller that needs the records
 	 * @param id
 	 */
 	public SatMeasurementStore(int id) {
 		foxId = id;
+		rtFileName = "Fox"+id+RT_LOG;
+		passFileName = "Fox"+id+PASS_LOG;
 		initArrays();
-
+	}
+	
+	/**
+	 * Open the measurement tables, if they have not been opened already.  Only the index and the last segment of
+	 * each log are read, the other segments are read when they are needed
+	 */
+	public synchronized void loadRecords() {
+		if (loaded) return;
+		long start = System.nanoTime();
 		try {
-			rtFileName = "Fox"+id+RT_LOG;
-			passFileName = "Fox"+id+PASS_LOG;
-			
-			
 			String testFile = passFileName;
 			if (!Config.logFileDirectory.equalsIgnoreCase("")) {
 				testFile = Config.logFileDirectory + File.separator + testFile;
@@ -96,25 +103,34 @@ public class SatMeasurementStore {
 							JOptionPane.ERROR_MESSAGE) ;
 					e.printStackTrace(Log.getWriter());
 				}
-			} else {
-				load(passFileName, false);
 			}
+			passRecords.open();
+			rtRecords.open();
 			
-			load(rtFileName, false);
-			
-		} catch (FileNotFoundException e) {
+		} catch (IOException e) {
 			JOptionPane.showMessageDialog(MainWindow.frame,
 					e.toString(),
 					"ERROR Loading Stored Payload data",
 					JOptionPane.ERROR_MESSAGE) ;
 			e.printStackTrace(Log.getWriter());
 		}
+		loaded = true;
+		Log.println("Loaded " + rtRecords.size() + " measurements and " + passRecords.size() + " pass measurements for sat: " 
+				+ foxId + " in " + (System.nanoTime() - start)/1000000 + "ms");
 	}
 
 	private void initArrays() {
-		rtRecords = new SortedMeasurementArrayList(INIT_SIZE);
-		passRecords = new SortedMeasurementArrayList(INIT_SIZE);
-		
+		rtRecords = new MeasurementTable(rtFileName, RT_MEASUREMENT_TYPE);
+		passRecords = new MeasurementTable(passFileName, PASS_MEASUREMENT_TYPE);
+	}
+
+	/**
+	 * Offload the segments of the measurement logs that have not been used recently
+	 */
+	public void offloadSegments() {
+		if (!loaded) return;
+		rtRecords.offloadSegments();
+		passRecords.offloadSegments();
 	}
 
 	public boolean getUpdatedMeasurement() { return updatedRt; }
@@ -138,23 +154,12 @@ public class SatMeasurementStore {
 	 * @throws IOException
 	 */
 	public boolean add(int id, Measurement m) throws IOException {
+		loadRecords();
 		if (m instanceof RtMeasurement) {
-			try {
-				save(m, rtFileName);
-			} catch (IOException e) {
-				// NEED TO SET A FLAG HERE THAT IS THEN SEEN BY THE GUI WHEN IT POLLS FOR RESULTS
-				e.printStackTrace(Log.getWriter());
-			}
 			rtRecords.add(m);
 			updatedRt = true;
 			return true;
 		} else if (m instanceof PassMeasurement) {
-			try {
-				save(m, passFileName);
-			} catch (IOException e) {
-				// NEED TO SET A FLAG HERE THAT IS THEN SEEN BY THE GUI WHEN IT POLLS FOR RESULTS
-				e.printStackTrace(Log.getWriter());
-			}
 			passRecords.add(m);
 			updatedPass = true;
 			return true;	
@@ -164,41 +169,64 @@ public class SatMeasurementStore {
 
 
 	public RtMeasurement getLatestMeasurement() {
-		if (rtRecords.size() == 0) return null;
-		return (RtMeasurement) rtRecords.get(rtRecords.size()-1);
+		loadRecords();
+		try {
+			return (RtMeasurement) rtRecords.getLatest();
+		} catch (IOException e) {
+			e.printStackTrace(Log.getWriter());
+			return null;
+		}
 	}
 
 	public PassMeasurement getLatestPassMeasurement() {
-		if (passRecords.size() == 0) return null;
-		return (PassMeasurement) passRecords.get(passRecords.size()-1);
+		loadRecords();
+		try {
+			return (PassMeasurement) passRecords.getLatest();
+		} catch (IOException e) {
+			e.printStackTrace(Log.getWriter());
+			return null;
+		}
 	}
 
 	public double[][] getMeasurementGraphData(String name, int period, FoxSpacecraft fox, int fromReset, long fromUptime, boolean reverse) {
+		loadRecords();
 		return getGraphData(rtRecords, name, period, fox, fromReset, fromUptime, reverse);
 	}
 	
 	public double[][] getPassMeasurementGraphData(String name, int period, FoxSpacecraft fox, int fromReset, long fromUptime, boolean reverse) {
+		loadRecords();
 		return getGraphData(passRecords, name, period, fox, fromReset, fromUptime, reverse);
 	}
 	
-	public double[][] getGraphData(SortedMeasurementArrayList rtRecords, String name, int period, FoxSpacecraft fox, int fromReset, long fromUptime, boolean reverse) {
+	/**
+	 * Return the graph data for a period of records.  Only the segments of the log that hold the period are read.
+	 */
+	public double[][] getGraphData(MeasurementTable table, String name, int period, FoxSpacecraft fox, int fromReset, long fromUptime, boolean reverse) {
 
 		int start = 0;
 		int end = 0;
-		
-		if (reverse) { // then we take rtRecords nearest the end
-			start = rtRecords.size()-period;
-			end = rtRecords.size();
-		} else {
-			// we need to find the start point
-			start = rtRecords.getNearestFrameIndex(fox.foxId, fromUptime, fromReset);
-			if (start == -1 ) start = rtRecords.size()-period;
-			end = start + period;
+		List<Measurement> rtRecords;
+		try {
+			int size = table.size();
+			if (reverse) { // then we take rtRecords nearest the end
+				start = size-period;
+				end = size;
+			} else {
+				// we need to find the start point
+				start = table.getNearestFrameIndex(fox.foxId, fromUptime, fromReset);
+				if (start == -1 ) start = size-period;
+				end = start + period;
+			}
+			if (end > size) end = size;
+			if (end < start) end = start;
+			if (start < 0) start = 0;
+			if (start > size) start = size;
+			rtRecords = table.getRecords(start, end);
+		} catch (IOException e) {
+			e.printStackTrace(Log.getWriter());
+			return new double[4][0];
 		}
-		if (end > rtRecords.size()) end = rtRecords.size();
-		if (end < start) end = start;
-		if (start < 0) start = 0;
-		if (start > rtRecords.size()) start = rtRecords.size();
+		end = start + rtRecords.size();
 		double[] results = new double[end-start];
 		double[] upTime = new double[end-start];
 		double[] resets = new double[end-start];
@@ -210,19 +238,19 @@ public class SatMeasurementStore {
 		int j = results.length-1;
 		for (int i=end-1; i>= start; i--) {
 			
-			Measurement m = rtRecords.get(i);
+			Measurement m = rtRecords.get(i-start);
 			double result;
 			if (m instanceof RtMeasurement )
-				result = ((RtMeasurement)rtRecords.get(i)).getRawValue(name);
+				result = ((RtMeasurement)m).getRawValue(name);
 			else
-				result = ((PassMeasurement)rtRecords.get(i)).getRawValue(name);
+				result = ((PassMeasurement)m).getRawValue(name);
 //			if ( (Double.compare(result, 0.0d) != 0) || !((RtMeasurement)rtRecords.get(i)).zeroIsNull(name) ) { 
 			  // screening out zero values because they corrupt the freq graph but breaks FEC plots
 //				System.out.println("IN:" + result);
 			results[j] = result;
-			upTime[j] = rtRecords.get(i).uptime;
-			resets[j] = rtRecords.get(i).reset;
-			dates[j--] = rtRecords.get(i).date.getTime();
+			upTime[j] = m.uptime;
+			resets[j] = m.reset;
+			dates[j--] = m.date.getTime();
 			validRecords++;
 //			}
 		}
@@ -242,86 +270,37 @@ public class SatMeasurementStore {
 	}
 
 	/**
-	 * Load a file from disk
+	 * Read a pass log written by version 1.03, so that it can be converted
 	 * @param log
-	 * @throws FileNotFoundException
+	 * @return the pass measurements in date order
+	 * @throws IOException
 	 */
-	public void load(String log, boolean load103) throws FileNotFoundException {
-        String line;
-        if (!Config.logFileDirectory.equalsIgnoreCase("")) {
+	private SortedMeasurementArrayList loadOldPasses(String log) throws IOException {
+		SortedMeasurementArrayList records = new SortedMeasurementArrayList(INIT_SIZE);
+		String line;
+		if (!Config.logFileDirectory.equalsIgnoreCase("")) {
 			log = Config.logFileDirectory + File.separator + log;
 		}
-        Log.println("Loading: " + log);
-        File aFile = new File(log );
-		if(!aFile.exists()){
-			try {
-				aFile.createNewFile();
-			} catch (IOException e) {
-				JOptionPane.showMessageDialog(MainWindow.frame,
-						e.toString(),
-						"ERROR creating file " + log,
-						JOptionPane.ERROR_MESSAGE) ;
-				e.printStackTrace(Log.getWriter());
+		Log.println("Loading: " + log);
+		BufferedReader dis = new BufferedReader(new FileReader(log));
+		try {
+			while ((line = dis.readLine()) != null) {
+				Measurement m = MeasurementTable.parse(line, true);
+				if (m instanceof PassMeasurement)
+					records.add(m);
 			}
-		}
- 
-        BufferedReader dis = new BufferedReader(new FileReader(log));
-
-        try {
-        	while ((line = dis.readLine()) != null) {
-        		if (line != null) {
-        			StringTokenizer st = new StringTokenizer(line, ",");
-        			String date = st.nextToken();
-        			int id = Integer.valueOf(st.nextToken()).intValue();
-          			int reset = Integer.valueOf(st.nextToken()).intValue();
-          			long uptime = Long.valueOf(st.nextToken()).longValue();
-          		    int type = Integer.valueOf(st.nextToken()).intValue();
-        			
-        			// We should never get this situation, but good to check..
-        			if (Config.satManager.getSpacecraft(id) == null) {
-        				Log.errorDialog("FATAL", "Attempting to Load payloads from the Payload store for satellite with Fox Id: " + id 
-        						+ "\n when no sattellite with that FoxId is configured.  Add this spacecraft to the satellite directory and restart FoxTelem."
-        						+ "\nProgram will now exit");
-        				System.exit(1);
-        			}
-        			if (type == RT_MEASUREMENT_TYPE || type == 1) {  // 1 is the legacy type
-        				RtMeasurement rt = new RtMeasurement(id, date, reset, uptime, RT_MEASUREMENT_TYPE, st);
-        				rtRecords.add(rt);
-        				updatedRt = true;
-        			}
-        			if (type == PASS_MEASUREMENT_TYPE || type == 2) {  // 2 is the legacy type
-        				PassMeasurement rt = null;
-        				if (load103) {
-        					rt = new PassMeasurement(id, date, reset, uptime, PASS_MEASUREMENT_TYPE, null);
-        					rt.load103(st);
-        				} else {
-        					rt = new PassMeasurement(id, date, reset, uptime, PASS_MEASUREMENT_TYPE, st);
-        				}
-        				passRecords.add(rt);
-        				updatedPass = true;
-        			}
-        		}
-        	}
-        } catch (IOException e) {
-        	e.printStackTrace(Log.getWriter());
-        } catch (NumberFormatException n) {
-        	n.printStackTrace(Log.getWriter());
-        } catch (NoSuchElementException n) {
-        	// File is corrupt, so better tell the user
-        	//Log.errorDialog("FATAL: CORRUPT FILE", "Can not load logfile, it appears to be corrupt.  You need to fix or remove the file for FoxTelem to load\n" + "Log: " + log);
-        	n.printStackTrace(Log.getWriter());
-        	Log.errorDialog("ERROR: Corrupted record", 
-        			"Can not load logfile, it appears to be corrupt. If this is test data \nuse File>Delete Payloads once FoxTelem has started" +
+		} catch (NumberFormatException n) {
+			n.printStackTrace(Log.getWriter());
+		} catch (NoSuchElementException n) {
+			// File is corrupt, so better tell the user
+			n.printStackTrace(Log.getWriter());
+			Log.errorDialog("ERROR: Corrupted record", 
+					"Can not load logfile, it appears to be corrupt. If this is test data \nuse File>Delete Payloads once FoxTelem has started" +
 					"\nThis record will be ignored.");
-			// we are done and can finish
-        } finally {
-        	try {
-				dis.close();
-			} catch (IOException e) {
-				e.printStackTrace(Log.getWriter());
-			}
-        }
-        
+		} finally {
+			dis.close();
+		}
+		return records;
 	}
 
 	/**
@@ -330,7 +309,7 @@ public class SatMeasurementStore {
 	 * @param log
 	 * @throws IOException
 	 */
-	public void save(Measurement measurement, String log) throws IOException {
+	public static void save(Measurement measurement, String log) throws IOException {
 		if (!Config.logFileDirectory.equalsIgnoreCase("")) {
 			log = Config.logFileDirectory + File.separator + log;
 		} 
@@ -366,15 +345,10 @@ public class SatMeasurementStore {
 	 * Delete all of the log files.  This is called from the main window by the user
 	 */
 	public void deleteAll() {
-		String dir = "";
-        if (!Config.logFileDirectory.equalsIgnoreCase("")) {
-			dir = Config.logFileDirectory + File.separator ;
-			//System.err.println("Loading: "+log);
-		}
+		loadRecords(); // so that a load in the background can not bring back the deleted records
 			try {
-				remove(dir+rtFileName);
-				remove(dir+passFileName);
-				initArrays();
+				rtRecords.delete();
+				passRecords.delete();
 				setUpdatedAll();
 			} catch (IOException ex) {
 				JOptionPane.showMessageDialog(MainWindow.frame,
@@ -429,9 +403,9 @@ public class SatMeasurementStore {
 		if(aFile.exists()){
 			// then convert it
 			Log.println("CONVERTING " + oldlog + " to " + log);
-			load(oldlog, true);
-			Log.println("Loaded: " + this.passRecords.size() + " records");
-			for(Measurement m: this.passRecords) {
+			SortedMeasurementArrayList passes = loadOldPasses(oldlog);
+			Log.println("Loaded: " + passes.size() + " records");
+			for(Measurement m: passes) {
 				PassMeasurement p = (PassMeasurement)m;
 				save(p,log);	
 			}
@@ -439,6 +413,7 @@ public class SatMeasurementStore {
 	}
 
 	public int getNumberOfPayloadsBetweenTimestamps(int id, int reset, long uptime, int toReset, long toUptime, String payloadType) {
+		loadRecords();
 		if (payloadType == Spacecraft.MEASUREMENTS) {
 			try {
 				return rtRecords.getNumberOfPayloadsBetweenTimestamps(reset, uptime, toReset, toUptime);
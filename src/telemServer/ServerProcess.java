@@ -51,7 +51,11 @@ public class ServerProcess implements Runnable {
 	public static final DateFormat monthDirName = new SimpleDateFormat("MM");
 	public static final DateFormat dayDirName = new SimpleDateFormat("dd");
 	
-	String nextSTPFile() throws IOException {
+	/**
+	 * @param frame - the number of frames already read on this connection, which keeps the names of frames sent
+	 * together in the same second apart
+	 */
+	String nextSTPFile(int frame) throws IOException {
 		Date today = Calendar.getInstance().getTime();
 		String year = datePartName(today, yearDirName);
 		String month = datePartName(today, monthDirName);
@@ -62,7 +66,7 @@ public class ServerProcess implements Runnable {
 		makeDir(year + File.separator + month);
 		makeDir(year + File.separator + month + File.separator + day);
 		String f = year + File.separator + month + File.separator + day 
-				+ File.separator + fileName + "." + sequence + ".stp";
+				+ File.separator + fileName + "." + sequence + (frame > 0 ? "_" + frame : "") + ".stp";
 		return f;
 		
 	}
@@ -114,16 +118,85 @@ public class ServerProcess implements Runnable {
 	
 	/**
 	 * This is started when we have a TCP connection.  We read the data until the connection is closed
-	 * This could be one or more STP files.
+	 * This could be one or more STP files.  Each one is acknowledged once it has been read and then processed, before
+	 * the next is read, so a client can send several frames on one connection and read the ACKs as they come.  A
+	 * client that sends one frame closes the connection once it has the ACK, as before.
 	 */
 	public void run() {
 		Log.println("Started Thread to handle connection from: " + socket.getInetAddress());
 
-		FileOutputStream f = null;
 		InputStream in = null;
 		OutputStream out = null;
-		String fileName;
 		File stp = null;
+		try {
+			socket.setSoTimeout(ServerConfig.socketReadTimeout);
+			in = socket.getInputStream();
+			out = socket.getOutputStream();
+			int frame = 0;
+			while ((stp = readFrame(in, frame++)) != null) {
+				// Frame read successfully, send OK if client still connected
+				try {out.write(OK); Log.println("-"+ socket.getInetAddress()+" OK SENT");} catch (IOException e1) { Log.println("-"+ socket.getInetAddress()+" OK Ignored");/*ignore*/}
+				processFrame(stp);
+				stp = null;
+			}
+		} catch (SocketException e) {
+			Log.println("-"+ socket.getInetAddress()+" SOCKET EXCEPTION, file will not be processed");
+			// try to send error message to client
+			try {out.write(FAIL);} catch (IOException e1) { /*ignore*/}
+		} catch (SocketTimeoutException e) {
+			Log.println("-"+ socket.getInetAddress()+" SOCKET TIMEOUT EXCEPTION, file will not be processed: " + e);
+			// try to send error message to client
+			try {out.write(FAIL);} catch (IOException e1) { /*ignore*/}
+		} catch (IOException e) {
+			// try to send error message to client
+			try {out.write(FAIL);} catch (IOException e1) { /*ignore*/}
+			Log.println("-"+ socket.getInetAddress()+" ERROR ALERT:" + e);
+			e.printStackTrace(Log.getWriter());
+			// We could not read the data from the socket or write the file.  So we log an alert!  Something wrong with server
+			////ALERT
+			Log.alert("-"+ socket.getInetAddress()+" FATAL: " + e);
+			e.printStackTrace(Log.getWriter());		
+		} catch (StpFileProcessException e) {
+			// try to send error message to client
+			try {out.write(FAIL);} catch (IOException e1) { /*ignore*/}
+			Log.println("-"+ socket.getInetAddress()+" STP EXCPETION: " + e.getMessage());
+			// We could not read the frame so try to store it as an exception, something wrong with the data
+			try {
+				storeException(stp);
+			} catch (IOException e1) {
+				Log.println("-"+ socket.getInetAddress()+" ERROR: Could not rename the file into the exeption dir: " + e1);
+			}
+		} catch (Exception e) {
+			// try to send error message to client
+			try {out.write(FAIL);} catch (IOException e1) { /*ignore*/}
+			Log.println("-"+ socket.getInetAddress()+" FATAL THREAD EXCPETION: " + e);
+			e.printStackTrace(Log.getWriter());
+		} finally {
+			try { in.close();  } catch (Exception ex) { /*ignore*/}
+			try { out.close();  } catch (Exception ex) { /*ignore*/}
+			try { socket.close();  } catch (Exception ex) { /*ignore*/} 
+		}
+	}
+
+	/**
+	 * Read the next STP file from the connection and write it to disk
+	 * @param in
+	 * @param frame - the number of frames already read on this connection
+	 * @return the file, or null if the client closed the connection, or left it idle, before sending another frame
+	 * @throws IOException
+	 * @throws StpFileProcessException
+	 */
+	private File readFrame(InputStream in, int frame) throws IOException, StpFileProcessException {
+		int c;
+		try {
+			c = in.read();
+		} catch (SocketTimeoutException e) {
+			if (frame > 0) return null; // the client kept the connection open but did not send any more frames
+			throw e;
+		}
+		if (c == -1 && frame > 0) return null;
+		String fileName = nextSTPFile(frame);
+		FileOutputStream f = new FileOutputStream(fileName);
 		try {
 			boolean done = false;
 			boolean readingKey = true;
@@ -155,14 +228,7 @@ public class ServerProcess implements Runnable {
 			boolean firstColon = true;
 			char ch;
 			int b=0;
-			fileName = nextSTPFile();
-			f = new FileOutputStream(fileName);
-			socket.setSoTimeout(ServerConfig.socketReadTimeout);
-			in = socket.getInputStream();
-			out = socket.getOutputStream();
-			int c;
-			
-			while (!done && (c = in.read()) != -1) {
+			while (!done && c != -1) {
 				f.write(c);
 				b++;
 				if (b > MAX_FRAME_SIZE) 
@@ -254,26 +320,30 @@ public class ServerProcess implements Runnable {
 						value = value + ch;
 				}
 				lineLen++;
-
+				if (!done)
+					c = in.read();
 			}
-			// Frame read successfully, send OK if client still connected
-			try {out.write(OK); Log.println("-"+ socket.getInetAddress()+" OK SENT");} catch (IOException e1) { Log.println("-"+ socket.getInetAddress()+" OK Ignored");/*ignore*/}
-			
-			in.close();
-			out.close();
-			socket.close();
+		} finally {
 			f.close();
-			
+		}
+		return new File(fileName);
+	}
+
+	/**
+	 * Import a frame that has been read and acknowledged into the database.  The ACK has already been sent, so
+	 * nothing more is sent to the client if it can not be processed
+	 * @param stp
+	 */
+	private void processFrame(File stp) {
+		try {
 			// At this point the file is on disk, so we can process it
-			stp = new File(fileName);
-			
 			// Import it into the database
 			// null return means the file can not be recognized as an STP file or was test data
 			Frame frm = Frame.importStpFile(u, p, db, stp, false);
 			if (frm != null) {
-				Log.println("-"+ socket.getInetAddress()+" Processed: " + b + " bytes from " + frm.receiver + " for " 
+				Log.println("-"+ socket.getInetAddress()+" Processed: " + stp.length() + " bytes from " + frm.receiver + " for " 
 						+ frm.getHeader().getFoxId() + " " + frm.getHeader().getResets() + " " + frm.getHeader().getUptime() 
-						+ " " + frm.getHeader().getType() + "---" + fileName);
+						+ " " + frm.getHeader().getType() + "---" + stp.getPath());
 				File toFile = new File(stp.getPath()+".processed");
 				if (stp.renameTo(toFile))
 					;
@@ -288,27 +358,7 @@ public class ServerProcess implements Runnable {
 				else
 					Log.println("-"+ socket.getInetAddress()+" ERROR: Could not mark file as null data: " + stp.getAbsolutePath());
 			}
-			
-		} catch (SocketException e) {
-			Log.println("-"+ socket.getInetAddress()+" SOCKET EXCEPTION, file will not be processed");
-			// try to send error message to client
-			try {out.write(FAIL);} catch (IOException e1) { /*ignore*/}
-		} catch (SocketTimeoutException e) {
-			Log.println("-"+ socket.getInetAddress()+" SOCKET TIMEOUT EXCEPTION, file will not be processed: " + e);
-			// try to send error message to client
-			try {out.write(FAIL);} catch (IOException e1) { /*ignore*/}
-		} catch (IOException e) {
-			// try to send error message to client
-			try {out.write(FAIL);} catch (IOException e1) { /*ignore*/}
-			Log.println("-"+ socket.getInetAddress()+" ERROR ALERT:" + e);
-			e.printStackTrace(Log.getWriter());
-			// We could not read the data from the socket or write the file.  So we log an alert!  Something wrong with server
-			////ALERT
-			Log.alert("-"+ socket.getInetAddress()+" FATAL: " + e);
-			e.printStackTrace(Log.getWriter());		
 		} catch (StpFileRsDecodeException rs) {
-			// try to send error message to client
-			try {out.write(FAIL);} catch (IOException e1) { /*ignore*/}
 			Log.println("-"+ socket.getInetAddress()+" STP FILE Could not be decoded: " + rs.getMessage());
 			File toFile = new File(stp.getPath()+".null");
 			if (stp.renameTo(toFile))
@@ -316,29 +366,17 @@ public class ServerProcess implements Runnable {
 			else
 				Log.println("-"+ socket.getInetAddress()+" ERROR: Could not mark failed RS Decode file as null data: " + stp.getAbsolutePath());
 		} catch (StpFileProcessException e) {
-			// try to send error message to client
-			try {out.write(FAIL);} catch (IOException e1) { /*ignore*/}
 			Log.println("-"+ socket.getInetAddress()+" STP EXCPETION: " + e.getMessage());
-			//e.printStackTrace(Log.getWriter());
 			// We could not process the file so try to store it as an exception, something wrong with the data or we could not write to the DB
 			try {
 				storeException(stp);
 			} catch (IOException e1) {
 				Log.println("-"+ socket.getInetAddress()+" ERROR: Could not rename the file into the exeption dir: " + e1);
 			}
-		} catch (Exception e) {
-			// try to send error message to client
-			try {out.write(FAIL);} catch (IOException e1) { /*ignore*/}
-			Log.println("-"+ socket.getInetAddress()+" FATAL THREAD EXCPETION: " + e);
-			e.printStackTrace(Log.getWriter());
-		} finally {
-			try { in.close();  } catch (Exception ex) { /*ignore*/}
-			try { out.close();  } catch (Exception ex) { /*ignore*/}
-			try { socket.close();  } catch (Exception ex) { /*ignore*/} 
-			try { f.close();  } catch (Exception ex) { /*ignore*/}
 		}
 	}
 
+
 	private void storeException(File f) throws IOException {
 		
 		if (f != null) {
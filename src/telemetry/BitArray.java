@@ -1,7 +1,6 @@
 package telemetry;
 
 import common.Spacecraft;
-import decoder.FoxBitStream;
 
 /**
  * FOX 1 Telemetry Decoder
@@ -36,7 +35,7 @@ public abstract class BitArray {
 	public static final double ERROR_VALUE = 9999;
 	protected static final String PAD = "pad";
 
-	public boolean[] rawBits = null;
+	public byte[] rawBits = null; // the bytes as they were added, 8 bits to a byte.  Null if there is nothing to copy to the fields
 	protected int bitPosition = 0; // position in the raw bits as we allocate them to the fields
 	//public String[] fieldName = null;
 	public int[] fieldValue = null;
@@ -57,7 +56,7 @@ public abstract class BitArray {
 	protected BitArray(BitArrayLayout l) {
 		layout = l;
 		if (layout != null ) {
-			rawBits = new boolean[layout.getMaxNumberOfBits()];
+			rawBits = new byte[layout.getMaxNumberOfBytes()];
 			fieldValue = new int[layout.NUMBER_OF_FIELDS];
 		}
 	}
@@ -79,18 +78,14 @@ public abstract class BitArray {
 	public abstract String getStringValue(String name, Spacecraft fox);
 	/**
 	 * Given a downloaded byte, add it to the raw bits array
-	 * Store the least significant bit first, even though the satellite sends the msb first.
-	 * This compensates for the little endian nature of the satellite.  It means that the lsb or
-	 * the least significant byte is the first value we come across.
+	 * The byte is stored as it is.  nextbits() reads the least significant bit first, even though the satellite sends
+	 * the msb first.  This compensates for the little endian nature of the satellite.  It means that the lsb or
+	 * the least significant byte is the first value we come across.  Parts that hold big endian data read the bits
+	 * with nextbitsMsbFirst() instead.
 	 * @param b
 	 */
 	public void addNext8Bits(byte b) {
-		for (int i=0; i<8; i++) {
-			if ((b >> i & 1) == 1) 
-				rawBits[i+numberBytesAdded*8] = true;
-			else 
-				rawBits[i+numberBytesAdded*8] = false;
-		}
+		rawBits[numberBytesAdded] = b;
 		numberBytesAdded++;	
 	}
 
@@ -112,22 +107,66 @@ public abstract class BitArray {
 	}
 
 	/**
-	 * Return the next n bits of the raw bit array, converted into an integer
+	 * Return the next n bits of the raw bit array, converted into an integer.  The first bit is the least significant.
+	 * A field longer than 32 bits is folded into the int by adding each 32 bits, as FoxBitStream.binToInt() does
 	 * @param n
 	 * @return
 	 */
 	protected int nextbits(int n ) {
 		int field = 0;
-		
-		boolean[] b = new boolean[n];
-		for (int i=0; i < n; i++) {
-			b[i] = rawBits[bitPosition+n-i-1];
-			
+		int pos = bitPosition;
+		bitPosition = bitPosition + n;
+		while (n > 32) {
+			field += bitsLsbFirst(pos, 32);
+			pos += 32;
+			n -= 32;
 		}
+		field += bitsLsbFirst(pos, n);
+		return field;
+	}
+
+	/**
+	 * Return the next n bits of the raw bit array, converted into an integer.  The first bit is the most significant,
+	 * for parts where the bytes are big endian and the msb of each byte comes first.
+	 * @param n
+	 * @return
+	 */
+	protected int nextbitsMsbFirst(int n ) {
+		int field = 0;
+		int pos = bitPosition;
 		bitPosition = bitPosition + n;
-		field = FoxBitStream.binToInt(b);
+		int end = bitPosition;
+		while (n > 32) { // the last 32 bits are the least significant
+			end -= 32;
+			field += bitsMsbFirst(end, 32);
+			n -= 32;
+		}
+		field += bitsMsbFirst(pos, n);
 		return field;
-		
+	}
+
+	/**
+	 * The n bits, no more than 32, from bit pos.  Bit j of the stream is bit j%8 of byte j/8
+	 */
+	private int bitsLsbFirst(int pos, int n) {
+		if (n == 0) return 0;
+		int first = pos >> 3;
+		long word = 0;
+		for (int b = (pos + n - 1) >> 3; b >= first; b--)
+			word = (word << 8) | (rawBits[b] & 0xff);
+		return (int)((word >>> (pos & 7)) & ((1L << n) - 1));
+	}
+
+	/**
+	 * The n bits, no more than 32, from bit pos.  Bit j of the stream is bit 7-j%8 of byte j/8
+	 */
+	private int bitsMsbFirst(int pos, int n) {
+		if (n == 0) return 0;
+		int last = (pos + n - 1) >> 3;
+		long word = 0;
+		for (int b = pos >> 3; b <= last; b++)
+			word = (word << 8) | (rawBits[b] & 0xff);
+		return (int)((word >>> ((last + 1) * 8 - pos - n)) & ((1L << n) - 1));
 	}
 
 	/**
@@ -138,13 +177,22 @@ public abstract class BitArray {
 	 * @return
 	 */
 	public int getRawValue(String name) {
-		for (int i=0; i < layout.fieldName.length; i++) {
-			if (name.equalsIgnoreCase(layout.fieldName[i]))
-				return fieldValue[i];
-		}
+		int pos = layout.getFirstPositionByName(name);
+		if (pos != BitArrayLayout.ERROR_POSITION)
+			return fieldValue[pos];
 		return -1;
 	}
 	
+	/**
+	 * Return the raw value of the field at this position in the layout.  Loops that read the same field from many
+	 * records should find the position once with BitArrayLayout.getFirstPositionByName() and call this
+	 * @param pos
+	 * @return
+	 */
+	public int getRawValue(int pos) {
+		return fieldValue[pos];
+	}
+	
 	/**
 	 * Return the value of this field, specified by its name.  Run any conversion routine
 	 * to BitArrayLayout.CONVERT_this into the appropriate units.
@@ -153,22 +201,42 @@ public abstract class BitArray {
 	 * @return
 	 */
 	public double getDoubleValue(String name, Spacecraft fox) {
-		
-		int pos = -1;
-		for (int i=0; i < layout.fieldName.length; i++) {
-			if (name.equalsIgnoreCase(layout.fieldName[i]))
-				pos = i;
-		}
-
-		if (pos != -1) {
-			int value = fieldValue[pos];
-			double result = convertRawValue(name, value, layout.conversion[pos], fox);
-			return result;
-		}
+		int pos = layout.getPositionByName(name);
+		if (pos != BitArrayLayout.ERROR_POSITION)
+			return getDoubleValue(pos, fox);
 		return ERROR_VALUE;
 	}
 
+	/**
+	 * Return the converted value of the field at this position in the layout, as found by
+	 * BitArrayLayout.getPositionByName()
+	 * @param pos
+	 * @param fox
+	 * @return
+	 */
+	public double getDoubleValue(int pos, Spacecraft fox) {
+		return convertRawValue(layout.fieldName[pos], fieldValue[pos], layout.conversion[pos], fox);
+	}
+
 	public abstract double convertRawValue(String name, int rawValue, int conversion, Spacecraft fox );	
+
+	/**
+	 * Convert the raw values of one field from raw[from] to raw[to-1] and put them in the same positions in results.
+	 * Used when a field is read from many records, for example for a graph.  A subclass can override this to resolve
+	 * the things that do not change from one value to the next once for the column.  The results must be the same
+	 * as calling convertRawValue() for each value.
+	 * @param name
+	 * @param raw
+	 * @param from
+	 * @param to
+	 * @param conversion
+	 * @param fox
+	 * @param results
+	 */
+	public void convertRawValues(String name, int[] raw, int from, int to, int conversion, Spacecraft fox, double[] results) {
+		for (int i=from; i < to; i++)
+			results[i] = convertRawValue(name, raw[i], conversion, fox);
+	}
 	
 	
 }
@@ -5,6 +5,8 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
 import java.util.NoSuchElementException;
 import java.util.StringTokenizer;
 
@@ -62,6 +64,9 @@ public class BitArrayLayout {
 	
 	private int numberOfBits = 0;
 	private int numberOfBytes = 0;
+	
+	private volatile HashMap<String, int[]> fieldIndex = null; // position of each field by name, built when first used
+	private String[] indexedNames = null; // the fieldName array that the index was built from
 
 	public static final int CONVERT_NONE = 0;
 	public static final int CONVERT_INTEGER = 1;
@@ -158,20 +163,59 @@ public class BitArrayLayout {
 		return false;
 	}
 	
-	public boolean hasFieldName(String name) {
-		for (int i=0; i < fieldName.length; i++) {
-			if (name.equalsIgnoreCase(fieldName[i]))
-				return true;
+	/**
+	 * Return the position of each field name, building the index the first time it is needed or if the field names
+	 * have been replaced.  Each name maps to the positions of its first and last field, because the raw value is
+	 * taken from the first field with a name and the converted value from the last.  A name is indexed as it is
+	 * and in upper case, so that the usual lookup with the name as it appears in the layout does not need to change
+	 * its case.
+	 * @return
+	 */
+	private HashMap<String, int[]> getFieldIndex() {
+		HashMap<String, int[]> index = fieldIndex;
+		if (index != null && indexedNames == fieldName) return index;
+		index = new HashMap<String, int[]>();
+		String[] names = fieldName;
+		if (names != null) {
+			for (int i=0; i < names.length; i++) {
+				if (names[i] == null) continue;
+				String key = names[i].toUpperCase(Locale.ENGLISH);
+				int[] pos = index.get(key);
+				if (pos == null)
+					index.put(key, new int[] {i, i});
+				else
+					pos[1] = i;
+			}
+			for (int i=0; i < names.length; i++)
+				if (names[i] != null)
+					index.put(names[i], index.get(names[i].toUpperCase(Locale.ENGLISH)));
 		}
-		return false;
+		indexedNames = names;
+		fieldIndex = index;
+		return index;
+	}
+	
+	/**
+	 * Called when field names have been changed in place, so that the index is rebuilt
+	 */
+	public void fieldsChanged() {
+		fieldIndex = null;
+	}
+	
+	private int[] lookUp(String name) {
+		HashMap<String, int[]> index = getFieldIndex();
+		int[] pos = index.get(name);
+		if (pos == null)
+			pos = index.get(name.toUpperCase(Locale.ENGLISH));
+		return pos;
+	}
+	
+	public boolean hasFieldName(String name) {
+		return lookUp(name) != null;
 	}
 	
 	public int getConversionByName(String name) {
-		int pos = ERROR_POSITION;
-		for (int i=0; i < fieldName.length; i++) {
-			if (name.equalsIgnoreCase(fieldName[i]))
-				pos = i;
-		}
+		int pos = getPositionByName(name);
 		if (pos == ERROR_POSITION) {
 			return BitArrayLayout.CONVERT_NONE;
 		} else {
@@ -180,11 +224,7 @@ public class BitArrayLayout {
 	}
 
 	public String getUnitsByName(String name) {
-		int pos = ERROR_POSITION;
-		for (int i=0; i < fieldName.length; i++) {
-			if (name.equalsIgnoreCase(fieldName[i]))
-				pos = i;
-		}
+		int pos = getPositionByName(name);
 		if (pos == ERROR_POSITION) {
 			return "";
 		} else {
@@ -192,25 +232,36 @@ public class BitArrayLayout {
 		}
 	}
 	
+	/**
+	 * The position of the last field with this name, ignoring case
+	 * @param name
+	 * @return the position or ERROR_POSITION
+	 */
 	public int getPositionByName(String name) {
-		int pos = ERROR_POSITION;
-		for (int i=0; i < fieldName.length; i++) {
-			if (name.equalsIgnoreCase(fieldName[i]))
-				pos = i;
+		int[] pos = lookUp(name);
+		if (pos == null) {
+			return ERROR_POSITION;
+		} else {
+			return pos[1];
 		}
-		if (pos == ERROR_POSITION) {
+	}
+	
+	/**
+	 * The position of the first field with this name, ignoring case.  This is where the raw value is read from
+	 * @param name
+	 * @return the position or ERROR_POSITION
+	 */
+	public int getFirstPositionByName(String name) {
+		int[] pos = lookUp(name);
+		if (pos == null) {
 			return ERROR_POSITION;
 		} else {
-			return pos;
+			return pos[0];
 		}
 	}
 	
 	public String getShortNameByName(String name) {
-		int pos = ERROR_POSITION;
-		for (int i=0; i < fieldName.length; i++) {
-			if (name.equalsIgnoreCase(fieldName[i]))
-				pos = i;
-		}
+		int pos = getPositionByName(name);
 		if (pos == ERROR_POSITION) {
 			return "";
 		} else {
@@ -219,11 +270,7 @@ public class BitArrayLayout {
 	}
 
 	public String getModuleByName(String name) {
-		int pos = ERROR_POSITION;
-		for (int i=0; i < fieldName.length; i++) {
-			if (name.equalsIgnoreCase(fieldName[i]))
-				pos = i;
-		}
+		int pos = getPositionByName(name);
 		if (pos == ERROR_POSITION) {
 			return "";
 		} else {
@@ -0,0 +1,53 @@
+package telemetry;
+
+/**
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * What a compaction of the payload tables did.  Each table fills in its own report and the stores add them up.
+ *
+ */
+public class CompactionReport {
+	public int tables = 0;
+	public int segments = 0; // segments before the compaction
+	public int segmentsRemoved = 0; // merged into the segment before them
+	public int segmentsRewritten = 0;
+	public int duplicates = 0; // records removed because an earlier copy was kept
+	public long bytesBefore = 0; // size of the rewritten segment files before and after
+	public long bytesAfter = 0;
+	public long time = 0; // ms
+
+	public void add(CompactionReport r) {
+		tables += r.tables;
+		segments += r.segments;
+		segmentsRemoved += r.segmentsRemoved;
+		segmentsRewritten += r.segmentsRewritten;
+		duplicates += r.duplicates;
+		bytesBefore += r.bytesBefore;
+		bytesAfter += r.bytesAfter;
+		time += r.time;
+	}
+
+	public long getBytesReclaimed() { return bytesBefore - bytesAfter; }
+
+	public String toString() {
+		return "Compacted " + tables + " tables in " + time + "ms.  Segments: " + segments + " before, " + (segments - segmentsRemoved)
+				+ " after, " + segmentsRewritten + " rewritten.  Duplicate records removed: " + duplicates
+				+ ".  Space reclaimed: " + getBytesReclaimed()/1024 + "kB";
+	}
+}
@@ -17,7 +17,7 @@ public class FoxBPSKHeader extends Header {
 	public FoxBPSKHeader() {
 		super(TYPE_EXTENDED_HEADER);
 		MAX_BYTES = FoxBPSKFrame.MAX_HEADER_SIZE;
-		rawBits = new boolean[MAX_BYTES*8];
+		rawBits = new byte[MAX_BYTES];
 	}
 	
 	public int getType() { return type; }
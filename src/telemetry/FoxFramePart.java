@@ -324,11 +324,7 @@ longer send telemetry.
 	 * @return
 	 */
 	public String getStringValue(String name, Spacecraft fox) {
-		int pos = -1;
-		for (int i=0; i < layout.fieldName.length; i++) {
-			if (name.equalsIgnoreCase(layout.fieldName[i]))
-				pos = i;
-		}
+		int pos = layout.getPositionByName(name);
 		String s = "-----";
 		// Special Formatting
 		if (pos == -1) 
@@ -588,6 +584,270 @@ longer send telemetry.
 		return rawValue; // no conversion, return as is
 	}
 	
+	/**
+	 * Convert a column of raw values for one field.  This gives the same results as convertRawValue() for each value,
+	 * but the lookup table, spacecraft constants and field name checks are resolved once for the column and each
+	 * conversion runs in its own loop.  Conversions that are not listed here, including those that a subclass adds,
+	 * are passed to convertRawValue() one value at a time.
+	 * The expressions must stay the same as in convertRawValue() so that the results are identical.
+	 */
+	public void convertRawValues(String name, int[] raw, int from, int to, int conversion, Spacecraft sat, double[] results) {
+		if (from >= to) return;
+		FoxSpacecraft fox = (FoxSpacecraft)sat;
+		LookUpTable table;
+		int i;
+		switch (conversion) {
+		case BitArrayLayout.CONVERT_ANTENNA:
+		case BitArrayLayout.CONVERT_BOOLEAN:
+		case BitArrayLayout.CONVERT_NONE:
+		case BitArrayLayout.CONVERT_INTEGER:
+		case BitArrayLayout.CONVERT_STATUS_BIT:
+		case BitArrayLayout.CONVERT_IHU_DIAGNOSTIC:
+		case BitArrayLayout.CONVERT_HARD_ERROR:
+		case BitArrayLayout.CONVERT_SOFT_ERROR:
+		case BitArrayLayout.CONVERT_SOFT_ERROR_84488:
+		case BitArrayLayout.CONVERT_ICR_SW_COMMAND_COUNT:
+		case BitArrayLayout.CONVERT_ICR_DIAGNOSTIC:
+		case BitArrayLayout.CONVERT_COM1_ISIS_ANT_STATUS:
+			for (i=from; i < to; i++)
+				results[i] = raw[i];
+			return;
+		case BitArrayLayout.CONVERT_V25_SENSOR:
+			for (i=from; i < to; i++)
+				results[i] = raw[i] * VOLTAGE_STEP_FOR_2V5_SENSORS;
+			return;
+		case BitArrayLayout.CONVERT_V3_SENSOR:
+			for (i=from; i < to; i++)
+				results[i] = raw[i] * VOLTAGE_STEP_FOR_3V_SENSORS;
+			return;
+		case BitArrayLayout.CONVERT_BATTERY:
+			if (name.equalsIgnoreCase("BATT_A_V")) {
+				for (i=from; i < to; i++)
+					results[i] = raw[i] * VOLTAGE_STEP_FOR_2V5_SENSORS;
+			} else if (name.equalsIgnoreCase("BATT_B_V")) {
+				for (i=from; i < to; i++)
+					results[i] = raw[i] * VOLTAGE_STEP_FOR_2V5_SENSORS/BATTERY_B_SCALING_FACTOR;
+			} else if (name.equalsIgnoreCase("BATT_C_V") && fox.useIHUVBatt) {
+				table = fox.getLookupTableByName(Spacecraft.IHU_VBATT_LOOKUP);
+				for (i=from; i < to; i++)
+					results[i] = table.lookupValue(raw[i]);
+			} else if (name.equalsIgnoreCase("BATT_C_V")) {
+				for (i=from; i < to; i++)
+					results[i] = raw[i] * VOLTAGE_STEP_FOR_2V5_SENSORS/BATTERY_C_SCALING_FACTOR;
+			} else {
+				for (i=from; i < to; i++)
+					results[i] = ERROR_VALUE;
+			}
+			return;
+		case BitArrayLayout.CONVERT_BATTERY_TEMP:
+			convertByTable(batteryTempTable, raw, from, to, results);
+			return;
+		case BitArrayLayout.CONVERT_BATTERY_CURRENT:
+			double zero = fox.user_BATTERY_CURRENT_ZERO;
+			for (i=from; i < to; i++) {
+				double d = (double)raw[i];
+				results[i] = (( d * VOLTAGE_STEP_FOR_2V5_SENSORS - BATTERY_CURRENT_MIN) * zero + 2)*1000;
+			}
+			return;
+		case BitArrayLayout.CONVERT_SOLAR_PANEL:
+			for (i=from; i < to; i++)
+				results[i] = raw[i] * VOLTAGE_STEP_FOR_3V_SENSORS/SOLAR_PANEL_SCALING_FACTOR;
+			return;
+		case BitArrayLayout.CONVERT_MPPT_SOLAR_PANEL:
+			for (i=from; i < to; i++)
+				results[i] = raw[i] * VOLTAGE_STEP_FOR_2V5_SENSORS * MPPT_SOLAR_PANEL_SCALING_FACTOR;
+			return;
+		case BitArrayLayout.CONVERT_SOLAR_PANEL_TEMP:
+			convertByTable(solarPanelTempTable, raw, from, to, results);
+			return;
+		case BitArrayLayout.CONVERT_MPPT_SOLAR_PANEL_TEMP:
+			int threshold = fox.user_mpptSensorOffThreshold;
+			double resistanceError = fox.user_mpptResistanceError;
+			for (i=from; i < to; i++) {
+				if (raw[i] < threshold) {
+					results[i] = ERROR_VALUE;
+					continue;
+				}
+				double vadc = (double)raw[i] * VOLTAGE_STEP_FOR_2V5_SENSORS;
+				double v =  (vadc - MPPT_RTD_AMP_FACTOR) / (MPPT_RTD_AMP_GAIN);
+				double r = v / FoxFramePart.MPPT_RTD_CONSTANT_CURERNT - resistanceError;
+				results[i] = -247.29+2.3992*r+0.00063962*Math.pow(r,2)+(0.0000010241)*Math.pow(r,3);
+			}
+			return;
+		case BitArrayLayout.CONVERT_TEMP:
+			convertByTable(temperatureTable, raw, from, to, results);
+			return;
+		case BitArrayLayout.CONVERT_PA_CURRENT:
+			for (i=from; i < to; i++) {
+				double paVolts = raw[i] * VOLTAGE_STEP_FOR_3V_SENSORS;
+				double paCurrent = paVolts / PA_CURRENT_INA194_FACTOR/PA_CURRENT_SHUNT_RESISTOR_FACTOR;
+				results[i] = paCurrent * 1000;
+			}
+			return;
+		case BitArrayLayout.CONVERT_PSU_CURRENT:
+			for (i=from; i < to; i++)
+				results[i] = raw[i] * VOLTAGE_STEP_FOR_3V_SENSORS/PSU_CURRENT_SCALING_FACTOR;
+			return;
+		case BitArrayLayout.CONVERT_MPPT_CURRENT:
+			for (i=from; i < to; i++)
+				results[i] = raw[i] * VOLTAGE_STEP_FOR_2V5_SENSORS/MPPT_CURRENT_SCALING_FACTOR *1000;
+			return;
+		case BitArrayLayout.CONVERT_SPIN:
+			for (i=from; i < to; i++) {
+				double value = raw[i];
+				if (value > (2048-1)) value = -4096 + value;
+				results[i] = value / 256.0d;
+			}
+			return;
+		case BitArrayLayout.CONVERT_MEMS_ROTATION:
+			table = fox.getLookupTableByName(Spacecraft.IHU_VBATT_LOOKUP);
+			double memsZeroValue = calcMemsZeroValue(name, fox);
+			for (i=from; i < to; i++) {
+				double volts = table.lookupValue(raw[i]);
+				volts = volts / 2;
+				results[i] = (volts - memsZeroValue)/MEMS_VOLT_PER_DPS;
+			}
+			return;
+		case BitArrayLayout.CONVERT_RSSI:
+			convertByTable(fox.getLookupTableByName(Spacecraft.RSSI_LOOKUP), raw, from, to, results);
+			return;
+		case BitArrayLayout.CONVERT_IHU_TEMP:
+			convertByTable(fox.getLookupTableByName(Spacecraft.IHU_TEMP_LOOKUP), raw, from, to, results);
+			return;
+		case BitArrayLayout.CONVERT_WOD_STORED:
+			for (i=from; i < to; i++)
+				results[i] = raw[i] * 4;
+			return;
+		case BitArrayLayout.CONVERT_LT_TXRX_TEMP:
+			table = fox.getLookupTableByName(Spacecraft.IHU_VBATT_LOOKUP);
+			for (i=from; i < to; i++) {
+				double volts = table.lookupValue(raw[i]);
+				volts = volts / 2;
+				results[i] = 100 * volts - 50;
+			}
+			return;
+		case BitArrayLayout.CONVERT_LT_PA_CURRENT:
+			table = fox.getLookupTableByName(Spacecraft.IHU_VBATT_LOOKUP);
+			for (i=from; i < to; i++) {
+				double voltspa = table.lookupValue(raw[i]);
+				voltspa = voltspa / 2;
+				double pacurrent = voltspa/PA_CURRENT_INA194_FACTOR/0.1; 
+				results[i] = 1000* pacurrent;
+			}
+			return;
+		case BitArrayLayout.CONVERT_LT_TX_FWD_PWR:
+			table = fox.getLookupTableByName(Spacecraft.IHU_VBATT_LOOKUP);
+			for (i=from; i < to; i++) {
+				double x = table.lookupValue(raw[i]);
+				x = x / 2;
+				double y = 1.6707*Math.pow(x, 3) - 12.954*Math.pow(x,2)+ 37.706*x - 14.388;
+				results[i] = Math.pow(10, y/10);
+			}
+			return;
+		case BitArrayLayout.CONVERT_LT_TX_REF_PWR:
+			for (i=from; i < to; i++) {
+				double x = raw[i] * VOLTAGE_STEP_FOR_2V5_SENSORS/0.758;
+				double y = 0.1921*Math.pow(x, 3) + 14.663*Math.pow(x,2)+ 11.56*x - 1.8544;
+				if (y < 0) y = 0;
+				results[i] = y;
+			}
+			return;
+		case BitArrayLayout.CONVERT_LT_VGA:
+			table = fox.getLookupTableByName(Spacecraft.IHU_VBATT_LOOKUP);
+			for (i=from; i < to; i++) {
+				double volts = table.lookupValue(raw[i]);
+				results[i] = volts / 2;
+			}
+			return;
+		case BitArrayLayout.CONVERT_ICR_VOLT_SENSOR:
+			for (i=from; i < to; i++) {
+				double volts = raw[i] * VOLTAGE_STEP_FOR_2V5_SENSORS;
+				results[i] = volts * 99/75;
+			}
+			return;
+		case BitArrayLayout.CONVERT_COM1_SPIN:
+			for (i=from; i < to; i++) {
+				double spin = raw[i] - 32768;
+				results[i] = spin / 131.0;
+			}
+			return;
+		case BitArrayLayout.CONVERT_COM1_ACCELEROMETER:
+			for (i=from; i < to; i++) {
+				double acc = raw[i] - 32768;
+				results[i] = acc / 16384.0;
+			}
+			return;
+		case BitArrayLayout.CONVERT_COM1_MAGNETOMETER:
+			for (i=from; i < to; i++) {
+				double mag = raw[i] - 32768;
+				results[i] = mag * 0.6;
+			}
+			return;
+		case BitArrayLayout.CONVERT_COM1_GYRO_TEMP:
+			for (i=from; i < to; i++)
+				results[i] = raw[i] * 0.1 - 40;
+			return;
+		case BitArrayLayout.CONVERT_COM1_ISIS_ANT_TEMP:
+			table = fox.getLookupTableByName(Spacecraft.HUSKY_SAT_ISIS_ANT_TEMP);
+			for (i=from; i < to; i++) {
+				double V = (3.3 / 1023) * 1000 *  raw[i];
+				results[i] = table.lookupValue((int)V);
+			}
+			return;
+		case BitArrayLayout.CONVERT_COM1_ISIS_ANT_TIME:
+			for (i=from; i < to; i++)
+				results[i] = raw[i] / 20.0d;
+			return;
+		case BitArrayLayout.CONVERT_COM1_TX_FWD_PWR:
+			table = fox.getLookupTableByName(Spacecraft.IHU_VBATT_LOOKUP);
+			for (i=from; i < to; i++) {
+				double x = table.lookupValue(raw[i]);
+				x = x / 2;
+				double y = 1.7685*Math.pow(x, 3) - 13.107*Math.pow(x,2)+ 36.436*x - 13.019;
+				results[i] = Math.pow(10, y/10);
+			}
+			return;
+		case BitArrayLayout.CONVERT_COM1_TX_REF_PWR:
+			for (i=from; i < to; i++) {
+				double x = raw[i] * 1000* VOLTAGE_STEP_FOR_2V5_SENSORS/0.758;
+				double y = 0.1727*x - 34.583;
+				results[i] = Math.pow(10, y/10);
+			}
+			return;
+		case BitArrayLayout.CONVERT_HUSKY_UW_DIST_BOARD_STATUS:
+		case BitArrayLayout.CONVERT_COM1_ICR_2V5_SENSOR:
+			for (i=from; i < to; i++)
+				results[i] = raw[i] * VOLTAGE_STEP_FOR_2V5_SENSORS/0.758;
+			return;
+		case BitArrayLayout.CONVERT_COM1_RSSI:
+			table = fox.getLookupTableByName(Spacecraft.IHU_VBATT_LOOKUP);
+			for (i=from; i < to; i++) {
+				double x = table.lookupValue(raw[i]);
+				x = x / 2;
+				results[i] = 46.566*x - 135.54;
+			}
+			return;
+		case BitArrayLayout.CONVERT_COM1_SOLAR_PANEL:
+			for (i=from; i < to; i++)
+				results[i] = raw[i] * VOLTAGE_STEP_FOR_2V5_SENSORS/0.324;
+			return;
+		case BitArrayLayout.CONVERT_COM1_BUS_VOLTAGE:
+			table = fox.getLookupTableByName(Spacecraft.IHU_VBATT_LOOKUP);
+			for (i=from; i < to; i++) {
+				double x = table.lookupValue(raw[i]);
+				x = x / 2 ;
+				results[i] = x / 0.2424;
+			}
+			return;
+		}
+		super.convertRawValues(name, raw, from, to, conversion, sat, results);
+	}
+	
+	private static void convertByTable(LookUpTable table, int[] raw, int from, int to, double[] results) {
+		for (int i=from; i < to; i++)
+			results[i] = table.lookupValue(raw[i]);
+	}
+	
 	/**
 	 * Calculate the MEMS rotation value based in the rest values saved in the spacecraft config file, if
 	 * they exist.  Otherwise use the default values from the data sheet.
@@ -599,9 +859,21 @@ longer send telemetry.
 	private static double calcMemsValue(int value, String name, FoxSpacecraft fox) {
 		double volts = fox.getLookupTableByName(Spacecraft.IHU_VBATT_LOOKUP).lookupValue(value);
 		volts = volts / 2;
-		double memsZeroValue = MEMS_ZERO_VALUE_VOLTS;
+		double memsZeroValue = calcMemsZeroValue(name, fox);
 		double result = 0;
 		
+	    result = (volts - memsZeroValue)/MEMS_VOLT_PER_DPS;
+		return result;
+	}
+	
+	/**
+	 * The voltage of the MEMS sensor with this name when the spacecraft is not rotating
+	 * @param name
+	 * @param fox
+	 * @return
+	 */
+	private static double calcMemsZeroValue(String name, FoxSpacecraft fox) {
+		double memsZeroValue = MEMS_ZERO_VALUE_VOLTS;
 		if (fox.hasMemsRestValues) {
 			int restValue = 0;
 			if (name.equalsIgnoreCase(FoxSpacecraft.MEMS_REST_VALUE_X)) restValue = fox.user_memsRestValueX;	
@@ -610,9 +882,7 @@ longer send telemetry.
 			memsZeroValue = fox.getLookupTableByName(Spacecraft.IHU_VBATT_LOOKUP).lookupValue(restValue);
 			memsZeroValue = memsZeroValue/2;
 		}
-		
-	    result = (volts - memsZeroValue)/MEMS_VOLT_PER_DPS;
-		return result;
+		return memsZeroValue;
 	}
 	
 	/**
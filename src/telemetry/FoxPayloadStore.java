@@ -1,6 +1,7 @@
 package telemetry;
 
 import java.io.IOException;
+import java.io.Writer;
 import java.sql.SQLException;
 import java.util.Date;
 
@@ -12,7 +13,7 @@ import common.FoxSpacecraft;
 import common.Spacecraft;
 
 public abstract class FoxPayloadStore implements Runnable {
-	protected boolean loaded = false; // set this to true once we have completed initial start up to prevent graphs reading null data
+	protected volatile boolean loaded = false; // set this to true once we have completed initial start up to prevent graphs reading null data
 	
 	public boolean initialized() { return loaded; }
 	public abstract boolean hasQueuedFrames();
@@ -101,6 +102,27 @@ public abstract class FoxPayloadStore implements Runnable {
 	 */
 	public abstract double[][] getGraphData(String name, int period, Spacecraft fox, int fromReset, long fromUptime, String layout, boolean positionData, boolean reverse);
 
+	/**
+	 * As getGraphData(), but the graph is "width" pixels wide.  A store that keeps rollups of the data can return one
+	 * point per rollup bucket rather than every record, when there are more records than pixels.  By default the
+	 * width is ignored.
+	 */
+	public double[][] getGraphData(String name, int period, Spacecraft fox, int fromReset, long fromUptime, String layout, boolean positionData, boolean reverse, int width) {
+		return getGraphData(name, period, fox, fromReset, fromUptime, layout, positionData, reverse);
+	}
+
+	/**
+	 * Return several fields of the same layout with one pass through the data.  Each entry has the same columns as
+	 * getGraphData() for one field, but the uptime, reset and position columns are the same arrays for every field,
+	 * so they must not be changed.
+	 * 
+	 * @param names
+	 * @param period
+	 * @param width - the graph width in pixels, as above
+	 * @return one entry for each name
+	 */
+	public abstract double[][][] getGraphData(String[] names, int period, Spacecraft fox, int fromReset, long fromUptime, String layout, boolean positionData, boolean reverse, int width);
+
 	public abstract double[][] getRtGraphData(String name, int period, Spacecraft fox, int fromReset, long fromUptime, boolean positionData, boolean reverse);
 
 	public abstract double[][] getMaxGraphData(String name, int period, Spacecraft fox, int fromReset, long fromUptime, boolean positionData, boolean reverse);
@@ -139,10 +161,36 @@ public abstract class FoxPayloadStore implements Runnable {
 	 */
 	public abstract void deleteAll();	
 	
+	/**
+	 * Write any data that is held in memory waiting to be saved.  Called before the program exits
+	 */
+	public void flush() { }
+	
+	/**
+	 * Merge small segments and remove duplicate records from the stored payloads.  This can run while the decoder
+	 * is saving payloads.  Stores that do not keep segments return null
+	 */
+	public CompactionReport compact() { return null; }
+	
 	public abstract void initRad2();
 	public abstract void initHerciPackets();
 	public abstract String[][] getTableData(int period, int id, int fromReset, long fromUptime, boolean returnType, boolean reverse, String layout);
 	public abstract String[][] getTableData(int period, int id, int fromReset, long fromUptime, boolean reverse, String layout);
+
+	/**
+	 * Write every stored record of this layout for a spacecraft as CSV, a segment or a block of rows at a time, so
+	 * that the whole history can be exported without holding it in memory.  The header row is written first.  The
+	 * writer is not closed.
+	 * @param id
+	 * @param layout
+	 * @param out - should be buffered
+	 * @param converted - write the converted values rather than the raw values
+	 * @param positionData - add the lat/lon of the spacecraft to each row
+	 * @param progress - told how far the export has got and can cancel it, may be null
+	 * @return the number of rows written, or -1 if there is no such layout
+	 * @throws IOException
+	 */
+	public abstract long exportToCSV(int id, String layout, Writer out, boolean converted, boolean positionData, PayloadCsvWriter.Progress progress) throws IOException;
 	
 	public abstract int checkForNewReset(int id, long uptime, Date stepDate, int resetOnFrame, String groundStation);
 }
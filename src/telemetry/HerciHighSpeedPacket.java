@@ -4,7 +4,6 @@ import java.util.NoSuchElementException;
 import java.util.StringTokenizer;
 
 import common.Log;
-import decoder.FoxBitStream;
 import decoder.FoxDecoder;
 /*
  * 
@@ -131,7 +130,7 @@ public class HerciHighSpeedPacket extends FoxFramePart {
 		epoch = e;
 		headerTime = t;
 		id = sat;
-		rawBits = new boolean[MAX_PACKET_HEADER_BYTES*8 + MAX_PACKET_BYTES*8]; 
+		rawBits = new byte[MAX_PACKET_HEADER_BYTES + MAX_PACKET_BYTES]; 
 		
 		initFields();
 	}
@@ -279,7 +278,7 @@ public class HerciHighSpeedPacket extends FoxFramePart {
 	/**
 	 * We have bytes in big endian order, so we need to add the bits in a way
 	 * that makes sense when we retrieve them sequentially
-	 * The spacecraft sends the lsb first, so we flip that and add the msb first.  
+	 * The byte is stored as it is and nextbits() reads the msb of each byte first.  
 	 * Then when 12 bits pulled in a row it will make sense.
 	 * Note that if we pull a subset of 8 bits, then we have to be careful of the order.
 	 * @param b
@@ -287,12 +286,7 @@ public class HerciHighSpeedPacket extends FoxFramePart {
 	public void addNext8Bits(int b) {
 //		super.addNext8Bits((byte)b);
 
-		for (int i=0; i<8; i++) {
-			if ((b >> i & 1) == 1) 
-				rawBits[7-i+numberBytesAdded*8] = true;
-			else 
-				rawBits[7-i+numberBytesAdded*8] = false;
-		}
+		rawBits[numberBytesAdded] = (byte)b;
 		numberBytesAdded++;	
 	}
 
@@ -305,17 +299,7 @@ public class HerciHighSpeedPacket extends FoxFramePart {
 	 * @return
 	*/
 	protected int nextbits(int n ) {
-		int field = 0;
-		
-		boolean[] b = new boolean[n];
-		for (int i=0; i < n; i++) {
-			b[i] = rawBits[bitPosition+i];
-			
-		}
-		bitPosition = bitPosition + n;
-		field = FoxBitStream.binToInt(b);
-		return field;
-		
+		return nextbitsMsbFirst(n);
 	}
 
 	public byte[] getMiniPacketBytes() {
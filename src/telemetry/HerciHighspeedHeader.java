@@ -4,7 +4,6 @@ import java.util.StringTokenizer;
 
 import common.FoxSpacecraft;
 import common.Spacecraft;
-import decoder.FoxBitStream;
 import decoder.FoxDecoder;
 
 /**
@@ -133,7 +132,7 @@ public class HerciHighspeedHeader extends FoxFramePart {
 	/**
 	 * We have bytes in big endian order, so we need to add the bits in a way
 	 * that makes sense when we retrieve them sequentially
-	 * The spacecraft sends the lsb first, so we flip that and add the msb first.  
+	 * The byte is stored as it is and nextbits() reads the msb of each byte first.  
 	 * Then when 12 bits pulled in a row it will make sense.
 	 * Note that if we pull a subset of 8 bits, then we have to be careful of the order.
 	 * @param b
@@ -141,12 +140,7 @@ public class HerciHighspeedHeader extends FoxFramePart {
 	public void addNext8Bits(int b) {
 //		super.addNext8Bits((byte)b);
 
-		for (int i=0; i<8; i++) {
-			if ((b >> i & 1) == 1) 
-				rawBits[7-i+numberBytesAdded*8] = true;
-			else 
-				rawBits[7-i+numberBytesAdded*8] = false;
-		}
+		rawBits[numberBytesAdded] = (byte)b;
 		numberBytesAdded++;	
 	}
 
@@ -159,25 +153,11 @@ public class HerciHighspeedHeader extends FoxFramePart {
 	 * @return
 	*/
 	protected int nextbits(int n ) {
-		int field = 0;
-		
-		boolean[] b = new boolean[n];
-		for (int i=0; i < n; i++) {
-			b[i] = rawBits[bitPosition+i];
-			
-		}
-		bitPosition = bitPosition + n;
-		field = FoxBitStream.binToInt(b);
-		return field;
-		
+		return nextbitsMsbFirst(n);
 	}
 
 	public String getStringValue(String name, Spacecraft fox) {
-		int pos = -1;
-		for (int i=0; i < layout.fieldName.length; i++) {
-			if (name.equalsIgnoreCase(layout.fieldName[i]))
-				pos = i;
-		}
+		int pos = layout.getPositionByName(name);
 		String s = "-----";
 		// Special Formatting
 		if (pos == -1) 
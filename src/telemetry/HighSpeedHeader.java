@@ -30,7 +30,7 @@ public class HighSpeedHeader extends Header {
 	public HighSpeedHeader() {
 		super(TYPE_HIGH_SPEED_HEADER);
 		MAX_BYTES = HighSpeedFrame.MAX_HEADER_SIZE;
-		rawBits = new boolean[MAX_BYTES*8];
+		rawBits = new byte[MAX_BYTES];
 	}
 
 	
@@ -5,7 +5,6 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -38,7 +37,9 @@ import common.Log;
  * We store the reference values in a file and read on startup.  The values are read into a Map sorted
  * by the key.
  *
- * To look up a value we find the nearest key value by iterating over the map, then return the interpolated value
+ * To look up a value we find the nearest key value, then return the interpolated value.  The map is copied into
+ * arrays the first time the table is used and the key is found with a binary search.  A table that converts
+ * raw ADC counts can also be made dense, with every value in the range calculated in advance.
  * 
  *
  */
@@ -46,6 +47,8 @@ public class LookUpTable {
 	
 	public String name; // the name, which is stored in the spacecraft file and used to index the tables
 	protected Map<Integer, Double> table = new LinkedHashMap<Integer, Double>();
+	private volatile Compiled compiled = null; // the table in arrays, built when it is first used
+	public static final int ADC_COUNTS = 4096; // the range of a 12 bit raw value, used for the dense tables
 
 	/**
 	 * Called for a static table where the values are not loaded from a file
@@ -90,101 +93,164 @@ public class LookUpTable {
 	 * @return
 	 */
 	public double lookupValue(int lookUpKey) {
-		Iterator<Entry<Integer, Double>> it = table.entrySet().iterator();
-		double lastValue = 0;
-		int lastKey = 0;
-		double prevValue = 0;
-		int prevKey = 0;
-		Entry<Integer, Double> pairs = null;
-		int key;
-		boolean firstKey = true;
-		double value = FoxFramePart.ERROR_VALUE;
-	    while (it.hasNext()) {
-	        pairs = it.next();
-	        key = (Integer)pairs.getKey();
-	        value = (Double)pairs.getValue(); 
-	        if (firstKey) {
-	        	firstKey = false;
-	        	if (lookUpKey < key) {
-	        		
-	        		// store the values
-	        		lastKey = key;
-	    	        lastValue = value;
-	        		// get the next set
-	    	        pairs = it.next();
-	    	        key = (Integer)pairs.getKey();
-	    	        value = (Double)pairs.getValue();
-	    	        // and extrapolate from there
-	        		value = linearInterpolation((double)lookUpKey, lastKey, (double)pairs.getKey(), lastValue, (Double)pairs.getValue());
-	        		return value;
-	        	}
-	        }
-	        if (lookUpKey == key) 
-	        	return value;
-	        else if (lookUpKey < key) {
-	        	// Solve for the value using linear interpolation
-	  //      	System.out.println("Interpolating: " + (double)lookUpkKey +" "+ lastKey + " " + (double)pairs.getKey() + " " + lastValue + " " + (Double)pairs.getValue());
-	        	value = linearInterpolation((double)lookUpKey, lastKey, (double)pairs.getKey(), lastValue, (Double)pairs.getValue());
-	        	return value;
-	        }
-	        prevKey = lastKey;
-	        prevValue = lastValue;
-	        lastKey = key;
-	        lastValue = value;
-	    }
-	    // try to extrapolate off the end
-	    if (pairs != null)
-	    	value = linearInterpolation((double)lookUpKey, prevKey, lastKey, prevValue, lastValue);
-	    return value;
+		Compiled c = getCompiled();
+		if (c.dense != null && lookUpKey >= c.denseMin && lookUpKey - c.denseMin < c.dense.length)
+			return c.dense[lookUpKey - c.denseMin];
+		return lookupValue(c, lookUpKey);
 	}
 	
+	private double lookupValue(Compiled c, int lookUpKey) {
+		int[] keys = c.keys;
+		double[] values = c.values;
+		int n = keys.length;
+		if (n == 0) return FoxFramePart.ERROR_VALUE;
+		int i = c.keysAscending ? firstAtLeast(keys, lookUpKey) : firstAtLeastScan(keys, lookUpKey);
+		if (i == 0) {
+			if (lookUpKey == keys[0]) return values[0];
+			// extrapolate before the first key
+			if (n == 1) throw new NoSuchElementException();
+			return linearInterpolation((double)lookUpKey, keys[0], keys[1], values[0], values[1]);
+		}
+		if (i < n) {
+			if (lookUpKey == keys[i]) return values[i];
+			return linearInterpolation((double)lookUpKey, keys[i-1], keys[i], values[i-1], values[i]);
+		}
+		// try to extrapolate off the end
+		if (n == 1) return linearInterpolation((double)lookUpKey, 0, keys[0], 0, values[0]);
+		return linearInterpolation((double)lookUpKey, keys[n-2], keys[n-1], values[n-2], values[n-1]);
+	}
+	
+	/**
+	 * Find the raw value for a converted value.  The converted values are searched in the same way as the keys are
+	 * in lookupValue().  Note that when the value is within the table the points passed to the interpolation mix the
+	 * two columns.  This is how the values have always been calculated, so it is kept.
+	 * @param lookUpKey
+	 * @return
+	 */
 	public int reverseLookup(double lookUpKey) {
-		Iterator<Entry<Integer, Double>> it = table.entrySet().iterator();
-		int lastValue = 0;
-		double lastKey = 0;
-		int prevValue = 0;
-		double prevKey = 0;
-		Entry<Integer, Double> pairs = null;
-		double key;
-		boolean firstKey = true;
-		int value = (int)FoxFramePart.ERROR_VALUE;
-	    while (it.hasNext()) {
-	        pairs = it.next();
-	        value = (Integer)pairs.getKey();
-	        key = (Double)pairs.getValue(); 
-	        if (firstKey) {
-	        	firstKey = false;
-	        	if (lookUpKey < key) {
-	        		
-	        		// store the values
-	        		lastKey = key;
-	    	        lastValue = value;
-	        		// get the next set
-	    	        pairs = it.next();
-	    	        value = (Integer)pairs.getKey();
-	    	        key = (Double)pairs.getValue();
-	    	        // and extrapolate from there
-	        		value = (int) linearInterpolation((double)lookUpKey, lastKey, (double)pairs.getKey(), lastValue, (Double)pairs.getValue());
-	        		return value;
-	        	}
-	        }
-	        if (lookUpKey == key) 
-	        	return value;
-	        else if (lookUpKey < key) {
-	        	// Solve for the value using linear interpolation
-	  //      	System.out.println("Interpolating: " + (double)lookUpkKey +" "+ lastKey + " " + (double)pairs.getKey() + " " + lastValue + " " + (Double)pairs.getValue());
-	        	value = (int) linearInterpolation((double)lookUpKey, lastKey, (double)pairs.getKey(), lastValue, (Double)pairs.getValue());
-	        	return value;
-	        }
-	        prevKey = lastKey;
-	        prevValue = lastValue;
-	        lastKey = key;
-	        lastValue = value;
-	    }
-	    // try to extrapolate off the end
-	    if (pairs != null)
-	    	value = (int) linearInterpolation((double)lookUpKey, prevKey, lastKey, prevValue, lastValue);
-	    return value;
+		Compiled c = getCompiled();
+		int[] keys = c.keys;
+		double[] values = c.values;
+		int n = keys.length;
+		if (n == 0) return (int)FoxFramePart.ERROR_VALUE;
+		int i = c.valuesAscending ? firstAtLeast(values, lookUpKey) : firstAtLeastScan(values, lookUpKey);
+		if (i == 0) {
+			if (lookUpKey == values[0]) return keys[0];
+			if (n == 1) throw new NoSuchElementException();
+			return (int) linearInterpolation(lookUpKey, values[0], (double)keys[1], keys[0], values[1]);
+		}
+		if (i < n) {
+			if (lookUpKey == values[i]) return keys[i];
+			return (int) linearInterpolation(lookUpKey, values[i-1], (double)keys[i], keys[i-1], values[i]);
+		}
+		// try to extrapolate off the end
+		if (n == 1) return (int) linearInterpolation(lookUpKey, 0, values[0], 0, keys[0]);
+		return (int) linearInterpolation(lookUpKey, values[n-2], values[n-1], keys[n-2], keys[n-1]);
+	}
+	
+	/**
+	 * Precompute lookupValue() for every key from min to max, so that a lookup in that range is one array read.
+	 * Used for tables that convert raw ADC counts, which have a small fixed range.  Keys outside the range are
+	 * still interpolated.  Call this once the table is filled.
+	 * @param min
+	 * @param max
+	 */
+	public void makeDense(int min, int max) {
+		Compiled c = compile();
+		if (c.keys.length < 2) return; // nothing to interpolate
+		double[] dense = new double[max - min + 1];
+		for (int i=0; i < dense.length; i++)
+			dense[i] = lookupValue(c, min + i);
+		c.dense = dense;
+		c.denseMin = min;
+		compiled = c;
+	}
+	
+	/**
+	 * The table as arrays, in the order the keys were added.  The map is only read the first time the table is
+	 * used, because the tables that are not loaded from a file are filled by the subclass constructor.
+	 * @return
+	 */
+	private Compiled getCompiled() {
+		Compiled c = compiled;
+		if (c == null || c.keys.length != table.size()) {
+			c = compile();
+			compiled = c;
+		}
+		return c;
+	}
+	
+	private Compiled compile() {
+		Compiled c = new Compiled();
+		c.keys = new int[table.size()];
+		c.values = new double[table.size()];
+		int i = 0;
+		for (Entry<Integer, Double> e : table.entrySet()) {
+			c.keys[i] = e.getKey();
+			c.values[i++] = e.getValue();
+		}
+		c.keysAscending = true;
+		c.valuesAscending = true;
+		for (i=1; i < c.keys.length; i++) {
+			if (!(c.keys[i] > c.keys[i-1])) c.keysAscending = false;
+			if (!(c.values[i] > c.values[i-1])) c.valuesAscending = false;
+		}
+		return c;
+	}
+	
+	/**
+	 * The position of the first key that is not less than x, or the length of the array if there is none.  The keys
+	 * must be in ascending order
+	 */
+	private static int firstAtLeast(int[] keys, int x) {
+		int lo = 0;
+		int hi = keys.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (keys[mid] >= x)
+				hi = mid;
+			else
+				lo = mid + 1;
+		}
+		return lo;
+	}
+	
+	private static int firstAtLeast(double[] keys, double x) {
+		int lo = 0;
+		int hi = keys.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (keys[mid] >= x)
+				hi = mid;
+			else
+				lo = mid + 1; // including when x is NaN, so that we extrapolate off the end as the scan does
+		}
+		return lo;
+	}
+	
+	// A table that is not in order is searched in the order it was loaded, as it always has been
+	private static int firstAtLeastScan(int[] keys, int x) {
+		for (int i=0; i < keys.length; i++)
+			if (x <= keys[i]) return i;
+		return keys.length;
+	}
+	
+	private static int firstAtLeastScan(double[] keys, double x) {
+		for (int i=0; i < keys.length; i++)
+			if (x <= keys[i]) return i;
+		return keys.length;
+	}
+	
+	/**
+	 * The keys and values in primitive arrays, so a lookup does not iterate over the map or box the values
+	 */
+	private static class Compiled {
+		int[] keys;
+		double[] values;
+		boolean keysAscending;
+		boolean valuesAscending;
+		double[] dense; // lookupValue() for each key from denseMin, if the table has been made dense
+		int denseMin;
 	}
 	
 	protected void load(String fileName) throws FileNotFoundException, LayoutLoadException {
@@ -234,6 +234,7 @@ LookUpTableBatteryTemp() {
 	table.put(4564,148.0);
 	table.put(4566,149.0);
 	table.put(4569,150.0);
+	makeDense(0, ADC_COUNTS-1);
 
 }
 
@@ -58,6 +58,7 @@ public class LookUpTableSolarPanelTemp extends LookUpTable {
 		table.put(3775,-40.0);
 		//table.put(3910,FramePart.ERROR_VALUE);
 		//table.put(3911,FramePart.ERROR_VALUE);
+		makeDense(0, ADC_COUNTS-1);
 		
 		
 		
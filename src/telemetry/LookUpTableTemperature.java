@@ -240,6 +240,7 @@ public class LookUpTableTemperature extends LookUpTable {
 		table.put(3803,148.0);
 		table.put(3805,149.0);
 		table.put(3807,150.0);
+		makeDense(0, ADC_COUNTS-1);
 
 	}
 
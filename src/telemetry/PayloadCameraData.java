@@ -61,7 +61,7 @@ public class PayloadCameraData extends FoxFramePart {
 		super(TYPE_CAMERA_DATA, new BitArrayLayout());
 		
 		MAX_BYTES = HighSpeedFrame.MAX_CAMERA_PAYLOAD_SIZE;
-		rawBits = new boolean[MAX_BYTES*8];
+		rawBits = new byte[MAX_BYTES];
 		
 		setupScanLines(slc);
 	}
@@ -0,0 +1,166 @@
+package telemetry;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import common.FoxSpacecraft;
+import common.Spacecraft;
+import predict.PositionCalcException;
+import uk.me.g4dpz.satellite.SatPos;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Writes the records of one payload layout as CSV rows, one record at a time, so a store can export its whole
+ * history without holding it in memory.  Each row has the reset, uptime and type, then the lat/lon if they were
+ * asked for, then the raw or converted value of each field.  The store calls write() for each record in time order
+ * and the Progress is told how far the export has got every PROGRESS_ROWS rows.  If it returns false the export
+ * is cancelled and no more rows are written.
+ *
+ */
+public class PayloadCsvWriter {
+	public static final int PROGRESS_ROWS = 1000; // rows written between progress reports
+
+	/**
+	 * Told how far an export has got
+	 */
+	public interface Progress {
+		/**
+		 * @param rows - the rows written so far
+		 * @param total - the number of records the store expects to write, which is only an estimate
+		 * @return false to cancel the export
+		 */
+		public boolean update(long rows, long total);
+	}
+
+	private final Writer out;
+	private final Spacecraft fox;
+	private final BitArrayLayout layout;
+	private final boolean converted;
+	private final boolean positionData;
+	private final Progress progress;
+	private long total = 0;
+	private long rows = 0;
+	private boolean cancelled = false;
+
+	/**
+	 * @param out - the rows are written to this, which should be buffered.  It is not closed
+	 * @param fox
+	 * @param layout - the layout of the records, which gives the column names
+	 * @param converted - write the converted values rather than the raw values
+	 * @param positionData - write the lat/lon of the spacecraft for each record
+	 * @param progress - may be null
+	 */
+	public PayloadCsvWriter(Writer out, Spacecraft fox, BitArrayLayout layout, boolean converted, boolean positionData, Progress progress) {
+		this.out = out;
+		this.fox = fox;
+		this.layout = layout;
+		this.converted = converted;
+		this.positionData = positionData;
+		this.progress = progress;
+	}
+
+	public BitArrayLayout getLayout() { return layout; }
+	public long getRows() { return rows; }
+	public boolean isCancelled() { return cancelled; }
+
+	/**
+	 * Set the number of records the store expects to write, for the progress reports
+	 */
+	public void setTotal(long total) { this.total = total; }
+
+	public void writeHeader() throws IOException {
+		StringBuilder h = new StringBuilder("resets,uptime,type");
+		if (positionData)
+			h.append(",lat,lon");
+		for (int i=0; i < layout.fieldName.length; i++)
+			h.append(',').append(layout.fieldName[i]);
+		h.append('\n');
+		out.write(h.toString());
+	}
+
+	/**
+	 * Write a record as the next row
+	 * @param f
+	 * @return false if the export has been cancelled, so the store should stop
+	 * @throws IOException
+	 */
+	public boolean write(FramePart f) throws IOException {
+		if (cancelled) return false;
+		StringBuilder s = new StringBuilder();
+		s.append(f.resets).append(',').append(f.uptime).append(',').append(f.type);
+		if (positionData) {
+			double lat = f.getSatLatitude();
+			double lon = f.getSatLongitude();
+			if (lat == FramePart.NO_POSITION_DATA) {
+				double[] pos = position(f.resets, f.uptime);
+				lat = pos[0];
+				lon = pos[1];
+			}
+			s.append(',').append(lat).append(',').append(lon);
+		}
+		for (int i=0; i < f.fieldValue.length; i++) {
+			s.append(',');
+			if (converted)
+				s.append(f.getDoubleValue(i, fox));
+			else
+				s.append(f.fieldValue[i]);
+		}
+		s.append('\n');
+		out.write(s.toString());
+		rows++;
+		if (rows % PROGRESS_ROWS == 0)
+			update();
+		return !cancelled;
+	}
+
+	/**
+	 * Report the progress at the end of the export
+	 */
+	public void finish() throws IOException {
+		out.flush();
+		if (!cancelled)
+			update();
+	}
+
+	private void update() {
+		if (progress != null && !progress.update(rows, Math.max(rows, total)))
+			cancelled = true;
+	}
+
+	/**
+	 * Calculate the lat/lon for a record that was stored without its position, as the graphs do.  The position cache
+	 * is not used, as each position is only needed once
+	 */
+	private double[] position(int resets, long uptime) {
+		double[] latLon = {FramePart.NO_TLE, FramePart.NO_TLE};
+		if (!(fox instanceof FoxSpacecraft)) return latLon; // only the Fox spacecraft have a position
+		try {
+			SatPos pos = ((FoxSpacecraft)fox).getSatellitePosition(resets, uptime, false);
+			if (pos != null) {
+				latLon[0] = FramePart.latRadToDeg(pos.getLatitude());
+				latLon[1] = FramePart.lonRadToDeg(pos.getLongitude());
+			}
+		} catch (PositionCalcException e) {
+			// we just write the default values for NO_TLE
+		}
+		return latLon;
+	}
+}
@@ -2,6 +2,7 @@ package telemetry;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
@@ -761,6 +762,23 @@ public class PayloadDbStore extends FoxPayloadStore implements Runnable {
 		return null;		
 	}
 
+	/**
+	 * Return several fields of the same layout from one query.  There are no rollups in the database, so the width
+	 * is not used
+	 */
+	@Override
+	public double[][][] getGraphData(String[] names, int period, Spacecraft fox, int fromReset, long fromUptime, String layout, boolean positionData, boolean reverse, int width) {
+		SatPayloadDbStore store = getPayloadStoreById(fox.foxId);
+		if (store != null)
+			try {
+				return store.getGraphData(names, period, fox, fromReset, fromUptime, layout, positionData);
+			} catch (SQLException e) {
+				errorPrint("getGraphData", e);
+				e.printStackTrace(Log.getWriter());
+			}
+		return null;		
+	}
+
 	/**
 	 * Return an array of radiation data with "period" entries for this sat id and from the given reset and
 	 * uptime.
@@ -1116,6 +1134,19 @@ public class PayloadDbStore extends FoxPayloadStore implements Runnable {
 		return null;
 	}
 
+	@Override
+	public long exportToCSV(int id, String layout, Writer out, boolean converted, boolean positionData, PayloadCsvWriter.Progress progress) throws IOException {
+		SatPayloadDbStore store = getPayloadStoreById(id);
+		if (store != null)
+			try {
+				return store.exportToCSV(layout, out, converted, positionData, progress);
+			} catch (SQLException e) {
+				PayloadDbStore.errorPrint("exportToCSV", e);
+				throw new IOException("Could not read the " + layout + " records: " + e.getMessage());
+			}
+		return -1;
+	}
+
 	@Override
 	public int checkForNewReset(int id, long uptime, Date stpDate, int resetOnFrame, String groundStation) {
 		SatPayloadDbStore store = getPayloadStoreById(id);
@@ -11,7 +11,7 @@ public class PayloadHerciLineCount extends FoxFramePart {
 	@Override
 	protected void init() { 
 		MAX_BYTES = 1;
-		rawBits = new boolean[MAX_BYTES*8];
+		rawBits = new byte[MAX_BYTES];
 		fieldValue = new int[MAX_BYTES];
 	}
 	
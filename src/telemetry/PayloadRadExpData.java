@@ -6,7 +6,6 @@ import java.util.StringTokenizer;
 
 import common.Config;
 import common.Spacecraft;
-import decoder.FoxBitStream;
 import decoder.FoxDecoder;
 
 /**
@@ -188,17 +187,12 @@ public class PayloadRadExpData extends FoxFramePart {
 	/**
 	 * We have bytes in big endian order, so we need to add the bits in a way
 	 * that makes sense when we retrieve them sequentially
-	 * So we add the msb first.  Then when 12 bits pulled in a row it will make sense.
+	 * The byte is stored as it is and nextbits() reads the msb first.  Then when 12 bits pulled in a row it will make sense.
 	 * Note that if we pull a subset of 8 bits, then we have to be careful of the order.
 	 * @param b
 	 */
 	public void DATAaddNext8Bits(byte b) {
-		for (int i=0; i<8; i++) {
-			if ((b >> i & 1) == 1) 
-				rawBits[7-i+numberBytesAdded*8] = true;
-			else 
-				rawBits[7-i+numberBytesAdded*8] = false;
-		}
+		rawBits[numberBytesAdded] = b;
 		numberBytesAdded++;	
 	}
 
@@ -210,17 +204,7 @@ public class PayloadRadExpData extends FoxFramePart {
 	 * @return
 	*/
 	protected int DATAnextbits(int n ) {
-		int field = 0;
-		
-		boolean[] b = new boolean[n];
-		for (int i=0; i < n; i++) {
-			b[i] = rawBits[bitPosition+i];
-			
-		}
-		bitPosition = bitPosition + n;
-		field = FoxBitStream.binToInt(b);
-		return field;
-		
+		return nextbitsMsbFirst(n);
 	}
 
 	
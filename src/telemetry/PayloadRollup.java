@@ -0,0 +1,457 @@
+package telemetry;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.NoSuchElementException;
+import java.util.StringTokenizer;
+
+import common.Config;
+import common.Log;
+import common.Spacecraft;
+
+/**
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Pre-aggregated min, max, mean and count of every field of a SatPayloadTable, in buckets of an orbit, a day and a
+ * week of uptime.  The buckets are updated as each record is saved, so a graph that covers years of data can be
+ * drawn from a few hundred buckets rather than by loading every segment.  The memory used depends on the span of
+ * the data, not on the number of records.
+ *
+ * The converted value of each field is aggregated, because that is what is graphed.  Buckets never cross a reset.
+ *
+ * The buckets are kept in a .rollup file next to the index.  A header line names the fields.  Changed buckets are
+ * appended to the file and a later line for a bucket replaces an earlier one when the file is loaded, in the same
+ * way as the index.  If the file is missing, or the layout has changed, then the table rebuilds the rollup from its
+ * segments in the background the first time it is needed.  It is not valid, so it is not used, until that finishes.
+ *
+ */
+public class PayloadRollup {
+	public static final int ORBIT = 96*60; // roughly one orbit, in seconds of uptime
+	public static final int DAY = 24*60*60;
+	public static final int WEEK = 7*DAY;
+	public static final int[] TIERS = {WEEK, DAY, ORBIT}; // coarsest first
+
+	private static final String FIELDS = "FIELDS";
+	private static final int MAX_UPDATES = 5000; // rewrite the file once this many buckets have been appended
+
+	private String fileName;
+	private String[] fieldNames;
+	private ArrayList<ArrayList<Bucket>> tiers = new ArrayList<ArrayList<Bucket>>();
+	private ArrayList<Bucket> changed = new ArrayList<Bucket>();
+	private boolean valid = false; // false until the buckets hold every record in the table
+	private boolean rebuilding = false; // records are being added to the buckets, but they do not hold them all yet
+	private int updates = 0;
+
+	/**
+	 * Load the rollup for a table.  If there is no file then the rollup is only valid if the table is empty
+	 * @param fileName - the path of the table, without an extension
+	 * @param empty - true if the table has no records yet
+	 * @throws IOException
+	 */
+	public PayloadRollup(String fileName, boolean empty) throws IOException {
+		this.fileName = fileName + ".rollup";
+		clear();
+		if (new File(this.fileName).exists())
+			load();
+		else
+			valid = empty;
+	}
+
+	private void clear() {
+		tiers.clear();
+		for (int t=0; t < TIERS.length; t++)
+			tiers.add(new ArrayList<Bucket>());
+		changed.clear();
+		fieldNames = null;
+	}
+
+	public synchronized boolean isValid() { return valid; }
+	public synchronized boolean isRebuilding() { return rebuilding; }
+
+	/**
+	 * Add a saved record to the buckets of each tier.  Ignored if the rollup is waiting to be rebuilt.  If the
+	 * record does not have the same fields as the rest of the table then the rollup is no longer valid.
+	 * @param f
+	 */
+	public synchronized void add(FramePart f) {
+		if (!valid && !rebuilding) return;
+		if (!addRecord(f)) {
+			Log.println("Rollup for " + fileName + " does not match the layout of the table.  It will be rebuilt");
+			clear();
+			valid = false;
+			rebuilding = false;
+		}
+	}
+
+	private boolean addRecord(FramePart f) {
+		if (f.layout == null || f.fieldValue == null) return true;
+		int fields = Math.min(f.fieldValue.length, f.layout.fieldName.length);
+		if (fieldNames == null) {
+			fieldNames = new String[fields];
+			for (int i=0; i < fields; i++)
+				fieldNames[i] = f.layout.fieldName[i];
+		} else {
+			if (fields != fieldNames.length) return false;
+			for (int i=0; i < fields; i++)
+				if (!fieldNames[i].equalsIgnoreCase(f.layout.fieldName[i])) return false;
+		}
+		Spacecraft fox = Config.satManager.getSpacecraft(f.id);
+		float[] values = new float[fields];
+		for (int i=0; i < fields; i++)
+			values[i] = (float)f.convertRawValue(f.layout.fieldName[i], f.fieldValue[i], f.layout.conversion[i], fox);
+		for (int t=0; t < TIERS.length; t++) {
+			Bucket b = getBucket(t, f.resets, f.uptime / TIERS[t], fields);
+			b.add(f.uptime, values);
+			if (!b.changed) {
+				b.changed = true;
+				changed.add(b);
+			}
+		}
+		return true;
+	}
+
+	private Bucket getBucket(int t, int reset, long bucket, int fields) {
+		ArrayList<Bucket> buckets = tiers.get(t);
+		Bucket key = new Bucket(TIERS[t], reset, bucket, fields);
+		// Records are normally saved in order, so check the last bucket first
+		int last = buckets.size()-1;
+		if (last >= 0 && buckets.get(last).compareTo(key) == 0) return buckets.get(last);
+		if (last < 0 || buckets.get(last).compareTo(key) < 0) {
+			buckets.add(key);
+			return key;
+		}
+		int i = Collections.binarySearch(buckets, key);
+		if (i >= 0) return buckets.get(i);
+		buckets.add(-i-1, key);
+		return key;
+	}
+
+	/**
+	 * Throw away the buckets so that the table can add every record again.  The rollup is not valid until
+	 * finishRebuild() is called, but records are added to it.  The table decides which saved records to add while
+	 * it is rebuilding, so that each is only added once
+	 */
+	public synchronized void startRebuild() {
+		clear();
+		valid = false;
+		rebuilding = true;
+	}
+
+	/**
+	 * Every record has been added, so the rollup can be used
+	 * @return false if the rebuild was abandoned because a record did not match the layout or the rollup was removed
+	 */
+	public synchronized boolean finishRebuild() {
+		if (!rebuilding) return false;
+		rebuilding = false;
+		valid = true;
+		return true;
+	}
+
+	public synchronized void cancelRebuild() {
+		if (!rebuilding) return;
+		clear();
+		rebuilding = false;
+	}
+
+	/**
+	 * Return the mean value of some fields for each bucket between two reset/uptimes, in the same columns as
+	 * SatPayloadTable.getGraphData().  The coarsest tier that still has at least one bucket for each pixel column is
+	 * used.  The uptime of a point is the middle of the records in its bucket.  The fields share the same uptime,
+	 * reset and position arrays.
+	 * @param names - the fields
+	 * @param fromReset
+	 * @param fromUptime
+	 * @param toReset - the end of the range.  The bucket that holds it is included
+	 * @param toUptime
+	 * @param width - the number of pixel columns the data will be drawn in
+	 * @param positionData - add lat/lon columns, which are always NO_POSITION_DATA
+	 * @return the data or null if no tier has enough buckets, in which case the records should be used
+	 */
+	public synchronized double[][][] getGraphData(String[] names, int fromReset, long fromUptime, int toReset, long toUptime, int width, boolean positionData) {
+		if (!valid) return null;
+		int[] fields = new int[names.length];
+		for (int n=0; n < names.length; n++) {
+			fields[n] = getFieldIndex(names[n]);
+			if (fields[n] == -1) return null;
+		}
+		for (int t=0; t < TIERS.length; t++) {
+			ArrayList<Bucket> buckets = tiers.get(t);
+			int start = lowerBound(buckets, fromReset, fromUptime / TIERS[t]);
+			int end = lowerBound(buckets, toReset, toUptime / TIERS[t] + 1);
+			if (end - start < width) continue;
+			int COLUMNS = positionData ? 5 : 3;
+			double[] upTime = new double[end-start];
+			double[] resets = new double[end-start];
+			double[] lat = null;
+			double[] lon = null;
+			if (positionData) {
+				lat = new double[end-start];
+				lon = new double[end-start];
+			}
+			double[][] results = new double[names.length][end-start];
+			for (int i=start; i < end; i++) {
+				Bucket b = buckets.get(i);
+				for (int n=0; n < names.length; n++)
+					results[n][i-start] = b.mean[fields[n]];
+				upTime[i-start] = (b.firstUptime + b.lastUptime) / 2;
+				resets[i-start] = b.reset;
+				if (positionData) {
+					lat[i-start] = FramePart.NO_POSITION_DATA;
+					lon[i-start] = FramePart.NO_POSITION_DATA;
+				}
+			}
+			double[][][] resultSet = new double[names.length][COLUMNS][];
+			for (int n=0; n < names.length; n++) {
+				resultSet[n][PayloadStore.DATA_COL] = results[n];
+				resultSet[n][PayloadStore.UPTIME_COL] = upTime;
+				resultSet[n][PayloadStore.RESETS_COL] = resets;
+				if (positionData) {
+					resultSet[n][PayloadStore.LAT_COL] = lat;
+					resultSet[n][PayloadStore.LON_COL] = lon;
+				}
+			}
+			if (Config.debugSegs) Log.println("ROLLUP: " + fileName + " " + names.length + " fields from tier " + TIERS[t] + "s with " + (end-start) + " points");
+			return resultSet;
+		}
+		return null;
+	}
+
+	/**
+	 * The buckets of one tier, coarsest first, for checking and analysis
+	 * @param tier - index into TIERS
+	 * @return a copy of the list
+	 */
+	public synchronized ArrayList<Bucket> getBuckets(int tier) {
+		return new ArrayList<Bucket>(tiers.get(tier));
+	}
+
+	public synchronized int getFieldIndex(String name) {
+		if (fieldNames == null) return -1;
+		for (int i=0; i < fieldNames.length; i++)
+			if (name.equalsIgnoreCase(fieldNames[i]))
+				return i;
+		return -1;
+	}
+
+	// The index of the first bucket at or after reset/bucket
+	private static int lowerBound(ArrayList<Bucket> buckets, int reset, long bucket) {
+		int lo = 0;
+		int hi = buckets.size();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			Bucket b = buckets.get(mid);
+			if (b.reset < reset || (b.reset == reset && b.bucket < bucket))
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Append the buckets that have changed since the last call to the end of the file
+	 * @throws IOException
+	 */
+	public synchronized void saveChanges() throws IOException {
+		if (!valid || changed.size() == 0) return;
+		if (updates + changed.size() > MAX_UPDATES || !new File(fileName).exists()) {
+			save();
+			return;
+		}
+		StringBuilder lines = new StringBuilder();
+		for (Bucket b : changed) {
+			lines.append(b.toFile());
+			b.changed = false;
+		}
+		updates = updates + changed.size();
+		changed.clear();
+		FileOutputStream output = new FileOutputStream(fileName, true);
+		try {
+			output.write(lines.toString().getBytes(StandardCharsets.UTF_8));
+		} finally {
+			output.close();
+		}
+	}
+
+	/**
+	 * Rewrite the whole file
+	 * @throws IOException
+	 */
+	public synchronized void save() throws IOException {
+		if (!valid) return;
+		Writer output = new BufferedWriter(new FileWriter(fileName, false));
+		try {
+			if (fieldNames != null) {
+				output.write(FIELDS);
+				for (String name : fieldNames)
+					output.write("," + name);
+				output.write("\n");
+			}
+			for (ArrayList<Bucket> buckets : tiers)
+				for (Bucket b : buckets) {
+					output.write(b.toFile());
+					b.changed = false;
+				}
+		} finally {
+			output.flush();
+			output.close();
+		}
+		changed.clear();
+		updates = 0;
+	}
+
+	private void load() throws IOException {
+		String line;
+		int lines = 0;
+		BufferedReader dis = new BufferedReader(new FileReader(fileName));
+		try {
+			while ((line = dis.readLine()) != null) {
+				if (line.length() == 0) continue;
+				StringTokenizer st = new StringTokenizer(line, ",");
+				String first = st.nextToken();
+				if (first.equals(FIELDS)) {
+					ArrayList<String> names = new ArrayList<String>();
+					while (st.hasMoreTokens())
+						names.add(st.nextToken());
+					fieldNames = names.toArray(new String[names.size()]);
+					continue;
+				}
+				if (fieldNames == null) break;
+				int tier = Integer.parseInt(first);
+				int t = 0;
+				while (t < TIERS.length && TIERS[t] != tier) t++;
+				if (t == TIERS.length) continue; // a tier we no longer keep
+				Bucket b = new Bucket(tier, Integer.parseInt(st.nextToken()), Long.parseLong(st.nextToken()), fieldNames.length);
+				b.count = Integer.parseInt(st.nextToken());
+				b.firstUptime = Long.parseLong(st.nextToken());
+				b.lastUptime = Long.parseLong(st.nextToken());
+				for (int i=0; i < fieldNames.length; i++) {
+					b.min[i] = Float.parseFloat(st.nextToken());
+					b.max[i] = Float.parseFloat(st.nextToken());
+					b.mean[i] = Float.parseFloat(st.nextToken());
+				}
+				lines++;
+				// A later line for the same bucket replaces the earlier one
+				ArrayList<Bucket> buckets = tiers.get(t);
+				int i = Collections.binarySearch(buckets, b);
+				if (i >= 0)
+					buckets.set(i, b);
+				else
+					buckets.add(-i-1, b);
+			}
+			valid = fieldNames != null;
+		} catch (NumberFormatException e) {
+			Log.println("Ignoring corrupt line at end of rollup: " + fileName);
+			valid = fieldNames != null;
+		} catch (NoSuchElementException e) {
+			// the last line was not completely written.  The bucket is updated again by the next record
+			Log.println("Ignoring incomplete line at end of rollup: " + fileName);
+			valid = fieldNames != null;
+		} finally {
+			dis.close();
+		}
+		int total = 0;
+		for (ArrayList<Bucket> buckets : tiers)
+			total = total + buckets.size();
+		updates = lines - total;
+		if (valid && lines > 2 * total)
+			save(); // compact the appended lines
+	}
+
+	/**
+	 * Delete the rollup file, e.g. when the table is removed
+	 */
+	public synchronized void remove() throws IOException {
+		clear();
+		valid = false;
+		rebuilding = false;
+		SatPayloadStore.remove(fileName);
+	}
+
+	/**
+	 * The aggregate of the records in one reset and one period of uptime
+	 */
+	public static class Bucket implements Comparable<Bucket> {
+		public final int tier; // seconds of uptime in the bucket
+		public final int reset;
+		public final long bucket; // uptime / tier
+		public int count;
+		public long firstUptime;
+		public long lastUptime;
+		public final float[] min;
+		public final float[] max;
+		public final float[] mean;
+		boolean changed = false;
+
+		Bucket(int tier, int reset, long bucket, int fields) {
+			this.tier = tier;
+			this.reset = reset;
+			this.bucket = bucket;
+			min = new float[fields];
+			max = new float[fields];
+			mean = new float[fields];
+		}
+
+		void add(long uptime, float[] values) {
+			if (count == 0) {
+				firstUptime = uptime;
+				lastUptime = uptime;
+				for (int i=0; i < values.length; i++) {
+					min[i] = values[i];
+					max[i] = values[i];
+					mean[i] = values[i];
+				}
+			} else {
+				if (uptime < firstUptime) firstUptime = uptime;
+				if (uptime > lastUptime) lastUptime = uptime;
+				for (int i=0; i < values.length; i++) {
+					if (values[i] < min[i]) min[i] = values[i];
+					if (values[i] > max[i]) max[i] = values[i];
+					mean[i] = mean[i] + (values[i] - mean[i]) / (count + 1); // running mean, so there is no large sum to lose precision
+				}
+			}
+			count++;
+		}
+
+		String toFile() {
+			StringBuilder s = new StringBuilder();
+			s.append(tier + "," + reset + "," + bucket + "," + count + "," + firstUptime + "," + lastUptime);
+			for (int i=0; i < mean.length; i++)
+				s.append("," + min[i] + "," + max[i] + "," + mean[i]);
+			s.append("\n");
+			return s.toString();
+		}
+
+		public int compareTo(Bucket b) {
+			if (reset != b.reset) return reset < b.reset ? -1 : +1;
+			if (bucket != b.bucket) return bucket < b.bucket ? -1 : +1;
+			return 0;
+		}
+	}
+}
@@ -6,8 +6,18 @@ import gui.ProgressPanel;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import measure.Measurement;
 import measure.PassMeasurement;
@@ -59,17 +69,30 @@ public class PayloadStore extends FoxPayloadStore implements Runnable {
 	@SuppressWarnings("unused")
 	private boolean done = false;
 	
-	private SortedFramePartArrayList payloadQueue;
+	private ArrayBlockingQueue<QueuedPayload> payloadQueue; // payloads from the decoders, waiting for the writer thread
 	private SortedMeasurementArrayList measurementQueue;
+	private Thread writer; // the thread that drains the payload queue
+	private AtomicInteger unsaved = new AtomicInteger(); // payloads queued or taken from the queue but not yet written
 
 	private final int INITIAL_QUEUE_SIZE = 1000;
+	public static final int PAYLOAD_QUEUE_SIZE = 10000; // a decoder waits if this many payloads are queued
+	public static final int MAX_BATCH_SIZE = 1000; // payloads written in one pass of the writer thread
+	private static final int QUEUE_POLL_PERIOD = 100; // ms to wait for a payload before the periodic commit and offload
+	
+	// Ingest metrics
+	private volatile int maxQueueDepth = 0;
+	private AtomicLong payloadsWritten = new AtomicLong();
+	private AtomicLong batchesWritten = new AtomicLong();
+	private AtomicLong totalDrainLatency = new AtomicLong();
+	private volatile long lastDrainLatency = 0;
+	private volatile long maxDrainLatency = 0;
 	
 	SatPayloadStore[] payloadStore;
 	SatPictureStore[] pictureStore;
 	SatMeasurementStore[] measurementStore;
 	
 	public PayloadStore() {
-		payloadQueue = new SortedFramePartArrayList(INITIAL_QUEUE_SIZE);
+		payloadQueue = new ArrayBlockingQueue<QueuedPayload>(PAYLOAD_QUEUE_SIZE);
 		measurementQueue = new SortedMeasurementArrayList(INITIAL_QUEUE_SIZE);
 		ArrayList<Spacecraft> sats = Config.satManager.getSpacecraftList();
 		payloadStore = new SatPayloadStore[sats.size()];
@@ -103,26 +126,82 @@ public class PayloadStore extends FoxPayloadStore implements Runnable {
 		Config.fileProgress = new ProgressPanel(MainWindow.frame, loadMessage, false);
 		Config.fileProgress.setVisible(true);
 		
+		// Each spacecraft only reads its indexes here, so they are loaded in parallel.  The segments are read when
+		// they are first used
+		long start = System.nanoTime();
+		int threads = Math.max(1, Math.min(sats.size(), Runtime.getRuntime().availableProcessors()));
+		ExecutorService loader = Executors.newFixedThreadPool(threads);
+		ArrayList<Future<?>> tasks = new ArrayList<Future<?>>();
 		for (int s=0; s<sats.size(); s++) {
-			
-				payloadStore[s] = new SatPayloadStore(sats.get(s).foxId);
-				if (newDB) {
-					// convert any legacy data
-					try {
-						payloadStore[s].convert();
-					} catch (IOException e) {
-						Log.errorDialog("ERROR", "Could not convert the old FoxTelem payload files to the new format: " +  
-								"\nAny old payloads will not be available\n");
-						e.printStackTrace(Log.getWriter());
-					}
+			final int i = s;
+			final Spacecraft sat = sats.get(s);
+			final boolean convert = newDB;
+			tasks.add(loader.submit(new Runnable() {
+				public void run() {
+					loadSpacecraft(i, sat, convert);
 				}
-				if (sats.get(s).isFox1())
-					if (((FoxSpacecraft)sats.get(s)).hasCamera()) pictureStore[s] = new SatPictureStore(sats.get(s).foxId);;
-				measurementStore[s] = new SatMeasurementStore(sats.get(s).foxId);
-				Config.fileProgress.updateProgress(100 * s / sats.size());
-			
+			}));
+			measurementStore[s] = new SatMeasurementStore(sats.get(s).foxId);
 		}
+		for (int s=0; s<sats.size(); s++) {
+			try {
+				tasks.get(s).get();
+			} catch (InterruptedException e) {
+				Log.println("ERROR: Interrupted loading the payload store for sat: " + sats.get(s).foxId);
+				e.printStackTrace(Log.getWriter());
+			} catch (ExecutionException e) {
+				Log.println("ERROR: Could not load the payload store for sat: " + sats.get(s).foxId);
+				e.getCause().printStackTrace(Log.getWriter());
+			}
+			Config.fileProgress.updateProgress(100 * s / sats.size());
+		}
+		Log.println("Loaded payload indexes for " + sats.size() + " spacecraft on " + threads + " threads in " 
+				+ (System.nanoTime() - start)/1000000 + "ms");
 		loaded = true;
+		
+		// The decoder can start now.  The measurements are read in the background, or by the first thread that needs them
+		for (final SatMeasurementStore store : measurementStore)
+			loader.submit(new Runnable() {
+				public void run() {
+					store.loadRecords();
+				}
+			});
+		loader.shutdown();
+	}
+	
+	/**
+	 * Open the payload and picture stores for one spacecraft, converting any legacy or text segments first.  Called
+	 * on a loader thread for each spacecraft in parallel
+	 * @param s
+	 * @param sat
+	 * @param newDB
+	 */
+	private void loadSpacecraft(int s, Spacecraft sat, boolean newDB) {
+		long start = System.nanoTime();
+		payloadStore[s] = new SatPayloadStore(sat.foxId);
+		if (newDB) {
+			// convert any legacy data
+			try {
+				payloadStore[s].convert();
+			} catch (IOException e) {
+				Log.errorDialog("ERROR", "Could not convert the old FoxTelem payload files to the new format: " +  
+						"\nAny old payloads will not be available\n");
+				e.printStackTrace(Log.getWriter());
+			}
+		}
+		if (Config.useBinarySegments) {
+			try {
+				int converted = payloadStore[s].convertToBinary();
+				if (converted > 0)
+					Log.println("Converted " + converted + " segments to binary for sat: " + sat.foxId);
+			} catch (IOException e) {
+				Log.println("ERROR: Could not convert payload segments to binary: " + e.getMessage());
+				e.printStackTrace(Log.getWriter());
+			}
+		}
+		if (sat.isFox1())
+			if (((FoxSpacecraft)sat).hasCamera()) pictureStore[s] = new SatPictureStore(sat.foxId);
+		Log.println("Loaded payload store for sat: " + sat.foxId + " in " + (System.nanoTime() - start)/1000000 + "ms");
 	}
 	
 	/**
@@ -150,10 +229,39 @@ public class PayloadStore extends FoxPayloadStore implements Runnable {
 	
 	
 	public boolean hasQueuedFrames() {
-		if (payloadQueue.size() > 0) return true;
+		if (unsaved.get() > 0) return true;
 		return false;
 	}
 
+	/**
+	 * The number of payloads waiting for the writer thread
+	 */
+	public int getQueueDepth() { return payloadQueue.size(); }
+	/**
+	 * The most payloads that have been waiting at one time since startup
+	 */
+	public int getMaxQueueDepth() { return maxQueueDepth; }
+	public long getPayloadsWritten() { return payloadsWritten.get(); }
+	public long getBatchesWritten() { return batchesWritten.get(); }
+	/**
+	 * Time in ms from when the oldest payload in the last batch was queued until the batch was written
+	 */
+	public long getLastDrainLatency() { return lastDrainLatency; }
+	public long getMaxDrainLatency() { return maxDrainLatency; }
+	/**
+	 * The average time in ms from when a payload is queued until it is written
+	 */
+	public double getMeanDrainLatency() { 
+		long n = payloadsWritten.get();
+		if (n == 0) return 0;
+		return totalDrainLatency.get() / (double)n;
+	}
+
+	public String getIngestStats() {
+		return "PAYLOAD Q: depth " + getQueueDepth() + " max " + maxQueueDepth + ", " + payloadsWritten + " payloads in " + batchesWritten 
+				+ " batches, latency last " + lastDrainLatency + "ms max " + maxDrainLatency + "ms mean " + String.format("%.1f", getMeanDrainLatency()) + "ms";
+	}
+
 	public boolean hasQueuedMeasurements() {
 		if (measurementQueue.size() > 0) return true;
 		return false;
@@ -378,7 +486,39 @@ public class PayloadStore extends FoxPayloadStore implements Runnable {
 	
 	public boolean add(int id, long uptime, int resets, FramePart f) {
 		f.captureHeaderInfo(id, uptime, resets);
-		return payloadQueue.addToEnd(f);
+		return enqueue(f);
+	}
+	
+	/**
+	 * Queue a payload for the writer thread.  If the queue is full then the decoder waits, so a burst can not use
+	 * up all of the memory.  The writer thread itself never waits for its own queue, it saves the payload directly.
+	 * The fields are copied from the raw bits first, so that the raw bits can be released while the payload waits.
+	 * @param f
+	 * @return false if the payload could not be queued
+	 */
+	private boolean enqueue(FramePart f) {
+		f.copyBitsToFields();
+		f.rawBits = null;
+		QueuedPayload q = new QueuedPayload(f);
+		unsaved.incrementAndGet();
+		if (Thread.currentThread() == writer) {
+			if (payloadQueue.offer(q)) return true;
+			unsaved.decrementAndGet();
+			if (f instanceof PayloadCameraData)
+				return addToPictureFile(f.id, f.uptime, f.resets, (PayloadCameraData)f);
+			return addToFile(f.id, f.uptime, f.resets, f);
+		}
+		try {
+			payloadQueue.put(q);
+		} catch (InterruptedException e) {
+			Log.println("ERROR: Interrupted while waiting to queue payload: " + f.id + " " + f.resets + ":" + f.uptime);
+			Thread.currentThread().interrupt();
+			unsaved.decrementAndGet();
+			return false;
+		}
+		int depth = payloadQueue.size();
+		if (depth > maxQueueDepth) maxQueueDepth = depth;
+		return true;
 	}
 	
 	public boolean addToFile(int id, long uptime, int resets, FramePart f) {
@@ -408,7 +548,7 @@ public class PayloadStore extends FoxPayloadStore implements Runnable {
 			if (f[i].hasData()) {
 				f[i].captureHeaderInfo(id, uptime, resets);
 				f[i].type = 400 + i; // store the index in the type field so it is unique for high speed, but duplicates rejected if same frame processed again
-				payloadQueue.addToEnd(f[i]);
+				enqueue(f[i]);
 			}
 		}
 		return true;
@@ -423,7 +563,7 @@ public class PayloadStore extends FoxPayloadStore implements Runnable {
 		for (int i=0; i< herci.length; i++) {
 			herci[i].captureHeaderInfo(id, uptime, resets);
 			herci[i].type = 600 + i;
-			payloadQueue.addToEnd(herci[i]);
+			enqueue(herci[i]);
 		}
 		return true;
 	}
@@ -700,10 +840,15 @@ public class PayloadStore extends FoxPayloadStore implements Runnable {
 	 * @return
 	 */
 	public double[][] getGraphData(String name, int period, Spacecraft fox, int fromReset, long fromUptime, String layout, boolean positionData, boolean reverse) {
+		return getGraphData(name, period, fox, fromReset, fromUptime, layout, positionData, reverse, 0);
+	}
+
+	@Override
+	public double[][] getGraphData(String name, int period, Spacecraft fox, int fromReset, long fromUptime, String layout, boolean positionData, boolean reverse, int width) {
 		SatPayloadStore store = getPayloadStoreById(fox.foxId);
 		if (store != null)
 			try {
-				return store.getGraphData(name, period, fox, fromReset, fromUptime, layout, positionData, reverse);
+				return store.getGraphData(name, period, fox, fromReset, fromUptime, layout, positionData, reverse, width);
 			} catch (IOException e) {
 				// TODO Auto-generated catch block
 				e.printStackTrace(Log.getWriter());
@@ -711,6 +856,19 @@ public class PayloadStore extends FoxPayloadStore implements Runnable {
 			}
 		return null;
 	}
+	@Override
+	public double[][][] getGraphData(String[] names, int period, Spacecraft fox, int fromReset, long fromUptime, String layout, boolean positionData, boolean reverse, int width) {
+		SatPayloadStore store = getPayloadStoreById(fox.foxId);
+		if (store != null)
+			try {
+				return store.getGraphData(names, period, fox, fromReset, fromUptime, layout, positionData, reverse, width);
+			} catch (IOException e) {
+				e.printStackTrace(Log.getWriter());
+				Log.println("ERROR getting graph data: " + e.getMessage());
+			}
+		return null;
+	}
+	
 	public double[][] getRtGraphData(String name, int period, Spacecraft fox, int fromReset, long fromUptime, boolean positionData, boolean reverse) {
 		SatPayloadStore store = getPayloadStoreById(fox.foxId);
 		if (store != null)
@@ -815,6 +973,14 @@ public class PayloadStore extends FoxPayloadStore implements Runnable {
 		return null;
 	}
 
+	@Override
+	public long exportToCSV(int id, String layout, Writer out, boolean converted, boolean positionData, PayloadCsvWriter.Progress progress) throws IOException {
+		SatPayloadStore store = getPayloadStoreById(id);
+		if (store != null)
+			return store.exportToCSV(layout, out, converted, positionData, progress);
+		return -1;
+	}
+
 	
 	public String[][] getRadData(int period, int id, int fromReset, long fromUptime, boolean reverse) {
 		SatPayloadStore store = getPayloadStoreById(id);
@@ -933,13 +1099,15 @@ public class PayloadStore extends FoxPayloadStore implements Runnable {
 		loaded=true;
 	}
 	
+	/**
+	 * Offload loaded payload segments if they have grown past the memory budget.  All of the payload tables
+	 * share one SegmentCache.  Measurement segments are offloaded once they have not been used for a while
+	 */
 	public void offloadSegments() {
-		for (SatPayloadStore store : payloadStore)
+		SegmentCache.getInstance().evict();
+		for (SatMeasurementStore store : measurementStore)
 			if (store != null)
 				store.offloadSegments();
-//		for (SatMeasurementStore store : measurementStore)
-//			if (store != null)
-//				store.offloadSegments();
 //		for (SatPictureStore store : pictureStore)
 //			if (store != null)
 //				store.offloadSegments();
@@ -947,40 +1115,141 @@ public class PayloadStore extends FoxPayloadStore implements Runnable {
 	}
 	
 	/**
-	 * The run thread is for inserts, so that we minimize the load on the decoder.  We check the queue of payloads and add any that are in it
+	 * Write payloads that are waiting in the group commit journals once their commit period is up
+	 */
+	private void commitPayloads() {
+		for (SatPayloadStore store : payloadStore)
+			if (store != null)
+				try {
+					store.commitIfDue();
+				} catch (IOException e) {
+					Log.println("ERROR: Could not write payloads to disk: " + e.getMessage());
+					e.printStackTrace(Log.getWriter());
+				}
+	}
+	
+	/**
+	 * Write every payload that is waiting in a journal to disk.  Called at shutdown so nothing is lost
+	 */
+	@Override
+	public void flush() {
+		for (SatPayloadStore store : payloadStore)
+			if (store != null)
+				try {
+					store.close();
+				} catch (IOException e) {
+					Log.println("ERROR: Could not write payloads to disk: " + e.getMessage());
+					e.printStackTrace(Log.getWriter());
+				}
+	}
+	
+	/**
+	 * Compact the tables of every spacecraft and log what was reclaimed.  Called from the menu, or from the command
+	 * line before the GUI is started
+	 */
+	@Override
+	public CompactionReport compact() {
+		CompactionReport report = new CompactionReport();
+		for (SatPayloadStore store : payloadStore)
+			if (store != null)
+				try {
+					report.add(store.compact());
+				} catch (IOException e) {
+					Log.println("ERROR: Could not compact the payloads for sat: " + store.foxId + " " + e.getMessage());
+					e.printStackTrace(Log.getWriter());
+				}
+		Log.println(report.toString());
+		return report;
+	}
+	
+	/**
+	 * Write a batch of payloads taken from the queue.  The payloads for each spacecraft are handed to its store in one
+	 * call, which saves each layout to its table together.  If the batch fails then the payloads are saved one at a
+	 * time, so that one bad payload does not lose the others.  Any that were already saved are rejected as duplicates.
+	 * @param batch
+	 */
+	private void savePayloads(ArrayList<QueuedPayload> batch) {
+		LinkedHashMap<Integer, ArrayList<FramePart>> sats = new LinkedHashMap<Integer, ArrayList<FramePart>>();
+		for (QueuedPayload q : batch) {
+			FramePart f = q.payload;
+			if (f == null) {
+				Log.println("NULL RECORD IN THE Q");
+				continue;
+			}
+			if (Config.debugFieldValues) {
+				Log.println(f.toString() + "\n");
+			}
+			if (f instanceof PayloadCameraData) {
+				addToPictureFile(f.id, f.uptime, f.resets, (PayloadCameraData)f);
+				continue;
+			}
+			ArrayList<FramePart> parts = sats.get(f.id);
+			if (parts == null) {
+				parts = new ArrayList<FramePart>();
+				sats.put(f.id, parts);
+			}
+			parts.add(f);
+		}
+		for (ArrayList<FramePart> parts : sats.values()) {
+			SatPayloadStore store = getPayloadStoreById(parts.get(0).id);
+			if (store == null) continue;
+			try {
+				store.add(parts);
+			} catch (Exception e) {
+				Log.println("ERROR: Could not save batch of " + parts.size() + " payloads, saving them one at a time: " + e);
+				e.printStackTrace(Log.getWriter());
+				for (FramePart f : parts)
+					addToFile(f.id, f.uptime, f.resets, f);
+			}
+		}
+		long now = System.nanoTime()/1000000;
+		long latency = 0;
+		for (QueuedPayload q : batch) {
+			totalDrainLatency.addAndGet(now - q.queued);
+			latency = Math.max(latency, now - q.queued);
+		}
+		lastDrainLatency = latency;
+		if (latency > maxDrainLatency) maxDrainLatency = latency;
+		payloadsWritten.addAndGet(batch.size());
+		batchesWritten.incrementAndGet();
+	}
+	
+	/**
+	 * The run thread is for inserts, so that we minimize the load on the decoder.  It waits on the payload queue, so
+	 * a payload is written as soon as it arrives, and takes everything that is waiting as one batch.  If nothing
+	 * arrives in the poll period then the thread wakes anyway to commit the journals and offload segments.
 	 */
 	@Override
 	public void run() {
 
 		running = true;
 		done = false;
+		writer = Thread.currentThread();
+		ArrayList<QueuedPayload> batch = new ArrayList<QueuedPayload>(MAX_BATCH_SIZE);
 		while(running) {
 			try {
-				Thread.sleep(100); // check for new inserts multiple times per second
+				if (this.initialized()) {
+					QueuedPayload q = payloadQueue.poll(QUEUE_POLL_PERIOD, TimeUnit.MILLISECONDS);
+					if (q != null) {
+						batch.add(q);
+						payloadQueue.drainTo(batch, MAX_BATCH_SIZE - 1);
+					}
+				} else {
+					Thread.sleep(QUEUE_POLL_PERIOD); // leave the payloads queued until we are loaded
+				}
 			} catch (InterruptedException e) {
 				Log.println("ERROR: PayloadStore thread interrupted");
 				e.printStackTrace(Log.getWriter());
 			}
 			offloadSegments();
+			if (batch.size() > 0) {
+				savePayloads(batch);
+				unsaved.addAndGet(-batch.size());
+				batch.clear();
+				if (Config.debugSegs) Log.println(getIngestStats());
+			}
 			if (this.initialized()) {
-				if (payloadQueue.size() > 0) {
-					while (payloadQueue.size() > 0) {
-						FramePart f = payloadQueue.get(0);
-						if (f == null) {
-							Log.println("NULL RECORD IN THE Q");
-						} else {
-							if (Config.debugFieldValues) {
-								Log.println(f.toString() + "\n");
-							}
-							if (f instanceof PayloadCameraData)
-								addToPictureFile(f.id, f.uptime, f.resets, (PayloadCameraData)f);
-							else
-								addToFile(f.id, f.uptime, f.resets, f);
-						}
-						payloadQueue.remove(0);
-						Thread.yield(); // don't hog the thread or we block when trying to add new payloads
-					}
-				}
+				commitPayloads();
 				if (measurementQueue.size() > 0) {
 					while (measurementQueue.size() > 0) {
 						Measurement f = measurementQueue.get(0);
@@ -1000,6 +1269,19 @@ public class PayloadStore extends FoxPayloadStore implements Runnable {
 		done = true;
 	}
 
+	/**
+	 * A payload and the time it was queued, for the drain latency
+	 */
+	private static class QueuedPayload {
+		final FramePart payload;
+		final long queued;
+		
+		QueuedPayload(FramePart payload) {
+			this.payload = payload;
+			queued = System.nanoTime()/1000000;
+		}
+	}
+
 	public void initRad2() {
 		
 	}
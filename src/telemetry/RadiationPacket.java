@@ -2,7 +2,6 @@ package telemetry;
 
 import common.FoxSpacecraft;
 import common.Spacecraft;
-import decoder.FoxBitStream;
 
 /**
  * 
@@ -101,7 +100,7 @@ public class RadiationPacket extends BitArray{
 			reset = r;
 			uptime = u;
 			
-			rawBits = new boolean[MAX_PACKET_BYTES*8];
+			rawBits = new byte[MAX_PACKET_BYTES];
 			
 			layout = new BitArrayLayout(); // initialize a layout
 			
@@ -189,6 +188,7 @@ public class RadiationPacket extends BitArray{
 			else if (getType() == EXPERIMENT)
 				setTypeEXPERIMENT();
 			else setTypeASCII();
+			layout.fieldsChanged(); // the names were set in place, so the layout must index them again
 		}
 
 		public void setTypeASCII() {
@@ -369,17 +369,12 @@ public class RadiationPacket extends BitArray{
 		/**
 		 * We have bytes in big endian order, so we need to add the bits in a way
 		 * that makes sense when we retrieve them sequentially
-		 * So we add the msb first.  Then when 12 bits pulled in a row it will make sense.
+		 * The byte is stored as it is and nextbits() reads the msb first.  Then when 12 bits pulled in a row it will make sense.
 		 * Note that if we pull a subset of 8 bits, then we have to be careful of the order.
 		 * @param b
 		 */
 		public void addNext8Bits(int b) {
-			for (int i=0; i<8; i++) {
-				if ((b >> i & 1) == 1) 
-					rawBits[7-i+numberBytesAdded*8] = true;
-				else 
-					rawBits[7-i+numberBytesAdded*8] = false;
-			}
+			rawBits[numberBytesAdded] = (byte)b;
 			numberBytesAdded++;	
 		}
 
@@ -391,17 +386,7 @@ public class RadiationPacket extends BitArray{
 		 * @return
 		*/
 		protected int nextbits(int n ) {
-			int field = 0;
-			
-			boolean[] b = new boolean[n];
-			for (int i=0; i < n; i++) {
-				b[i] = rawBits[bitPosition+i];
-				
-			}
-			bitPosition = bitPosition + n;
-			field = FoxBitStream.binToInt(b);
-			return field;
-			
+			return nextbitsMsbFirst(n);
 		}
 
 		/**
@@ -411,11 +396,7 @@ public class RadiationPacket extends BitArray{
 		 * @return
 		 */
 		public String getStringValue(String name) {
-			int pos = -1;
-			for (int i=0; i < layout.fieldName.length; i++) {
-				if (name.equalsIgnoreCase(layout.fieldName[i]))
-					pos = i;
-			}
+			int pos = layout.getPositionByName(name);
 			String s = "-----";
 			// Special Formatting
 			if (pos == -1) 
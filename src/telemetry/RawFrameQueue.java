@@ -5,6 +5,7 @@ import gui.MainWindow;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 import javax.swing.JOptionPane;
@@ -89,20 +90,20 @@ public class RawFrameQueue extends RawQueue {
 	public boolean add(Frame f) throws IOException {
 		if (f instanceof SlowSpeedFrame ) {
 				updatedSlowQueue = true;
-				save(f, RAW_SLOW_SPEED_FRAMES_FILE);
+				save(f, RAW_SLOW_SPEED_FRAMES_FILE, rawSlowSpeedFrames);
 				MainWindow.setTotalQueued(this.rawSlowSpeedFrames.size() + this.rawHighSpeedFrames.size()+ this.rawPSKFrames.size());
-				return rawSlowSpeedFrames.add(f);
+				return true;
 			
 		} else if (f instanceof FoxBPSKFrame ) {
 				updatedPSKQueue = true;
-				save(f, RAW_PSK_FRAMES_FILE);
+				save(f, RAW_PSK_FRAMES_FILE, rawPSKFrames);
 				MainWindow.setTotalQueued(this.rawSlowSpeedFrames.size() + this.rawHighSpeedFrames.size() + this.rawPSKFrames.size());
-				return rawPSKFrames.add(f);
+				return true;
 		} else {
 				updatedHSQueue = true;
-				save(f, RAW_HIGH_SPEED_FRAMES_FILE);
+				save(f, RAW_HIGH_SPEED_FRAMES_FILE, rawHighSpeedFrames);
 				MainWindow.setTotalQueued(this.rawSlowSpeedFrames.size() + this.rawHighSpeedFrames.size() + this.rawPSKFrames.size());
-				return rawHighSpeedFrames.add(f);
+				return true;
 		}		
 	}
 
@@ -110,8 +111,11 @@ public class RawFrameQueue extends RawQueue {
 	public void delete() {
 		try {
 			SatPayloadStore.remove(SatPayloadTable.getDir() + RAW_SLOW_SPEED_FRAMES_FILE);
+			SatPayloadStore.remove(SatPayloadTable.getDir() + RAW_SLOW_SPEED_FRAMES_FILE + RawQueueFile.OFFSET_EXT);
 			SatPayloadStore.remove(SatPayloadTable.getDir() + RAW_HIGH_SPEED_FRAMES_FILE);
+			SatPayloadStore.remove(SatPayloadTable.getDir() + RAW_HIGH_SPEED_FRAMES_FILE + RawQueueFile.OFFSET_EXT);
 			SatPayloadStore.remove(SatPayloadTable.getDir() + RAW_PSK_FRAMES_FILE);
+			SatPayloadStore.remove(SatPayloadTable.getDir() + RAW_PSK_FRAMES_FILE + RawQueueFile.OFFSET_EXT);
 			init();
 		} catch (IOException ex) {
 			JOptionPane.showMessageDialog(MainWindow.frame,
@@ -130,6 +134,8 @@ public class RawFrameQueue extends RawQueue {
 		running = true;
 		boolean success = true;
 		int retryStep = 0;
+		int retryWait = 0; // periods to wait before trying again after a failure
+		int failures = 0; // rounds in a row that could not send
 		while(running) {
 			
 			try {
@@ -139,22 +145,26 @@ public class RawFrameQueue extends RawQueue {
 				e.printStackTrace(Log.getWriter());
 			} 			
 			MainWindow.setTotalQueued(this.rawSlowSpeedFrames.size() + this.rawHighSpeedFrames.size() + this.rawPSKFrames.size());
+			saveOffsets();
 			if (Config.uploadToServer) {
 				if (!success) {
-					// We failed the last time we tried to connect, so wait until we retry
+					// We failed the last time we tried to connect, so wait until we retry.  The wait doubles with each
+					// failure in a row, up to the retry wait period
 					//System.out.print(".");
-					if (retryStep++ > Config.serverRetryWaitPeriod) {
+					if (retryStep++ >= retryWait) {
 						success = true;
 						retryStep = 0;
 					}
 				}
+				boolean trying = success;
 				// try to send these frames to the server
-				// We attempt to send the first one, if unsuccessful, we try the backup server.  If still unsuccessful we drop out
+				// We attempt to send a batch from the head of each queue, if unsuccessful, we try the backup server.  If still unsuccessful we drop out
 				// and try next time, unless sendToBoth is set, in which case we just send to both servers
 				if (rawSlowSpeedFrames.size() > 0 && success) {
 					// If we are in a pass, then don't send the last frame
-					if (!Config.passManager.inPass() || (Config.passManager.inPass() && rawSlowSpeedFrames.size() > 1))
-						success = sendFrame(rawSlowSpeedFrames, RAW_SLOW_SPEED_FRAMES_FILE);
+					int limit = batchLimit(rawSlowSpeedFrames);
+					if (limit > 0)
+						success = sendFrames(rawSlowSpeedFrames, limit, RAW_SLOW_SPEED_FRAMES_FILE);
 					try {
 						Thread.sleep(100); // pause so that the server can keep up
 					} catch (InterruptedException e) {
@@ -163,8 +173,9 @@ public class RawFrameQueue extends RawQueue {
 					} 	
 				}
 				if (rawHighSpeedFrames.size() > 0 && success) {
-					if (!Config.passManager.inPass() || (Config.passManager.inPass() && rawHighSpeedFrames.size() > 1))
-						success = sendFrame(rawHighSpeedFrames, RAW_HIGH_SPEED_FRAMES_FILE);
+					int limit = batchLimit(rawHighSpeedFrames);
+					if (limit > 0)
+						success = sendFrames(rawHighSpeedFrames, limit, RAW_HIGH_SPEED_FRAMES_FILE);
 					try {
 						Thread.sleep(100); // pause so that the server can keep up
 					} catch (InterruptedException e) {
@@ -173,8 +184,9 @@ public class RawFrameQueue extends RawQueue {
 					}
 				}
 				if (rawPSKFrames.size() > 0 && success) {
-					if (!Config.passManager.inPass() || (Config.passManager.inPass() && rawPSKFrames.size() > 1))
-						success = sendFrame(rawPSKFrames, RAW_PSK_FRAMES_FILE);
+					int limit = batchLimit(rawPSKFrames);
+					if (limit > 0)
+						success = sendFrames(rawPSKFrames, limit, RAW_PSK_FRAMES_FILE);
 					try {
 						Thread.sleep(100); // pause so that the server can keep up
 					} catch (InterruptedException e) {
@@ -182,13 +194,40 @@ public class RawFrameQueue extends RawQueue {
 						e.printStackTrace(Log.getWriter());
 					}
 				}
+				if (trying) {
+					if (success) {
+						failures = 0;
+					} else {
+						failures++;
+						retryWait = Math.min(1 << Math.min(failures - 1, 16), Config.serverRetryWaitPeriod);
+					}
+				}
 			}
 		}
 		Log.println("Server Queue thread ended");
 	}
 
-	private boolean sendFrame(ConcurrentLinkedQueue<Frame> frames, String file) {
-		boolean success = false;
+	/**
+	 * @return the number of frames to send from the head of this queue.  If we are in a pass then the last frame is
+	 * held back, so that the TCA can be added to it
+	 */
+	private int batchLimit(ConcurrentLinkedQueue<Frame> frames) {
+		int limit = Math.max(Config.serverBatchSize, 1);
+		if (Config.passManager.inPass())
+			limit = Math.min(limit, frames.size() - 1);
+		return limit;
+	}
+
+	/**
+	 * Send a batch of frames from the head of the queue on one connection and remove the ones that the server
+	 * acknowledged.  A server that takes one frame per connection is sent just the first
+	 * @param frames
+	 * @param limit - the most frames to send
+	 * @param file
+	 * @return true if any frames were sent
+	 */
+	private boolean sendFrames(ConcurrentLinkedQueue<Frame> frames, int limit, String file) {
+		int sent = 0;
 		if (Config.passManager.hasTCA()) {
 			PassMeasurement passMeasurement = Config.passManager.getPassMeasurement(); 
 			if (frames.peek() != null) {
@@ -201,15 +240,17 @@ public class RawFrameQueue extends RawQueue {
 		primaryServer.setHostName(Config.primaryServer);
 		secondaryServer.setHostName(Config.secondaryServer);
 		
+		ArrayList<byte[]> batch = new ArrayList<byte[]>(limit);
+		for (Frame f : frames) {
+			if (batch.size() >= limit) break;
+			batch.add(f.getServerBytes());
+		}
 		String protocol = "udp";
 		if (Config.serverProtocol == TlmServer.TCP)
 			protocol = "tcp";
 		Log.println("Trying Primary Server: " + protocol + "://" + Config.primaryServer + ":" + Config.serverPort);
 		try {
-			if (frames.peek() != null) {
-				byte[] buffer = frames.peek().getServerBytes();
-				success = primaryServer.sendToServer(buffer, Config.serverProtocol);
-			}
+			sent = primaryServer.sendToServer(batch, Config.serverProtocol);
 		} catch (UnknownHostException e) {
 			Log.println("Could not connect to primary server:" + e.getMessage());
 			//e.printStackTrace(Log.getWriter());
@@ -218,13 +259,10 @@ public class RawFrameQueue extends RawQueue {
 			//e.printStackTrace(Log.getWriter());
 		}
 		if (running)
-			if (Config.sendToBothServers || !success) // We send to the secondary if we failed or if we are sending to both servers
+			if (Config.sendToBothServers || sent == 0) // We send to the secondary if we failed or if we are sending to both servers
 			try {
 				Log.println("Trying Secondary Server: " + protocol + "://" + Config.secondaryServer + ":" + Config.serverPort);
-				if (frames.peek() != null) {
-					byte[] buffer = frames.peek().getServerBytes();
-					success = secondaryServer.sendToServer(buffer, Config.serverProtocol);
-				}
+				sent = Math.max(sent, secondaryServer.sendToServer(batch, Config.serverProtocol));
 			} catch (UnknownHostException e) {
 				Log.println("Could not connect to secondary server: " + e.getMessage());
 				//e.printStackTrace(Log.getWriter());
@@ -232,16 +270,17 @@ public class RawFrameQueue extends RawQueue {
 				Log.println("IO Exception with secondary server: " + e.getMessage());
 				//e.printStackTrace(Log.getWriter());
 			}
-		if (success) // then at least one of the transmissions was successful
+		for (int i=0; i < sent; i++) // these were sent to at least one of the servers
 			try {
 				//Log.println("Sent frame " + frames.get(0).header.toString());
-				deleteAndSave(frames, file);
+				deleteHead(frames, file);
 			} catch (IOException e) {
 				Log.errorDialog("ERROR", "Could not remove raw frames from the queue file:\n" + file + "\n"
 						+ " The frame will be sent again.  If this error repeats you may need to remove the queue file manually");
 				e.printStackTrace(Log.getWriter());
+				break;
 			}
 		MainWindow.setTotalQueued(this.rawSlowSpeedFrames.size() + this.rawHighSpeedFrames.size()+ this.rawPSKFrames.size());
-		return success; // return true if one succeeded
+		return sent > 0; // return true if one succeeded
 	}
-}
\ No newline at end of file
+}
@@ -80,20 +80,20 @@ public class RawPayloadQueue extends RawQueue {
 	public boolean add(Frame f) throws IOException {
 		if (f instanceof SlowSpeedFrame ) {
 				updatedSlowQueue = true;
-				save(f, RAW_SLOW_SPEED_FRAMES_FILE);
+				save(f, RAW_SLOW_SPEED_FRAMES_FILE, rawSlowSpeedFrames);
 				MainWindow.setLocalQueued(this.rawSlowSpeedFrames.size() + this.rawHighSpeedFrames.size() + this.rawPSKFrames.size());
-				return rawSlowSpeedFrames.add(f);
+				return true;
 			
 		} else if (f instanceof FoxBPSKFrame ) {
 				updatedPSKQueue = true;
-				save(f, RAW_PSK_FRAMES_FILE);
+				save(f, RAW_PSK_FRAMES_FILE, rawPSKFrames);
 				MainWindow.setLocalQueued(this.rawSlowSpeedFrames.size() + this.rawHighSpeedFrames.size() + this.rawPSKFrames.size());
-				return rawPSKFrames.add(f);
+				return true;
 		} else {
 				updatedHSQueue = true;
-				save(f, RAW_HIGH_SPEED_FRAMES_FILE);
+				save(f, RAW_HIGH_SPEED_FRAMES_FILE, rawHighSpeedFrames);
 				MainWindow.setLocalQueued(this.rawSlowSpeedFrames.size() + this.rawHighSpeedFrames.size() + this.rawPSKFrames.size());
-				return rawHighSpeedFrames.add(f);
+				return true;
 		}		
 		
 	}
@@ -101,8 +101,11 @@ public class RawPayloadQueue extends RawQueue {
 	public void delete() {
 		try {
 			SatPayloadStore.remove(SatPayloadTable.getDir() + RAW_SLOW_SPEED_FRAMES_FILE);
+			SatPayloadStore.remove(SatPayloadTable.getDir() + RAW_SLOW_SPEED_FRAMES_FILE + RawQueueFile.OFFSET_EXT);
 			SatPayloadStore.remove(SatPayloadTable.getDir() + RAW_HIGH_SPEED_FRAMES_FILE);
+			SatPayloadStore.remove(SatPayloadTable.getDir() + RAW_HIGH_SPEED_FRAMES_FILE + RawQueueFile.OFFSET_EXT);
 			SatPayloadStore.remove(SatPayloadTable.getDir() + RAW_PSK_FRAMES_FILE);
+			SatPayloadStore.remove(SatPayloadTable.getDir() + RAW_PSK_FRAMES_FILE + RawQueueFile.OFFSET_EXT);
 			init();
 		} catch (IOException ex) {
 			JOptionPane.showMessageDialog(MainWindow.frame,
@@ -129,6 +132,7 @@ public class RawPayloadQueue extends RawQueue {
 				Log.println("ERROR: server payload queue thread interrupted");
 				e.printStackTrace(Log.getWriter());
 			}
+			saveOffsets();
 			
 			// try to send these frames to the server
 			// We attempt to send the first one, if unsuccessful, we try the backup server.  If still unsuccessful we drop out
@@ -193,7 +197,7 @@ public class RawPayloadQueue extends RawQueue {
 		if (success) // then at least one of the transmissions was successful
 			try {
 				//Log.println("Sent frame " + frames.get(0).header.toString());
-				deleteAndSave(frames, file);
+				deleteHead(frames, file);
 			} catch (IOException e) {
 				Log.errorDialog("ERROR", "Could not remove raw frames from the local queue file:\n" + file + "\n"
 						+ " The frame will be sent again.  If this error repeats you may need to remove the queue file manually");
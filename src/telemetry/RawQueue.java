@@ -3,11 +3,10 @@ package telemetry;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.HashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 import common.Config;
@@ -27,6 +26,7 @@ public abstract class RawQueue implements Runnable {
 	protected boolean updatedPSKQueue = false;
 	
 	boolean running = false;
+	HashMap<String, RawQueueFile> files = new HashMap<String, RawQueueFile>(); // the file behind each queue, by log name
 	
 	RawQueue() {
 		
@@ -35,115 +35,96 @@ public abstract class RawQueue implements Runnable {
 	public abstract boolean add(Frame f) throws IOException;
 	public abstract void delete();
 	
-	protected void load(String log, int type) throws IOException {
+	/**
+	 * Load the frames in the queue file that have not been sent yet
+	 * @param log
+	 * @param type
+	 * @throws IOException
+	 */
+	protected void load(String log, final int type) throws IOException {
+		String name = log;
 		if (!Config.logFileDirectory.equalsIgnoreCase("")) {
 			log = Config.logFileDirectory + File.separator + log;
 			Log.println("Loading: " + log);
 		}
-		File aFile = new File(log );
-		if(!aFile.exists()){
-			aFile.createNewFile();
-		}
-
-		FileInputStream dis = new FileInputStream(log);
-		BufferedReader reader = new BufferedReader(new InputStreamReader(dis));
-
-		Frame frame = null;
-		//int size = 0;
-		if (type == Frame.DUV_FRAME) {
-			//size = SlowSpeedFrame.MAX_HEADER_SIZE + SlowSpeedFrame.MAX_PAYLOAD_SIZE
-			//		+ SlowSpeedFrame.MAX_TRAILER_SIZE;
-			while (reader.ready()) {
-				frame = new SlowSpeedFrame(reader);
-				rawSlowSpeedFrames.add(frame);
-			}
-			updatedSlowQueue = true;
-		} else if (type == Frame.PSK_FRAME) {
-			while (reader.ready()) {
-				frame = new FoxBPSKFrame(reader);
-				rawPSKFrames.add(frame);
-			}
-			updatedPSKQueue = true;
-		} else if (type == Frame.HIGH_SPEED_FRAME) {
-			//size = HighSpeedFrame.MAX_HEADER_SIZE + HighSpeedFrame.MAX_PAYLOAD_SIZE 
-			//		+ HighSpeedFrame.MAX_TRAILER_SIZE;
-			while (reader.ready()) {
-				frame = new HighSpeedFrame(reader);
-				rawHighSpeedFrames.add(frame);
+		RawQueueFile file = new RawQueueFile(log);
+		files.put(name, file);
+		file.open(new RawQueueFile.LineLoader() {
+			public boolean load(String line) {
+				BufferedReader reader = new BufferedReader(new StringReader(line));
+				try {
+					if (type == Frame.DUV_FRAME) {
+						rawSlowSpeedFrames.add(new SlowSpeedFrame(reader));
+						updatedSlowQueue = true;
+					} else if (type == Frame.PSK_FRAME) {
+						rawPSKFrames.add(new FoxBPSKFrame(reader));
+						updatedPSKQueue = true;
+					} else if (type == Frame.HIGH_SPEED_FRAME) {
+						rawHighSpeedFrames.add(new HighSpeedFrame(reader));
+						updatedHSQueue = true;
+					}
+					return true;
+				} catch (IOException e) {
+					e.printStackTrace(Log.getWriter());
+				} catch (RuntimeException e) {
+					Log.println("Could not load a queued frame, it will not be sent: " + e);
+				}
+				return false;
 			}
-			updatedHSQueue = true;
-		}
-
-		dis.close();
+		});
 		MainWindow.setTotalQueued(this.rawSlowSpeedFrames.size() + this.rawHighSpeedFrames.size() + this.rawPSKFrames.size());
 
 	}
 
 	/**
-	 * Save a payload to the log file
+	 * Append a frame to the queue file and add it to the queue
 	 * @param frame
 	 * @param log
+	 * @param frames
 	 * @throws IOException
 	 */
-	protected void save(Frame frame, String log) throws IOException {
-		if (!Config.logFileDirectory.equalsIgnoreCase("")) {
-			log = Config.logFileDirectory + File.separator + log;
-		} 
-		synchronized(this) { // make sure we have exlusive access to the file on disk, otherwise a removed frame can clash with this
-			File aFile = new File(log );
-			if(!aFile.exists()){
-				aFile.createNewFile();
-			}
-			//Log.println("Saving: " + log);
-			//use buffering and append to the existing file
-			FileOutputStream dis = new FileOutputStream(log, true);
-			BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(dis));
-
-			try {
-				frame.save(writer);
-			} finally {
-				writer.flush();
-				writer.close();
-			}
-
-			writer.close();
-			dis.close();
+	protected void save(Frame frame, String log, ConcurrentLinkedQueue<Frame> frames) throws IOException {
+		StringWriter line = new StringWriter();
+		BufferedWriter writer = new BufferedWriter(line);
+		frame.save(writer);
+		writer.flush();
+		synchronized(this) { // the frame must be added to the queue in the same order as the file, so that sent frames remove the right lines
+			files.get(log).append(line.toString().getBytes());
+			frames.add(frame);
 		}
 	}
 
 	/**
-	 * Remove the first record in the queue.  Save all of the records to the file as a backup
+	 * Remove the first record in the queue, now that it has been sent.  The frames are never written again, the queue
+	 * file just records that one more has been sent
 	 * @throws IOException 
 	 */
-	protected void deleteAndSave(ConcurrentLinkedQueue<Frame> frames, String log) throws IOException {
+	protected void deleteHead(ConcurrentLinkedQueue<Frame> frames, String log) throws IOException {
 		synchronized(this) {  // make sure we have exclusive access to the file on disk, otherwise a frame being added can clash with this
 			frames.poll(); // remove the head of the queue
-			if (!Config.logFileDirectory.equalsIgnoreCase("")) {
-				log = Config.logFileDirectory + File.separator + log;
-			} 
-			File aFile = new File(log );
-			if(!aFile.exists()){
-				aFile.createNewFile();
-			}
-			//use buffering and OVERWRITE the existing file
-			FileOutputStream dis = new FileOutputStream(log, false);
-			BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(dis));
-			try {
-				for (Frame f : frames) {
-					f.save(writer);
-				}
-			} finally {
-				writer.flush();
-				writer.close();
-			}
-
+			files.get(log).removeHead();
 		}
 	}
 	
+	/**
+	 * Save the sent offsets of the queue files if they are due
+	 */
+	protected void saveOffsets() {
+		for (RawQueueFile file : files.values())
+			try {
+				file.saveIfDue();
+			} catch (IOException e) {
+				Log.println("ERROR: Could not save the sent offset of a queue file: " + e.getMessage());
+			}
+	}
 
-
-	
 	public void stopProcessing() {
 		running = false;
+		for (RawQueueFile file : files.values())
+			try {
+				file.save();
+			} catch (IOException e) {
+				Log.println("ERROR: Could not save the sent offset of a queue file: " + e.getMessage());
+			}
 	}
 }
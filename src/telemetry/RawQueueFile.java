@@ -0,0 +1,325 @@
+package telemetry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.StringTokenizer;
+import java.util.zip.CRC32;
+
+import common.Log;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The file behind one of the raw frame queues.  Frames are only ever appended to the log, which keeps the format of
+ * the original queue files, one frame to a line.  When the frame at the head of the queue has been sent, the offset of
+ * the first unsent frame is moved on rather than the rest of the log being written again.  The offset is saved, with
+ * an fsync, in a file beside the log after every OFFSET_SYNC_FRAMES frames or OFFSET_SYNC_PERIOD ms, so after a crash
+ * only the last few frames are sent again.  The checksum of the last sent line is saved with the offset.  If it does
+ * not match the log, for example because an earlier version has rewritten the log, then the offset is ignored and the
+ * whole log is sent, as it was before.
+ *
+ * Once every frame has been sent the log is truncated.  If the queue is never quite empty, the unsent frames are
+ * copied to a new log once more than COMPACT_BYTES have been sent and they are more than half of the log.
+ *
+ */
+public class RawQueueFile {
+	public static final String OFFSET_EXT = ".offset";
+	public static final int OFFSET_SYNC_FRAMES = 20;
+	public static final long OFFSET_SYNC_PERIOD = 5000; // ms
+	public static final long COMPACT_BYTES = 1000000;
+
+	private final File log;
+	private final File offsetFile;
+	private long offset = 0; // bytes at the start of the log that have been sent
+	private long crc = 0; // checksum of the sent line that ends at the offset
+	private long savedOffset = 0;
+	private long lastSave = System.currentTimeMillis();
+	private int unsaved = 0; // frames sent since the offset was saved
+	private final ArrayDeque<long[]> pending = new ArrayDeque<long[]>(); // end offset and checksum of each unsent frame
+
+	/**
+	 * Loads the frames from the lines of the log when it is opened
+	 */
+	public interface LineLoader {
+		/**
+		 * @param line
+		 * @return false if the line did not hold a frame
+		 */
+		public boolean load(String line);
+	}
+
+	public RawQueueFile(String log) {
+		this.log = new File(log);
+		this.offsetFile = new File(log + OFFSET_EXT);
+	}
+
+	/**
+	 * Read the frames that have not been sent.  A partly written line at the end of the log, left by a crash, is
+	 * removed
+	 * @param loader
+	 * @return the number of frames loaded
+	 * @throws IOException
+	 */
+	public synchronized int open(LineLoader loader) throws IOException {
+		if (!log.exists())
+			log.createNewFile();
+		long[] saved = loadOffset();
+		ArrayList<long[]> lines = new ArrayList<long[]>(); // start, end and checksum of each line
+		InputStream in = new BufferedInputStream(new FileInputStream(log));
+		long end = 0;
+		try {
+			long start = 0;
+			long pos = 0;
+			CRC32 lineCrc = new CRC32();
+			int c;
+			while ((c = in.read()) != -1) {
+				pos++;
+				if (c == '\n') {
+					lines.add(new long[] {start, pos, lineCrc.getValue()});
+					lineCrc.reset();
+					start = pos;
+				} else {
+					lineCrc.update(c);
+				}
+			}
+			end = start;
+			if (pos > end) {
+				Log.println("Removing a partly written frame from the end of " + log.getName());
+				RandomAccessFile file = new RandomAccessFile(log, "rw");
+				try {
+					file.setLength(end);
+				} finally {
+					file.close();
+				}
+			}
+		} finally {
+			in.close();
+		}
+
+		// Find the first unsent line, if the saved offset still matches the log
+		int first = 0;
+		offset = 0;
+		crc = 0;
+		if (saved != null) {
+			for (int i=0; i < lines.size(); i++)
+				if (lines.get(i)[1] == saved[0] && lines.get(i)[2] == saved[1]) {
+					first = i + 1;
+					offset = saved[0];
+					crc = saved[1];
+				}
+			if (offset == 0 && saved[0] != 0)
+				Log.println("The sent offset does not match " + log.getName() + ", all of the frames in it will be sent");
+		}
+		savedOffset = offset;
+
+		pending.clear();
+		int loaded = 0;
+		RandomAccessFile file = new RandomAccessFile(log, "r");
+		try {
+			for (int i=first; i < lines.size(); i++) {
+				long[] line = lines.get(i);
+				byte[] bytes = new byte[(int)(line[1] - line[0] - 1)];
+				file.seek(line[0]);
+				file.readFully(bytes);
+				if (bytes.length > 0 && loader.load(new String(bytes))) {
+					pending.add(new long[] {line[1], line[2]});
+					loaded++;
+				}
+			}
+		} finally {
+			file.close();
+		}
+		return loaded;
+	}
+
+	/**
+	 * @return the saved offset and checksum, or null if there is no offset saved or it can not be read
+	 */
+	private long[] loadOffset() {
+		if (!offsetFile.exists()) return null;
+		try {
+			BufferedReader reader = new BufferedReader(new FileReader(offsetFile));
+			try {
+				StringTokenizer st = new StringTokenizer(reader.readLine(), ",");
+				return new long[] {Long.parseLong(st.nextToken()), Long.parseLong(st.nextToken())};
+			} finally {
+				reader.close();
+			}
+		} catch (Exception e) {
+			Log.println("Could not read the sent offset for " + log.getName() + ": " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * Append a frame to the end of the log
+	 * @param line - the frame as it is saved, ending with a new line
+	 * @throws IOException
+	 */
+	public synchronized void append(byte[] line) throws IOException {
+		FileOutputStream output = new FileOutputStream(log, true);
+		try {
+			output.write(line);
+		} finally {
+			output.close();
+		}
+		CRC32 lineCrc = new CRC32();
+		lineCrc.update(line, 0, line.length - 1);
+		pending.add(new long[] {log.length(), lineCrc.getValue()});
+	}
+
+	/**
+	 * The frame at the head of the queue has been sent, so move the offset past it
+	 * @throws IOException
+	 */
+	public synchronized void removeHead() throws IOException {
+		long[] head = pending.poll();
+		if (head == null) return;
+		offset = head[0];
+		crc = head[1];
+		unsaved++;
+		if (pending.isEmpty())
+			truncate();
+		else if (offset > COMPACT_BYTES && offset > log.length() - offset)
+			compact();
+		else if (unsaved >= OFFSET_SYNC_FRAMES || System.currentTimeMillis() - lastSave >= OFFSET_SYNC_PERIOD)
+			saveOffset();
+	}
+
+	/**
+	 * Save the offset if frames have been sent since it was last saved and it is due
+	 * @throws IOException
+	 */
+	public synchronized void saveIfDue() throws IOException {
+		if (offset != savedOffset && System.currentTimeMillis() - lastSave >= OFFSET_SYNC_PERIOD)
+			saveOffset();
+	}
+
+	/**
+	 * Save the offset now, if frames have been sent since it was last saved
+	 * @throws IOException
+	 */
+	public synchronized void save() throws IOException {
+		if (offset != savedOffset)
+			saveOffset();
+	}
+
+	/**
+	 * Write a new offset file and move it over the old one, so that the offset on disk is always complete
+	 * @throws IOException
+	 */
+	private void saveOffset() throws IOException {
+		File tmp = new File(offsetFile.getPath() + ".tmp");
+		FileOutputStream output = new FileOutputStream(tmp);
+		try {
+			output.write((offset + "," + crc + "\n").getBytes(StandardCharsets.UTF_8));
+			output.getFD().sync();
+		} finally {
+			output.close();
+		}
+		Files.move(tmp.toPath(), offsetFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		savedOffset = offset;
+		lastSave = System.currentTimeMillis();
+		unsaved = 0;
+	}
+
+	/**
+	 * Every frame has been sent, so empty the log.  The offset file is removed after, as an offset left by a crash
+	 * does not match an empty log
+	 * @throws IOException
+	 */
+	private void truncate() throws IOException {
+		RandomAccessFile file = new RandomAccessFile(log, "rw");
+		try {
+			file.setLength(0);
+			file.getFD().sync();
+		} finally {
+			file.close();
+		}
+		offsetFile.delete();
+		reset(0);
+	}
+
+	/**
+	 * Copy the unsent frames to a new log and move it over the old one.  The offset file is removed first, so a crash
+	 * part way through sends the frames of the old log again rather than losing any
+	 * @throws IOException
+	 */
+	private void compact() throws IOException {
+		File tmp = new File(log.getPath() + ".tmp");
+		long length = log.length();
+		InputStream in = new FileInputStream(log);
+		FileOutputStream output = new FileOutputStream(tmp);
+		try {
+			long skip = offset;
+			while (skip > 0) {
+				long n = in.skip(skip);
+				if (n <= 0) throw new IOException("Could not skip the sent frames in " + log.getName());
+				skip = skip - n;
+			}
+			copy(in, output, length - offset);
+			output.getFD().sync();
+		} finally {
+			in.close();
+			output.close();
+		}
+		offsetFile.delete();
+		Files.move(tmp.toPath(), log.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		long moved = offset;
+		for (long[] frame : pending)
+			frame[0] = frame[0] - moved;
+		reset(0);
+	}
+
+	private void reset(long newOffset) {
+		offset = newOffset;
+		savedOffset = newOffset;
+		crc = 0;
+		unsaved = 0;
+		lastSave = System.currentTimeMillis();
+	}
+
+	private static void copy(InputStream in, OutputStream out, long bytes) throws IOException {
+		byte[] buffer = new byte[65536];
+		while (bytes > 0) {
+			int n = in.read(buffer, 0, (int)Math.min(buffer.length, bytes));
+			if (n < 0) break;
+			out.write(buffer, 0, n);
+			bytes = bytes - n;
+		}
+	}
+
+	public synchronized int size() { return pending.size(); }
+
+	public synchronized long getOffset() { return offset; }
+}
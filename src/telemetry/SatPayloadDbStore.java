@@ -7,6 +7,7 @@ import telemetry.uw.CanPacket;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -14,6 +15,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 
 import javax.swing.JOptionPane;
@@ -976,6 +978,159 @@ public class SatPayloadDbStore {
 		
 	}
 
+	/**
+	 * The table that holds the records for a layout, or null if the layout is not stored in a table
+	 * @param layout
+	 * @return
+	 */
+	private String getTableName(String layout) {
+		if (layout.equals(Spacecraft.REAL_TIME_LAYOUT)) return rtTableName;
+		if (layout.equals(Spacecraft.MAX_LAYOUT)) return maxTableName;
+		if (layout.equals(Spacecraft.MIN_LAYOUT)) return minTableName;
+		if (layout.equals(Spacecraft.RAD_LAYOUT) || layout.equals(Spacecraft.CAN_LAYOUT)) return radTableName;
+		if (layout.equals(Spacecraft.RAD2_LAYOUT)) return radTelemTableName;
+		if (layout.equals(Spacecraft.WOD_LAYOUT)) return wodTableName;
+		if (layout.equals(Spacecraft.WOD_RAD_LAYOUT) || layout.equals(Spacecraft.WOD_CAN_LAYOUT)) return wodRadTableName;
+		if (layout.equals(Spacecraft.WOD_RAD2_LAYOUT)) return wodRadTelemTableName;
+		if (layout.equals(Spacecraft.HERCI_HS_HEADER_LAYOUT)) return herciHSHeaderTableName;
+		return null;
+	}
+
+	/**
+	 * Return several fields of the same layout with one query that selects all of their columns.  The results are
+	 * in time order and the uptime, reset and position columns are shared by all of the fields.  The position is not
+	 * stored in the database, so it is always NO_POSITION_DATA.
+	 * @param names
+	 * @param period
+	 * @param id
+	 * @param fromReset
+	 * @param fromUptime - if the reset and uptime are zero then the latest records are returned
+	 * @param layout
+	 * @param positionData
+	 * @return one entry for each name
+	 * @throws SQLException
+	 */
+	public double[][][] getGraphData(String[] names, int period, Spacecraft id, int fromReset, long fromUptime, String layout, boolean positionData) throws SQLException {
+		String table = getTableName(layout);
+		BitArrayLayout lay = fox.getLayoutByName(layout);
+		if (table == null || lay == null) return null;
+		boolean latest = fromReset == 0 && fromUptime == 0;
+		String where;
+		if (latest) { // then we take records nearest the end
+			where = " ORDER BY resets DESC, uptime DESC ";
+		} else {
+			where = " where resets > " + fromReset + " or (resets = " + fromReset + " and uptime >= " + fromUptime + ")" +
+					" ORDER BY resets, uptime ";
+		}
+		// Only select the names that are columns in the table.  Any others are returned as errors, as for a single field
+		String select = " SELECT resets, uptime";
+		for (String name : names)
+			if (lay.hasFieldName(name))
+				select = select + ", " + name;
+		select = select + " FROM " + table + where + " LIMIT " + period;
+
+		FramePart rt = new PayloadRtValues(lay); // used for the conversions of this layout
+		Statement stmt = null;
+		ResultSet rs = null;
+		try {
+			Connection derby = payloadDbStore.getConnection();
+			stmt = derby.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+			rs = stmt.executeQuery(select);
+			rs.last();
+			int size = rs.getRow();
+			double[][] results = new double[names.length][size];
+			int[][] raw = new int[names.length][size];
+			double[] upTime = new double[size];
+			double[] resets = new double[size];
+			// The latest records come back newest first, so read them backwards to put them in time order
+			boolean more = latest ? rs.last() : rs.first();
+			for (int i=0; more && i < size; i++) {
+				resets[i] = rs.getInt("resets");
+				upTime[i] = rs.getLong("uptime");
+				for (int n=0; n < names.length; n++)
+					if (lay.hasFieldName(names[n]))
+						raw[n][i] = rs.getInt(names[n]);
+				more = latest ? rs.previous() : rs.next();
+			}
+			// Then convert a column at a time
+			for (int n=0; n < names.length; n++) {
+				if (!lay.hasFieldName(names[n]))
+					Arrays.fill(results[n], Config.displayRawValues ? -1 : BitArray.ERROR_VALUE);
+				else if (Config.displayRawValues)
+					for (int i=0; i < size; i++)
+						results[n][i] = raw[n][i];
+				else
+					rt.convertRawValues(names[n], raw[n], 0, size, lay.getConversionByName(names[n]), id, results[n]);
+			}
+			int COLUMNS = positionData ? 5 : 3;
+			double[] lat = null;
+			double[] lon = null;
+			if (positionData) {
+				lat = new double[size];
+				lon = new double[size];
+				Arrays.fill(lat, FramePart.NO_POSITION_DATA);
+				Arrays.fill(lon, FramePart.NO_POSITION_DATA);
+			}
+			double[][][] resultSet = new double[names.length][COLUMNS][];
+			for (int n=0; n < names.length; n++) {
+				resultSet[n][PayloadStore.DATA_COL] = results[n];
+				resultSet[n][PayloadStore.UPTIME_COL] = upTime;
+				resultSet[n][PayloadStore.RESETS_COL] = resets;
+				if (positionData) {
+					resultSet[n][PayloadStore.LAT_COL] = lat;
+					resultSet[n][PayloadStore.LON_COL] = lon;
+				}
+			}
+			return resultSet;
+		} finally {
+			try { if (rs != null) rs.close(); } catch (SQLException e2) {};
+			try { if (stmt != null) stmt.close(); } catch (SQLException e2) {};
+		}
+	}
+
+	/**
+	 * Write every record of a layout as CSV rows, in time order.  The rows are read with a forward only cursor that
+	 * the driver streams from the server, so they are not all held in memory.  The position is not stored in the
+	 * database, so it is calculated for each row if it is asked for.
+	 * @param layout
+	 * @param out
+	 * @param converted
+	 * @param positionData
+	 * @param progress
+	 * @return the number of rows written, or -1 if the layout is not stored in a table
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	public long exportToCSV(String layout, Writer out, boolean converted, boolean positionData, PayloadCsvWriter.Progress progress) throws SQLException, IOException {
+		String table = getTableName(layout);
+		BitArrayLayout lay = fox.getLayoutByName(layout);
+		if (table == null || lay == null) return -1;
+		PayloadCsvWriter csv = new PayloadCsvWriter(out, fox, lay, converted, positionData, progress);
+		csv.setTotal(count(table));
+		csv.writeHeader();
+		FramePart rt = new PayloadRtValues(lay); // each row is read into this, which also does the conversions
+		Statement stmt = null;
+		ResultSet rs = null;
+		try {
+			Connection derby = payloadDbStore.getConnection();
+			stmt = derby.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			stmt.setFetchSize(Integer.MIN_VALUE); // stream the rows rather than reading the whole result
+			rs = stmt.executeQuery("SELECT * FROM " + table + " ORDER BY resets, uptime, type");
+			while (rs.next()) {
+				rt.captureHeaderInfo(rs.getInt("id"), rs.getLong("uptime"), rs.getInt("resets"));
+				rt.type = rs.getInt("type");
+				for (int i=0; i < rt.fieldValue.length; i++)
+					rt.fieldValue[i] = rs.getInt(lay.fieldName[i]);
+				if (!csv.write(rt)) return csv.getRows();
+			}
+		} finally {
+			try { if (rs != null) rs.close(); } catch (SQLException e2) {};
+			try { if (stmt != null) stmt.close(); } catch (SQLException e2) {};
+		}
+		csv.finish();
+		return csv.getRows();
+	}
+
 	public void initRad2() {
 		ResultSet rs = null;
 		String where = "select * from " + this.radTableName;
@@ -1396,21 +1551,21 @@ public class SatPayloadDbStore {
 			if (Config.displayRawValues)
 				;//FIXME conversion = 0;
 			if (size > 0) {
+				int[] raw = new int[size];
 				resets[i] = rs.getInt("resets");
 				upTime[i] = rs.getLong("uptime");
-				//FIXME - we need a payload record so that we can access the right conversion.  But this means we need all the columns....bad
-				PayloadRtValues rt = new PayloadRtValues(id.getLayoutByName(Spacecraft.REAL_TIME_LAYOUT));
-				results[i++] = rt.convertRawValue(name, (int)rs.getDouble(name), rt.getConversionByName(name), id);
+				raw[i++] = (int)rs.getDouble(name);
 				while (rs.previous()) {
 					resets[i] = rs.getInt("resets");
 					upTime[i] = rs.getLong("uptime");
 					//rt = new PayloadRtValues(rs, fox.rtLayout);
 					//raw value
 					//results[i++] = rs.getDouble(name);
-					// converted
-
-					results[i++] = rt.convertRawValue(name, (int)rs.getDouble(name), rt.getConversionByName(name), id);
+					raw[i++] = (int)rs.getDouble(name);
 				}
+				//FIXME - we need a payload record so that we can access the right conversion.  But this means we need all the columns....bad
+				PayloadRtValues rt = new PayloadRtValues(id.getLayoutByName(Spacecraft.REAL_TIME_LAYOUT));
+				rt.convertRawValues(name, raw, 0, i, rt.getConversionByName(name), id, results);
 			} else {
 				results = new double[1];
 				upTime = new double[1];
@@ -8,8 +8,13 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.Writer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import javax.swing.JOptionPane;
 
 import common.Config;
@@ -231,6 +236,37 @@ public class SatPayloadStore {
 		return true;
 	}
 
+	/**
+	 * Save a batch of payloads.  The payloads are grouped by layout and each group is saved to its table in one call.
+	 * Secondary payloads, such as radiation telemetry, are then calculated for the records that were saved.
+	 * @param parts - all for this spacecraft
+	 * @return the number of payloads saved
+	 * @throws IOException
+	 */
+	public int add(List<FramePart> parts) throws IOException {
+		LinkedHashMap<Integer, ArrayList<FramePart>> tables = new LinkedHashMap<Integer, ArrayList<FramePart>>();
+		for (FramePart f : parts) {
+			int i = fox.getLayoutIdxByName(f.layout.name);
+			if (i == Spacecraft.ERROR_IDX) continue;
+			ArrayList<FramePart> table = tables.get(i);
+			if (table == null) {
+				table = new ArrayList<FramePart>();
+				tables.put(i, table);
+			}
+			table.add(f);
+		}
+		int saved = 0;
+		for (Map.Entry<Integer, ArrayList<FramePart>> table : tables.entrySet()) {
+			boolean[] ret = records[table.getKey()].save(table.getValue());
+			for (int r=0; r < ret.length; r++)
+				if (ret[r]) {
+					saved++;
+					addSecondaryRecords(table.getValue().get(r));
+				}
+		}
+		return saved;
+	}
+	
 	/**
 	 * Add the frame to the correct array and file
 	 * @param f
@@ -242,19 +278,30 @@ public class SatPayloadStore {
 		int i = fox.getLayoutIdxByName(f.layout.name);
 		if (i != Spacecraft.ERROR_IDX) {
 			ret = records[i].save(f); 
-			if (ret) {
-				if (f instanceof PayloadWODRad) {
-					return addWODRadSecondaryRecord((PayloadWODRad)f);
-				} else if (f instanceof PayloadRadExpData) {
-					return addRadSecondaryRecord((PayloadRadExpData)f);				
-				} else if (f instanceof PayloadHERCIhighSpeed ) {
-					return addHerciSecondaryRecord((PayloadHERCIhighSpeed)f);				
-				}
-			}
+			if (ret)
+				return addSecondaryRecords(f);
 		}
 		return ret;
 		
 	}
+
+	/**
+	 * Calculate and save the records derived from a payload that has just been saved, such as the radiation
+	 * telemetry in a radiation or WOD radiation payload and the HERCI packets in a HERCI high speed payload
+	 * @param f
+	 * @return true if the payload has no derived records or they were saved
+	 * @throws IOException
+	 */
+	private boolean addSecondaryRecords(FramePart f) throws IOException {
+		if (f instanceof PayloadWODRad) {
+			return addWODRadSecondaryRecord((PayloadWODRad)f);
+		} else if (f instanceof PayloadRadExpData) {
+			return addRadSecondaryRecord((PayloadRadExpData)f);				
+		} else if (f instanceof PayloadHERCIhighSpeed ) {
+			return addHerciSecondaryRecord((PayloadHERCIhighSpeed)f);				
+		}
+		return true;
+	}
 		
 	public FramePart getLatest(int id, int reset, long uptime, String layout, boolean prev) throws IOException {
 		int i = fox.getLayoutIdxByName(layout);
@@ -277,6 +324,19 @@ public class SatPayloadStore {
 		return null;
 	}
 
+	/**
+	 * Return the records of this layout in the range where the raw value of the named field is from min to max.
+	 * Segments that can not have a match are not loaded.
+	 */
+	public List<FramePart> getFramesWithValue(String layout, String name, int min, int max, int fromReset, long fromUptime,
+			int toReset, long toUptime) throws IOException {
+		int i = fox.getLayoutIdxByName(layout);
+		if (i == Spacecraft.ERROR_IDX) return Collections.emptyList();
+		int pos = fox.getLayoutByName(layout).getFirstPositionByName(name);
+		if (pos == BitArrayLayout.ERROR_POSITION) return Collections.emptyList();
+		return records[i].getFramesWithValue(pos, min, max, fromReset, fromUptime, toReset, toUptime);
+	}
+
 	public FramePart getLatestRt() throws IOException {
 		return getLatest(Spacecraft.REAL_TIME_LAYOUT);
 	}
@@ -327,9 +387,27 @@ public class SatPayloadStore {
 	 * @throws IOException 
 	 */
 	public double[][] getGraphData(String name, int period, Spacecraft id, int fromReset, long fromUptime, String layout, boolean positionData, boolean reverse) throws IOException {
+		return getGraphData(name, period, id, fromReset, fromUptime, layout, positionData, reverse, 0);
+	}
+
+	/**
+	 * As above, but if the graph is "width" pixels wide and there are more records than that then the points can
+	 * come from the rollup of the table
+	 */
+	public double[][] getGraphData(String name, int period, Spacecraft id, int fromReset, long fromUptime, String layout, boolean positionData, boolean reverse, int width) throws IOException {
+		int i = fox.getLayoutIdxByName(layout);
+		if (i != Spacecraft.ERROR_IDX)
+			return records[i].getGraphData(name, period, id, fromReset, fromUptime, positionData, reverse, width);
+		return null;
+	}
+
+	/**
+	 * Return several fields of the same layout with one pass through the records
+	 */
+	public double[][][] getGraphData(String[] names, int period, Spacecraft id, int fromReset, long fromUptime, String layout, boolean positionData, boolean reverse, int width) throws IOException {
 		int i = fox.getLayoutIdxByName(layout);
 		if (i != Spacecraft.ERROR_IDX)
-			return records[i].getGraphData(name, period, id, fromReset, fromUptime, positionData, reverse);
+			return records[i].getGraphData(names, period, id, fromReset, fromUptime, positionData, reverse, width);
 		return null;
 	}
 
@@ -437,6 +515,12 @@ public class SatPayloadStore {
 			return records[i].getPayloadData(period, id, fromReset, fromUptime, l.fieldName.length, reverse);
 		return null;	
 	}
+
+	public long exportToCSV(String layout, Writer out, boolean converted, boolean positionData, PayloadCsvWriter.Progress progress) throws IOException {
+		int i = fox.getLayoutIdxByName(layout);
+		if (i == Spacecraft.ERROR_IDX) return -1;
+		return records[i].exportToCSV(new PayloadCsvWriter(out, fox, fox.getLayoutByName(layout), converted, positionData, progress));
+	}
 	
 	/**
 	 * Get data for a single named field from the HERCI Science Header for the period given
@@ -488,25 +572,28 @@ public class SatPayloadStore {
 	}
 	*/
 
-	public void offloadSegments() {
-		while (deleteLock)
-			try {
-				Thread.sleep(10); // wait
-			} catch (InterruptedException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
+	/**
+	 * Write any payloads held for a group commit once they have waited long enough
+	 * @throws IOException
+	 */
+	public void commitIfDue() throws IOException {
+		for (int i=0; i<fox.numberOfLayouts; i++)
+			records[i].commitIfDue();
+	}
 
+	/**
+	 * Write all of the payloads held for a group commit and close the open files
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
 		for (int i=0; i<fox.numberOfLayouts; i++)
-			records[i].offloadSegments();
+			records[i].close();
 	}
 
-	boolean deleteLock = false;
 	/**
 	 * Delete all of the log files.  This is called from the main window by the user
 	 */
 	public void deleteAll() {
-		deleteLock = true;
 		try {
 			for (int i=0; i<fox.numberOfLayouts; i++)
 				records[i].remove();
@@ -518,7 +605,6 @@ public class SatPayloadStore {
 					"Error Deleting Payload Files for FoxId:"+foxId+", check permissions",
 					JOptionPane.ERROR_MESSAGE) ;
 		}
-		deleteLock = false;
 	}
 	
 	/**
@@ -557,6 +643,30 @@ public class SatPayloadStore {
 
 	}
 	
+	/**
+	 * Convert the full segments of every table to the binary segment format
+	 * @return the number of segments converted
+	 * @throws IOException
+	 */
+	public int convertToBinary() throws IOException {
+		int converted = 0;
+		for (int i=0; i<fox.numberOfLayouts; i++)
+			converted += records[i].convertToBinary();
+		return converted;
+	}
+	
+	/**
+	 * Merge the small segments of every table and remove duplicate records
+	 * @return what was done
+	 * @throws IOException
+	 */
+	public CompactionReport compact() throws IOException {
+		CompactionReport report = new CompactionReport();
+		for (int i=0; i<fox.numberOfLayouts; i++)
+			report.add(records[i].compact());
+		return report;
+	}
+	
 	/**
 	 * Remove a log file from disk and report any errors.
 	 * @param f
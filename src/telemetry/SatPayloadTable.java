@@ -3,14 +3,25 @@ package telemetry;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.RandomAccessFile;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.swing.JOptionPane;
 
@@ -51,9 +62,21 @@ public class SatPayloadTable {
 	private static final int INITIAL_SIZE = 2; // inital number of table parts
 	private String fileName; // this is the path and filename for this table
 	private String baseFileName; // this is the base filename for this table
-	private SortedFramePartArrayList rtRecords; // this is the rtRecords that are loaded into memory
+	private SortedFramePartColumns rtRecords; // this is the rtRecords that are loaded into memory, held as columns
 	private boolean updated = false;
 	private boolean storeMode = false;
+	private SegmentJournal journal = new SegmentJournal(); // buffers the appends to the segment files for a group commit
+	private ArrayList<TableSeg> changedSegs = new ArrayList<TableSeg>(); // segments with index entries that have not been written
+	private int idxUpdates = 0; // index entries appended since the index was last rewritten
+	private SegmentCache cache = SegmentCache.getInstance(); // decides when loaded segments are offloaded
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(); // readers share the loaded segments, writers change them
+	private final Object idxLock = new Object(); // serializes writes to the index file
+	private static final int MAX_IDX_UPDATES = 1000; // rewrite the index once this many entries have been appended
+	private static final int COMPACT_IDX_BATCH = 100; // segments compacted between rewrites of the index
+	private PayloadRollup rollup; // min/max/mean of each field by orbit, day and week, for long range graphs
+	private boolean rollupRebuilt = false; // only try to rebuild once a session, e.g. a CAN table can not be rolled up
+	private HashSet<TableSeg> rollupScanned; // segments the rollup rebuild has read, null unless it is running
+	private final AtomicInteger exports = new AtomicInteger(); // exports and rollup rebuilds that are running, compaction waits for them
 
 	public SatPayloadTable(int size, String name, boolean storeMode) throws IOException {
 		tableIdx = new SortedArrayList<TableSeg>(INITIAL_SIZE);
@@ -62,8 +85,13 @@ public class SatPayloadTable {
 		String dir = getDir();
         fileName = dir + PayloadStore.DB_NAME+File.separator + name;
       
-		rtRecords = new SortedFramePartArrayList(size);
+		rtRecords = new SortedFramePartColumns(size, new SortedFramePartColumns.RecordFactory() {
+			public FramePart make(int id, int resets, long uptime, String date, int type) {
+				return makeFramePart(id, resets, uptime, date, type, new StringTokenizer(""), null);
+			}
+		});
 		loadIdx();
+		rollup = new PayloadRollup(fileName, getSize() == 0);
 		updated = true;
 	}
 	
@@ -89,23 +117,30 @@ public class SatPayloadTable {
 	
 	public boolean hasFrame(int id, long uptime, int resets) throws IOException { 
 		// Make sure the segment is loaded, so we can check
-		@SuppressWarnings("unused")
-		TableSeg seg = loadSeg(resets, uptime, false);
-		return rtRecords.hasFrame(id, uptime, resets); }
+		readLock(segment(resets, uptime, false));
+		try {
+			return rtRecords.hasFrame(id, uptime, resets);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
 	
 	public FramePart getLatest() throws IOException {
-		if (tableIdx.size() > 0) {
-			TableSeg lastSeg = tableIdx.get(tableIdx.size()-1);
-			if (!lastSeg.isLoaded()) {
-				load(lastSeg);
-				
-			} else {
-				lastSeg.accessed();
+		readLock(new SegmentSelection() {
+			public List<TableSeg> segments() {
+				if (tableIdx.size() == 0) return Collections.emptyList();
+				return Collections.singletonList(tableIdx.get(tableIdx.size()-1));
+			}
+		});
+		try {
+			if (tableIdx.size() > 0) {
+				if (rtRecords.size() == 0) return null;
+				return rtRecords.get(rtRecords.size()-1);
 			}
-			if (rtRecords.size() == 0) return null;
-			return rtRecords.get(rtRecords.size()-1);
+			return null;
+		} finally {
+			lock.readLock().unlock();
 		}
-		return null;
 	}
 	
 	/**
@@ -119,34 +154,42 @@ public class SatPayloadTable {
 	 */
 	public FramePart getFrame(int id, long uptime, int resets, boolean prev) throws IOException { 
 		// Make sure the segment is loaded, so we can check
-		@SuppressWarnings("unused")
-		TableSeg seg = loadSeg(resets, uptime, prev);
-		if (seg == null) return null;
-		if (seg.records == 0) return null;
-		if (prev) {
-			int i = rtRecords.getNearestPrevFrameIndex(id, uptime, resets); 
-			if (i == -1) return null;
-			return rtRecords.get(i);
-		} else {
-			int i = rtRecords.getNearestFrameIndex(id, uptime, resets); 
-			if (i == -1) return null;
-			return rtRecords.get(i);
+		readLock(segment(resets, uptime, prev));
+		try {
+			TableSeg seg = findSeg(resets, uptime, prev);
+			if (seg == null) return null;
+			if (seg.records == 0) return null;
+			if (prev) {
+				int i = rtRecords.getNearestPrevFrameIndex(id, uptime, resets); 
+				if (i == -1) return null;
+				return rtRecords.get(i);
+			} else {
+				int i = rtRecords.getNearestFrameIndex(id, uptime, resets); 
+				if (i == -1) return null;
+				return rtRecords.get(i);
+			}
+		} finally {
+			lock.readLock().unlock();
 		}
 	}
 	
 	public FramePart getFrame(int id, long uptime, int resets, int type, boolean prev) throws IOException { 
 		// Make sure the segment is loaded, so we can check
-		@SuppressWarnings("unused")
-		TableSeg seg = loadSeg(resets, uptime, prev);
-		if (prev) {
-			if (seg == null) return null;
-			int i = rtRecords.getNearestPrevFrameIndex(id, uptime, resets, type); 
-			if (i == -1) return null;
-			return rtRecords.get(i);
-		} else {
-			int i = rtRecords.getNearestFrameIndex(id, uptime, resets, type); 
-			if (i == -1) return null;
-			return rtRecords.get(i);
+		readLock(segment(resets, uptime, prev));
+		try {
+			if (prev) {
+				TableSeg seg = findSeg(resets, uptime, prev);
+				if (seg == null) return null;
+				int i = rtRecords.getNearestPrevFrameIndex(id, uptime, resets, type); 
+				if (i == -1) return null;
+				return rtRecords.get(i);
+			} else {
+				int i = rtRecords.getNearestFrameIndex(id, uptime, resets, type); 
+				if (i == -1) return null;
+				return rtRecords.get(i);
+			}
+		} finally {
+			lock.readLock().unlock();
 		}
 	}
 	
@@ -164,11 +207,10 @@ public class SatPayloadTable {
 	 * @return
 	 * @throws IOException 
 	 */
-	public synchronized String[][] getPayloadData(int period, int id, int fromReset, long fromUptime, int length, boolean returnType, boolean reverse) throws IOException {
+	public String[][] getPayloadData(int period, int id, int fromReset, long fromUptime, int length, boolean returnType, boolean reverse) throws IOException {
 		if (rtRecords == null) return null;
-		deleteLock = true;
+		readLock(segments(fromReset, fromUptime, period, reverse));
 		try {
-			loadSegments(fromReset, fromUptime, period, reverse);
 
 			int start = 0;
 			int end = 0;
@@ -198,11 +240,11 @@ public class SatPayloadTable {
 			int j = results.length-1;
 			for (int i=end-1; i>= start; i--) {
 				//System.out.println(rtRecords.size());
-				results[j] = rtRecords.get(i).getFieldValues();
+				results[j] = rtRecords.getFieldValues(i);
 				if (returnType)
-					type[j] = ""+rtRecords.get(i).type; // get type returns a different type for some payloads, e.g. HerciPackets.  Reference directly
-				upTime[j] = ""+rtRecords.get(i).getUptime();
-				resets[j--] = ""+rtRecords.get(i).getResets();
+					type[j] = ""+rtRecords.getType(i); // get type returns a different type for some payloads, e.g. HerciPackets.  Reference directly
+				upTime[j] = ""+rtRecords.getUptime(i);
+				resets[j--] = ""+rtRecords.getResets(i);
 			}
 
 			// Create a results set, with reset, uptime and the data on the same line
@@ -220,7 +262,224 @@ public class SatPayloadTable {
 
 			return resultSet;
 		} finally {
-			deleteLock = false;
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Return a single field so that it can be graphed.  If there are more records than pixel columns then the
+	 * points come from the coarsest rollup tier that still has a point for each column, so the segments do not
+	 * need to be loaded.  Otherwise, or if the rollup can not be used, every record is returned as before.
+	 * @param name
+	 * @param period - the number of records the graph covers
+	 * @param id
+	 * @param fromReset
+	 * @param fromUptime
+	 * @param positionData
+	 * @param reverse
+	 * @param width - the number of pixel columns in the graph, or zero to always return the records
+	 * @return
+	 * @throws IOException
+	 */
+	public double[][] getGraphData(String name, int period, Spacecraft id, int fromReset, long fromUptime, boolean positionData, boolean reverse, int width) throws IOException {
+		return getGraphData(new String[] {name}, period, id, fromReset, fromUptime, positionData, reverse, width)[0];
+	}
+
+	/**
+	 * Return several fields so that they can be graphed together, with one pass through the records.  Each entry
+	 * has the columns of a single field graph.  The uptime, reset and position columns are the same arrays for every
+	 * field, so they must not be changed.  The width is used as for a single field.
+	 * @param names
+	 * @param period - the number of records the graph covers
+	 * @param id
+	 * @param fromReset
+	 * @param fromUptime
+	 * @param positionData
+	 * @param reverse
+	 * @param width - the number of pixel columns in the graph, or zero to always return the records
+	 * @return
+	 * @throws IOException
+	 */
+	public double[][][] getGraphData(String[] names, int period, Spacecraft id, int fromReset, long fromUptime, boolean positionData, boolean reverse, int width) throws IOException {
+		if (width > 0 && period > width && !Config.displayRawValues) {
+			double[][][] data = getRollupData(names, period, fromReset, fromUptime, positionData, reverse, width);
+			if (data != null) return data;
+		}
+		return getGraphData(names, period, id, fromReset, fromUptime, positionData, reverse);
+	}
+
+	/**
+	 * Work out the range of reset/uptime that "period" records cover from the index and return the rollup points
+	 * for it.  The range is only accurate to a segment, which is not noticed on a graph with more records than pixels.
+	 * @return the points or null if there are not enough records or rollup buckets in the range, or the rollup is
+	 * still being rebuilt
+	 * @throws IOException
+	 */
+	private double[][][] getRollupData(String[] names, int period, int fromReset, long fromUptime, boolean positionData, boolean reverse, int width) throws IOException {
+		if (!rollup.isValid()) {
+			if (!rollupRebuilt)
+				startRollupRebuild();
+			return null;
+		}
+		lock.readLock().lock();
+		try {
+			if (tableIdx.size() == 0) return null;
+			int total = 0;
+			int toReset = Integer.MAX_VALUE;
+			long toUptime = Long.MAX_VALUE;
+			if (reverse) {
+				int i = tableIdx.size()-1;
+				while (i > 0 && total + tableIdx.get(i).records < period)
+					total += tableIdx.get(i--).records;
+				total += tableIdx.get(i).records;
+				fromReset = tableIdx.get(i).fromReset;
+				fromUptime = tableIdx.get(i).fromUptime;
+			} else {
+				int i = findFirstSeg(fromReset, fromUptime);
+				if (i < 0) return null;
+				while (i < tableIdx.size() && total < period)
+					total += tableIdx.get(i++).records;
+				if (i < tableIdx.size()) {
+					toReset = tableIdx.get(i).fromReset;
+					toUptime = tableIdx.get(i).fromUptime;
+				}
+			}
+			if (total <= width) return null;
+			return rollup.getGraphData(names, fromReset, fromUptime, toReset, toUptime, width, positionData);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Start rebuilding the rollup in the background, when it is missing or the layout has changed.  The graphs use
+	 * the records until it is finished.
+	 */
+	private void startRollupRebuild() {
+		lock.writeLock().lock();
+		try {
+			if (rollupRebuilt || rollup.isValid()) return;
+			rollupRebuilt = true;
+			rollup.startRebuild();
+			rollupScanned = new HashSet<TableSeg>();
+			exports.incrementAndGet(); // compaction must not merge the segments as they are read
+		} finally {
+			lock.writeLock().unlock();
+		}
+		Thread rebuild = new Thread(new Runnable() {
+			public void run() {
+				rebuildRollup();
+			}
+		});
+		rebuild.setName("Rollup Rebuild:" + baseFileName);
+		rebuild.setDaemon(true);
+		rebuild.setUncaughtExceptionHandler(Log.uncaughtExHandler);
+		rebuild.start();
+	}
+
+	/**
+	 * Add every segment to the rollup, one at a time, without loading them into the table, so the memory needed does
+	 * not depend on the size of the table.  The write lock is only held to pick the next segment and write its
+	 * records out of the journal.  It is then downgraded to the read lock while the segment is read, so the graphs
+	 * can still read the table and no record can be added to the file until we have read it.  Once a segment has been
+	 * read, the records saved to it go straight into the rollup, so each record is added once however the saves and
+	 * the rebuild interleave.
+	 */
+	private void rebuildRollup() {
+		long t0 = System.nanoTime();
+		String dir = getDir() + PayloadStore.DB_NAME+File.separator;
+		ArrayList<FramePart> parts = new ArrayList<FramePart>(MAX_SEGMENT_SIZE);
+		boolean finished = false;
+		try {
+			while (!finished) {
+				String log = null;
+				lock.writeLock().lock();
+				try {
+					if (!rollup.isRebuilding()) return; // the table was removed or a record did not match the layout
+					TableSeg seg = null;
+					for (TableSeg s : tableIdx)
+						if (!rollupScanned.contains(s)) {
+							seg = s;
+							break;
+						}
+					if (seg == null) {
+						finished = rollup.finishRebuild();
+						rollupScanned = null;
+					} else {
+						log = dir + seg.fileName;
+						journal.close(log); // records are added to the journal with the write lock held
+						rollupScanned.add(seg);
+						lock.readLock().lock(); // downgrade, so nothing is added to the file while we read it
+					}
+				} finally {
+					lock.writeLock().unlock();
+				}
+				if (log == null) break;
+				parts.clear();
+				try {
+					// The segment may not have been loaded this session, so it could end with a torn record
+					if (readSegment(log, new File(TableSegFile.getDatFileName(log)), parts) && isTorn(log))
+						parts.remove(parts.size()-1);
+				} finally {
+					lock.readLock().unlock();
+				}
+				for (FramePart f : parts)
+					rollup.add(f);
+			}
+			if (finished) {
+				rollup.save();
+				Log.println("Rebuilt rollup for " + fileName + " in " + (System.nanoTime() - t0)/1000000 + "ms");
+			}
+		} catch (IOException e) {
+			Log.println("Could not rebuild the rollup for " + fileName + ": " + e.getMessage());
+			e.printStackTrace(Log.getWriter());
+		} finally {
+			if (!finished) {
+				lock.writeLock().lock();
+				try {
+					rollup.cancelRebuild();
+					rollupScanned = null;
+				} finally {
+					lock.writeLock().unlock();
+				}
+			}
+			exports.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Add a saved record to the rollup.  While the rollup is rebuilt, a record in a segment that has not been read
+	 * yet is left for the rebuild to read from the file.  Called with the write lock held
+	 * @param seg - the segment the record was saved in
+	 * @param f
+	 */
+	private void addToRollup(TableSeg seg, FramePart f) {
+		if (rollupScanned == null || rollupScanned.contains(seg))
+			rollup.add(f);
+	}
+
+	/**
+	 * @return true if the rollup can be used for long range graphs, rather than being missing or rebuilt
+	 */
+	public boolean hasRollup() {
+		return rollup.isValid();
+	}
+
+	/**
+	 * @param log
+	 * @return true if the last record in the file is not terminated, because a write was interrupted
+	 * @throws IOException
+	 */
+	private static boolean isTorn(String log) throws IOException {
+		File aFile = new File(log);
+		if (!aFile.exists() || aFile.length() == 0) return false;
+		RandomAccessFile file = new RandomAccessFile(aFile, "r");
+		try {
+			file.seek(file.length()-1);
+			int last = file.read();
+			return last != '\n' && last != '\r';
+		} finally {
+			file.close();
 		}
 	}
 
@@ -236,10 +495,17 @@ public class SatPayloadTable {
 	 * @return
 	 * @throws IOException 
 	 */
-	synchronized double[][] getGraphData(String name, int period, Spacecraft id, int fromReset, long fromUptime, boolean positionData, boolean reverse) throws IOException {
-		deleteLock = true;
+	double[][] getGraphData(String name, int period, Spacecraft id, int fromReset, long fromUptime, boolean positionData, boolean reverse) throws IOException {
+		return getGraphData(new String[] {name}, period, id, fromReset, fromUptime, positionData, reverse)[0];
+	}
+
+	/**
+	 * Return several fields from every record in the range, with one pass through the records.  The position of each
+	 * field is only looked up when the layout changes from one record to the next.
+	 */
+	private double[][][] getGraphData(String[] names, int period, Spacecraft id, int fromReset, long fromUptime, boolean positionData, boolean reverse) throws IOException {
+		readLock(segments(fromReset, fromUptime, period, reverse));
 		try {
-		loadSegments(fromReset, fromUptime, period, reverse);
 		int start = 0;
 		int end = 0;
 		
@@ -262,88 +528,154 @@ public class SatPayloadTable {
 		if (end < start) end = start;
 		if (start < 0) start = 0;
 		if (start > rtRecords.size()) start = rtRecords.size();
-		double[] results = new double[end-start];
+		double[][] results = new double[names.length][end-start];
 		double[] upTime = new double[end-start];
 		double[] resets = new double[end-start];
 		if (positionData) {
 			lat = new double[end-start];
 			lon = new double[end-start];
 		}
-		int j = results.length-1;
+		int[] pos = new int[names.length];
+		BitArrayLayout layout = null;
+		boolean rawValues = Config.displayRawValues;
+		// The raw values are gathered into columns and converted a run of records with the same layout at a time
+		int[][] raw = rawValues ? null : new int[names.length][end-start];
+		FramePart runRecord = null;
+		int runEnd = upTime.length;
+		int j = upTime.length-1;
 		for (int i=end-1; i>= start; i--) {
-			//System.out.println(rtRecords.size());
-			if (Config.displayRawValues)
-				results[j] = rtRecords.get(i).getRawValue(name);
-			else
-				results[j] = rtRecords.get(i).getDoubleValue(name, id);
+			// The values are read from the columns, a frame part is only made for the first record of each run
+			if (rtRecords.getLayout(i) != layout) {
+				if (!rawValues && layout != null)
+					convert(runRecord, names, pos, id, raw, j+1, runEnd, results);
+				runRecord = rtRecords.get(i);
+				runEnd = j+1;
+				layout = runRecord.layout;
+				for (int n=0; n < names.length; n++)
+					pos[n] = rawValues ? layout.getFirstPositionByName(names[n]) : layout.getPositionByName(names[n]);
+			}
+			for (int n=0; n < names.length; n++) {
+				if (rawValues)
+					results[n][j] = pos[n] == BitArrayLayout.ERROR_POSITION ? -1 : rtRecords.getRawValue(i, pos[n]);
+				else if (pos[n] != BitArrayLayout.ERROR_POSITION)
+					raw[n][j] = rtRecords.getRawValue(i, pos[n]);
+			}
 			if (positionData) {
-				lat[j] = rtRecords.get(i).satLatitude;
-				lon[j] = rtRecords.get(i).satLongitude;
+				lat[j] = rtRecords.getSatLatitude(i);
+				lon[j] = rtRecords.getSatLongitude(i);
 			}
-			upTime[j] = rtRecords.get(i).getUptime();
-			resets[j--] = rtRecords.get(i).getResets();
+			upTime[j] = rtRecords.getUptime(i);
+			resets[j--] = rtRecords.getResets(i);
 		}
+		if (!rawValues && layout != null)
+			convert(runRecord, names, pos, id, raw, j+1, runEnd, results);
 		
-		double[][] resultSet = new double[COLUMNS][end-start];
-		resultSet[PayloadStore.DATA_COL] = results;
-		resultSet[PayloadStore.UPTIME_COL] = upTime;
-		resultSet[PayloadStore.RESETS_COL] = resets;
-		if (positionData) {
-			resultSet[PayloadStore.LAT_COL] = lat;
-			resultSet[PayloadStore.LON_COL] = lon;
-			
+		double[][][] resultSet = new double[names.length][COLUMNS][];
+		for (int n=0; n < names.length; n++) {
+			resultSet[n][PayloadStore.DATA_COL] = results[n];
+			resultSet[n][PayloadStore.UPTIME_COL] = upTime;
+			resultSet[n][PayloadStore.RESETS_COL] = resets;
+			if (positionData) {
+				resultSet[n][PayloadStore.LAT_COL] = lat;
+				resultSet[n][PayloadStore.LON_COL] = lon;
+			}
 		}
 		
 		return resultSet;
 		} finally {
-			deleteLock = false;
+			lock.readLock().unlock();
 		}
 	}
-		
+	
 	/**
-	 * If Prev is true then we are searching for the previous record.  We do not create a new seg if it is missing
-	 * and we do not need reset to be the same in the seg we found.  We just want the previous record.
+	 * Convert the raw values from position from to to-1 of each column.  The records in this range all have the
+	 * layout of the record passed, which does the conversions.
+	 */
+	private static void convert(FramePart record, String[] names, int[] pos, Spacecraft id, int[][] raw, int from, int to, double[][] results) {
+		BitArrayLayout layout = record.layout;
+		for (int n=0; n < names.length; n++) {
+			if (pos[n] == BitArrayLayout.ERROR_POSITION)
+				Arrays.fill(results[n], from, to, BitArray.ERROR_VALUE);
+			else
+				record.convertRawValues(layout.fieldName[pos[n]], raw[n], from, to, layout.conversion[pos[n]], id, results[n]);
+		}
+	}
+	
+	/**
+	 * If Prev is true then we are searching for the previous record.  We do not need reset to be the same in the seg
+	 * we found.  We just want the previous record.
 	 * @param reset
 	 * @param uptime
 	 * @param prev
-	 * @return
-	 * @throws IOException
+	 * @return the segment or null if there is not one
 	 */
-	private TableSeg getSeg(int reset, long uptime, boolean prev) throws IOException {
+	private TableSeg findSeg(int reset, long uptime, boolean prev) {
 		if (Config.debugSegs) Log.println("SEG-GET: " + this.fileName + ":" + reset + ":" + uptime);
-		for (int i=tableIdx.size()-1; i>=0; i--) {
-			if (tableIdx.get(i).fromReset <= reset && tableIdx.get(i).fromUptime <= uptime) {
-				return tableIdx.get(i);
-			} else if (prev && tableIdx.get(i).fromReset < reset) {
+		int i = floorSeg(reset, uptime);
+		if (i < 0) return null;
+		if (prev || tableIdx.get(i).fromUptime <= uptime)
+			return tableIdx.get(i);
+		// A later reset with a lower uptime than the start of the segment.  We want the latest segment that starts at a 
+		// lower reset and uptime, which is usually not far back
+		for (i=i-1; i>=0; i--)
+			if (tableIdx.get(i).fromUptime <= uptime)
 				return tableIdx.get(i);
-			}
+		return null;
+	}
+	
+	/**
+	 * Binary search of the index for the last segment that starts at or before this reset/uptime
+	 * @param reset
+	 * @param uptime
+	 * @return the position of the segment in the index, or -1 if they all start after it
+	 */
+	private int floorSeg(int reset, long uptime) {
+		int low = 0;
+		int high = tableIdx.size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			TableSeg seg = tableIdx.get(mid);
+			if (TableSeg.compare(seg.fromReset, seg.fromUptime, reset, uptime) <= 0)
+				low = mid + 1;
+			else
+				high = mid;
 		}
-		if (prev) return null;
+		return low - 1;
+	}
+	
+	/**
+	 * Find the segment for a new record.  If there is not one then create a new segment at the head of the list.
+	 * Called with the write lock held
+	 * @param reset
+	 * @param uptime
+	 * @return
+	 */
+	private TableSeg getSeg(int reset, long uptime) {
+		TableSeg seg = findSeg(reset, uptime, false);
+		if (seg != null) return seg;
 		// We could not find a valid Segment, so create a new segment at the head of the list
-		TableSeg seg = new TableSeg(reset, uptime, baseFileName);
+		seg = new TableSeg(reset, uptime, baseFileName);
 		tableIdx.add(seg);
-		saveIdx();
+		changedSegs.add(seg);
 		return seg;
 	}
 	
 	/**
-	 * Make sure the segment for this reset/uptime is loaded and is ready to receive data
+	 * Make sure the segment for this reset/uptime is loaded and is ready to receive data.  Called with the write lock held
 	 * @param f
 	 * @throws IOException 
 	 */
-	private TableSeg loadSeg(int reset, long uptime, boolean prev) throws IOException {
+	private TableSeg loadSeg(int reset, long uptime) throws IOException {
 		if (Config.debugSegs) Log.println("SEG-LOAD: " + this.fileName + ":" + reset + ":" + uptime);
-		TableSeg seg = getSeg(reset, uptime, prev);
-		if (seg == null) return null;
-		seg.accessed();
-		if (seg.isLoaded()) return seg;
-		load(seg);
+		TableSeg seg = getSeg(reset, uptime);
+		ensureLoaded(seg);
 		return seg;
 	}
 	
 	/**
-	 * Load all of the segments needed between two timestamps and return the number of records in that range
-	 * Our first challenge is that either or both timestamps may be outside of a file.
+	 * Return the number of records between two timestamps.  Segments that the zone maps show are inside the range
+	 * are counted from the index, so only the segments that cross the ends of the range, or that do not have a
+	 * zone map yet, are loaded.  As before, a range that runs past the last record counts one less.
 	 * 
 	 * @param reset
 	 * @param uptime
@@ -352,31 +684,137 @@ public class SatPayloadTable {
 	 * @return the number of records in the range
 	 * @throws IOException
 	 */
-	protected synchronized int getNumberOfPayloadsBetweenTimestamps(int reset, long uptime, int toReset, long toUptime) throws IOException {
-		deleteLock = true;
+	public int getNumberOfPayloadsBetweenTimestamps(final int reset, final long uptime, final int toReset, final long toUptime) throws IOException {
+		if (TableSeg.compare(reset, uptime, toReset, toUptime) >= 0) return 0;
+		readLock(new SegmentSelection() {
+			public List<TableSeg> segments() {
+				ArrayList<TableSeg> segs = new ArrayList<TableSeg>();
+				for (TableSeg seg : tableIdx)
+					if (!seg.isWithin(reset, uptime, toReset, toUptime) && !seg.isOutside(reset, uptime, toReset, toUptime))
+						segs.add(seg);
+				return segs;
+			}
+		});
+		try {
+			int number = 0;
+			int lastReset = Integer.MIN_VALUE;
+			long lastUptime = Long.MIN_VALUE;
+			for (TableSeg seg : tableIdx) {
+				// A loaded segment is counted with the loaded records, so it is not counted twice
+				if (!seg.inMemory() && seg.isWithin(reset, uptime, toReset, toUptime))
+					number = number + seg.records;
+				if (seg.records > 0 && TableSeg.compare(seg.lastReset, seg.lastUptime, lastReset, lastUptime) > 0) {
+					lastReset = seg.lastReset;
+					lastUptime = seg.lastUptime;
+				}
+			}
+			number = number + rtRecords.getFirstFrameIndex(toUptime, toReset) - rtRecords.getFirstFrameIndex(uptime, reset);
+			if (TableSeg.compare(toReset, toUptime, lastReset, lastUptime) > 0 && number > 0)
+				number--; // the nearest record to a time after the last record is the last record
+			return number;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Return the records from one reset/uptime up to, but not including, another where the raw value of the field at
+	 * this position is from min to max.  Only the segments that the zone maps show could have a match are loaded.
+	 * @param pos - position of the field in the layout
+	 * @param min
+	 * @param max
+	 * @param fromReset
+	 * @param fromUptime
+	 * @param toReset
+	 * @param toUptime
+	 * @return the matching records in order
+	 * @throws IOException
+	 */
+	public List<FramePart> getFramesWithValue(final int pos, final int min, final int max, final int fromReset, final long fromUptime,
+			final int toReset, final long toUptime) throws IOException {
+		final ArrayList<TableSeg> segs = new ArrayList<TableSeg>();
+		readLock(new SegmentSelection() {
+			public List<TableSeg> segments() {
+				segs.clear();
+				for (TableSeg seg : tableIdx)
+					if (!seg.isOutside(fromReset, fromUptime, toReset, toUptime) && !seg.cannotMatch(pos, min, max))
+						segs.add(seg);
+				return segs;
+			}
+		});
+		try {
+			ArrayList<FramePart> results = new ArrayList<FramePart>();
+			int start = rtRecords.getFirstFrameIndex(fromUptime, fromReset);
+			int end = rtRecords.getFirstFrameIndex(toUptime, toReset);
+			for (int i=start; i < end; i++) {
+				if (pos >= rtRecords.getNumberOfFields(i)) continue;
+				int value = rtRecords.getRawValue(i, pos);
+				if (value >= min && value <= max)
+					results.add(rtRecords.get(i));
+			}
+			return results;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Write every record in the table as a CSV row, one segment at a time.  Each segment is read from disk into a
+	 * list that is dropped once it has been written, so the memory used does not grow with the size of the table and
+	 * the segments loaded for the graphs and tables are left as they are.  The records of each segment are written
+	 * in order without duplicates.  Compaction waits while an export runs, so the segments are not merged as they
+	 * are read.  Segments that are added after the export starts are not written.  The write lock is only held to
+	 * write a segment's records out of the journal, so the decoder and the graphs are not held up by the reads.
+	 * @param csv
+	 * @return the number of rows written
+	 * @throws IOException
+	 */
+	public long exportToCSV(PayloadCsvWriter csv) throws IOException {
+		exports.incrementAndGet();
 		try {
-		int fromSeg = findFirstSeg(reset, uptime);
-		int toSeg = findFirstSeg(toReset, toUptime);
-		int number = 0;
-		// Then we need to load segment at i and start counting from here, until we find the toReset and toUptime
-		//System.err.println("Loading from seg: "+i);
+			ArrayList<TableSeg> segs;
+			lock.readLock().lock();
+			try {
+				segs = new ArrayList<TableSeg>(tableIdx);
+			} finally {
+				lock.readLock().unlock();
+			}
+			long total = 0;
+			for (TableSeg seg : segs)
+				total = total + seg.records;
+			csv.setTotal(total);
+			csv.writeHeader();
 
-		int i = fromSeg;
-		while(i <= toSeg && i < tableIdx.size()) {
-			if (!tableIdx.get(i).isLoaded())
-				load(tableIdx.get(i));
-			i++;
-		}
-		int id = rtRecords.get(0).id; // id is the same for all records in this table
-		// Now all the segments are loaded that contain the data we want, so find the nearest records and count the distance between
-		int start = rtRecords.getNearestFrameIndex(id, uptime, reset);
-		int end = rtRecords.getNearestFrameIndex(id, toUptime, toReset);
-		if (start < end)
-			number = end - start;
-		
-		return number;
+			String dir = getDir() + PayloadStore.DB_NAME+File.separator;
+			ArrayList<FramePart> parts = new ArrayList<FramePart>(MAX_SEGMENT_SIZE);
+			for (TableSeg seg : segs) {
+				parts.clear();
+				String log = dir + seg.fileName;
+				lock.writeLock().lock(); // records are added to the journal with the write lock held
+				try {
+					journal.close(log);
+					lock.readLock().lock(); // downgrade, so nothing is added to the file while we read it
+				} finally {
+					lock.writeLock().unlock();
+				}
+				try {
+					if (!readSegment(log, new File(TableSegFile.getDatFileName(log)), parts))
+						Log.println("Could not read all of the records in " + seg.fileName + ", the rest are not exported");
+				} finally {
+					lock.readLock().unlock();
+				}
+				Collections.sort(parts);
+				FramePart last = null;
+				for (FramePart f : parts) {
+					if (last != null && f.compareTo(last) == 0) continue; // duplicate, only the first copy is loaded
+					if (!csv.write(f)) return csv.getRows();
+					last = f;
+				}
+			}
+			csv.finish();
+			return csv.getRows();
 		} finally {
-			deleteLock = false;
+			exports.decrementAndGet();
 		}
 	}
 	
@@ -389,7 +827,6 @@ public class SatPayloadTable {
 	 * @return
 	 */
 	private int findFirstSeg(int reset, long uptime) {
-		// load forwards from the relevant reset/uptime
 		/* Logic is like this:
 			reset x
 			uptime y
@@ -426,46 +863,13 @@ public class SatPayloadTable {
 			We want to load 0/100 because the data could be at the end
 			x > fromR, y is irrelevent
 			AND (x < next fromR OR (x = next from R AND y < uptime) )
+			
+			All of these cases are the last segment that starts at or before x/y, or the first segment if they all start
+			after it, so it is found with a binary search
 		 * 
 		 */
-		
-		boolean loadnow = false;
-		for (int i=0; i< tableIdx.size(); i++) {
-			if (!loadnow) { // we test the cases
-				//case 1:
-				if (tableIdx.get(i).fromReset > reset ) { // situation where the data is for a higher reset, so load from here always by default
-					loadnow = true;
-					//System.out.println("Case 1: " + i);
-				} 
-				// case 2:
-				if (i == 0) 
-					if (tableIdx.get(i).fromReset == reset) { // load this.  It might have the data we need and its the last segment
-						loadnow = true;
-					}
-				//case 4:
-				if (i < tableIdx.size()-1 &&  tableIdx.get(i).fromReset < reset && // this record has a lower reset
-						(tableIdx.get(i+1).fromReset > reset || (tableIdx.get(i+1).fromReset == reset && tableIdx.get(i+1).fromUptime > uptime))) { // but the next record has higher reset or same reset and high uptime
-					loadnow = true;
-					//System.out.println("Case 4: " + i);
-				}
-				//case 4b:
-				if (i < tableIdx.size()-1 &&  tableIdx.get(i).fromReset == reset && tableIdx.get(i).fromUptime < uptime && // this record has the same reset and uptime is less than the target
-						(tableIdx.get(i+1).fromReset > reset || (tableIdx.get(i+1).fromReset == reset && tableIdx.get(i+1).fromUptime > uptime))) { // but the next record has higher reset or same reset and uptime higher
-					loadnow = true;
-					//System.out.println("Case 4b: " + i);
-
-				}
-				//case 3:
-				if (i == tableIdx.size()-1 && tableIdx.get(i).fromReset <= reset) { // load this.  It might have the data we need and its the last segment
-					loadnow = true;
-					//System.out.println("Case 3: " + i);
-
-				}
-			}
-			if (loadnow) return i;
-		}
-		return -99;
-		
+		if (tableIdx.size() == 0) return -99;
+		return Math.max(floorSeg(reset, uptime), 0);
 	}
 	
 	/*
@@ -475,80 +879,140 @@ public class SatPayloadTable {
 	*/
 	
 	/**
-	 * Load all of the segments needed so that "number" of records is available.  Used for plotting graphs.  If segments are missing then
+	 * Select all of the segments needed so that "number" of records is available.  Used for plotting graphs.  If segments are missing then
 	 * we do not create them
 	 * @param reset
 	 * @param uptime
 	 * @param number
-	 * @throws IOException
 	 */
-	private synchronized void loadSegments(int reset, long uptime, int number, boolean reverse) throws IOException {
-		boolean existingLock = deleteLock;
-		deleteLock = true;
-		try {
-			int total = 0;
-			if (reverse) {
-				// load backwards, but load in the right order so that the inserts into the records list are fast (append at end)
-				// So we first calculate where to start
-				int startIdx = 0;
-				for (int i=tableIdx.size()-1; i>=0; i--) {
-					total += tableIdx.get(i).records;
-					if (total >= number) {
-						startIdx = i;
-						break;
+	private SegmentSelection segments(final int reset, final long uptime, final int number, final boolean reverse) {
+		return new SegmentSelection() {
+			public List<TableSeg> segments() {
+				ArrayList<TableSeg> segs = new ArrayList<TableSeg>();
+				int total = 0;
+				if (reverse) {
+					// load backwards, but load in the right order so that the inserts into the records list are fast (append at end)
+					// So we first calculate where to start
+					int startIdx = 0;
+					for (int i=tableIdx.size()-1; i>=0; i--) {
+						total += tableIdx.get(i).records;
+						if (total >= number) {
+							startIdx = i;
+							break;
+						}
 					}
+					// Now start index is the first segment we need to load
+					for (int i=startIdx; i<tableIdx.size(); i++)
+						segs.add(tableIdx.get(i));
+				} else {
+					int i = findFirstSeg(reset, uptime);
+					// Skip the segment if its zone map shows that all of its records are before the start
+					if (i >= 0 && i < tableIdx.size()-1 && tableIdx.get(i).isOutside(reset, uptime, Integer.MAX_VALUE, Long.MAX_VALUE))
+						i++;
+					// Then we need to load segment at i and start counting from here
+					if (i >= 0)
+						while(i < tableIdx.size()) {
+							segs.add(tableIdx.get(i));
+							total += tableIdx.get(i++).records;
+							if (total >= number+MAX_SEGMENT_SIZE) break; // add an extra segment because often we start from the segment before
+						}
 				}
-				total = 0;
-				// Now start index is the first segment we need to load, so now load them if needed
-				for (int i=startIdx; i<tableIdx.size(); i++) {
-					if (!tableIdx.get(i).isLoaded()) {
-						load(tableIdx.get(i));
-					} else {
-						tableIdx.get(i).accessed();
-					}
-					total += tableIdx.get(i).records;
-
+				return segs;
+			}
+		};
+	}
+	
+	/**
+	 * Select the segment for this reset/uptime, if there is one
+	 */
+	private SegmentSelection segment(final int reset, final long uptime, final boolean prev) {
+		return new SegmentSelection() {
+			public List<TableSeg> segments() {
+				TableSeg seg = findSeg(reset, uptime, prev);
+				if (seg == null) return Collections.emptyList();
+				return Collections.singletonList(seg);
+			}
+		};
+	}
+	
+	/**
+	 * The segments that a query needs.  segments() is called with the table locked, so it can read the index
+	 */
+	private interface SegmentSelection {
+		List<TableSeg> segments();
+	}
+	
+	/**
+	 * Take the read lock with the selected segments loaded.  If they are already loaded then only the read lock is
+	 * taken, so any number of graphs and tables can read at the same time.  Otherwise the write lock is taken to
+	 * load them and is then downgraded to the read lock, so the segments can not be offloaded before the caller has
+	 * read them.  The caller must release the read lock.  It is not held if an exception is thrown.
+	 * @param selection
+	 * @throws IOException
+	 */
+	private void readLock(SegmentSelection selection) throws IOException {
+		lock.readLock().lock();
+		try {
+			boolean loaded = true;
+			List<TableSeg> segs = selection.segments();
+			for (TableSeg seg : segs)
+				if (!seg.isLoaded()) {
+					loaded = false;
+					break;
 				}
-				//if (total >= number) System.err.println("Success we got: "+total+" records and needed "+number);
-			} else {
-				int i = findFirstSeg(reset, uptime);
-				// Then we need to load segment at i and start counting from here
-				//System.err.println("Loading from seg: "+i);
-				if (i >= 0)
-					while(i < tableIdx.size()) {
-						if (!tableIdx.get(i).isLoaded()) {
-							load(tableIdx.get(i));
-						} else {
-							tableIdx.get(i).accessed();
-						}
-						total += tableIdx.get(i++).records;
-						if (total >= number+MAX_SEGMENT_SIZE) break; // add an extra segment because often we start from the segment before
-					}
+			if (loaded) {
+				for (int i=0; i < segs.size(); i++)
+					cache.hit();
+				return;
 			}
+		} catch (RuntimeException e) {
+			lock.readLock().unlock();
+			throw e;
+		}
+		lock.readLock().unlock();
+		lock.writeLock().lock();
+		try {
+			for (TableSeg seg : selection.segments())
+				ensureLoaded(seg);
+			lock.readLock().lock(); // downgrade, so no writer can get in before the caller reads
 		} finally {
-			deleteLock = existingLock; // if this was already set then leave it set. e.g. called from data load
+			lock.writeLock().unlock();
 		}
 	}
 	
-	boolean deleteLock = false;
+	/**
+	 * True if a query or writer is using the table, so the SegmentCache should leave it alone for now
+	 */
+	boolean isPinned() { return lock.getReadLockCount() > 0 || lock.isWriteLocked(); }
 	
-	public synchronized void offloadSegments() {
-		while (deleteLock)
-			try {
-				Thread.sleep(10); // wait
-			} catch (InterruptedException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
-		boolean resized = false;
-		for (TableSeg seg : tableIdx) {
-			if (seg.isStale()) {
-				offloadSeg(seg);
-				resized = true;
-			}
-		}
-		if (resized)
+	/**
+	 * Make sure a segment is loaded and count the hit or miss in the cache.  Called with the write lock held
+	 * @param seg
+	 * @throws IOException
+	 */
+	private void ensureLoaded(TableSeg seg) throws IOException {
+		if (seg.isLoaded())
+			cache.hit();
+		else
+			load(seg);
+	}
+	
+	/**
+	 * Called by the SegmentCache to offload a segment.  The write lock means we wait for no reader, but if any
+	 * query is running we leave the segment and it is tried again on the next pass.
+	 * @param seg
+	 * @return true if the segment was offloaded
+	 */
+	boolean evict(TableSeg seg) {
+		if (!lock.writeLock().tryLock()) return false;
+		try {
+			if (!seg.inMemory()) return false;
+			offloadSeg(seg);
 			rtRecords.trimToSize(); // now try to reclaim the space
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
 	}
 	
 	/**
@@ -557,42 +1021,77 @@ public class SatPayloadTable {
 	 * @param seg
 	 */
 	private void offloadSeg(TableSeg seg) {
-		if (rtRecords == null || rtRecords.size() == 0) return;
+		if (rtRecords == null || rtRecords.size() == 0) {
+			seg.setLoaded(false);
+			cache.removed(seg);
+			return;
+		}
 		if (Config.debugSegs) Log.println("Offloaded SEG: " + seg.toString());
-		boolean foundStart = false;
-		int removed = 0;
 		seg.setLoaded(false);
-		for (int i=0; i<rtRecords.size();i++) {
-			if (!foundStart) {
-				FramePart f = rtRecords.get(i);
-				if (f != null)
-					if (f.resets == seg.fromReset && f.uptime == seg.fromUptime) {
-						// we have the first record, so we offload them
-						foundStart = true;
-					}
-			}
-			// Now if we found start we can remove the record and subsequent ones
-			if (foundStart) {
-				rtRecords.remove(i);
-				removed++;
-				if (removed == seg.records) {
-					break; // we are done
-				}
+		cache.removed(seg);
+		// Find the first record with a binary search and remove the run of records in one go
+		int start = rtRecords.getFirstFrameIndex(seg.fromUptime, seg.fromReset);
+		if (start == rtRecords.size()) return;
+		if (rtRecords.getResets(start) == seg.fromReset && rtRecords.getUptime(start) == seg.fromUptime) {
+			// we have the first record, so we offload them, but never past the start of the next segment
+			int end = Math.min(start + seg.records, rtRecords.size());
+			int i = Collections.binarySearch(tableIdx, seg);
+			if (i >= 0 && i < tableIdx.size()-1) {
+				TableSeg next = tableIdx.get(i+1);
+				end = Math.min(end, rtRecords.getFirstFrameIndex(next.fromUptime, next.fromReset));
 			}
-		}		
+			rtRecords.removeFrames(start, end);
+		}
 	}
 	
 	/**
-	 * Save a new record to disk		
+	 * Save a new record to disk.  The write lock is only held while the record is added in memory and to the journal.
+	 * Readers are not held up while it is written to disk.
 	 * @param f
 	 */
-	public synchronized boolean save(FramePart f) throws IOException {
-		deleteLock = true;
+	public boolean save(FramePart f) throws IOException {
+		return save(Collections.singletonList(f))[0];
+	}
+	
+	/**
+	 * Save a batch of new records with one pass of the write lock and at most one group commit, so a burst of
+	 * payloads is not written one record at a time.
+	 * @param parts
+	 * @return true for each record that was saved, false for a duplicate
+	 * @throws IOException
+	 */
+	public boolean[] save(List<? extends FramePart> parts) throws IOException {
+		boolean[] saved = new boolean[parts.size()];
+		boolean any = false;
+		lock.writeLock().lock();
 		try {
+			for (int i=0; i < parts.size(); i++) {
+				saved[i] = append(parts.get(i));
+				any = any || saved[i];
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+		if (any) {
+			journal.commitIfDue();
+			if (!journal.hasPending()) {
+				saveIdxChanges();
+				rollup.saveChanges();
+			}
+		}
+		return saved;
+	}
+	
+	/**
+	 * Add a record in memory and to the journal.  Called with the write lock held
+	 * @param f
+	 * @return false if the record is a duplicate
+	 * @throws IOException
+	 */
+	private boolean append(FramePart f) throws IOException {
 		// Make sure this segment is loaded, or create an empty segment if it does not exist
-		TableSeg seg = loadSeg(f.resets, f.uptime, false);
+		TableSeg seg = loadSeg(f.resets, f.uptime);
 		if (rtRecords.add(f)) {
-		//if (!rtRecords.hasFrame(f.id, f.uptime, f.resets)) {
 			updated = true;
 			if (seg.records == MAX_SEGMENT_SIZE) {
 				// We need to add a new segment with this as the first record
@@ -601,44 +1100,107 @@ public class SatPayloadTable {
 				if (added) // fails to add if reset/uptime has not changed, e.g. if all records from the same highspeed record.  Only issue in testing if segments very short
 					seg = newseg; 
 			}
-			save(f, getDir() + PayloadStore.DB_NAME+File.separator + seg.fileName);
+			journal.append(getDir() + PayloadStore.DB_NAME+File.separator + seg.fileName, f.toFile(storeMode));
 			seg.records++;
-			saveIdx();
-			//return rtRecords.add(f);
-			
+			seg.addStats(f);
+			addToRollup(seg, f);
+			if (!changedSegs.contains(seg))
+				changedSegs.add(seg);
 			return true;
-		} else {
-			if (Config.debugFieldValues) Log.println("DUPLICATE (or corrupt) RECORD, not saved: " + f.resets +":"+ f.uptime + " Ty:" + f.type);
 		}
-			return false;
-		} finally {
-			deleteLock = false;
+		if (Config.debugFieldValues) Log.println("DUPLICATE (or corrupt) RECORD, not saved: " + f.resets +":"+ f.uptime + " Ty:" + f.type);
+		return false;
+	}
+	
+	/**
+	 * Write any records waiting in the journal to disk, followed by their index entries.  The data is always
+	 * written before the index, so the index never counts a record that is not on disk.
+	 * @throws IOException
+	 */
+	public void commit() throws IOException {
+		journal.commit();
+		saveIdxChanges();
+		rollup.saveChanges();
+	}
+	
+	/**
+	 * Commit the journal if the oldest waiting record has been held for the group commit period
+	 * @throws IOException
+	 */
+	public void commitIfDue() throws IOException {
+		if (journal.commitIfDue()) {
+			saveIdxChanges();
+			rollup.saveChanges();
+		}
+	}
+	
+	/**
+	 * Commit the journal and close the open segment files.  Called at shutdown
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		journal.closeAll();
+		saveIdxChanges();
+		rollup.saveChanges();
+	}
+	
+	/**
+	 * The first time a segment is loaded in a session, remove any torn record left at the end of the log file by
+	 * an interrupted write and make sure the index has the right number of records for the segment.
+	 * @param seg
+	 * @param log
+	 * @param dat
+	 * @throws IOException
+	 */
+	private void recover(TableSeg seg, String log, File dat) throws IOException {
+		int records = SegmentJournal.repair(log);
+		if (dat.exists())
+			records = records + TableSegFile.countRecords(dat.getPath());
+		if (records != seg.records) {
+			Log.println("Index for " + seg.fileName + " had " + seg.records + " records but " + records + " are on disk.  Index updated");
+			seg.records = records;
+			seg.stats = false; // rebuilt as the segment is loaded
+			if (!changedSegs.contains(seg))
+				changedSegs.add(seg);
 		}
+		seg.checked = true;
 	}
 	
 	/**
 	 * Load a payload file from disk
 	 * Payload files are stored in separate logs, but this routine is written so that it can load mixed records
-	 * from a single file
+	 * from a single file.  Called with the write lock held
 	 * @param log
 	 * @throws IOException 
 	 */
-	public synchronized void load(TableSeg seg) throws IOException {
+	private void load(TableSeg seg) throws IOException {
 		String log = getDir() + PayloadStore.DB_NAME+File.separator + seg.fileName;
         String line;
+		File dat = new File(TableSegFile.getDatFileName(log));
+		journal.close(log); // any records still in the journal must be on disk before we read the file
+		if (!seg.checked)
+			recover(seg, log, dat);
+		ArrayList<FramePart> parts = new ArrayList<FramePart>();
+		if (dat.exists()) {
+			loadBinary(dat.getPath(), parts);
+			// Only records that arrived after the segment was converted are in the log file
+			if (!new File(log).exists()) {
+				rtRecords.addAll(parts);
+				loaded(seg, parts);
+				return;
+			}
+		}
         createNewFile(log);
  
         BufferedReader dis = new BufferedReader(new FileReader(log));
-        deleteLock = true;
+        boolean complete = false;
         try {
         	while ((line = dis.readLine()) != null) {
-        		if (line != null) {
-        			addLine(line);
-        		}
+        		FoxFramePart rt = parseLine(line);
+        		if (rt != null)
+        			parts.add(rt);
         	}
-        	seg.setLoaded(true);
-        	if (Config.debugSegs) Log.println("Loaded SEG: " + seg.toString());
-        	dis.close();
+        	complete = true;
         } catch (IOException e) {
         	e.printStackTrace(Log.getWriter());
         	Log.println(e.getMessage());
@@ -647,12 +1209,74 @@ public class SatPayloadTable {
         	Log.println(n.getMessage());
         } finally {
         	dis.close();
-        	deleteLock = false;
         }
+        rtRecords.addAll(parts);
+        if (complete)
+        	loaded(seg, parts);
+	}
+	
+	/**
+	 * Mark a segment as loaded and add it to the SegmentCache.  If the index did not have the zone map for the
+	 * segment then it is built from the records, and written with the next change to the index
+	 * @param seg
+	 * @param parts - all of the records in the segment
+	 */
+	private void loaded(TableSeg seg, List<FramePart> parts) {
+		if (!seg.stats) {
+			seg.setStats(parts);
+			if (!changedSegs.contains(seg))
+				changedSegs.add(seg);
+		}
+		seg.setLoaded(true);
+		int fields = 0;
+		if (rtRecords.size() > 0)
+			fields = rtRecords.getNumberOfFields(0);
+		cache.loaded(this, seg, SegmentCache.bytesPerRecord(fields));
+		if (Config.debugSegs) Log.println("Loaded SEG: " + seg.toString());
+	}
 
+	/**
+	 * Load the records from a binary segment file.  The file is read in one go and the columns are copied into the
+	 * frame parts, so there is no parsing of the values
+	 * @param dat
+	 * @param records - the list the records are added to
+	 * @return the number of records in the file, which is more than were added if any could not be made
+	 * @throws IOException
+	 */
+	private int loadBinary(String dat, List<FramePart> records) throws IOException {
+		TableSegFile segFile = TableSegFile.open(dat);
+		for (int r=0; r < segFile.getNumberOfRecords(); r++) {
+			FoxFramePart rt = makeFramePart(segFile.getId(), segFile.getResets(r), segFile.getUptime(r), 
+					segFile.getCaptureDate(r), segFile.getType(r), new StringTokenizer(""), null);
+			if (rt == null) continue;
+			segFile.getFieldValues(r, rt.fieldValue);
+			if (storeMode)
+				rt.newMode = segFile.getMode(r);
+			if (records != null)
+				records.add(rt);
+		}
+		return segFile.getNumberOfRecords();
 	}
 
 	private FoxFramePart addLine(String line) {
+		FoxFramePart rt = parseLine(line);
+		// Check the the record set is actually loaded.  Sometimes at start up the GUI is querying for records before they are loaded
+		if (rtRecords != null && rt != null) {
+			try {
+			rtRecords.add(rt);
+			} catch (NullPointerException e) {
+				rtRecords.add(rt); // try again, sometimes we get an issue from the SortedArrayList
+			}
+		}
+		return rt;
+	}
+
+	/**
+	 * Parse one line of a CSV segment file into a frame part.  The record is not added to the loaded records
+	 * @param line
+	 * @return the frame part or null if the line could not be parsed
+	 */
+	private FoxFramePart parseLine(String line) {
 		if (line.length() == 0) return null;
 		String date = null;
 		int id = 0;
@@ -671,140 +1295,13 @@ public class SatPayloadTable {
 			if (storeMode)
 				mode = Integer.valueOf(st.nextToken()).intValue();
 
-			// We should never get this situation, but good to check..
-			if (Config.satManager.getSpacecraft(id) == null) {
-				Log.errorDialog("FATAL", "Attempting to Load payloads from the Payload store for satellite with Fox Id: " + id 
-						+ "\n when no sattellite with that FoxId is configured.  Add this spacecraft to the satellite directory and restart FoxTelem."
-						+ "\nProgram will now exit");
-				System.exit(1);
-			}
-			FoxFramePart rt = null;
-			if (type == FoxFramePart.TYPE_REAL_TIME) {
-				rt = new PayloadRtValues(id, resets, uptime, date, st, Config.satManager.getLayoutByName(id, Spacecraft.REAL_TIME_LAYOUT));
-			}
-			if (type == FoxFramePart.TYPE_WOD) {
-				rt = new PayloadWOD(id, resets, uptime, date, st, Config.satManager.getLayoutByName(id, Spacecraft.WOD_LAYOUT));
-			}
-			if (type == FoxFramePart.TYPE_MAX_VALUES) {
-				rt = new PayloadMaxValues(id, resets, uptime, date, st, Config.satManager.getLayoutByName(id, Spacecraft.MAX_LAYOUT));
-
-			}
-			if (type == FoxFramePart.TYPE_MIN_VALUES) {
-				rt = new PayloadMinValues(id, resets, uptime, date, st, Config.satManager.getLayoutByName(id, Spacecraft.MIN_LAYOUT));
-
-			}
-			if (type == FoxFramePart.TYPE_RAD_TELEM_DATA || type >= 700 && type < 800) {
-				rt = new RadiationTelemetry(id, resets, uptime, date, st, Config.satManager.getLayoutByName(id, Spacecraft.RAD2_LAYOUT));
-				rt.type = type; // make sure we get the right type
-			}
-			if (type == FoxFramePart.TYPE_WOD_RAD_TELEM_DATA ) {
-				rt = new WodRadiationTelemetry(id, resets, uptime, date, st, Config.satManager.getLayoutByName(id, Spacecraft.WOD_RAD2_LAYOUT));
-				rt.type = type; // make sure we get the right type
-
-			}
-			if (type == FoxFramePart.TYPE_RAD_EXP_DATA || type >= 400 && type < 500) {
-				rt = new PayloadRadExpData(id, resets, uptime, date, st, Config.satManager.getLayoutByName(id, Spacecraft.RAD_LAYOUT));
-				rt.type = type; // make sure we get the right type
-
-				// hack to convert data - only used in testing
-				if (Config.generateSecondaryPayloads) {
-					PayloadRadExpData f = (PayloadRadExpData)rt; 
-					RadiationTelemetry radiationTelemetry = f.calculateTelemetryPalyoad();
-					radiationTelemetry.captureHeaderInfo(f.id, f.uptime, f.resets);
-					if (f.type >= 400) // this is a high speed record
-						radiationTelemetry.type = f.type + 300; // we give the telem record 700+ type
-					Config.payloadStore.add(f.id, f.uptime, f.resets, radiationTelemetry);
-					Config.payloadStore.setUpdated(id, Spacecraft.RAD_LAYOUT, true);			
-				}
-			}
-			if (type == FoxFramePart.TYPE_WOD_RAD) {
-				rt = new PayloadWODRad(id, resets, uptime, date, st, Config.satManager.getLayoutByName(id, Spacecraft.WOD_RAD_LAYOUT));
-				rt.type = type;
-
-				// hack to convert data - only used in testing
-				if (Config.generateSecondaryPayloads) {
-					PayloadWODRad f = (PayloadWODRad)rt; 
-					WodRadiationTelemetry radiationTelemetry = f.calculateTelemetryPalyoad();
-					radiationTelemetry.captureHeaderInfo(f.id, f.uptime, f.resets);
-					Config.payloadStore.add(f.id, f.uptime, f.resets, radiationTelemetry);
-					Config.payloadStore.setUpdated(id, Spacecraft.WOD_RAD_LAYOUT, true);			
-				}
-			}
-			if (type == FoxFramePart.TYPE_HERCI_HIGH_SPEED_DATA || type >= 600 && type < 700) {
-				rt = new PayloadHERCIhighSpeed(id, resets, uptime, date, st, Config.satManager.getLayoutByName(id, Spacecraft.HERCI_HS_LAYOUT));
-				rt.type = type; // make sure we get the right type
-				if (Config.generateSecondaryPayloads) {
-					// Test routine that generates the secondary payloads
-					PayloadHERCIhighSpeed f = (PayloadHERCIhighSpeed)rt;
-					HerciHighspeedHeader radiationTelemetry = f.calculateTelemetryPalyoad();
-					radiationTelemetry.captureHeaderInfo(f.id, f.uptime, f.resets);
-					if (f.type >= 600) // this is a high speed record
-						radiationTelemetry.type = f.type + 200; // we give the telem record 800+ type
-					Config.payloadStore.add(f.id, f.uptime, f.resets, radiationTelemetry);
-
-					//updatedHerciHeader = true;
-
-					ArrayList<HerciHighSpeedPacket> pkts = f.calculateTelemetryPackets();
-					for(int i=0; i< pkts.size(); i++) {
-						HerciHighSpeedPacket pk = pkts.get(i);
-						pk.captureHeaderInfo(f.id, f.uptime, f.resets);
-						if (f.type >= 600) // this is a high speed record
-							pk.type = f.type*1000 + 900 + i;; // we give the telem record 900+ type.  Assumes 10 minipackets or less
-							Config.payloadStore.add(f.id, f.uptime, f.resets,pk);
-					}
-				}
-			}
-			if (type == FoxFramePart.TYPE_HERCI_SCIENCE_HEADER || type >= 800 && type < 900) {
-				rt = new HerciHighspeedHeader(id, resets, uptime, date, st, Config.satManager.getLayoutByName(id, Spacecraft.HERCI_HS_HEADER_LAYOUT));
-				rt.type = type; // make sure we get the right type
-			}
-			if (type == FoxFramePart.TYPE_HERCI_HS_PACKET || type >= 600900 && type < 700000) {
-				rt = new HerciHighSpeedPacket(id, resets, uptime, date, st, Config.satManager.getLayoutByName(id, Spacecraft.HERCI_HS_PKT_LAYOUT));
-				rt.type = type; // make sure we get the right type
-			}
-			if (type == FoxFramePart.TYPE_UW_CAN_PACKET || type >= 1400 && type < 1500) {
-				rt = new CanPacket(id, resets, uptime, date, st, Config.satManager.getLayoutByName(id, Spacecraft.CAN_PKT_LAYOUT));
-				rt.type = type; // make sure we get the right type
-			}	
-			if (type == FoxFramePart.TYPE_UW_WOD_CAN_PACKET || type >= 1600 && type < 1700) {
-				rt = new CanPacket(id, resets, uptime, date, st, Config.satManager.getLayoutByName(id, Spacecraft.WOD_CAN_PKT_LAYOUT));
-				rt.type = type; // make sure we get the right type
-			}
-			if (type == FoxFramePart.TYPE_UW_CAN_PACKET_TELEM || type >= 1700 && type < 1800) {
-
-				String[] st2 = line.split(",");
-				int canIdField = 5;
-				if (storeMode)
-					canIdField = 6;
-				int pktid = Integer.valueOf(st2[canIdField]).intValue();
-				int pktid1 = Integer.valueOf(st2[canIdField+1]).intValue();
-				int pktid2 = Integer.valueOf(st2[canIdField+2]).intValue();
-				int pktid3 = Integer.valueOf(st2[canIdField+3]).intValue();
-				int canId = CanPacket.getIdFromRawBytes(pktid,pktid1,pktid2,pktid3);
-				BitArrayLayout canLayout = Config.satManager.getLayoutByCanId(id, canId);
-				rt = new CanPacket(id, resets, uptime, date, st, canLayout);
-
-				if (rt != null)
-					rt.type = type; // make sure we get the right type
-			}
-			if (type == FoxFramePart.TYPE_UW_EXPERIMENT || type >= 1300 && type < 1400 ) {
-				rt = new PayloadUwExperiment(id, resets, uptime, date, st, Config.satManager.getLayoutByName(id, Spacecraft.CAN_LAYOUT));
-				rt.type = type; // make sure we get the right type
-			}
-			if (type == FoxFramePart.TYPE_UW_WOD_EXPERIMENT || type >= 1500 && type < 1600 ) {
-				rt = new PayloadWODUwExperiment(id, resets, uptime, date, st, Config.satManager.getLayoutByName(id, Spacecraft.WOD_CAN_LAYOUT));
-				rt.type = type; // make sure we get the right type
-			}
-
-			// Check the the record set is actually loaded.  Sometimes at start up the GUI is querying for records before they are loaded
-			if (rtRecords != null && rt != null) {
+			FoxFramePart rt = makeFramePart(id, resets, uptime, date, type, st, line);
+			if (rt != null) {
 				if (storeMode)
 					rt.newMode = mode;
-				try {
-				rtRecords.add(rt);
-				} catch (NullPointerException e) {
-					rtRecords.add(rt); // try again, sometimes we get an issue from the SortedArrayList
-				}
+				// hack to convert data - only used in testing
+				if (Config.generateSecondaryPayloads)
+					generateSecondaryPayloads(rt);
 			}
 			return rt;
 		} catch (NoSuchElementException e) {
@@ -831,6 +1328,138 @@ public class SatPayloadTable {
 		
 	}
 	
+	/**
+	 * Make the frame part for this type of record.  The fields are loaded from the tokenizer, which is empty when the
+	 * record comes from a binary segment and the values are copied in afterwards.  The line is only needed for CAN packets
+	 * where the layout depends on the packet id.
+	 */
+	private FoxFramePart makeFramePart(int id, int resets, long uptime, String date, int type, StringTokenizer st, String line) {
+		// We should never get this situation, but good to check..
+		if (Config.satManager.getSpacecraft(id) == null) {
+			Log.errorDialog("FATAL", "Attempting to Load payloads from the Payload store for satellite with Fox Id: " + id 
+					+ "\n when no sattellite with that FoxId is configured.  Add this spacecraft to the satellite directory and restart FoxTelem."
+					+ "\nProgram will now exit");
+			System.exit(1);
+		}
+		FoxFramePart rt = null;
+		if (type == FoxFramePart.TYPE_REAL_TIME) {
+			rt = new PayloadRtValues(id, resets, uptime, date, st, Config.satManager.getLayoutByName(id, Spacecraft.REAL_TIME_LAYOUT));
+		}
+		if (type == FoxFramePart.TYPE_WOD) {
+			rt = new PayloadWOD(id, resets, uptime, date, st, Config.satManager.getLayoutByName(id, Spacecraft.WOD_LAYOUT));
+		}
+		if (type == FoxFramePart.TYPE_MAX_VALUES) {
+			rt = new PayloadMaxValues(id, resets, uptime, date, st, Config.satManager.getLayoutByName(id, Spacecraft.MAX_LAYOUT));
+
+		}
+		if (type == FoxFramePart.TYPE_MIN_VALUES) {
+			rt = new PayloadMinValues(id, resets, uptime, date, st, Config.satManager.getLayoutByName(id, Spacecraft.MIN_LAYOUT));
+
+		}
+		if (type == FoxFramePart.TYPE_RAD_TELEM_DATA || type >= 700 && type < 800) {
+			rt = new RadiationTelemetry(id, resets, uptime, date, st, Config.satManager.getLayoutByName(id, Spacecraft.RAD2_LAYOUT));
+			rt.type = type; // make sure we get the right type
+		}
+		if (type == FoxFramePart.TYPE_WOD_RAD_TELEM_DATA ) {
+			rt = new WodRadiationTelemetry(id, resets, uptime, date, st, Config.satManager.getLayoutByName(id, Spacecraft.WOD_RAD2_LAYOUT));
+			rt.type = type; // make sure we get the right type
+
+		}
+		if (type == FoxFramePart.TYPE_RAD_EXP_DATA || type >= 400 && type < 500) {
+			rt = new PayloadRadExpData(id, resets, uptime, date, st, Config.satManager.getLayoutByName(id, Spacecraft.RAD_LAYOUT));
+			rt.type = type; // make sure we get the right type
+		}
+		if (type == FoxFramePart.TYPE_WOD_RAD) {
+			rt = new PayloadWODRad(id, resets, uptime, date, st, Config.satManager.getLayoutByName(id, Spacecraft.WOD_RAD_LAYOUT));
+			rt.type = type;
+		}
+		if (type == FoxFramePart.TYPE_HERCI_HIGH_SPEED_DATA || type >= 600 && type < 700) {
+			rt = new PayloadHERCIhighSpeed(id, resets, uptime, date, st, Config.satManager.getLayoutByName(id, Spacecraft.HERCI_HS_LAYOUT));
+			rt.type = type; // make sure we get the right type
+		}
+		if (type == FoxFramePart.TYPE_HERCI_SCIENCE_HEADER || type >= 800 && type < 900) {
+			rt = new HerciHighspeedHeader(id, resets, uptime, date, st, Config.satManager.getLayoutByName(id, Spacecraft.HERCI_HS_HEADER_LAYOUT));
+			rt.type = type; // make sure we get the right type
+		}
+		if (type == FoxFramePart.TYPE_HERCI_HS_PACKET || type >= 600900 && type < 700000) {
+			rt = new HerciHighSpeedPacket(id, resets, uptime, date, st, Config.satManager.getLayoutByName(id, Spacecraft.HERCI_HS_PKT_LAYOUT));
+			rt.type = type; // make sure we get the right type
+		}
+		if (type == FoxFramePart.TYPE_UW_CAN_PACKET || type >= 1400 && type < 1500) {
+			rt = new CanPacket(id, resets, uptime, date, st, Config.satManager.getLayoutByName(id, Spacecraft.CAN_PKT_LAYOUT));
+			rt.type = type; // make sure we get the right type
+		}	
+		if (type == FoxFramePart.TYPE_UW_WOD_CAN_PACKET || type >= 1600 && type < 1700) {
+			rt = new CanPacket(id, resets, uptime, date, st, Config.satManager.getLayoutByName(id, Spacecraft.WOD_CAN_PKT_LAYOUT));
+			rt.type = type; // make sure we get the right type
+		}
+		if (type == FoxFramePart.TYPE_UW_CAN_PACKET_TELEM || type >= 1700 && type < 1800) {
+
+			String[] st2 = line.split(",");
+			int canIdField = 5;
+			if (storeMode)
+				canIdField = 6;
+			int pktid = Integer.valueOf(st2[canIdField]).intValue();
+			int pktid1 = Integer.valueOf(st2[canIdField+1]).intValue();
+			int pktid2 = Integer.valueOf(st2[canIdField+2]).intValue();
+			int pktid3 = Integer.valueOf(st2[canIdField+3]).intValue();
+			int canId = CanPacket.getIdFromRawBytes(pktid,pktid1,pktid2,pktid3);
+			BitArrayLayout canLayout = Config.satManager.getLayoutByCanId(id, canId);
+			rt = new CanPacket(id, resets, uptime, date, st, canLayout);
+
+			if (rt != null)
+				rt.type = type; // make sure we get the right type
+		}
+		if (type == FoxFramePart.TYPE_UW_EXPERIMENT || type >= 1300 && type < 1400 ) {
+			rt = new PayloadUwExperiment(id, resets, uptime, date, st, Config.satManager.getLayoutByName(id, Spacecraft.CAN_LAYOUT));
+			rt.type = type; // make sure we get the right type
+		}
+		if (type == FoxFramePart.TYPE_UW_WOD_EXPERIMENT || type >= 1500 && type < 1600 ) {
+			rt = new PayloadWODUwExperiment(id, resets, uptime, date, st, Config.satManager.getLayoutByName(id, Spacecraft.WOD_CAN_LAYOUT));
+			rt.type = type; // make sure we get the right type
+		}
+		return rt;
+	}
+
+	/**
+	 * Test routine that generates the secondary payloads from a primary payload as it is loaded
+	 * @param rt
+	 */
+	private void generateSecondaryPayloads(FoxFramePart rt) {
+		int id = rt.id;
+		if (rt instanceof PayloadWODRad) {
+			PayloadWODRad f = (PayloadWODRad)rt; 
+			WodRadiationTelemetry radiationTelemetry = f.calculateTelemetryPalyoad();
+			radiationTelemetry.captureHeaderInfo(f.id, f.uptime, f.resets);
+			Config.payloadStore.add(f.id, f.uptime, f.resets, radiationTelemetry);
+			Config.payloadStore.setUpdated(id, Spacecraft.WOD_RAD_LAYOUT, true);			
+		} else if (rt instanceof PayloadRadExpData) {
+			PayloadRadExpData f = (PayloadRadExpData)rt; 
+			RadiationTelemetry radiationTelemetry = f.calculateTelemetryPalyoad();
+			radiationTelemetry.captureHeaderInfo(f.id, f.uptime, f.resets);
+			if (f.type >= 400) // this is a high speed record
+				radiationTelemetry.type = f.type + 300; // we give the telem record 700+ type
+			Config.payloadStore.add(f.id, f.uptime, f.resets, radiationTelemetry);
+			Config.payloadStore.setUpdated(id, Spacecraft.RAD_LAYOUT, true);			
+		} else if (rt instanceof PayloadHERCIhighSpeed) {
+			PayloadHERCIhighSpeed f = (PayloadHERCIhighSpeed)rt;
+			HerciHighspeedHeader radiationTelemetry = f.calculateTelemetryPalyoad();
+			radiationTelemetry.captureHeaderInfo(f.id, f.uptime, f.resets);
+			if (f.type >= 600) // this is a high speed record
+				radiationTelemetry.type = f.type + 200; // we give the telem record 800+ type
+			Config.payloadStore.add(f.id, f.uptime, f.resets, radiationTelemetry);
+
+			ArrayList<HerciHighSpeedPacket> pkts = f.calculateTelemetryPackets();
+			for(int i=0; i< pkts.size(); i++) {
+				HerciHighSpeedPacket pk = pkts.get(i);
+				pk.captureHeaderInfo(f.id, f.uptime, f.resets);
+				if (f.type >= 600) // this is a high speed record
+					pk.type = f.type*1000 + 900 + i;; // we give the telem record 900+ type.  Assumes 10 minipackets or less
+					Config.payloadStore.add(f.id, f.uptime, f.resets,pk);
+			}
+		}
+	}
+	
 	public void convert() throws IOException {
         String log = getDir()+baseFileName+".log";
 		String line;
@@ -840,6 +1469,7 @@ public class SatPayloadTable {
 		if(aFile.exists()){
 			// then convert it
 			BufferedReader dis = new BufferedReader(new FileReader(log));
+			lock.writeLock().lock();
 			try {
 				while ((line = dis.readLine()) != null) {
 					if (line != null) {
@@ -854,8 +1484,10 @@ public class SatPayloadTable {
 								tableIdx.add(seg);
 							}
 							save(rt, getDir() + PayloadStore.DB_NAME+File.separator + seg.fileName);
+							addToRollup(seg, rt);
 							linesAdded++;
 							seg.records = linesAdded;
+							seg.addStats(rt);
 						}
 					}
 				}
@@ -867,11 +1499,249 @@ public class SatPayloadTable {
 
 			} catch (NumberFormatException n) {
 				n.printStackTrace(Log.getWriter());
+			} finally {
+				lock.writeLock().unlock();
 			}
 		}
 		saveIdx();
+		rollup.saveChanges();
 	}
 	
+	/**
+	 * Convert the full segments of this table to the binary segment format.  The last segment is still being
+	 * written to, so it stays as CSV.  A segment that holds records which can not be stored in binary is left as it is.
+	 * @return the number of segments converted
+	 * @throws IOException
+	 */
+	public int convertToBinary() throws IOException {
+		int converted = 0;
+		lock.writeLock().lock();
+		try {
+			for (int i=0; i < tableIdx.size()-1; i++) {
+				String log = getDir() + PayloadStore.DB_NAME+File.separator + tableIdx.get(i).fileName;
+				if (!new File(log).exists()) continue; // already binary and no late records
+				if (convertToBinary(log))
+					converted++;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+		return converted;
+	}
+
+	/**
+	 * Rewrite one segment as a binary file.  Any existing binary file for the segment is merged with the records
+	 * in the log file.  The log file is only removed once the binary file is safely written.
+	 * @param log
+	 * @return true if the segment was converted
+	 * @throws IOException
+	 */
+	private boolean convertToBinary(String log) throws IOException {
+		journal.close(log);
+		String dat = TableSegFile.getDatFileName(log);
+		ArrayList<FramePart> parts = new ArrayList<FramePart>();
+		if (new File(dat).exists())
+			loadBinary(dat, parts);
+		String line;
+		BufferedReader dis = new BufferedReader(new FileReader(log));
+		try {
+			while ((line = dis.readLine()) != null) {
+				FoxFramePart rt = parseLine(line);
+				if (rt != null) {
+					if (!TableSegFile.canStore(rt)) return false;
+					if (parts.size() > 0 && parts.get(0).fieldValue.length != rt.fieldValue.length) return false;
+					parts.add(rt);
+				}
+			}
+		} finally {
+			dis.close();
+		}
+		Collections.sort(parts);
+		TableSegFile.write(dat, parts);
+		SatPayloadStore.remove(log);
+		if (Config.debugSegs) Log.println("Converted SEG to binary: " + dat + " with " + parts.size() + " records");
+		return true;
+	}
+
+	/**
+	 * Merge runs of adjacent small segments into one segment of up to MAX_SEGMENT_SIZE records and remove any
+	 * duplicate records from the segments that are rewritten.  The last segment is left alone because the decoder
+	 * writes to it.
+	 *
+	 * The write lock is only held while one run of segments is merged, so the decoder can keep saving records while
+	 * this runs.  The merged records are written to the first segment of the run before the index is rewritten without
+	 * the others, and their files are only removed after that.  If we stop part way the worst case is a record that
+	 * is in two segments, which is dropped as a duplicate when it is loaded.
+	 * @return what was done
+	 * @throws IOException
+	 */
+	public CompactionReport compact() throws IOException {
+		long start = System.nanoTime();
+		CompactionReport report = new CompactionReport();
+		report.tables = 1;
+		ArrayList<String> removed = new ArrayList<String>(); // files of merged segments, removed once the index is saved
+		int i = 0;
+		boolean done = false;
+		while (!done) {
+			synchronized (idxLock) {
+				lock.writeLock().lock();
+				try {
+					if (i == 0) report.segments = tableIdx.size();
+					if (exports.get() > 0) {
+						// An export or the rollup rebuild is reading the segments, so leave the rest until the next compaction
+						Log.println(fileName + ": compaction stopped while the segments are read");
+						done = true;
+					}
+					for (int n=0; n < COMPACT_IDX_BATCH && !done; n++) {
+						if (i >= tableIdx.size()-1)
+							done = true;
+						else
+							compact(i++, report, removed);
+					}
+				} finally {
+					lock.writeLock().unlock();
+				}
+				if (removed.size() > 0)
+					saveIdx();
+			}
+			for (String f : removed)
+				SatPayloadStore.remove(f);
+			removed.clear();
+		}
+		report.time = (System.nanoTime() - start)/1000000;
+		if (report.segmentsRewritten > 0)
+			Log.println(fileName + ": " + report);
+		return report;
+	}
+
+	/**
+	 * Merge the segment at this position in the index with the small segments that follow it.  A single segment is
+	 * only rewritten if it holds duplicates.  Called with the idxLock and the write lock held
+	 * @param first
+	 * @param report
+	 * @param removed - the files of any merged segments are added to this list
+	 * @throws IOException
+	 */
+	private void compact(int first, CompactionReport report, ArrayList<String> removed) throws IOException {
+		int last = first;
+		int records = tableIdx.get(first).records;
+		while (last+1 < tableIdx.size()-1 && records + tableIdx.get(last+1).records <= MAX_SEGMENT_SIZE)
+			records = records + tableIdx.get(++last).records;
+		ArrayList<TableSeg> group = new ArrayList<TableSeg>(tableIdx.subList(first, last+1));
+
+		String dir = getDir() + PayloadStore.DB_NAME+File.separator;
+		ArrayList<FramePart> parts = new ArrayList<FramePart>();
+		long bytes = 0;
+		for (TableSeg seg : group) {
+			String log = dir + seg.fileName;
+			journal.close(log);
+			File dat = new File(TableSegFile.getDatFileName(log));
+			bytes = bytes + new File(log).length() + dat.length();
+			if (!readSegment(log, dat, parts)) {
+				Log.println("Could not compact " + seg.fileName + ", it has records that can not be read.  It is left as it is");
+				return;
+			}
+		}
+		Collections.sort(parts);
+		int duplicates = 0;
+		for (int j=parts.size()-1; j > 0; j--)
+			if (parts.get(j).compareTo(parts.get(j-1)) == 0) {
+				parts.remove(j); // keep the first copy, which is the one that is loaded
+				duplicates++;
+			}
+		if (group.size() == 1 && duplicates == 0) return;
+
+		// The segments are read again from the new file when they are next needed
+		for (TableSeg seg : group)
+			if (seg.inMemory())
+				offloadSeg(seg);
+		TableSeg seg = group.get(0);
+		String log = dir + seg.fileName;
+		String dat = TableSegFile.getDatFileName(log);
+		boolean binary = Config.useBinarySegments;
+		for (FramePart f : parts)
+			if (!TableSegFile.canStore(f) || f.fieldValue.length != parts.get(0).fieldValue.length)
+				binary = false;
+		if (binary) {
+			TableSegFile.write(dat, parts);
+			SatPayloadStore.remove(log);
+		} else {
+			writeSegment(log, parts);
+			SatPayloadStore.remove(dat);
+		}
+		seg.records = parts.size();
+		seg.setStats(parts);
+		seg.checked = true;
+		if (!changedSegs.contains(seg))
+			changedSegs.add(seg);
+		for (int j=1; j < group.size(); j++) {
+			tableIdx.remove(group.get(j));
+			changedSegs.remove(group.get(j));
+			removed.add(dir + group.get(j).fileName);
+			removed.add(TableSegFile.getDatFileName(dir + group.get(j).fileName));
+		}
+		report.segmentsRemoved += group.size() - 1;
+		report.segmentsRewritten++;
+		report.duplicates += duplicates;
+		report.bytesBefore += bytes;
+		report.bytesAfter += new File(log).length() + new File(dat).length();
+		if (Config.debugSegs) Log.println("Compacted SEG: " + seg.toString() + " from " + group.size() + " segments");
+	}
+
+	/**
+	 * Read the binary and CSV records of one segment without adding them to the loaded records
+	 * @param log
+	 * @param dat
+	 * @param parts - the records are added to this list
+	 * @return false if any record could not be read, so the segment must not be rewritten
+	 * @throws IOException
+	 */
+	private boolean readSegment(String log, File dat, List<FramePart> parts) throws IOException {
+		if (dat.exists()) {
+			int size = parts.size();
+			int expected = loadBinary(dat.getPath(), parts);
+			if (parts.size() - size != expected) return false;
+		}
+		if (!new File(log).exists()) return true;
+		String line;
+		BufferedReader dis = new BufferedReader(new FileReader(log));
+		try {
+			while ((line = dis.readLine()) != null) {
+				if (line.length() == 0) continue;
+				FoxFramePart rt = parseLine(line);
+				if (rt == null) return false;
+				parts.add(rt);
+			}
+		} catch (NumberFormatException e) {
+			return false;
+		} finally {
+			dis.close();
+		}
+		return true;
+	}
+
+	/**
+	 * Replace a CSV segment file with these records.  They are written to a temporary file that is then moved over
+	 * the segment, so a reader never sees part of the file
+	 * @param log
+	 * @param parts
+	 * @throws IOException
+	 */
+	private void writeSegment(String log, List<FramePart> parts) throws IOException {
+		File tmp = new File(log + ".tmp");
+		FileOutputStream output = new FileOutputStream(tmp);
+		try {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+			for (FramePart f : parts)
+				writer.write(f.toFile(storeMode) + "\n");
+			writer.flush();
+			output.getFD().sync();
+		} finally {
+			output.close();
+		}
+		Files.move(tmp.toPath(), new File(log).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
 	private boolean createNewFile(String log) throws IOException {
 		File aFile = new File(log );
 		if(!aFile.exists()){
@@ -957,23 +1827,66 @@ public class SatPayloadTable {
 	 * @throws IOException
 	 */
 	private void saveIdx() throws IOException {
-		File aFile = new File(fileName + ".idx" );
-		createNewFile(fileName + ".idx");
-		//Log.println("Saving: " + log);
-		//use buffering and REPLACE the existing file
-		Writer output = new BufferedWriter(new FileWriter(aFile, false));
-		writeVersion(output);
+		synchronized (idxLock) {
+		StringBuilder entries = new StringBuilder();
+		lock.writeLock().lock();
 		try {
-			for (TableSeg seg: tableIdx) {
-
-				output.write( seg.toFile() + "\n" );
-				output.flush();
+			for (TableSeg seg: tableIdx)
+				entries.append(seg.toFile() + "\n");
+			changedSegs.clear();
+			idxUpdates = 0;
+		} finally {
+			lock.writeLock().unlock();
+		}
+		// Write a new index and move it over the old one, so that the index on disk is always complete
+		File tmp = new File(fileName + ".idx.tmp");
+		FileOutputStream output = new FileOutputStream(tmp);
+		try {
+			output.write(entries.toString().getBytes(StandardCharsets.UTF_8));
+			if (Config.payloadFsyncPolicy != SegmentJournal.FSYNC_NEVER)
+				output.getFD().sync();
+		} finally {
+			output.close();
+		}
+		Files.move(tmp.toPath(), new File(fileName + ".idx").toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+	}
+	
+	/**
+	 * Append the entries for segments that have changed to the end of the index, rather than rewriting the whole
+	 * file for every record.  When the index is loaded a later entry for the same segment replaces the earlier one.
+	 * Once enough entries have been appended the index is rewritten.  The entries are collected under the write lock,
+	 * but the file is written without it, so readers are not held up by the disk.
+	 * @throws IOException
+	 */
+	private void saveIdxChanges() throws IOException {
+		synchronized (idxLock) {
+		StringBuilder entries = new StringBuilder();
+		lock.writeLock().lock();
+		try {
+			if (changedSegs.size() == 0) return;
+			if (idxUpdates + changedSegs.size() <= MAX_IDX_UPDATES) {
+				for (TableSeg seg: changedSegs)
+					entries.append(seg.toFile() + "\n");
+				idxUpdates = idxUpdates + changedSegs.size();
+				changedSegs.clear();
 			}
 		} finally {
-			// Make sure it is closed even if we hit an error
-			output.flush();
+			lock.writeLock().unlock();
+		}
+		if (entries.length() == 0) {
+			saveIdx();
+			return;
+		}
+		FileOutputStream output = new FileOutputStream(fileName + ".idx", true);
+		try {
+			output.write(entries.toString().getBytes(StandardCharsets.UTF_8));
+			if (Config.payloadFsyncPolicy != SegmentJournal.FSYNC_NEVER)
+				output.getFD().sync();
+		} finally {
 			output.close();
 		}
+		}
 	}
 	
 	private void parseVersion(BufferedReader dis) throws IOException {
@@ -1027,7 +1940,7 @@ public class SatPayloadTable {
 		}
  
         BufferedReader dis = new BufferedReader(new FileReader(aFile.getPath()));
-
+        int entries = 0;
         try {
         	parseVersion(dis);
         	while ((line = dis.readLine()) != null) {
@@ -1039,7 +1952,14 @@ public class SatPayloadTable {
         			int records = Integer.valueOf(st.nextToken()).intValue();
         			String name = st.nextToken();
         			TableSeg seg = new TableSeg(resets, uptime, name, records);
-    				tableIdx.add(seg);
+        			seg.loadStats(st);
+        			entries++;
+    				if (!tableIdx.add(seg)) {
+    					// A later entry for a segment we already have, appended by saveIdxChanges()
+    					int i = Collections.binarySearch(tableIdx, seg);
+    					if (i >= 0)
+    						tableIdx.get(i).copyStats(seg);
+    				}
         		}
         	}
 
@@ -1049,15 +1969,32 @@ public class SatPayloadTable {
 
         } catch (NumberFormatException n) {
         	n.printStackTrace(Log.getWriter());
+        } catch (NoSuchElementException n) {
+        	// the last entry was not completely written.  The record count is checked when the segment is loaded
+        	Log.println("Ignoring incomplete entry at end of index: " + fileName + ".idx");
         } finally {
         	
         	dis.close();
         }
+        if (entries > tableIdx.size())
+        	saveIdx(); // compact the appended entries
 	}	
 	
 	public void remove() throws IOException {
-		for (TableSeg seg: tableIdx)
-			SatPayloadStore.remove(getDir() + PayloadStore.DB_NAME+File.separator + seg.fileName);
-		SatPayloadStore.remove(fileName + ".idx");
+		lock.writeLock().lock();
+		try {
+			journal.closeAll();
+			cache.removeTable(this);
+			changedSegs.clear();
+			for (TableSeg seg: tableIdx) {
+				String log = getDir() + PayloadStore.DB_NAME+File.separator + seg.fileName;
+				SatPayloadStore.remove(log);
+				SatPayloadStore.remove(TableSegFile.getDatFileName(log));
+			}
+			SatPayloadStore.remove(fileName + ".idx");
+			rollup.remove();
+		} finally {
+			lock.writeLock().unlock();
+		}
 	}
 }
@@ -0,0 +1,184 @@
+package telemetry;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import common.Config;
+import common.Log;
+
+/**
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Keeps track of every TableSeg that is loaded into memory, across all of the payload tables, and offloads
+ * segments once the estimated size of the loaded records passes Config.segmentCacheSize.  Segments are chosen
+ * with the second chance (clock) algorithm: a segment that has been accessed since the clock hand last passed it
+ * is given another pass, otherwise it is offloaded.  The segments of a table that is in the middle of a query are
+ * pinned and are never offloaded.
+ *
+ * Segments are registered when they are loaded, but they are only offloaded when evict() is called from the
+ * payload store thread.  That way a query never has to take the lock of another table.
+ *
+ */
+public class SegmentCache {
+	private static final SegmentCache cache = new SegmentCache();
+
+	// Rough size of a record held as columns, not counting the field values: the header and index columns
+	public static final int RECORD_OVERHEAD = 40;
+
+	private ArrayList<Entry> clock = new ArrayList<Entry>();
+	private int hand = 0;
+
+	private AtomicLong hits = new AtomicLong();
+	private AtomicLong misses = new AtomicLong();
+	private AtomicLong evictions = new AtomicLong();
+
+	public static SegmentCache getInstance() { return cache; }
+
+	/**
+	 * Estimated bytes in memory for one record with this many fields
+	 * @param fields
+	 * @return
+	 */
+	public static int bytesPerRecord(int fields) {
+		return RECORD_OVERHEAD + 2*fields; // most fields are 12 bits or less, so they take two bytes
+	}
+
+	/**
+	 * Record that a segment has been loaded from disk
+	 * @param table
+	 * @param seg
+	 * @param recordBytes - estimated bytes per record
+	 */
+	public synchronized void loaded(SatPayloadTable table, TableSeg seg, int recordBytes) {
+		misses.incrementAndGet();
+		for (Entry e : clock)
+			if (e.seg == seg) {
+				e.recordBytes = recordBytes;
+				return;
+			}
+		clock.add(new Entry(table, seg, recordBytes));
+	}
+
+	/**
+	 * Record that a query found its segment already loaded
+	 */
+	public void hit() {
+		hits.incrementAndGet();
+	}
+
+	/**
+	 * Called by the table when a segment is no longer in memory
+	 * @param seg
+	 */
+	public synchronized void removed(TableSeg seg) {
+		for (int i=0; i < clock.size(); i++)
+			if (clock.get(i).seg == seg) {
+				removeEntry(i);
+				return;
+			}
+	}
+
+	/**
+	 * Forget all of the segments for a table, e.g. when its files are deleted
+	 * @param table
+	 */
+	public synchronized void removeTable(SatPayloadTable table) {
+		for (int i=clock.size()-1; i >= 0; i--)
+			if (clock.get(i).table == table)
+				removeEntry(i);
+	}
+
+	private void removeEntry(int i) {
+		clock.remove(i);
+		if (hand > i) hand--;
+		if (hand >= clock.size()) hand = 0;
+	}
+
+	/**
+	 * The estimated size in bytes of all of the loaded segments
+	 * @return
+	 */
+	public synchronized long getBytes() {
+		long bytes = 0;
+		for (Entry e : clock)
+			bytes = bytes + e.bytes();
+		return bytes;
+	}
+
+	public synchronized int getNumberOfSegments() { return clock.size(); }
+	public long getHits() { return hits.get(); }
+	public long getMisses() { return misses.get(); }
+	public long getEvictions() { return evictions.get(); }
+
+	/**
+	 * Offload segments until the loaded records fit in the budget.  The victims are chosen while holding the cache
+	 * lock, then each table is asked to offload its segment, which takes the table lock.  The table refuses if it
+	 * has been pinned since.
+	 * @return the number of segments offloaded
+	 */
+	public int evict() {
+		long budget = (long)Config.segmentCacheSize * 1024 * 1024;
+		ArrayList<Entry> victims = new ArrayList<Entry>();
+		synchronized (this) {
+			long bytes = getBytes();
+			if (bytes <= budget) return 0;
+			// Two turns of the clock is enough to clear every reference bit once
+			for (int steps = 2*clock.size(); steps > 0 && bytes > budget && clock.size() > 0; steps--) {
+				if (hand >= clock.size()) hand = 0;
+				Entry e = clock.get(hand);
+				hand++;
+				if (e.table.isPinned() || victims.contains(e)) continue;
+				if (e.seg.referenced) {
+					e.seg.referenced = false; // second chance
+					continue;
+				}
+				victims.add(e);
+				bytes = bytes - e.bytes();
+			}
+		}
+		int evicted = 0;
+		for (Entry e : victims)
+			if (e.table.evict(e.seg)) {
+				evicted++;
+				evictions.incrementAndGet();
+			}
+		if (Config.debugSegs && evicted > 0) Log.println(this.toString());
+		return evicted;
+	}
+
+	public String toString() {
+		return "SEG CACHE: " + getNumberOfSegments() + " segs, " + getBytes()/1024 + "k of " + Config.segmentCacheSize*1024 + "k, hits: " + hits
+				+ " misses: " + misses + " evictions: " + evictions;
+	}
+
+	class Entry {
+		SatPayloadTable table;
+		TableSeg seg;
+		int recordBytes;
+
+		Entry(SatPayloadTable table, TableSeg seg, int recordBytes) {
+			this.table = table;
+			this.seg = seg;
+			this.recordBytes = recordBytes;
+		}
+
+		// The active segment grows as records are saved, so the size is worked out each time it is needed
+		long bytes() { return (long)seg.records * recordBytes; }
+	}
+}
@@ -0,0 +1,236 @@
+package telemetry;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import common.Config;
+import common.Log;
+
+/**
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The append path for the segment files of a SatPayloadTable.  Records are buffered in memory and written
+ * together in a group commit, either when the commit period has passed or when commit() is called.  Each segment
+ * file that is being written stays open, so a burst of payloads costs one write per file rather than several
+ * file opens per record.
+ *
+ * If the program stops part way through a write the last record in a file can be torn.  repair() truncates the
+ * partial line and is called by the table the first time a segment is loaded in a session, before it is read.
+ *
+ */
+public class SegmentJournal {
+	public static final int FSYNC_NEVER = 0; // leave it to the operating system to write the data to disk
+	public static final int FSYNC_COMMIT = 1; // force the data to disk at each group commit
+	public static final int FSYNC_ALWAYS = 2; // commit and force the data to disk for every record
+
+	private static final int MAX_OPEN_FILES = 4; // normally only the newest segment is written to
+
+	// Open segment files, in the order they were last used, so that the oldest can be closed
+	private LinkedHashMap<String, FileChannel> channels = new LinkedHashMap<String, FileChannel>(MAX_OPEN_FILES, 0.75f, true);
+	// Records waiting for the next commit, by file
+	private LinkedHashMap<String, StringBuilder> pending = new LinkedHashMap<String, StringBuilder>();
+	private int pendingRecords = 0;
+	private long firstPendingTime = 0;
+
+	/**
+	 * Add a record to a segment file.  The record is written at the next group commit
+	 * @param fileName
+	 * @param record - one line, without the line terminator
+	 * @throws IOException
+	 */
+	public synchronized void append(String fileName, String record) throws IOException {
+		if (!channels.containsKey(fileName))
+			open(fileName);
+		StringBuilder buffer = pending.get(fileName);
+		if (buffer == null) {
+			buffer = new StringBuilder();
+			pending.put(fileName, buffer);
+		}
+		buffer.append(record);
+		buffer.append('\n');
+		if (pendingRecords == 0)
+			firstPendingTime = System.nanoTime()/1000000;
+		pendingRecords++;
+		if (Config.payloadFsyncPolicy == FSYNC_ALWAYS)
+			commit();
+	}
+
+	public synchronized boolean hasPending() { return pendingRecords > 0; }
+
+	/**
+	 * Commit the pending records if the oldest has waited for the group commit period
+	 * @return true if a commit was made
+	 * @throws IOException
+	 */
+	public synchronized boolean commitIfDue() throws IOException {
+		if (pendingRecords == 0) return false;
+		long now = System.nanoTime()/1000000;
+		if (now - firstPendingTime >= Config.payloadGroupCommitPeriod) {
+			commit();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Write all of the pending records to their files.  The records for a file are only removed once they are written
+	 * and forced, so if a write fails the records that were not written stay pending and the next commit retries them
+	 * @throws IOException
+	 */
+	public synchronized void commit() throws IOException {
+		if (pendingRecords == 0) return;
+		Iterator<Map.Entry<String, StringBuilder>> it = pending.entrySet().iterator();
+		try {
+			while (it.hasNext()) {
+				Map.Entry<String, StringBuilder> entry = it.next();
+				write(entry.getKey(), entry.getValue());
+				it.remove();
+			}
+		} finally {
+			pendingRecords = 0;
+			for (StringBuilder buffer : pending.values())
+				for (int i=0; i < buffer.length(); i++)
+					if (buffer.charAt(i) == '\n')
+						pendingRecords++;
+		}
+	}
+
+	private void write(String fileName, StringBuilder records) throws IOException {
+		FileChannel channel = channels.get(fileName);
+		if (channel == null) {
+			open(fileName);
+			channel = channels.get(fileName);
+		}
+		long start = -1;
+		try {
+			start = channel.position();
+			ByteBuffer data = ByteBuffer.wrap(records.toString().getBytes(StandardCharsets.UTF_8));
+			while (data.hasRemaining())
+				channel.write(data);
+			if (Config.payloadFsyncPolicy != FSYNC_NEVER)
+				channel.force(false);
+		} catch (IOException e) {
+			// Take back anything that was written, so the retry does not leave a torn record in the middle of the file,
+			// and close the file so that the retry opens it again
+			if (start >= 0)
+				try {
+					channel.truncate(start);
+				} catch (IOException e1) {
+					e1.printStackTrace(Log.getWriter());
+				}
+			channels.remove(fileName);
+			try {
+				channel.close();
+			} catch (IOException e1) {
+				e1.printStackTrace(Log.getWriter());
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Commit any pending records and close the file.  Called before the file is read, replaced or deleted
+	 * @param fileName
+	 * @throws IOException
+	 */
+	public synchronized void close(String fileName) throws IOException {
+		commit();
+		FileChannel channel = channels.remove(fileName);
+		if (channel != null)
+			channel.close();
+	}
+
+	/**
+	 * Commit any pending records and close all of the files
+	 * @throws IOException
+	 */
+	public synchronized void closeAll() throws IOException {
+		commit();
+		for (FileChannel channel : channels.values())
+			channel.close();
+		channels.clear();
+	}
+
+	private void open(String fileName) throws IOException {
+		@SuppressWarnings("resource") // the channel closes the file and is closed in close()
+		RandomAccessFile file = new RandomAccessFile(fileName, "rw");
+		FileChannel channel = file.getChannel();
+		channel.position(channel.size());
+		channels.put(fileName, channel);
+		if (channels.size() > MAX_OPEN_FILES) {
+			Iterator<Map.Entry<String, FileChannel>> it = channels.entrySet().iterator();
+			Map.Entry<String, FileChannel> eldest = it.next();
+			if (!pending.containsKey(eldest.getKey())) {
+				eldest.getValue().close();
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Remove a torn last record from a file and count the complete records.  A record is torn if the file does
+	 * not end with a line terminator.  Blank lines are not counted.
+	 * @param fileName
+	 * @return the number of complete records in the file
+	 * @throws IOException
+	 */
+	public static int repair(String fileName) throws IOException {
+		File aFile = new File(fileName);
+		if (!aFile.exists()) return 0;
+		RandomAccessFile file = new RandomAccessFile(aFile, "rw");
+		try {
+			long length = file.length();
+			byte[] buffer = new byte[8192];
+			int records = 0;
+			long lastTerminator = -1;
+			boolean inLine = false;
+			long pos = 0;
+			file.seek(0);
+			while (pos < length) {
+				int n = file.read(buffer);
+				if (n <= 0) break;
+				for (int i=0; i < n; i++) {
+					if (buffer[i] == '\n' || buffer[i] == '\r') {
+						if (inLine) records++;
+						inLine = false;
+						lastTerminator = pos + i;
+					} else {
+						inLine = true;
+					}
+				}
+				pos = pos + n;
+			}
+			if (inLine) {
+				// The last record was not terminated, so it was not completely written
+				Log.println("Removing torn record from end of: " + fileName);
+				file.setLength(lastTerminator + 1);
+			}
+			return records;
+		} finally {
+			file.close();
+		}
+	}
+}
@@ -87,7 +87,7 @@ public class SlowSpeedHeader extends Header {
 	public SlowSpeedHeader() {
 		super(TYPE_SLOW_SPEED_HEADER);
 		MAX_BYTES = SlowSpeedFrame.MAX_HEADER_SIZE;
-		rawBits = new boolean[MAX_BYTES*8];
+		rawBits = new byte[MAX_BYTES];
 	}
 	
 	public int getType() { return type; }
@@ -1,5 +1,7 @@
 package telemetry;
 
+import java.util.Arrays;
+
 /**
  * 
  * FOX 1 Telemetry Decoder
@@ -23,12 +25,27 @@ package telemetry;
  *
  * Sorted Array List to store telemetry records
  *
+ * The list is kept in (resets, uptime, type) order.  A copy of those keys is held in primitive arrays that run in
+ * parallel with the list, so that lookups are a binary search over the arrays rather than a scan that has to
+ * touch every record.  The key arrays are updated when a record is inserted or removed.  If the list is changed
+ * some other way, e.g. through an iterator, the keys are rebuilt the next time they are searched.
+ *
  */
 @SuppressWarnings("serial")
 public class SortedFramePartArrayList extends SortedArrayList<FramePart> {
 
+	private int[] keyResets;
+	private long[] keyUptime;
+	private int[] keyType;
+	private int keyModCount; // the list modCount when the keys were last known to match the list
+
     public SortedFramePartArrayList(int i) {
 		super(i);
+		int capacity = Math.max(i, 10);
+		keyResets = new int[capacity];
+		keyUptime = new long[capacity];
+		keyType = new int[capacity];
+		keyModCount = modCount;
 	}
 
 	public boolean hasFrame(int id, long uptime, int resets) {
@@ -44,21 +61,21 @@ public class SortedFramePartArrayList extends SortedArrayList<FramePart> {
         return false;
     }
     
-    public int getFrameIndex(int id, long uptime, int resets) {
-    	for (int i=0; i<this.size(); i++) { 
-    		FramePart f = this.get(i);
-            if (f.id == id && f.uptime == uptime && f.resets == resets)
-            	return i;
+    public synchronized int getFrameIndex(int id, long uptime, int resets) {
+    	checkKeys();
+    	int n = size();
+    	for (int i=lowerBound(uptime, resets, Integer.MIN_VALUE); i<n && keyResets[i] == resets && keyUptime[i] == uptime; i++) {
+    		if (get(i).id == id)
+    			return i;
     	}
         return -1;
     }
 
-    public int getFrameIndex(int id, long uptime, int resets, int type) {
-    	for (int i=0; i<this.size(); i++) { 
-    		FramePart f = this.get(i);
-            if (f.id == id && f.uptime == uptime && f.resets == resets && f.type == type)
-            	return i;
-    	}
+    public synchronized int getFrameIndex(int id, long uptime, int resets, int type) {
+    	checkKeys();
+    	int i = lowerBound(uptime, resets, type);
+    	if (i < size() && keyResets[i] == resets && keyUptime[i] == uptime && keyType[i] == type && get(i).id == id)
+    		return i;
         return -1;
     }
 
@@ -81,19 +98,19 @@ public class SortedFramePartArrayList extends SortedArrayList<FramePart> {
     	return getNearestFrameIndex(id, uptime, resets, get(0).type);
     }
     
-    public int getNearestFrameIndex(int id, long uptime, int resets, int type) {
-    	// start searching from the beginning where reset and uptime should be the lowest
-    	// could probablly optimize this with binary search aglo but needs to be implement from scatch as not an exact match
+    /**
+     * Return the index of the first record at or after this reset/uptime/type
+     */
+    public synchronized int getNearestFrameIndex(int id, long uptime, int resets, int type) {
     	// First check special case where we have value off the end
     	if (this.size() == 0) return -1;
     	if (resets > this.get(size()-1).resets) return size()-1;
     	if (resets == this.get(size()-1).resets && uptime > this.get(size()-1).uptime) return size()-1;
     	
-    	for (int i=0; i<this.size(); i++) { 
-    		FramePart f = this.get(i);
-    		if (compare(f, id, uptime, resets, type) <= 0)
-            	return i;
-    	}
+    	checkKeys();
+    	int i = lowerBound(uptime, resets, type);
+    	if (i < size())
+    		return i;
         return -1;
     }
 
@@ -101,43 +118,164 @@ public class SortedFramePartArrayList extends SortedArrayList<FramePart> {
     	return getNearestPrevFrameIndex(id, uptime, resets, get(0).type);
     }
 
-    public int getNearestPrevFrameIndex(int id, long uptime, int resets, int type) {
-    	// start searching from the beginning where reset and uptime should be the lowest\
+    /**
+     * Return the index of the record at this reset/uptime/type, or the one before it if there is not an exact match
+     */
+    public synchronized int getNearestPrevFrameIndex(int id, long uptime, int resets, int type) {
     	if (this.size() == 0) return -1;
     	// First check special case where we have value off the end, we return the last value
     	if (resets > this.get(size()-1).resets) return size()-1;
     	if (resets == this.get(size()-1).resets && uptime > this.get(size()-1).uptime) return size()-1;
     	
     	// Otherwise we search
-    	for (int i=0; i<this.size(); i++) { 
-    		FramePart f = this.get(i);
-    		if (compare(f, id, uptime, resets, type) == 0) {
-            	return i;
-    		} else if (compare(f, id, uptime, resets, type) < 0) {
-            	return i-1;
-    		}
+    	checkKeys();
+    	int i = lowerBound(uptime, resets, type);
+    	if (i == size()) return -1;
+    	if (keyResets[i] == resets && keyUptime[i] == uptime && keyType[i] == type)
+    		return i;
+    	return i-1;
+    }
+    
+    /**
+     * Return the index of the first record with this reset and uptime or later, of any type.  Returns size() if all
+     * of the records are before it.
+     */
+    public synchronized int getFirstFrameIndex(long uptime, int resets) {
+    	checkKeys();
+    	return lowerBound(uptime, resets, Integer.MIN_VALUE);
+    }
+    
+    /**
+     * Insert in order using the key arrays to find the position.  Duplicates are not added
+     */
+    @Override
+    public synchronized boolean add(FramePart f) {
+    	if (f == null) return false;
+    	deleteLock = true;
+    	try {
+    		checkKeys();
+    		int pos = lowerBound(f.uptime, f.resets, f.type);
+    		if (pos < size() && keyResets[pos] == f.resets && keyUptime[pos] == f.uptime && keyType[pos] == f.type)
+    			return false; // this was already in the list and would be a duplicate
+    		add(pos, f);
+    		return true;
+    	} finally {
+    		deleteLock = false;
+    	}
+    }
+    
+    @Override
+    public synchronized void add(int index, FramePart f) {
+    	checkKeys();
+    	super.add(index, f);
+    	int n = size();
+    	ensureKeyCapacity(n);
+    	System.arraycopy(keyResets, index, keyResets, index+1, n-1-index);
+    	System.arraycopy(keyUptime, index, keyUptime, index+1, n-1-index);
+    	System.arraycopy(keyType, index, keyType, index+1, n-1-index);
+    	setKey(index, f);
+    	keyModCount = modCount;
+    }
+    
+    @Override
+    public synchronized boolean addToEnd(FramePart f) {
+    	add(size(), f);
+    	return true;
+    }
+    
+    @Override
+    public synchronized FramePart remove(int i) {
+    	checkKeys();
+    	FramePart f = super.remove(i);
+    	int n = size();
+    	System.arraycopy(keyResets, i+1, keyResets, i, n-i);
+    	System.arraycopy(keyUptime, i+1, keyUptime, i, n-i);
+    	System.arraycopy(keyType, i+1, keyType, i, n-i);
+    	keyModCount = modCount;
+    	return f;
+    }
+    
+    /**
+     * Remove a run of records in one operation.  Like add() and remove() this holds the lock on the list, so it
+     * can not run while a record is being inserted
+     * @param fromIndex - the first record to remove
+     * @param toIndex - one past the last record to remove
+     */
+    public synchronized void removeFrames(int fromIndex, int toIndex) {
+    	checkKeys();
+    	removeRange(fromIndex, toIndex);
+    	int n = size();
+    	System.arraycopy(keyResets, toIndex, keyResets, fromIndex, n-fromIndex);
+    	System.arraycopy(keyUptime, toIndex, keyUptime, fromIndex, n-fromIndex);
+    	System.arraycopy(keyType, toIndex, keyType, fromIndex, n-fromIndex);
+    	keyModCount = modCount;
+    }
+    
+    @Override
+    public synchronized void trimToSize() {
+    	super.trimToSize();
+    	int capacity = Math.max(size(), 10);
+    	if (keyResets.length > capacity) {
+    		keyResets = Arrays.copyOf(keyResets, capacity);
+    		keyUptime = Arrays.copyOf(keyUptime, capacity);
+    		keyType = Arrays.copyOf(keyType, capacity);
+    	}
+    }
+    
+    /**
+     * Binary search of the keys.  Returns the index of the first record that is at or after the passed
+     * reset/uptime/type, or size() if they are all before it.  The order is the same as FramePart.compareTo()
+     */
+    private int lowerBound(long uptime, int resets, int type) {
+    	int low = 0;
+    	int high = size();
+    	while (low < high) {
+    		int mid = (low + high) >>> 1;
+    		if (compare(mid, uptime, resets, type) > 0)
+    			low = mid + 1;
+    		else
+    			high = mid;
+    	}
+    	return low;
+    }
+    
+    /**
+     * Compare the passed key to the key of record i.  Returns a positive number if the key is after the record
+     */
+    private int compare(int i, long uptime, int resets, int type) {
+    	if (resets != keyResets[i])
+    		return resets < keyResets[i] ? -1 : +1;
+    	if (uptime != keyUptime[i])
+    		return uptime < keyUptime[i] ? -1 : +1;
+    	if (type != keyType[i])
+    		return type < keyType[i] ? -1 : +1;
+    	return 0;
+    }
+    
+    private void setKey(int i, FramePart f) {
+    	keyResets[i] = f.resets;
+    	keyUptime[i] = f.uptime;
+    	keyType[i] = f.type;
+    }
+    
+    private void ensureKeyCapacity(int n) {
+    	if (n > keyResets.length) {
+    		int capacity = Math.max(n, keyResets.length + (keyResets.length >> 1));
+    		keyResets = Arrays.copyOf(keyResets, capacity);
+    		keyUptime = Arrays.copyOf(keyUptime, capacity);
+    		keyType = Arrays.copyOf(keyType, capacity);
     	}
-        return -1;
     }
     
-    private int compare(FramePart p, int id, long uptime, int resets, int type) {
-    	if (resets == p.resets && uptime == p.uptime && type == p.type) 
-    		return 0;
-    	else if (resets < p.resets)
-    		return -1;
-    	else if (resets > p.resets)
-    		return +1;
-    	else if (resets == p.resets && uptime == p.uptime) {
-    		if (type < p.type)
-    			return -1;
-    		if (type > p.type)
-    			return +1;
-    	} else if (resets == p.resets) {	
-    		if (uptime < p.uptime)
-    			return -1;
-    		if (uptime > p.uptime)
-    			return +1;
-    	} 
-    	return +1;
+    /**
+     * Rebuild the keys if the list was changed without going through add() or remove()
+     */
+    private void checkKeys() {
+    	if (keyModCount == modCount) return;
+    	int n = size();
+    	ensureKeyCapacity(n);
+    	for (int i=0; i<n; i++)
+    		setKey(i, get(i));
+    	keyModCount = modCount;
     }
 }
@@ -0,0 +1,614 @@
+package telemetry;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * The records of a payload table that are loaded into memory, held as columns rather than as a FramePart each.
+ *
+ * The records are kept in (resets, uptime, type) order, the same as SortedFramePartArrayList.  The header values of
+ * each record are held in primitive arrays that run in parallel: id, resets, uptime, type, mode and the capture
+ * date as epoch milliseconds.  The satellite position is held the same way once any record has one.  The field values are held in a block for each layout, with one array for each field
+ * sized by its bit length, so a 12 bit field takes two bytes rather than four and there is no object, capture date
+ * String or raw bit array per record.  If a value does not fit in its column, e.g. a field that is derived rather
+ * than read from the bits, the column is widened.
+ *
+ * A FramePart is only made when a caller asks for a record with get().  It is made by the RecordFactory from the
+ * type, as it would be when the record is read back from disk, and from then on the record is held as that frame
+ * part, so a caller that changes it, e.g. to set the satellite position, does not lose the change.  Records that can
+ * not be made again that way, e.g. CAN packets or parts with a capture date in another format, are held as they are.
+ *
+ */
+public class SortedFramePartColumns {
+
+	public static final long NO_DATE = Long.MIN_VALUE; // the record had no capture date
+	private static final int MIN_CAPACITY = 10;
+	private static final DateTimeFormatter FILE_DATE_FORMAT = DateTimeFormatter.ofPattern("uuuuMMddHHmmss")
+			.withResolverStyle(ResolverStyle.STRICT);
+
+	/**
+	 * Makes an empty frame part of the right class and layout for this type.  The field values and mode are filled
+	 * in afterwards.  Returns null if the type is not known.
+	 */
+	public interface RecordFactory {
+		FramePart make(int id, int resets, long uptime, String date, int type);
+	}
+
+	private final RecordFactory factory;
+	private int size;
+	private int[] ids;
+	private int[] resets;
+	private long[] uptime;
+	private int[] type;
+	private int[] mode;
+	private long[] date;
+	private short[] block; // the block holding the field values of the record, or -1 if the record is in objects[]
+	private int[] row; // the row of the record in its block
+	private FramePart[] objects; // records that are held as frame parts, only allocated when there is one
+	private double[] latitude; // the satellite position of each record, only allocated when a record has one
+	private double[] longitude;
+	private double[] altitude;
+	private ArrayList<Block> blocks = new ArrayList<Block>();
+	private int[] viewTypes = new int[0]; // types that have been made by the factory
+	private FramePart[] views = new FramePart[0]; // what the factory made for each of those types, or null
+
+	/**
+	 * The field values of the records with one layout.  Each column is a byte[], short[] or int[], with the values
+	 * of the narrower columns held unsigned.  Rows are appended and the block is copied to a smaller one once most
+	 * of its rows have been removed.
+	 */
+	static class Block {
+		final BitArrayLayout layout;
+		final int fields;
+		final Object[] columns;
+		int rows; // rows used, including those that have been removed
+		int live; // rows that still belong to a record
+
+		Block(BitArrayLayout layout, int fields, int capacity) {
+			this.layout = layout;
+			this.fields = fields;
+			columns = new Object[fields];
+			for (int i=0; i < fields; i++) {
+				int bits = i < layout.fieldBitLength.length ? layout.fieldBitLength[i] : 32;
+				if (bits <= 8)
+					columns[i] = new byte[capacity];
+				else if (bits <= 16)
+					columns[i] = new short[capacity];
+				else
+					columns[i] = new int[capacity];
+			}
+		}
+
+		int capacity() {
+			return fields == 0 ? Integer.MAX_VALUE : length(columns[0]);
+		}
+
+		int get(int i, int r) {
+			Object c = columns[i];
+			if (c instanceof byte[])
+				return ((byte[])c)[r] & 0xff;
+			if (c instanceof short[])
+				return ((short[])c)[r] & 0xffff;
+			return ((int[])c)[r];
+		}
+
+		void set(int i, int r, int value) {
+			Object c = columns[i];
+			if (c instanceof byte[]) {
+				if ((value & ~0xff) == 0) {
+					((byte[])c)[r] = (byte)value;
+					return;
+				}
+			} else if (c instanceof short[]) {
+				if ((value & ~0xffff) == 0) {
+					((short[])c)[r] = (short)value;
+					return;
+				}
+			} else {
+				((int[])c)[r] = value;
+				return;
+			}
+			// The value does not fit, so widen the column to ints
+			int[] wide = new int[length(c)];
+			for (int j=0; j < rows; j++)
+				wide[j] = get(i, j);
+			columns[i] = wide;
+			wide[r] = value;
+		}
+
+		int append(int[] values) {
+			if (rows == capacity())
+				resize(Math.max(MIN_CAPACITY, rows + (rows >> 1)));
+			int r = rows++;
+			for (int i=0; i < fields; i++)
+				set(i, r, values[i]);
+			live++;
+			return r;
+		}
+
+		void resize(int capacity) {
+			for (int i=0; i < fields; i++) {
+				Object c = columns[i];
+				if (c instanceof byte[])
+					columns[i] = Arrays.copyOf((byte[])c, capacity);
+				else if (c instanceof short[])
+					columns[i] = Arrays.copyOf((short[])c, capacity);
+				else
+					columns[i] = Arrays.copyOf((int[])c, capacity);
+			}
+		}
+
+		private static int length(Object c) {
+			if (c instanceof byte[]) return ((byte[])c).length;
+			if (c instanceof short[]) return ((short[])c).length;
+			return ((int[])c).length;
+		}
+	}
+
+	public SortedFramePartColumns(int capacity, RecordFactory factory) {
+		this.factory = factory;
+		capacity = Math.max(capacity, MIN_CAPACITY);
+		ids = new int[capacity];
+		resets = new int[capacity];
+		uptime = new long[capacity];
+		type = new int[capacity];
+		mode = new int[capacity];
+		date = new long[capacity];
+		block = new short[capacity];
+		row = new int[capacity];
+	}
+
+	public synchronized int size() { return size; }
+
+	public synchronized int getId(int i) { check(i); return ids[i]; }
+	public synchronized int getResets(int i) { check(i); return resets[i]; }
+	public synchronized long getUptime(int i) { check(i); return uptime[i]; }
+	public synchronized int getType(int i) { check(i); return type[i]; }
+
+	/**
+	 * Return the record at this position.  A record held as columns is made into a FramePart, which then replaces
+	 * the columns for that record, so every caller gets the same object and changes to it are kept
+	 */
+	public synchronized FramePart get(int i) {
+		check(i);
+		if (block[i] < 0)
+			return objects[i];
+		Block b = blocks.get(block[i]);
+		FramePart f = factory.make(ids[i], resets[i], uptime[i], dateString(date[i]), type[i]);
+		for (int n=0; n < b.fields; n++)
+			f.fieldValue[n] = b.get(n, row[i]);
+		f.newMode = mode[i];
+		if (latitude != null) {
+			f.satLatitude = latitude[i];
+			f.satLongitude = longitude[i];
+			f.satAltitude = altitude[i];
+		}
+		b.live--;
+		if (objects == null)
+			objects = new FramePart[ids.length];
+		objects[i] = f;
+		block[i] = -1;
+		row[i] = 0;
+		date[i] = NO_DATE;
+		return f;
+	}
+
+	public synchronized BitArrayLayout getLayout(int i) {
+		check(i);
+		if (block[i] < 0)
+			return objects[i].layout;
+		return blocks.get(block[i]).layout;
+	}
+
+	/**
+	 * Return the raw value of the field at this position in the layout of record i
+	 */
+	public synchronized int getRawValue(int i, int pos) {
+		check(i);
+		if (block[i] < 0)
+			return objects[i].getRawValue(pos);
+		Block b = blocks.get(block[i]);
+		if (pos >= b.fields)
+			throw new ArrayIndexOutOfBoundsException(pos);
+		return b.get(pos, row[i]);
+	}
+
+	/**
+	 * Return a copy of the field values of record i, or the values of the frame part if it is held as one
+	 */
+	public synchronized int[] getFieldValues(int i) {
+		check(i);
+		if (block[i] < 0)
+			return objects[i].getFieldValues();
+		Block b = blocks.get(block[i]);
+		int[] values = new int[b.fields];
+		for (int n=0; n < b.fields; n++)
+			values[n] = b.get(n, row[i]);
+		return values;
+	}
+
+	public synchronized int getNumberOfFields(int i) {
+		check(i);
+		if (block[i] < 0)
+			return objects[i].fieldValue == null ? 0 : objects[i].fieldValue.length;
+		return blocks.get(block[i]).fields;
+	}
+
+	public synchronized double getSatLatitude(int i) {
+		check(i);
+		if (block[i] < 0)
+			return objects[i].satLatitude;
+		return latitude == null ? FramePart.NO_POSITION_DATA : latitude[i];
+	}
+
+	public synchronized double getSatLongitude(int i) {
+		check(i);
+		if (block[i] < 0)
+			return objects[i].satLongitude;
+		return longitude == null ? FramePart.NO_POSITION_DATA : longitude[i];
+	}
+
+	public boolean hasFrame(int id, long uptime, int resets) {
+		return getFrameIndex(id, uptime, resets) != -1;
+	}
+
+	public boolean hasFrame(int id, long uptime, int resets, int type) {
+		return getFrameIndex(id, uptime, resets, type) != -1;
+	}
+
+	public synchronized int getFrameIndex(int id, long uptime, int resets) {
+		for (int i=lowerBound(uptime, resets, Integer.MIN_VALUE); i<size && this.resets[i] == resets && this.uptime[i] == uptime; i++) {
+			if (ids[i] == id)
+				return i;
+		}
+		return -1;
+	}
+
+	public synchronized int getFrameIndex(int id, long uptime, int resets, int type) {
+		int i = lowerBound(uptime, resets, type);
+		if (i < size && this.resets[i] == resets && this.uptime[i] == uptime && this.type[i] == type && ids[i] == id)
+			return i;
+		return -1;
+	}
+
+	public synchronized int getNearestFrameIndex(int id, long uptime, int resets) {
+		if (size == 0) return -1;
+		return getNearestFrameIndex(id, uptime, resets, type[0]);
+	}
+
+	/**
+	 * Return the index of the first record at or after this reset/uptime/type
+	 */
+	public synchronized int getNearestFrameIndex(int id, long uptime, int resets, int type) {
+		// First check special case where we have value off the end
+		if (size == 0) return -1;
+		if (resets > this.resets[size-1]) return size-1;
+		if (resets == this.resets[size-1] && uptime > this.uptime[size-1]) return size-1;
+		int i = lowerBound(uptime, resets, type);
+		if (i < size)
+			return i;
+		return -1;
+	}
+
+	public synchronized int getNearestPrevFrameIndex(int id, long uptime, int resets) {
+		check(0);
+		return getNearestPrevFrameIndex(id, uptime, resets, type[0]);
+	}
+
+	/**
+	 * Return the index of the record at this reset/uptime/type, or the one before it if there is not an exact match
+	 */
+	public synchronized int getNearestPrevFrameIndex(int id, long uptime, int resets, int type) {
+		if (size == 0) return -1;
+		// First check special case where we have value off the end, we return the last value
+		if (resets > this.resets[size-1]) return size-1;
+		if (resets == this.resets[size-1] && uptime > this.uptime[size-1]) return size-1;
+		int i = lowerBound(uptime, resets, type);
+		if (i == size) return -1;
+		if (this.resets[i] == resets && this.uptime[i] == uptime && this.type[i] == type)
+			return i;
+		return i-1;
+	}
+
+	/**
+	 * Return the index of the first record with this reset and uptime or later, of any type.  Returns size() if all
+	 * of the records are before it.
+	 */
+	public synchronized int getFirstFrameIndex(long uptime, int resets) {
+		return lowerBound(uptime, resets, Integer.MIN_VALUE);
+	}
+
+	/**
+	 * Insert in order.  Duplicates are not added
+	 * @return false if the record was already held
+	 */
+	public synchronized boolean add(FramePart f) {
+		if (f == null) return false;
+		int pos = lowerBound(f.uptime, f.resets, f.type);
+		if (pos < size && resets[pos] == f.resets && uptime[pos] == f.uptime && type[pos] == f.type)
+			return false; // this was already in the list and would be a duplicate
+		ensureCapacity(size+1);
+		int n = size - pos;
+		System.arraycopy(ids, pos, ids, pos+1, n);
+		System.arraycopy(resets, pos, resets, pos+1, n);
+		System.arraycopy(uptime, pos, uptime, pos+1, n);
+		System.arraycopy(type, pos, type, pos+1, n);
+		System.arraycopy(mode, pos, mode, pos+1, n);
+		System.arraycopy(date, pos, date, pos+1, n);
+		System.arraycopy(block, pos, block, pos+1, n);
+		System.arraycopy(row, pos, row, pos+1, n);
+		if (objects != null)
+			System.arraycopy(objects, pos, objects, pos+1, n);
+		if (latitude != null) {
+			System.arraycopy(latitude, pos, latitude, pos+1, n);
+			System.arraycopy(longitude, pos, longitude, pos+1, n);
+			System.arraycopy(altitude, pos, altitude, pos+1, n);
+		}
+		size++;
+		ids[pos] = f.id;
+		resets[pos] = f.resets;
+		uptime[pos] = f.uptime;
+		type[pos] = f.type;
+		mode[pos] = f.newMode;
+		if (latitude == null && (f.satLatitude != FramePart.NO_POSITION_DATA || f.satLongitude != FramePart.NO_POSITION_DATA
+				|| f.satAltitude != FramePart.NO_POSITION_DATA)) {
+			latitude = new double[ids.length];
+			longitude = new double[ids.length];
+			altitude = new double[ids.length];
+			Arrays.fill(latitude, FramePart.NO_POSITION_DATA);
+			Arrays.fill(longitude, FramePart.NO_POSITION_DATA);
+			Arrays.fill(altitude, FramePart.NO_POSITION_DATA);
+		}
+		if (latitude != null) {
+			latitude[pos] = f.satLatitude;
+			longitude[pos] = f.satLongitude;
+			altitude[pos] = f.satAltitude;
+		}
+		long millis = canStore(f) ? dateToMillis(f.reportDate) : -1;
+		if (millis != -1) {
+			int b = blockFor(f.layout, f.fieldValue.length);
+			date[pos] = millis;
+			block[pos] = (short)b;
+			row[pos] = blocks.get(b).append(f.fieldValue);
+			if (objects != null)
+				objects[pos] = null;
+		} else {
+			if (objects == null)
+				objects = new FramePart[ids.length];
+			date[pos] = NO_DATE;
+			block[pos] = -1;
+			row[pos] = 0;
+			objects[pos] = f;
+		}
+		return true;
+	}
+
+	/**
+	 * Add a set of records, e.g. the records of a segment as it is loaded
+	 */
+	public synchronized void addAll(List<? extends FramePart> parts) {
+		ensureCapacity(size + parts.size());
+		for (FramePart f : parts)
+			add(f);
+	}
+
+	/**
+	 * Remove a run of records in one operation.  Used when a segment is offloaded
+	 * @param fromIndex - the first record to remove
+	 * @param toIndex - one past the last record to remove
+	 */
+	public synchronized void removeFrames(int fromIndex, int toIndex) {
+		if (fromIndex < 0 || toIndex > size || fromIndex > toIndex)
+			throw new IndexOutOfBoundsException("From " + fromIndex + " to " + toIndex + " size " + size);
+		for (int i=fromIndex; i < toIndex; i++)
+			if (block[i] >= 0)
+				blocks.get(block[i]).live--;
+		int n = size - toIndex;
+		System.arraycopy(ids, toIndex, ids, fromIndex, n);
+		System.arraycopy(resets, toIndex, resets, fromIndex, n);
+		System.arraycopy(uptime, toIndex, uptime, fromIndex, n);
+		System.arraycopy(type, toIndex, type, fromIndex, n);
+		System.arraycopy(mode, toIndex, mode, fromIndex, n);
+		System.arraycopy(date, toIndex, date, fromIndex, n);
+		System.arraycopy(block, toIndex, block, fromIndex, n);
+		System.arraycopy(row, toIndex, row, fromIndex, n);
+		if (objects != null) {
+			System.arraycopy(objects, toIndex, objects, fromIndex, n);
+			Arrays.fill(objects, size - (toIndex - fromIndex), size, null);
+		}
+		if (latitude != null) {
+			System.arraycopy(latitude, toIndex, latitude, fromIndex, n);
+			System.arraycopy(longitude, toIndex, longitude, fromIndex, n);
+			System.arraycopy(altitude, toIndex, altitude, fromIndex, n);
+		}
+		size = size - (toIndex - fromIndex);
+		for (int b=0; b < blocks.size(); b++) {
+			Block blk = blocks.get(b);
+			if (blk.live < blk.rows/2)
+				compact(b);
+		}
+	}
+
+	/**
+	 * Reclaim the space left by removed records
+	 */
+	public synchronized void trimToSize() {
+		int capacity = Math.max(size, MIN_CAPACITY);
+		if (ids.length > capacity) {
+			ids = Arrays.copyOf(ids, capacity);
+			resets = Arrays.copyOf(resets, capacity);
+			uptime = Arrays.copyOf(uptime, capacity);
+			type = Arrays.copyOf(type, capacity);
+			mode = Arrays.copyOf(mode, capacity);
+			date = Arrays.copyOf(date, capacity);
+			block = Arrays.copyOf(block, capacity);
+			row = Arrays.copyOf(row, capacity);
+			if (objects != null)
+				objects = Arrays.copyOf(objects, capacity);
+			if (latitude != null) {
+				latitude = Arrays.copyOf(latitude, capacity);
+				longitude = Arrays.copyOf(longitude, capacity);
+				altitude = Arrays.copyOf(altitude, capacity);
+			}
+		}
+		for (int b=0; b < blocks.size(); b++) {
+			Block blk = blocks.get(b);
+			if (blk.live < blk.rows)
+				compact(b);
+			else if (blk.capacity() > Math.max(blk.rows, MIN_CAPACITY))
+				blk.resize(Math.max(blk.rows, MIN_CAPACITY));
+		}
+	}
+
+	/**
+	 * Copy the rows that still belong to a record into a new block, in record order
+	 */
+	private void compact(int b) {
+		Block blk = blocks.get(b);
+		Block copy = new Block(blk.layout, blk.fields, Math.max(blk.live, MIN_CAPACITY));
+		for (int i=0; i < size; i++)
+			if (block[i] == b) {
+				for (int n=0; n < blk.fields; n++)
+					copy.set(n, copy.rows, blk.get(n, row[i]));
+				row[i] = copy.rows++;
+			}
+		copy.live = copy.rows;
+		blocks.set(b, copy);
+	}
+
+	/**
+	 * Return the block for this layout, adding it if there is not one
+	 */
+	private int blockFor(BitArrayLayout layout, int fields) {
+		for (int b=0; b < blocks.size(); b++)
+			if (blocks.get(b).layout == layout && blocks.get(b).fields == fields)
+				return b;
+		if (blocks.size() == Short.MAX_VALUE)
+			throw new IllegalStateException("Too many layouts in one table");
+		blocks.add(new Block(layout, fields, MIN_CAPACITY));
+		return blocks.size()-1;
+	}
+
+	/**
+	 * True if the record can be held as columns and made again with the factory.  A part is made by the factory the
+	 * first time each type is seen, and the record must have the same class and layout as it, so a class the factory
+	 * does not make is held as it is.
+	 */
+	private boolean canStore(FramePart f) {
+		if (f.layout == null || !TableSegFile.canStore(f)) return false;
+		int t = 0;
+		while (t < viewTypes.length && viewTypes[t] != f.type)
+			t++;
+		if (t == viewTypes.length) {
+			viewTypes = Arrays.copyOf(viewTypes, t+1);
+			views = Arrays.copyOf(views, t+1);
+			viewTypes[t] = f.type;
+			views[t] = factory.make(f.id, f.resets, f.uptime, f.reportDate, f.type);
+		}
+		FramePart view = views[t];
+		return view != null && view.getClass() == f.getClass() && view.layout == f.layout
+				&& view.fieldValue != null && view.fieldValue.length == f.fieldValue.length;
+	}
+
+	private void ensureCapacity(int n) {
+		if (n > ids.length) {
+			int capacity = Math.max(n, ids.length + (ids.length >> 1));
+			ids = Arrays.copyOf(ids, capacity);
+			resets = Arrays.copyOf(resets, capacity);
+			uptime = Arrays.copyOf(uptime, capacity);
+			type = Arrays.copyOf(type, capacity);
+			mode = Arrays.copyOf(mode, capacity);
+			date = Arrays.copyOf(date, capacity);
+			block = Arrays.copyOf(block, capacity);
+			row = Arrays.copyOf(row, capacity);
+			if (objects != null)
+				objects = Arrays.copyOf(objects, capacity);
+			if (latitude != null) {
+				latitude = Arrays.copyOf(latitude, capacity);
+				longitude = Arrays.copyOf(longitude, capacity);
+				altitude = Arrays.copyOf(altitude, capacity);
+			}
+		}
+	}
+
+	private void check(int i) {
+		if (i < 0 || i >= size)
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+	}
+
+	/**
+	 * Binary search of the keys.  Returns the index of the first record that is at or after the passed
+	 * reset/uptime/type, or size if they are all before it.  The order is the same as FramePart.compareTo()
+	 */
+	private int lowerBound(long uptime, int resets, int type) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (compare(mid, uptime, resets, type) > 0)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	private int compare(int i, long uptime, int resets, int type) {
+		if (resets != this.resets[i])
+			return resets < this.resets[i] ? -1 : +1;
+		if (uptime != this.uptime[i])
+			return uptime < this.uptime[i] ? -1 : +1;
+		if (type != this.type[i])
+			return type < this.type[i] ? -1 : +1;
+		return 0;
+	}
+
+	/**
+	 * Convert a capture date in the file date format yyyyMMddHHmmss (UTC) to epoch milliseconds.  A null date is
+	 * NO_DATE.  Returns -1 if the date is not in that format or is not a real date, so the record is kept with its
+	 * date as it is.
+	 */
+	public static long dateToMillis(String s) {
+		if (s == null) return NO_DATE;
+		if (s.length() != 14) return -1;
+		try {
+			return LocalDateTime.parse(s, FILE_DATE_FORMAT).toInstant(ZoneOffset.UTC).toEpochMilli();
+		} catch (DateTimeParseException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Format epoch milliseconds in the file date format, the reverse of dateToMillis()
+	 */
+	public static String dateString(long millis) {
+		if (millis == NO_DATE) return null;
+		return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000L), 0, ZoneOffset.UTC).format(FILE_DATE_FORMAT);
+	}
+}
@@ -1,6 +1,8 @@
 package telemetry;
 
-import common.Config;
+import java.util.Arrays;
+import java.util.List;
+import java.util.StringTokenizer;
 
 /**
  * FOX 1 Telemetry Decoder
@@ -23,6 +25,11 @@ import common.Config;
  * 
  * This class stores the list of files that support a table
  * 
+ * Each segment also keeps a zone map of its records: the last reset/uptime and the min and max raw value of each
+ * field.  The first reset/uptime of a segment is never after its first record.  The zone map is written to the
+ * index after the file name, so a query can count a segment or skip it without loading it.  A segment read from an
+ * index that does not have the zone map, or where the record count was wrong, has no stats until it is loaded.
+ * 
  */
 public class TableSeg implements Comparable<TableSeg> {
 	int fromReset = 0;
@@ -31,6 +38,13 @@ public class TableSeg implements Comparable<TableSeg> {
 	private boolean loaded = false;
 	String fileName;
 	long lastAccess;
+	boolean checked = false; // true once the segment files have been checked for a torn record in this session
+	volatile boolean referenced = false; // set when the segment is accessed and cleared by the SegmentCache clock
+	boolean stats = true; // true if the zone map below covers every record in the segment
+	int lastReset; // the latest reset/uptime of a record in the segment
+	long lastUptime;
+	int[] fieldMin; // min and max raw value of each field, null until there is a record with fields
+	int[] fieldMax;
 	//private static final int STALE_PERIOD = 60*1000; // Keep the stale period short. In milliseconds
 	
 	/**
@@ -44,6 +58,8 @@ public class TableSeg implements Comparable<TableSeg> {
 		fromUptime = u;
 		records = 0;
 		fileName = f+ "_" + r + "_"+ u +".log";
+		lastReset = r;
+		lastUptime = u;
 		accessed();
 	}
 	
@@ -59,26 +75,26 @@ public class TableSeg implements Comparable<TableSeg> {
 		fromUptime = u;
 		records = rec;
 		fileName = f;
+		stats = false; // until they are read from the rest of the index entry
+		lastReset = r;
+		lastUptime = u;
 		accessed();
 	}	
 	
 	public void accessed() {
 		lastAccess = System.nanoTime()/1000000;
+		referenced = true;
 	}
 	
 	public boolean isLoaded() {
 		accessed();
 		return loaded; 
 	}
-	public boolean isStale() {
-		if (loaded) {
-			long now = System.nanoTime()/1000000;
-			long elapsed = now - lastAccess;
-			if (elapsed > Config.timeUntilTableSegOffloaded)
-				return true;
-		}
-		return false;
-	}
+	/**
+	 * True if the segment is loaded.  Unlike isLoaded() this does not count as an access
+	 */
+	boolean inMemory() { return loaded; }
+	
 	public void setLoaded(boolean t) { 
 		accessed();
 		loaded = t; }
@@ -89,8 +105,137 @@ public class TableSeg implements Comparable<TableSeg> {
 		s = s + fromUptime + ",";
 		s = s + records + ",";
 		s = s + fileName + ",";
+		if (stats) {
+			StringBuilder z = new StringBuilder();
+			z.append(lastReset + "," + lastUptime + ",");
+			int fields = fieldMin == null ? 0 : fieldMin.length;
+			z.append(fields + ",");
+			for (int i=0; i < fields; i++)
+				z.append(fieldMin[i] + "," + fieldMax[i] + ",");
+			s = s + z;
+		}
 		return s;
 	}
+
+	/**
+	 * Read the zone map from the rest of an index entry, after the file name.  An older index does not have it and the
+	 * last entry may have been cut short, in which case the segment is left without stats.
+	 * @param st
+	 */
+	void loadStats(StringTokenizer st) {
+		stats = false;
+		try {
+			if (!st.hasMoreTokens()) return;
+			lastReset = Integer.parseInt(st.nextToken());
+			lastUptime = Long.parseLong(st.nextToken());
+			int fields = Integer.parseInt(st.nextToken());
+			int[] min = new int[fields];
+			int[] max = new int[fields];
+			for (int i=0; i < fields; i++) {
+				min[i] = Integer.parseInt(st.nextToken());
+				max[i] = Integer.parseInt(st.nextToken());
+			}
+			fieldMin = fields == 0 ? null : min;
+			fieldMax = fields == 0 ? null : max;
+			stats = true;
+		} catch (RuntimeException e) {
+			// NumberFormatException or NoSuchElementException, the stats are rebuilt when the segment is loaded
+		}
+	}
+
+	/**
+	 * Take the record count and zone map from a later index entry for the same segment
+	 * @param seg
+	 */
+	void copyStats(TableSeg seg) {
+		records = seg.records;
+		stats = seg.stats;
+		lastReset = seg.lastReset;
+		lastUptime = seg.lastUptime;
+		fieldMin = seg.fieldMin;
+		fieldMax = seg.fieldMax;
+	}
+
+	/**
+	 * Add a record that has been appended to the segment to the zone map
+	 * @param f
+	 */
+	void addStats(FramePart f) {
+		if (!stats) return;
+		if (f.resets > lastReset || f.resets == lastReset && f.uptime > lastUptime) {
+			lastReset = f.resets;
+			lastUptime = f.uptime;
+		}
+		int[] v = f.fieldValue;
+		if (v == null) return;
+		int known = fieldMin == null ? 0 : fieldMin.length; // fields that are already in the map
+		if (v.length > known) {
+			fieldMin = fieldMin == null ? new int[v.length] : Arrays.copyOf(fieldMin, v.length);
+			fieldMax = fieldMax == null ? new int[v.length] : Arrays.copyOf(fieldMax, v.length);
+			for (int i=known; i < v.length; i++) {
+				fieldMin[i] = v[i];
+				fieldMax[i] = v[i];
+			}
+		}
+		for (int i=0; i < Math.min(known, v.length); i++) {
+			if (v[i] < fieldMin[i]) fieldMin[i] = v[i];
+			if (v[i] > fieldMax[i]) fieldMax[i] = v[i];
+		}
+	}
+
+	/**
+	 * Rebuild the zone map from all of the records in the segment
+	 * @param parts
+	 */
+	void setStats(List<? extends FramePart> parts) {
+		stats = true;
+		lastReset = fromReset;
+		lastUptime = fromUptime;
+		fieldMin = null;
+		fieldMax = null;
+		for (FramePart f : parts)
+			addStats(f);
+	}
+
+	/**
+	 * True if this segment holds records and they are all at or after fromReset/fromUptime and before
+	 * toReset/toUptime.  False if we do not know
+	 */
+	boolean isWithin(int fromReset, long fromUptime, int toReset, long toUptime) {
+		if (!stats || records == 0) return false;
+		return compare(this.fromReset, this.fromUptime, fromReset, fromUptime) >= 0
+				&& compare(lastReset, lastUptime, toReset, toUptime) < 0;
+	}
+
+	/**
+	 * True if none of the records of this segment can be at or after fromReset/fromUptime and before
+	 * toReset/toUptime.  False if we do not know
+	 */
+	boolean isOutside(int fromReset, long fromUptime, int toReset, long toUptime) {
+		if (!stats) return false;
+		if (records == 0) return true;
+		return compare(lastReset, lastUptime, fromReset, fromUptime) < 0
+				|| compare(this.fromReset, this.fromUptime, toReset, toUptime) >= 0;
+	}
+
+	/**
+	 * True if no record in this segment can have a raw value from min to max in the field at this position.  False
+	 * if we do not know
+	 */
+	boolean cannotMatch(int pos, int min, int max) {
+		if (!stats) return false;
+		if (records == 0) return true;
+		if (fieldMin == null || pos < 0 || pos >= fieldMin.length) return false;
+		return fieldMax[pos] < min || fieldMin[pos] > max;
+	}
+
+	static int compare(int reset, long uptime, int reset2, long uptime2) {
+		if (reset != reset2)
+			return reset < reset2 ? -1 : +1;
+		if (uptime != uptime2)
+			return uptime < uptime2 ? -1 : +1;
+		return 0;
+	}
 	
 	public int compareTo(TableSeg p) {
 		if (fromReset == p.fromReset && fromUptime == p.fromUptime) 
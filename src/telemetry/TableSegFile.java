@@ -0,0 +1,309 @@
+package telemetry;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * A binary, column oriented copy of a TableSeg.  The CSV .log file for a segment is re-parsed line by line
+ * every time it is loaded.  Once a segment is full it never changes, so it can be stored as fixed width columns
+ * instead and read back in one go when it is needed again.  The file sits next to the .log file and has the same name
+ * with a .dat extension, so the segment index does not change.  Any record that arrives late for a segment that
+ * has already been converted is appended to the .log file as before and both files are read on load.
+ *
+ * File layout, all values big endian:
+ *   int  MAGIC
+ *   int  VERSION
+ *   int  id
+ *   int  records
+ *   int  fields
+ *   byte width of each field column in bytes (1, 2 or 4), padded to a multiple of 4
+ *   int[records]  resets
+ *   long[records] uptime
+ *   int[records]  type
+ *   int[records]  mode
+ *   long[records] capture date as the number yyyyMMddHHmmss, 0 if there was none
+ *   then one column per field, each records * width bytes long
+ *
+ */
+public class TableSegFile {
+	public static final String DAT = ".dat";
+	public static final String LOG = ".log";
+	public static final int MAGIC = 0x46584442; // FXDB
+	public static final int VERSION = 1;
+	private static final int HEADER_INTS = 5;
+
+	private ByteBuffer data;
+	private int id;
+	private int records;
+	private int fields;
+	private int[] width;
+	private int[] fieldOffset;
+	private int resetsOffset;
+	private int uptimeOffset;
+	private int typeOffset;
+	private int modeOffset;
+	private int dateOffset;
+
+	private TableSegFile(ByteBuffer buffer) throws IOException {
+		data = buffer;
+		if (data.limit() < HEADER_INTS*4 || data.getInt(0) != MAGIC)
+			throw new IOException("Not a FOXDB binary segment");
+		int version = data.getInt(4);
+		if (version != VERSION)
+			throw new IOException("Unsupported FOXDB binary segment version: " + version);
+		id = data.getInt(8);
+		records = data.getInt(12);
+		fields = data.getInt(16);
+		int pos = HEADER_INTS*4;
+		width = new int[fields];
+		for (int i=0; i < fields; i++)
+			width[i] = data.get(pos + i);
+		pos = pos + pad(fields);
+		resetsOffset = pos;
+		pos = pos + 4*records;
+		uptimeOffset = pos;
+		pos = pos + 8*records;
+		typeOffset = pos;
+		pos = pos + 4*records;
+		modeOffset = pos;
+		pos = pos + 4*records;
+		dateOffset = pos;
+		pos = pos + 8*records;
+		fieldOffset = new int[fields];
+		for (int i=0; i < fields; i++) {
+			fieldOffset[i] = pos;
+			pos = pos + width[i]*records;
+		}
+		if (pos > data.limit())
+			throw new IOException("Truncated FOXDB binary segment.  Expected " + pos + " bytes but found " + data.limit());
+	}
+
+	/**
+	 * The name of the binary file that goes with a segment log file
+	 * @param log
+	 * @return
+	 */
+	public static String getDatFileName(String log) {
+		if (log.endsWith(LOG))
+			return log.substring(0, log.length() - LOG.length()) + DAT;
+		return log + DAT;
+	}
+
+	/**
+	 * Read a binary segment into memory.  The file is read into a heap buffer rather than memory mapped, because a
+	 * mapping holds the file open until it is garbage collected and on Windows that stops the file being replaced or
+	 * deleted when segments are converted or compacted
+	 * @param fileName
+	 * @return
+	 * @throws IOException
+	 */
+	public static TableSegFile open(String fileName) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(fileName, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("FOXDB binary segment is too large: " + fileName);
+			ByteBuffer buffer = ByteBuffer.allocate((int)channel.size());
+			readFully(channel, buffer);
+			return new TableSegFile(buffer);
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Return the number of records in a binary segment, reading only the header
+	 * @param fileName
+	 * @return
+	 * @throws IOException
+	 */
+	public static int countRecords(String fileName) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(fileName, "r");
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_INTS*4);
+			readFully(file.getChannel(), header);
+			if (header.getInt(0) != MAGIC)
+				throw new IOException("Not a FOXDB binary segment");
+			int version = header.getInt(4);
+			if (version != VERSION)
+				throw new IOException("Unsupported FOXDB binary segment version: " + version);
+			return header.getInt(12);
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Fill the buffer from the start of the channel.  The buffer is left with its limit at the number of bytes read,
+	 * which is short of its capacity only if the file is
+	 */
+	private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		long pos = 0;
+		while (buffer.hasRemaining()) {
+			int n = channel.read(buffer, pos);
+			if (n < 0) break;
+			pos = pos + n;
+		}
+		buffer.flip();
+	}
+
+	public int getId() { return id; }
+	public int getNumberOfRecords() { return records; }
+	public int getNumberOfFields() { return fields; }
+	public int getResets(int rec) { return data.getInt(resetsOffset + 4*rec); }
+	public long getUptime(int rec) { return data.getLong(uptimeOffset + 8*rec); }
+	public int getType(int rec) { return data.getInt(typeOffset + 4*rec); }
+	public int getMode(int rec) { return data.getInt(modeOffset + 4*rec); }
+
+	public String getCaptureDate(int rec) {
+		long date = data.getLong(dateOffset + 8*rec);
+		if (date == 0) return null;
+		return Long.toString(date);
+	}
+
+	public int getField(int field, int rec) {
+		switch (width[field]) {
+		case 1:
+			return data.get(fieldOffset[field] + rec);
+		case 2:
+			return data.getShort(fieldOffset[field] + 2*rec);
+		default:
+			return data.getInt(fieldOffset[field] + 4*rec);
+		}
+	}
+
+	/**
+	 * Copy the fields for one record into the passed array, which can be shorter or longer than the number of columns
+	 * @param rec
+	 * @param values
+	 */
+	public void getFieldValues(int rec, int[] values) {
+		int n = Math.min(values.length, fields);
+		for (int i=0; i < n; i++)
+			values[i] = getField(i, rec);
+	}
+
+	/**
+	 * Return true if this record can be written to a binary segment.  Records are reconstructed from the type and
+	 * the table layout, so payloads that carry their own layout or extra header values stay in the CSV format
+	 * @param f
+	 * @return
+	 */
+	public static boolean canStore(FramePart f) {
+		if (f instanceof HerciHighSpeedPacket) return false;
+		if (f.type == FoxFramePart.TYPE_UW_CAN_PACKET_TELEM || f.type >= 1700 && f.type < 1800) return false;
+		if (f.fieldValue == null) return false;
+		if (f.reportDate != null && !isDateNumber(f.reportDate)) return false;
+		return true;
+	}
+
+	private static boolean isDateNumber(String date) {
+		if (date.length() == 0 || date.length() > 18) return false;
+		for (int i=0; i < date.length(); i++)
+			if (!Character.isDigit(date.charAt(i))) return false;
+		return true;
+	}
+
+	/**
+	 * Write a set of records to a new binary segment.  The file is written to a temporary name and then renamed, so
+	 * a reader never sees a partial file.  All records must pass canStore() and have the same number of fields.
+	 * @param fileName
+	 * @param parts
+	 * @throws IOException
+	 */
+	public static void write(String fileName, List<FramePart> parts) throws IOException {
+		int n = parts.size();
+		int fields = 0;
+		int id = 0;
+		if (n > 0) {
+			fields = parts.get(0).fieldValue.length;
+			id = parts.get(0).id;
+		}
+		int[] width = new int[fields];
+		for (FramePart f : parts) {
+			if (!canStore(f) || f.fieldValue.length != fields)
+				throw new IOException("Record can not be stored in a binary segment: " + f.resets + ":" + f.uptime + " Ty:" + f.type);
+			for (int i=0; i < fields; i++)
+				width[i] = Math.max(width[i], widthOf(f.fieldValue[i]));
+		}
+		int size = HEADER_INTS*4 + pad(fields) + n*(4+8+4+4+8);
+		for (int i=0; i < fields; i++)
+			size = size + width[i]*n;
+
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(id);
+		buffer.putInt(n);
+		buffer.putInt(fields);
+		for (int i=0; i < fields; i++)
+			buffer.put((byte)width[i]);
+		for (int i=fields; i < pad(fields); i++)
+			buffer.put((byte)0);
+		for (FramePart f : parts)
+			buffer.putInt(f.resets);
+		for (FramePart f : parts)
+			buffer.putLong(f.uptime);
+		for (FramePart f : parts)
+			buffer.putInt(f.type);
+		for (FramePart f : parts)
+			buffer.putInt(f.newMode);
+		for (FramePart f : parts)
+			buffer.putLong(f.reportDate == null ? 0 : Long.parseLong(f.reportDate));
+		for (int i=0; i < fields; i++)
+			for (FramePart f : parts) {
+				if (width[i] == 1)
+					buffer.put((byte)f.fieldValue[i]);
+				else if (width[i] == 2)
+					buffer.putShort((short)f.fieldValue[i]);
+				else
+					buffer.putInt(f.fieldValue[i]);
+			}
+		buffer.flip();
+
+		File tmp = new File(fileName + ".tmp");
+		FileOutputStream out = new FileOutputStream(tmp);
+		try {
+			out.getChannel().write(buffer);
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+		Files.move(tmp.toPath(), new File(fileName).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static int widthOf(int value) {
+		if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) return 1;
+		if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) return 2;
+		return 4;
+	}
+
+	private static int pad(int n) {
+		return (n + 3) & ~3;
+	}
+}
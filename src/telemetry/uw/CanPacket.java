@@ -8,7 +8,6 @@ import java.util.StringTokenizer;
 import common.Config;
 import common.Log;
 import common.Spacecraft;
-import decoder.FoxBitStream;
 import decoder.FoxDecoder;
 import telemetry.BitArrayLayout;
 import telemetry.FoxFramePart;
@@ -137,12 +136,7 @@ public class CanPacket extends FoxFramePart implements Comparable<FramePart> {
 	public void addNext8Bits(byte b) {
 		try {
 		//super.addNext8Bits(b);
-			for (int i=0; i<8; i++) {
-				if ((b >> i & 1) == 1) 
-					rawBits[7-i+numberBytesAdded*8] = true;
-				else 
-					rawBits[7-i+numberBytesAdded*8] = false;
-			}
+			rawBits[numberBytesAdded] = b;
 			numberBytesAdded++;	
 		bytes[numberBytesAdded-1] = b;
 		if (numberBytesAdded == ID_BYTES) {
@@ -163,17 +157,7 @@ public class CanPacket extends FoxFramePart implements Comparable<FramePart> {
 	 * @return
 	*/
 	protected int nextbits(int n ) {
-		int field = 0;
-		
-		boolean[] b = new boolean[n];
-		for (int i=0; i < n; i++) {
-			b[i] = rawBits[bitPosition+i];
-			
-		}
-		bitPosition = bitPosition + n;
-		field = FoxBitStream.binToInt(b);
-		return field;
-		
+		return nextbitsMsbFirst(n);
 	}
 	
 	
@@ -0,0 +1,105 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import telemetry.BitArrayLayout;
+import telemetry.FramePart;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Check the field name index against the linear scans it replaced.  bench.BitArrayLayoutBenchmark times a lookup by
+ * name for every value against resolving the position once and reading by index.
+ *
+ */
+public class BitArrayLayoutTest {
+
+	static final int FIELDS = 80;
+	BitArrayLayout layout;
+
+	@Before
+	public void setUp() throws Exception {
+		layout = makeLayout();
+	}
+
+	static BitArrayLayout makeLayout() {
+		BitArrayLayout lay = TestRecords.makeLayout(FIELDS, 12);
+		for (int i=0; i < FIELDS; i++)
+			lay.fieldUnits[i] = "U" + i;
+		lay.fieldName[FIELDS-1] = "Field_10"; // the same name as an earlier field in a different case
+		lay.fieldName[FIELDS-2] = null;
+		return lay;
+	}
+
+	static FramePart makeRecord(BitArrayLayout lay) {
+		int[] values = new int[FIELDS];
+		for (int i=0; i < FIELDS; i++)
+			values[i] = i * 3;
+		return TestRecords.makeRecord(lay, 0, 100, values);
+	}
+
+	private void checkAll() {
+		for (int i=-1; i <= FIELDS; i++)
+			for (String name : new String[] {"FIELD_" + i, "field_" + i, "Field_" + i}) {
+				assertEquals(name, TestRecords.linearLast(layout, name), layout.getPositionByName(name));
+				assertEquals(name, TestRecords.linearFirst(layout, name), layout.getFirstPositionByName(name));
+				assertEquals(name, TestRecords.linearLast(layout, name) != BitArrayLayout.ERROR_POSITION, layout.hasFieldName(name));
+			}
+	}
+
+	@Test
+	public void testIndexMatchesLinearScan() {
+		checkAll();
+		assertEquals(FIELDS-1, layout.getPositionByName("FIELD_10"));
+		assertEquals(10, layout.getFirstPositionByName("field_10"));
+		assertEquals("U5", layout.getUnitsByName("field_5"));
+		assertEquals("", layout.getUnitsByName("NOT_A_FIELD"));
+	}
+
+	@Test
+	public void testChangedNames() {
+		checkAll();
+		layout.fieldName[3] = "RENAMED";
+		layout.fieldsChanged();
+		checkAll();
+		assertEquals(3, layout.getPositionByName("renamed"));
+		// A new array of names is picked up without being told
+		String[] names = layout.fieldName.clone();
+		names[4] = "ALSO_RENAMED";
+		layout.fieldName = names;
+		checkAll();
+		assertEquals(4, layout.getPositionByName("ALSO_RENAMED"));
+	}
+
+	@Test
+	public void testValuesByPosition() {
+		FramePart f = makeRecord(layout);
+		for (int i=0; i < FIELDS; i++) {
+			String name = layout.fieldName[i];
+			if (name == null) continue;
+			assertEquals(f.getRawValue(name), f.getRawValue(layout.getFirstPositionByName(name)));
+			assertEquals(f.getDoubleValue(name, null), f.getDoubleValue(layout.getPositionByName(name), null), 0);
+		}
+		assertEquals(-1, f.getRawValue("NOT_A_FIELD"));
+	}
+}
@@ -0,0 +1,127 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import common.Spacecraft;
+import decoder.FoxBitStream;
+import telemetry.BitArray;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Check that the fields read from the packed bytes are the same as those read from an array with one boolean for each
+ * bit, in the lsb first and msb first orders.  Reading a frame of 12 bit fields both ways is timed by
+ * bench.BitArrayBenchmark.
+ *
+ */
+public class BitArrayTest {
+
+	public static final int BYTES = 64;
+
+	/**
+	 * A bit array that also keeps the bits one to a boolean, filled the way addNext8Bits() used to
+	 */
+	public static class Bits extends BitArray {
+		boolean[] lsbFirst = new boolean[BYTES*8];
+		boolean[] msbFirst = new boolean[BYTES*8];
+
+		Bits() {
+			super(null);
+			rawBits = new byte[BYTES];
+		}
+
+		public void addNext8Bits(byte b) {
+			for (int i=0; i<8; i++) {
+				lsbFirst[i+numberBytesAdded*8] = (b >> i & 1) == 1;
+				msbFirst[7-i+numberBytesAdded*8] = (b >> i & 1) == 1;
+			}
+			super.addNext8Bits(b);
+		}
+
+		public int lsb(int pos, int n) {
+			bitPosition = pos;
+			return nextbits(n);
+		}
+
+		int next(int n) {
+			return nextbits(n);
+		}
+
+		int msb(int pos, int n) {
+			bitPosition = pos;
+			return nextbitsMsbFirst(n);
+		}
+
+		public int booleanLsb(int pos, int n) {
+			boolean[] b = new boolean[n];
+			for (int i=0; i < n; i++)
+				b[i] = lsbFirst[pos+n-i-1];
+			return FoxBitStream.binToInt(b);
+		}
+
+		int booleanMsb(int pos, int n) {
+			boolean[] b = new boolean[n];
+			for (int i=0; i < n; i++)
+				b[i] = msbFirst[pos+i];
+			return FoxBitStream.binToInt(b);
+		}
+
+		public String getStringValue(String name, Spacecraft fox) { return null; }
+		public double convertRawValue(String name, int rawValue, int conversion, Spacecraft fox) { return rawValue; }
+	}
+
+	public static Bits makeBits(long seed) {
+		Random random = new Random(seed);
+		Bits bits = new Bits();
+		for (int i=0; i < BYTES; i++)
+			bits.addNext8Bits((byte)random.nextInt(256));
+		return bits;
+	}
+
+	@Test
+	public void testSameAsBooleanBits() {
+		for (long seed=0; seed < 20; seed++) {
+			Bits bits = makeBits(seed);
+			for (int n=0; n <= 70; n++)
+				for (int pos=0; pos + n <= BYTES*8; pos += 7) {
+					assertEquals("lsb " + pos + " " + n, bits.booleanLsb(pos, n), bits.lsb(pos, n));
+					assertEquals("msb " + pos + " " + n, bits.booleanMsb(pos, n), bits.msb(pos, n));
+				}
+		}
+	}
+
+	@Test
+	public void testBitPosition() {
+		Bits bits = makeBits(1);
+		bits.resetBitPosition();
+		int pos = 0;
+		for (int n : new int[] {3, 16, 25, 4, 8, 1, 1, 12, 0, 33}) {
+			assertEquals(bits.booleanLsb(pos, n), bits.next(n));
+			pos += n;
+		}
+		assertEquals(0xff, new Bits() {{ addNext8Bits((byte)0xff); }}.lsb(0, 8));
+		assertEquals(1, new Bits() {{ addNext8Bits((byte)0x80); }}.msb(0, 1));
+		assertEquals(1, new Bits() {{ addNext8Bits((byte)0x01); }}.lsb(0, 1));
+	}
+}
@@ -0,0 +1,156 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import common.Log;
+import decoder.CircularBuffer;
+import decoder.FoxBitStream;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Check that the packed bit buffer reads back the same bits as the ArrayList<Boolean> buffer it replaced, as bits are
+ * added and purged and the pointers wrap around, and that getBits() gives the same value as reading the bits one at
+ * a time.  bench.CircularBufferBenchmark times the two buffers decoding a stream of high speed frames.
+ *
+ */
+public class CircularBufferTest {
+
+	/**
+	 * The buffer as it was, a Boolean for each bit, kept so the results and speed can be compared
+	 */
+	@SuppressWarnings("serial")
+	public static class BooleanCircularBuffer extends ArrayList<Boolean> {
+		int bufferSize = 0;
+		int startPointer = 0;
+		int endPointer = -1;
+
+		public BooleanCircularBuffer(int initialSize) {
+			super(initialSize);
+			bufferSize = initialSize;
+			startPointer = bufferSize -1;
+			for (int i=0; i< bufferSize; i++)
+				super.add(false);
+		}
+
+		public boolean add(Boolean o) {
+			endPointer++;
+			if (endPointer == bufferSize)
+				endPointer = 0;
+			if (endPointer == startPointer) {
+				endPointer--;
+				if (endPointer == -1)
+					endPointer = bufferSize-1;
+				throw new IndexOutOfBoundsException("End pointer has reached start pointer");
+			}
+			super.set(endPointer, o);
+			return true;
+		}
+
+		private int incPointer(int pointer, int amount) {
+			int p = pointer + amount;
+			if (p >= bufferSize)
+				p = p % bufferSize;
+			return p;
+		}
+
+		public Boolean get(int i) {
+			if (i > size())
+				throw new IndexOutOfBoundsException("Attempt to read past end pointer");
+			return super.get(incPointer(startPointer, i));
+		}
+
+		public void incStartPointer(int amount) {
+			startPointer = incPointer(startPointer, amount);
+		}
+
+		public int size() {
+			if (endPointer >= startPointer)
+				return endPointer - startPointer;
+			return bufferSize - startPointer + endPointer;
+		}
+	}
+
+	@Test
+	public void testSameAsBooleanBuffer() {
+		Log.init("test.txt");
+		// A size that is a power of two, so the pointers wrap at the same place in both
+		CircularBuffer bits = new CircularBuffer(4096);
+		BooleanCircularBuffer old = new BooleanCircularBuffer(4096);
+		Random random = new Random(1);
+		for (int round=0; round < 200; round++) {
+			int add = random.nextInt(1500);
+			for (int i=0; i < add && old.size() < 4000; i++) {
+				boolean b = random.nextBoolean();
+				bits.add(b);
+				old.add(b);
+			}
+			assertEquals(old.size(), bits.size());
+			assertEquals(old.startPointer, bits.getStartPointer());
+			assertEquals(old.endPointer, bits.getEndPointer());
+			for (int i=0; i <= old.size(); i++)
+				assertEquals(old.get(i), bits.get(i));
+			for (int i=0; i + 31 <= old.size(); i += 7) {
+				int n = 1 + random.nextInt(32);
+				boolean[] word = new boolean[n];
+				for (int j=0; j < n; j++)
+					word[j] = old.get(i+j);
+				assertEquals(FoxBitStream.binToInt(word), bits.getBits(i, n));
+			}
+			int purge = random.nextInt(old.size() + 1);
+			bits.incStartPointer(purge);
+			old.incStartPointer(purge);
+		}
+	}
+
+	@Test
+	public void testFullAndSet() {
+		Log.init("test.txt");
+		CircularBuffer bits = new CircularBuffer(100); // rounded up to 128
+		for (int i=0; i < 127; i++)
+			bits.add(i % 3 == 0);
+		try {
+			bits.add(true);
+			fail("Added past the start pointer");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		assertEquals(127, bits.size());
+		// Element 0 was the last position in the array, so after 10 are purged it is bit 9 of the data
+		bits.incStartPointer(10);
+		bits.add(true);
+		assertEquals(118, bits.size());
+		assertFalse(bits.get(5)); // bit 14
+		bits.set(5, true);
+		assertTrue(bits.get(5));
+		assertEquals(Integer.parseInt("0110", 2), bits.getBits(4, 4)); // bits 13 to 16, with 14 set
+		// The new bits wrap around to the start of the array
+		bits.add(true);
+		bits.add(false);
+		bits.add(true);
+		bits.add(true);
+		assertEquals(Integer.parseInt("111011", 2), bits.getBits(117, 6)); // bits 126 and 127, then the new bits
+	}
+}
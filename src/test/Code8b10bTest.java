@@ -0,0 +1,230 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import common.Log;
+import decoder.Code8b10b;
+import decoder.LookupException;
+import fec.RsCodeWord;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Check that the decode tables give the same result as searching the Encode_8b10b table, as the decoder did, for every
+ * 10 bit word in both polarities, and that the words that break the running disparity can be erased to decode a frame
+ * that has too many errors for the RS decoder on its own.  The table and the search are timed against each other in
+ * bench.Code8b10bBenchmark.
+ *
+ */
+public class Code8b10bTest {
+
+	public static final int NOT_FOUND = -99;
+
+	/**
+	 * The search through the table that the decoder used, returning NOT_FOUND rather than throwing
+	 */
+	public static int searchDecode(int word, boolean flip) {
+		if (flip) word = ~word & 0x3ff;
+		for (int rd=0; rd<2; rd++)
+			for (int i=0; i<256; i++)
+				if ((Code8b10b.Encode_8b10b[rd][i] & 0x3ff) == word)
+					return i;
+		return NOT_FOUND;
+	}
+
+	static int searchNextRd(int word, boolean flip) {
+		if (flip) word = ~word & 0x3ff;
+		for (int rd=0; rd<2; rd++)
+			for (int i=0; i<256; i++)
+				if ((Code8b10b.Encode_8b10b[rd][i] & 0x3ff) == word)
+					return (Code8b10b.Encode_8b10b[rd][i] >> 10) & 1;
+		return NOT_FOUND;
+	}
+
+	static int searchRdSense(int word, boolean flip) {
+		if (flip) word = ~word & 0x3ff;
+		for (int rd=0; rd<2; rd++)
+			for (int i=0; i<256; i++)
+				if ((Code8b10b.Encode_8b10b[rd][i] & 0x3ff) == word)
+					return rd;
+		return NOT_FOUND;
+	}
+
+	@Test
+	public void testSameAsSearch() {
+		int valid = 0;
+		for (int f=0; f < 2; f++) {
+			boolean flip = f == 1;
+			// Every 10 bit word, and some that are not 10 bits, which were never found
+			for (int word=-2; word < 2048; word++) {
+				int expected = searchDecode(word, flip);
+				if (expected == NOT_FOUND) {
+					assertEquals(Code8b10b.INVALID, Code8b10b.lookup(word, flip));
+					try {
+						Code8b10b.decode(word, flip);
+						fail("Decoded an invalid word " + word);
+					} catch (LookupException e) {
+						// expected
+					}
+				} else {
+					valid++;
+					assertEquals(expected, Code8b10b.lookup(word, flip));
+					try {
+						assertEquals((byte)expected, Code8b10b.decode(word, flip));
+					} catch (LookupException e) {
+						fail("Could not decode " + word);
+					}
+				}
+				assertEquals(searchNextRd(word, flip), Code8b10b.getNextRd(word, flip));
+				assertEquals(searchRdSense(word, flip), Code8b10b.getRdSense10b(word, flip));
+			}
+		}
+		assertTrue(valid > 2 * 256);
+	}
+
+	@Test
+	public void testNextRdForColumn() {
+		for (int rd=0; rd < 2; rd++)
+			for (int i=0; i < 256; i++) {
+				int code = Code8b10b.Encode_8b10b[rd][i];
+				int nextRd = (code >> 10) & 1;
+				assertEquals(nextRd, Code8b10b.getNextRd(code & 0x3ff, rd, false));
+				assertEquals(nextRd, Code8b10b.getNextRd(~code & 0x3ff, rd, true));
+			}
+		int onlyRd1 = Code8b10b.Encode_8b10b[1][0] & 0x3ff;
+		assertEquals(Code8b10b.NO_RD, Code8b10b.getNextRd(onlyRd1, 0, false));
+		assertEquals((Code8b10b.Encode_8b10b[1][0] >> 10) & 1, Code8b10b.getNextRd(onlyRd1, Code8b10b.NO_RD, false));
+		assertEquals(Code8b10b.NO_RD, Code8b10b.getNextRd(Code8b10b.FRAME, 0, false)); // the sync word is not data
+	}
+
+	/*
+	 * A Reed Solomon encoder for the code that RsCodeWord decodes, after Phil Karn's encode_rs_8, so that the test can
+	 * make frames
+	 */
+	static final int NN = 255;
+	static final int NROOTS = 32;
+	static final int FCR = 112;
+	static final int PRIM = 11;
+	static int[] alphaTo = new int[256];
+	static int[] indexOf = new int[256];
+	static int[] genPoly = new int[NROOTS+1];
+	static {
+		int sr = 1;
+		indexOf[0] = NN;
+		alphaTo[NN] = 0;
+		for (int i=0; i < NN; i++) {
+			indexOf[sr] = i;
+			alphaTo[i] = sr;
+			sr <<= 1;
+			if ((sr & 0x100) != 0) sr ^= 0x187;
+			sr &= 0xff;
+		}
+		genPoly[0] = 1;
+		for (int i=0, root=FCR*PRIM; i < NROOTS; i++, root += PRIM) {
+			genPoly[i+1] = 1;
+			for (int j=i; j > 0; j--)
+				if (genPoly[j] != 0)
+					genPoly[j] = genPoly[j-1] ^ alphaTo[(indexOf[genPoly[j]] + root) % NN];
+				else
+					genPoly[j] = genPoly[j-1];
+			genPoly[0] = alphaTo[(indexOf[genPoly[0]] + root) % NN];
+		}
+		for (int i=0; i <= NROOTS; i++)
+			genPoly[i] = indexOf[genPoly[i]];
+	}
+
+	/**
+	 * @return the data followed by the parity bytes
+	 */
+	static byte[] encodeRs(byte[] data) {
+		int[] parity = new int[NROOTS];
+		for (int i=0; i < data.length; i++) {
+			int feedback = indexOf[(data[i] & 0xff) ^ parity[0]];
+			if (feedback != NN)
+				for (int j=1; j < NROOTS; j++)
+					parity[j] ^= alphaTo[(feedback + genPoly[NROOTS-j]) % NN];
+			System.arraycopy(parity, 1, parity, 0, NROOTS-1);
+			parity[NROOTS-1] = feedback != NN ? alphaTo[(feedback + genPoly[0]) % NN] : 0;
+		}
+		byte[] frame = new byte[data.length + NROOTS];
+		System.arraycopy(data, 0, frame, 0, data.length);
+		for (int i=0; i < NROOTS; i++)
+			frame[data.length + i] = (byte)parity[i];
+		return frame;
+	}
+
+	@Test
+	public void testDisparityErasures() {
+		Log.init("test.txt");
+		// A slow speed frame, 64 bytes and 32 parity bytes, encoded with the running disparity as the spacecraft does
+		Random random = new Random(3);
+		byte[] data = new byte[64];
+		random.nextBytes(data);
+		byte[] frame = encodeRs(data);
+		int pad = NN - frame.length;
+		int[] words = new int[frame.length];
+		int rd = 0;
+		int corrupted = 0;
+		for (int i=0; i < frame.length; i++) {
+			int b = frame[i] & 0xff;
+			int code = Code8b10b.Encode_8b10b[rd][b];
+			if (i % 5 == 2 && corrupted < 20) {
+				// A bit error that gives a valid word for another byte. Some break the running disparity, some do not
+				int c = (b + 1) & 0xff;
+				int column = corrupted % 2 == 0 ? 1 - rd : rd;
+				while (c == b || Code8b10b.getNextRd(Code8b10b.Encode_8b10b[column][c] & 0x3ff, rd, false) != (column == rd ? (code >> 10) & 1 : Code8b10b.NO_RD))
+					c = (c + 1) & 0xff;
+				words[i] = Code8b10b.Encode_8b10b[column][c] & 0x3ff;
+				corrupted++;
+			} else {
+				words[i] = code & 0x3ff;
+			}
+			rd = (code >> 10) & 1;
+		}
+
+		// Decode the words and follow the running disparity, as the bit streams do
+		byte[] received = new byte[frame.length];
+		int[] hints = new int[NROOTS];
+		int numberOfHints = 0;
+		rd = Code8b10b.NO_RD;
+		for (int i=0; i < words.length; i++) {
+			received[i] = (byte)Code8b10b.lookup(words[i], false);
+			int nextRd = Code8b10b.getNextRd(words[i], rd, false);
+			if (nextRd == Code8b10b.NO_RD && rd != Code8b10b.NO_RD && numberOfHints < 14)
+				hints[numberOfHints++] = i;
+			rd = nextRd;
+		}
+		assertEquals(10, numberOfHints); // each word from the other column, and none after it
+
+		RsCodeWord rs = new RsCodeWord(received, pad);
+		RsCodeWord retry = new RsCodeWord(rs);
+		rs.decode();
+		assertFalse(rs.validDecode()); // 20 errors is too many
+
+		retry.setErasurePositions(hints, numberOfHints);
+		byte[] decoded = retry.decode();
+		assertTrue(retry.validDecode());
+		assertArrayEquals(frame, decoded);
+	}
+}
@@ -0,0 +1,121 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import common.Config;
+import common.FoxSpacecraft;
+import common.Spacecraft;
+import telemetry.BitArrayLayout;
+import telemetry.FoxFramePart;
+import telemetry.HerciHighspeedHeader;
+import telemetry.PayloadRtValues;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Check that converting a column of raw values gives exactly the values of convertRawValue() for every conversion,
+ * for each of the spacecraft.  Run from the project directory so that the spacecraft files can be found.
+ * bench.ConvertRawValuesBenchmark times the two.
+ *
+ */
+public class ConvertRawValuesTest {
+
+	static final int LAST_CONVERSION = 60; // past the last one, so that unknown conversions are checked too
+	static final String[] NAMES = {"BATT_A_V", "BATT_B_V", "BATT_C_V", "OTHER", FoxSpacecraft.MEMS_REST_VALUE_X,
+			FoxSpacecraft.MEMS_REST_VALUE_Y, FoxSpacecraft.MEMS_REST_VALUE_Z};
+	static final String[] SPACECRAFT = {"FOX1A_fm.MASTER", "FOX1C_fm.MASTER", "FOX1D_fm.MASTER", "FOX1E_fm.MASTER",
+			"HUSKY_SAT_fm.MASTER", "RadFxSat_fm.MASTER"};
+	int[] raw;
+
+	@Before
+	public void setUp() throws Exception {
+		Config.currentDir = System.getProperty("user.dir");
+		Config.foxTelemCalcsPosition = false;
+		raw = new int[70000];
+		for (int i=0; i < raw.length; i++)
+			raw[i] = i - 1000;
+	}
+
+	static FoxSpacecraft load(String master) throws Exception {
+		File user = File.createTempFile("FOX", ".dat");
+		user.delete();
+		FoxSpacecraft fox = new FoxSpacecraft(new File("spacecraft" + File.separator + master), user);
+		user.delete();
+		return fox;
+	}
+
+	private void check(String what, FoxFramePart f, String name, int conversion, Spacecraft fox) {
+		double[] expected = new double[raw.length];
+		boolean failed = false;
+		try {
+			for (int i=0; i < raw.length; i++)
+				expected[i] = f.convertRawValue(name, raw[i], conversion, fox);
+		} catch (RuntimeException e) {
+			failed = true; // such as a lookup table this spacecraft does not have
+		}
+		double[] results = new double[raw.length];
+		try {
+			f.convertRawValues(name, raw, 0, raw.length, conversion, fox, results);
+			assertFalse(what + " should fail", failed);
+		} catch (RuntimeException e) {
+			assertTrue(what + " " + e, failed);
+			return;
+		}
+		for (int i=0; i < raw.length; i++)
+			if (Double.doubleToLongBits(expected[i]) != Double.doubleToLongBits(results[i]))
+				fail(what + " raw " + raw[i] + " expected " + expected[i] + " got " + results[i]);
+	}
+
+	@Test
+	public void testAllConversions() throws Exception {
+		for (String master : SPACECRAFT) {
+			FoxSpacecraft fox = load(master);
+			FoxFramePart f = new PayloadRtValues(fox.getLayoutByName(Spacecraft.REAL_TIME_LAYOUT));
+			for (boolean alternate : new boolean[] {false, true}) {
+				fox.useIHUVBatt = alternate;
+				fox.hasMemsRestValues = alternate;
+				fox.user_memsRestValueX = 1800;
+				fox.user_memsRestValueY = 1900;
+				fox.user_memsRestValueZ = 2000;
+				for (int c=0; c <= LAST_CONVERSION; c++)
+					for (String name : NAMES)
+						check(master + " " + name + " conversion " + c + (alternate ? " alternate" : ""), f, name, c, fox);
+			}
+		}
+	}
+
+	@Test
+	public void testSubclassConversions() throws Exception {
+		// A conversion that a subclass adds is still used for the column
+		FoxSpacecraft fox = load("FOX1A_fm.MASTER");
+		FoxFramePart f = new HerciHighspeedHeader(0, 0, fox.getLayoutByName(Spacecraft.REAL_TIME_LAYOUT));
+		check("herci hex", f, "OTHER", BitArrayLayout.CONVERT_HERCI_HEX, fox);
+		double[] results = new double[raw.length];
+		f.convertRawValues("OTHER", raw, 10, 20, BitArrayLayout.CONVERT_HERCI_HEX, fox, results);
+		assertEquals(0, results[9], 0);
+		assertEquals(raw[15], results[15], 0);
+		assertEquals(0, results[20], 0);
+	}
+}
@@ -0,0 +1,199 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+
+import telemetry.FoxFramePart;
+import telemetry.LookUpTable;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Check the array lookups give exactly the values of the map iteration they replaced, for the tables in the
+ * spacecraft directory and for tables that are out of order.  Run from the project directory so that the
+ * spacecraft files can be found.  The old and new lookups are timed by bench.LookUpTableBenchmark.
+ *
+ */
+public class LookUpTableTest {
+
+	static final int MIN = -100;
+	static final int MAX = 5000;
+
+	/**
+	 * A table that can be filled by the test and that still has the lookups that iterate over the map
+	 */
+	public static class Table extends LookUpTable {
+		Table() { }
+		public Table(String fileName) throws Exception { super(fileName); }
+		void put(int key, double value) { table.put(key, value); }
+
+		static double linearInterpolation(double x, double x0, double x1, double y0, double y1) {
+			return y0 + (y1 - y0) * ((x - x0)/(x1 - x0));
+		}
+
+		public double mapLookupValue(int lookUpKey) {
+			Iterator<Entry<Integer, Double>> it = table.entrySet().iterator();
+			double lastValue = 0;
+			int lastKey = 0;
+			double prevValue = 0;
+			int prevKey = 0;
+			Entry<Integer, Double> pairs = null;
+			int key;
+			boolean firstKey = true;
+			double value = FoxFramePart.ERROR_VALUE;
+			while (it.hasNext()) {
+				pairs = it.next();
+				key = pairs.getKey();
+				value = pairs.getValue();
+				if (firstKey) {
+					firstKey = false;
+					if (lookUpKey < key) {
+						lastKey = key;
+						lastValue = value;
+						pairs = it.next();
+						return linearInterpolation((double)lookUpKey, lastKey, (double)pairs.getKey(), lastValue, pairs.getValue());
+					}
+				}
+				if (lookUpKey == key)
+					return value;
+				else if (lookUpKey < key)
+					return linearInterpolation((double)lookUpKey, lastKey, (double)pairs.getKey(), lastValue, pairs.getValue());
+				prevKey = lastKey;
+				prevValue = lastValue;
+				lastKey = key;
+				lastValue = value;
+			}
+			if (pairs != null)
+				value = linearInterpolation((double)lookUpKey, prevKey, lastKey, prevValue, lastValue);
+			return value;
+		}
+
+		int mapReverseLookup(double lookUpKey) {
+			Iterator<Entry<Integer, Double>> it = table.entrySet().iterator();
+			int lastValue = 0;
+			double lastKey = 0;
+			int prevValue = 0;
+			double prevKey = 0;
+			Entry<Integer, Double> pairs = null;
+			double key;
+			boolean firstKey = true;
+			int value = (int)FoxFramePart.ERROR_VALUE;
+			while (it.hasNext()) {
+				pairs = it.next();
+				value = pairs.getKey();
+				key = pairs.getValue();
+				if (firstKey) {
+					firstKey = false;
+					if (lookUpKey < key) {
+						lastKey = key;
+						lastValue = value;
+						pairs = it.next();
+						return (int) linearInterpolation(lookUpKey, lastKey, (double)pairs.getKey(), lastValue, pairs.getValue());
+					}
+				}
+				if (lookUpKey == key)
+					return value;
+				else if (lookUpKey < key)
+					return (int) linearInterpolation(lookUpKey, lastKey, (double)pairs.getKey(), lastValue, pairs.getValue());
+				prevKey = lastKey;
+				prevValue = lastValue;
+				lastKey = key;
+				lastValue = value;
+			}
+			if (pairs != null)
+				value = (int) linearInterpolation(lookUpKey, prevKey, lastKey, prevValue, lastValue);
+			return value;
+		}
+	}
+
+	private static void checkSame(String name, Table t) {
+		checkSame(name, t, MIN, -200);
+	}
+
+	private static void checkSame(String name, Table t, int min, double minValue) {
+		for (int x=min; x <= MAX; x++)
+			assertEquals(name + " " + x, Double.doubleToLongBits(t.mapLookupValue(x)), Double.doubleToLongBits(t.lookupValue(x)));
+		for (double y=minValue; y <= 200; y += 0.25)
+			assertEquals(name + " " + y, t.mapReverseLookup(y), t.reverseLookup(y));
+		assertEquals(name, t.mapReverseLookup(Double.NaN), t.reverseLookup(Double.NaN));
+	}
+
+	@Test
+	public void testSpacecraftTables() throws Exception {
+		File[] files = new File("spacecraft").listFiles();
+		int tables = 0;
+		for (File f : files) {
+			if (!f.getName().endsWith(".tab")) continue;
+			Table t = new Table(f.getName());
+			checkSame(f.getName(), t);
+			t.makeDense(0, LookUpTable.ADC_COUNTS-1);
+			checkSame(f.getName() + " dense", t);
+			tables++;
+		}
+		assertTrue(tables > 0);
+	}
+
+	@Test
+	public void testUnsortedAndSmallTables() {
+		Table t = new Table();
+		assertEquals(FoxFramePart.ERROR_VALUE, t.lookupValue(10), 0);
+		assertEquals((int)FoxFramePart.ERROR_VALUE, t.reverseLookup(10));
+		t.put(100, 5.0);
+		checkSame("one entry", t, 100, 5.0); // only from the entry on, before it the lookup fails
+		try {
+			t.lookupValue(50);
+			fail("Expected the lookup to fail as before");
+		} catch (NoSuchElementException e) { }
+		t.put(200, 7.0);
+		checkSame("two entries", t);
+		// Keys and values out of order, with a repeated value
+		t.put(150, 9.0);
+		t.put(400, -3.0);
+		t.put(300, -3.0);
+		t.put(-50, 1.5);
+		t.makeDense(0, 1000);
+		checkSame("unsorted", t);
+	}
+
+	@Test
+	public void testChangedTable() {
+		Table t = new Table();
+		for (int i=0; i < 10; i++)
+			t.put(i * 100, i * 2.5);
+		checkSame("before", t);
+		t.put(1000, 40.0);
+		checkSame("after", t); // the new entry is picked up
+	}
+
+	@Test
+	public void testStaticTables() {
+		// These are made dense when they are created.  Spot check against values from the map lookups
+		assertEquals(-55.0, FoxFramePart.temperatureTable.lookupValue(507), 0);
+		assertEquals(150.0, FoxFramePart.temperatureTable.lookupValue(3807), 0);
+		assertEquals(95.0, FoxFramePart.solarPanelTempTable.lookupValue(2998), 0);
+		assertEquals(150.0, FoxFramePart.batteryTempTable.lookupValue(4569), 0);
+	}
+}
@@ -0,0 +1,148 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.List;
+import java.util.Random;
+import java.util.StringTokenizer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import common.Config;
+import measure.Measurement;
+import measure.MeasurementTable;
+import measure.RtMeasurement;
+import measure.SatMeasurementStore;
+import measure.SortedMeasurementArrayList;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Check that a segmented measurement log gives the same results as the sorted list that held every measurement,
+ * before and after it is opened again from its index, and that a log out of date order is sorted.
+ *
+ */
+public class MeasurementTableTest {
+
+	static final int RECORDS = 3500;
+	static final String LOG = "Fox1rtmeasurements.log";
+	File dir;
+	SortedMeasurementArrayList list;
+	MeasurementTable table;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = TestRecords.makeLogDirectory("measure");
+		TestRecords.loadFox1A();
+		list = new SortedMeasurementArrayList(RECORDS);
+		table = new MeasurementTable(LOG, SatMeasurementStore.RT_MEASUREMENT_TYPE);
+		table.open();
+		Random random = new Random(1);
+		for (int i=0; i < RECORDS; i++) {
+			// The reset/uptime is of the last frame, so it does not always increase with the date
+			Measurement m = make(i * 7, i / 1000, i % 1000 * 10 + random.nextInt(40), random);
+			assertTrue(table.add(m));
+			list.add(m);
+		}
+	}
+
+	@After
+	public void tearDown() {
+		for (File f : dir.listFiles())
+			f.delete();
+		dir.delete();
+		Config.logFileDirectory = "";
+	}
+
+	static RtMeasurement make(int seconds, int reset, long uptime, Random random) {
+		String date = String.format("20200101%02d%02d%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+		String values = random.nextInt(100) + "," + random.nextInt(100) + "," + (145900000 + random.nextInt(10000));
+		return new RtMeasurement(1, date, reset, uptime, SatMeasurementStore.RT_MEASUREMENT_TYPE, new StringTokenizer(values, ","));
+	}
+
+	private void checkSame(MeasurementTable table) throws Exception {
+		assertEquals(list.size(), table.size());
+		assertEquals(list.get(list.size()-1).getCaptureDate(), table.getLatest().getCaptureDate());
+		for (int r=0; r < 5; r++)
+			for (long u=0; u < 10100; u += 97) {
+				assertEquals(list.getNearestFrameIndex(1, u, r), table.getNearestFrameIndex(1, u, r));
+				int start = list.getNearestFrameIndex(1, u, r);
+				int end = list.getNearestFrameIndex(1, u + 3000, r);
+				assertEquals(start < end ? end - start : 0, table.getNumberOfPayloadsBetweenTimestamps(r, u, r, u + 3000));
+			}
+		List<Measurement> records = table.getRecords(0, table.size());
+		for (int i=0; i < list.size(); i++) {
+			assertEquals(list.get(i).getCaptureDate(), records.get(i).getCaptureDate());
+			assertEquals(list.get(i).getUptime(), records.get(i).getUptime());
+			assertEquals(((RtMeasurement)list.get(i)).getRawValue(RtMeasurement.CARRIER_FREQ),
+					((RtMeasurement)records.get(i)).getRawValue(RtMeasurement.CARRIER_FREQ), 0);
+		}
+		records = table.getRecords(1990, 2010);
+		assertEquals(20, records.size());
+		assertEquals(list.get(1990).getCaptureDate(), records.get(0).getCaptureDate());
+		assertTrue(table.getNumberOfLoadedSegments() <= MeasurementTable.MAX_LOADED_SEGMENTS + 1);
+	}
+
+	@Test
+	public void testSameAsSortedList() throws Exception {
+		assertEquals((RECORDS + MeasurementTable.SEGMENT_SIZE - 1) / MeasurementTable.SEGMENT_SIZE, table.getNumberOfSegments());
+		checkSame(table);
+		// Open it again from the index, which only reads the last segment
+		MeasurementTable reopened = new MeasurementTable(LOG, SatMeasurementStore.RT_MEASUREMENT_TYPE);
+		reopened.open();
+		assertEquals(1, reopened.getNumberOfLoadedSegments());
+		checkSame(reopened);
+		// and without the index
+		new File(dir, LOG + MeasurementTable.IDX_EXT).delete();
+		reopened = new MeasurementTable(LOG, SatMeasurementStore.RT_MEASUREMENT_TYPE);
+		reopened.open();
+		checkSame(reopened);
+	}
+
+	@Test
+	public void testLogOutOfOrder() throws Exception {
+		// An earlier version appends a record from before the last one, and a duplicate
+		Random random = new Random(2);
+		Measurement early = make(100 * 7 + 3, 0, 5, random);
+		Measurement duplicate = make(RECORDS * 7 - 7, 3, 499, random);
+		FileWriter out = new FileWriter(new File(dir, LOG), true);
+		out.write(((RtMeasurement)early).toFile() + "\n");
+		out.write(((RtMeasurement)duplicate).toFile() + "\n");
+		out.close();
+		list.add(early);
+		list.add(duplicate);
+		MeasurementTable reopened = new MeasurementTable(LOG, SatMeasurementStore.RT_MEASUREMENT_TYPE);
+		reopened.open();
+		assertEquals(RECORDS + 1, reopened.size());
+		checkSame(reopened);
+		// A measurement made after the clock went back is put in order too
+		Measurement late = make(RECORDS * 7 - 2, 3, 1000, random);
+		assertTrue(reopened.add(late));
+		Measurement back = make(200 * 7 + 3, 0, 7, random);
+		assertFalse(reopened.add(back));
+		list.add(late);
+		list.add(back);
+		checkSame(reopened);
+	}
+}
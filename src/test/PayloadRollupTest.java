@@ -0,0 +1,207 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import common.Config;
+import common.FoxSpacecraft;
+import common.Spacecraft;
+import telemetry.BitArray;
+import telemetry.BitArrayLayout;
+import telemetry.FramePart;
+import telemetry.PayloadRollup;
+import telemetry.PayloadStore;
+import telemetry.SatPayloadTable;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Check the rollup buckets against the records they summarize and that a graph gets the coarsest tier with a point
+ * for each pixel column.  Fetching several fields together must give the same results as one at a time.  Run from
+ * the project directory so that the spacecraft files can be found.
+ *
+ */
+public class PayloadRollupTest {
+
+	static final int RECORDS = 10000;
+	static final long STEP = 600; // ten minutes, so the records cover about 70 days
+	static final String FIELD = "BATT_A_V";
+
+	File dir;
+	FoxSpacecraft fox;
+	BitArrayLayout layout;
+	SatPayloadTable table;
+	ArrayList<FramePart> saved = new ArrayList<FramePart>();
+
+	@Before
+	public void setUp() throws Exception {
+		Config.displayRawValues = false;
+		dir = TestRecords.makeLogDirectory("foxdb");
+		new File(dir, PayloadStore.DB_NAME).mkdirs();
+		fox = TestRecords.loadFox1A();
+		layout = fox.getLayoutByName(Spacecraft.REAL_TIME_LAYOUT);
+		table = new SatPayloadTable(10, "rollup", false);
+		for (int i=0; i < RECORDS; i++) {
+			FramePart f = makeRecord(i);
+			table.save(f);
+			saved.add(f);
+		}
+		table.close();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		table.remove();
+		new File(dir, PayloadStore.DB_NAME).delete();
+		dir.delete();
+	}
+
+	private FramePart makeRecord(int i) {
+		int[] values = new int[layout.NUMBER_OF_FIELDS];
+		for (int f=0; f < values.length; f++)
+			values[f] = (i * 7 + f) % 4096;
+		return TestRecords.makeRecord(layout, 0, i * STEP, values);
+	}
+
+	private String rollupFile() {
+		return dir.getPath() + File.separator + PayloadStore.DB_NAME + File.separator + "rollup";
+	}
+
+	private void checkBuckets(PayloadRollup rollup) {
+		assertTrue(rollup.isValid());
+		int field = rollup.getFieldIndex(FIELD);
+		for (int t=0; t < PayloadRollup.TIERS.length; t++) {
+			int tier = PayloadRollup.TIERS[t];
+			ArrayList<PayloadRollup.Bucket> buckets = rollup.getBuckets(t);
+			assertEquals((RECORDS-1) * STEP / tier + 1, buckets.size());
+			for (PayloadRollup.Bucket b : buckets) {
+				int count = 0;
+				double min = Double.MAX_VALUE;
+				double max = -Double.MAX_VALUE;
+				double sum = 0;
+				for (FramePart f : saved)
+					if (f.uptime / tier == b.bucket) {
+						double value = f.getDoubleValue(FIELD, fox);
+						count++;
+						min = Math.min(min, value);
+						max = Math.max(max, value);
+						sum += value;
+					}
+				assertEquals(count, b.count);
+				assertEquals(min, b.min[field], 1e-4 * Math.abs(min));
+				assertEquals(max, b.max[field], 1e-4 * Math.abs(max));
+				assertEquals(sum / count, b.mean[field], 1e-3 * Math.max(1, Math.abs(sum / count)));
+			}
+		}
+	}
+
+	@Test
+	public void testBucketsMatchRecords() throws IOException {
+		checkBuckets(new PayloadRollup(rollupFile() , false));
+	}
+
+	@Test
+	public void testGraphUsesCoarsestTierWithAPointPerPixel() throws IOException {
+		int days = (int)((RECORDS-1) * STEP / PayloadRollup.DAY + 1);
+		int orbits = (int)((RECORDS-1) * STEP / PayloadRollup.ORBIT + 1);
+		double[][] data = table.getGraphData(FIELD, RECORDS, fox, 0, 0, false, false, 50);
+		assertEquals(days, data[PayloadStore.DATA_COL].length);
+		data = table.getGraphData(FIELD, RECORDS, fox, 0, 0, false, true, 500);
+		assertEquals(orbits, data[PayloadStore.DATA_COL].length);
+		for (int i=1; i < data[PayloadStore.UPTIME_COL].length; i++)
+			assertTrue(data[PayloadStore.UPTIME_COL][i] > data[PayloadStore.UPTIME_COL][i-1]);
+		// More pixels than orbits, so every record is returned
+		data = table.getGraphData(FIELD, RECORDS, fox, 0, 0, false, false, 2000);
+		assertEquals(RECORDS, data[PayloadStore.DATA_COL].length);
+		// Fewer records than pixels
+		data = table.getGraphData(FIELD, 100, fox, 0, 0, false, false, 500);
+		assertEquals(100, data[PayloadStore.DATA_COL].length);
+	}
+
+	@Test
+	public void testMultiFieldMatchesSingleField() throws IOException {
+		String[] names = {"BATT_A_V", "BATT_B_V", "PANEL_PLUS_X_T"};
+		for (int width : new int[] {0, 50}) {
+			double[][][] all = table.getGraphData(names, 3000, fox, 0, 120000, true, false, width);
+			assertEquals(names.length, all.length);
+			for (int n=0; n < names.length; n++) {
+				double[][] one = table.getGraphData(names[n], 3000, fox, 0, 120000, true, false, width);
+				for (int col=0; col < one.length; col++)
+					assertArrayEquals(one[col], all[n][col], 0);
+				assertSame(all[0][PayloadStore.UPTIME_COL], all[n][PayloadStore.UPTIME_COL]);
+			}
+		}
+		// A field that is not in the layout gives an error value for each record, as it does on its own
+		double[][][] data = table.getGraphData(new String[] {"BATT_A_V", "NOT_A_FIELD"}, 100, fox, 0, 0, false, false, 0);
+		assertEquals(100, data[1][PayloadStore.DATA_COL].length);
+		assertEquals(BitArray.ERROR_VALUE, data[1][PayloadStore.DATA_COL][0], 0);
+	}
+
+	/**
+	 * Wait for the rollup to be rebuilt in the background
+	 */
+	private void waitForRollup() throws InterruptedException {
+		for (int i=0; i < 600 && !table.hasRollup(); i++)
+			Thread.sleep(100);
+		assertTrue(table.hasRollup());
+	}
+
+	@Test
+	public void testRebuildWhenMissing() throws Exception {
+		new File(rollupFile() + ".rollup").delete();
+		table = new SatPayloadTable(10, "rollup", false);
+		assertFalse(table.hasRollup());
+		// Every record is returned until the rebuild has finished
+		double[][] data = table.getGraphData(FIELD, RECORDS, fox, 0, 0, false, false, 50);
+		assertEquals(RECORDS, data[PayloadStore.DATA_COL].length);
+		waitForRollup();
+		data = table.getGraphData(FIELD, RECORDS, fox, 0, 0, false, false, 50);
+		assertEquals((RECORDS-1) * STEP / PayloadRollup.DAY + 1, data[PayloadStore.DATA_COL].length);
+		checkBuckets(new PayloadRollup(rollupFile(), false));
+	}
+
+	@Test
+	public void testSavesDuringRebuildAreCountedOnce() throws Exception {
+		new File(rollupFile() + ".rollup").delete();
+		table = new SatPayloadTable(10, "rollup", false);
+		table.getGraphData(FIELD, RECORDS, fox, 0, 0, false, false, 50); // starts the rebuild
+		// Save records into the last segment and new segments while the rebuild reads the table
+		for (int i=RECORDS; i < RECORDS + 2000; i++) {
+			FramePart f = makeRecord(i);
+			table.save(f);
+			saved.add(f);
+		}
+		waitForRollup();
+		table.close();
+		for (int t=0; t < PayloadRollup.TIERS.length; t++) {
+			int count = 0;
+			for (PayloadRollup.Bucket b : new PayloadRollup(rollupFile(), false).getBuckets(t))
+				count += b.count;
+			assertEquals(saved.size(), count);
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import common.Log;
+import decoder.FoxBPSK.PskFftSearcher;
+import decoder.FoxBPSK.PskSearcher;
+import filter.DotProduct;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Check that the FFT search finds the carrier and symbol timing of a root raised cosine BPSK signal, and that its
+ * correlation with the matched filter gives the same energy as the dot products that PskSearcher calculates.
+ * bench.PskFftSearcherBenchmark compares its search time and the windows it takes to lock with the brute force search.
+ *
+ */
+public class PskFftSearcherTest {
+	public static final int SAMPLE_RATE = 48000;
+	public static final int BUCKET_SIZE = SAMPLE_RATE / 1200;
+	public static final int BUFFER_SIZE = 100 * BUCKET_SIZE;
+	public static final int FTOTAL = 17; // 700 to 2300 Hz
+	public static final double START = 700 * 2 * Math.PI / SAMPLE_RATE;
+	public static final double STEP = 100 * 2 * Math.PI / SAMPLE_RATE;
+
+	/**
+	 * Random BPSK symbols shaped with the matched filter, which is root raised cosine, on a carrier.  The middle of each
+	 * symbol is timing samples after a multiple of the bucket size, so that is the offset the searchers should find.
+	 * @param noise - the standard deviation of the noise.  The signal has a power of 0.5
+	 */
+	public static double[] makeSignal(double carrier, int timing, double noise, Random random) {
+		DotProduct filter = new DotProduct();
+		int taps = filter.getNumOfTaps();
+		double[] baseband = new double[BUFFER_SIZE];
+		for (int symbol = -taps/BUCKET_SIZE; symbol * BUCKET_SIZE < BUFFER_SIZE + taps; symbol++) {
+			double d = random.nextBoolean() ? 1 : -1;
+			int first = symbol * BUCKET_SIZE + timing; // the first sample of the pulse, so its middle is taps/2 later
+			for (int t=0; t < taps; t++)
+				if (first + t >= 0 && first + t < BUFFER_SIZE)
+					baseband[first + t] += d * filter.getCoeff(t);
+		}
+		double power = 0;
+		for (double b : baseband)
+			power += b * b;
+		double scale = Math.sqrt(BUFFER_SIZE / power);
+		double phase = random.nextDouble() * 2 * Math.PI;
+		double[] samples = new double[BUFFER_SIZE];
+		for (int i=0; i < BUFFER_SIZE; i++)
+			samples[i] = scale * baseband[i] * Math.cos(2 * Math.PI * carrier * i / SAMPLE_RATE + phase) + noise * random.nextGaussian();
+		return samples;
+	}
+
+	public static int timingError(int symphase, int timing) {
+		int e = Math.floorMod(symphase - timing, BUCKET_SIZE);
+		return Math.min(e, BUCKET_SIZE - e);
+	}
+
+	@Test
+	public void testCarrierAndTiming() {
+		Log.init("test.txt");
+		PskFftSearcher fft = new PskFftSearcher(BUFFER_SIZE, BUCKET_SIZE, SAMPLE_RATE);
+		Random random = new Random(1);
+		for (double carrier = 720; carrier < 2300; carrier += 137) {
+			int timing = random.nextInt(BUCKET_SIZE);
+			fft.search(makeSignal(carrier, timing, 0.3, random), START, STEP, FTOTAL);
+			assertEquals(carrier, fft.getFrequency(), 5);
+			assertEquals(carrier * 2 * Math.PI / SAMPLE_RATE, fft.getCphaseInc(), 1E-9 + 5 * 2 * Math.PI / SAMPLE_RATE);
+			assertTrue("timing " + fft.getSymphase() + " not " + timing, timingError(fft.getSymphase(), timing) <= 1);
+		}
+	}
+
+	@Test
+	public void testSameEnergyAsDotProduct() {
+		Log.init("test.txt");
+		PskFftSearcher fft = new PskFftSearcher(BUFFER_SIZE, BUCKET_SIZE, SAMPLE_RATE);
+		PskSearcher searcher = new PskSearcher(BUFFER_SIZE, BUCKET_SIZE, SAMPLE_RATE);
+		Random random = new Random(2);
+		for (int i=0; i < 5; i++) {
+			double[] samples = makeSignal(900 + 300 * i, random.nextInt(BUCKET_SIZE), 0.5, random);
+			fft.search(samples, START, STEP, FTOTAL);
+			// Search only the frequency that the FFT found, so the energy should be the same for every offset
+			searcher.search(samples, fft.getCphaseInc(), STEP, 1);
+			assertEquals(searcher.getSymphase(), fft.getSymphase());
+			assertEquals(searcher.getEnergy(), fft.getEnergy(), searcher.getEnergy() * 1E-6);
+		}
+	}
+
+	@Test
+	public void testSearchRange() {
+		Log.init("test.txt");
+		PskFftSearcher fft = new PskFftSearcher(BUFFER_SIZE, BUCKET_SIZE, SAMPLE_RATE);
+		Random random = new Random(3);
+		// A carrier outside the range is not found, we get a frequency inside it
+		fft.search(makeSignal(2800, 5, 0.1, random), START, STEP, FTOTAL);
+		assertTrue(fft.getFrequency() >= 700 && fft.getFrequency() <= 2300);
+		// Noise alone still gives a frequency in range and a timing
+		double[] noise = new double[BUFFER_SIZE];
+		for (int i=0; i < BUFFER_SIZE; i++)
+			noise[i] = random.nextGaussian();
+		fft.search(noise, START, STEP, FTOTAL);
+		assertTrue(fft.getFrequency() >= 700 && fft.getFrequency() <= 2300);
+		assertTrue(fft.getSymphase() >= 0 && fft.getSymphase() < BUCKET_SIZE);
+	}
+}
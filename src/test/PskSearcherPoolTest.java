@@ -0,0 +1,90 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import common.Log;
+import decoder.FoxBPSK.PskSearcher;
+import decoder.FoxBPSK.PskSearcherPool;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Check that the searcher pool finds the carrier of a BPSK signal, and that it finds the same carrier, timing and
+ * energy however many threads it has and as one searcher does over all the frequencies.  bench.PskSearcherPoolBenchmark
+ * measures what the pool saves over starting threads for every search.
+ *
+ */
+public class PskSearcherPoolTest {
+	public static final int SAMPLE_RATE = 48000;
+	public static final int BUCKET_SIZE = SAMPLE_RATE / 1200;
+	public static final int BUFFER_SIZE = 100 * BUCKET_SIZE;
+	public static final int FTOTAL = 17; // 700 to 2300 Hz
+	public static final double START = 700 * 2 * Math.PI / SAMPLE_RATE;
+	public static final double STEP = 100 * 2 * Math.PI / SAMPLE_RATE;
+
+	/**
+	 * Random BPSK symbols on a carrier, starting part way through a symbol
+	 */
+	public static double[] makeSignal(double carrier, int timing, Random random) {
+		double[] samples = new double[BUFFER_SIZE];
+		double phase = 0;
+		for (int i=0; i < BUFFER_SIZE; i++) {
+			if ((i + timing) % BUCKET_SIZE == 0 && random.nextBoolean())
+				phase += Math.PI;
+			samples[i] = Math.cos(2 * Math.PI * carrier * i / SAMPLE_RATE + phase) + 0.1 * random.nextGaussian();
+		}
+		return samples;
+	}
+
+	@Test
+	public void testSameForAnyThreads() {
+		Log.init("test.txt");
+		double[] samples = makeSignal(1500, 13, new Random(1));
+		PskSearcher one = new PskSearcher(BUFFER_SIZE, BUCKET_SIZE, SAMPLE_RATE);
+		one.search(samples, START, STEP, FTOTAL);
+		assertEquals(1500, one.getFrequency(), 1);
+		for (int threads=1; threads <= 6; threads++) {
+			PskSearcherPool pool = new PskSearcherPool(threads, BUFFER_SIZE, BUCKET_SIZE, SAMPLE_RATE);
+			for (int search=0; search < 3; search++) {
+				pool.search(samples, START, STEP, FTOTAL);
+				assertEquals(one.getFrequency(), pool.getFrequency(), 0.01);
+				assertEquals(one.getSymphase(), pool.getSymphase());
+				assertEquals(one.getEnergy(), pool.getEnergy(), one.getEnergy() * 0.01); // the slices start at slightly different phase increments
+			}
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testCarrierMoves() {
+		Log.init("test.txt");
+		PskSearcherPool pool = new PskSearcherPool(4, BUFFER_SIZE, BUCKET_SIZE, SAMPLE_RATE);
+		Random random = new Random(2);
+		for (int carrier=800; carrier <= 2200; carrier += 200) {
+			pool.search(makeSignal(carrier, 7, random), START, STEP, FTOTAL);
+			assertEquals(carrier, pool.getFrequency(), 1);
+		}
+		pool.shutdown();
+	}
+}
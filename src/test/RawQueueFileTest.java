@@ -0,0 +1,157 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import telemetry.RawQueueFile;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Check that a queue file gives back the unsent frames after it is opened again, including after a crash, and that
+ * it is truncated and compacted as frames are sent.  See bench.RawQueueFileBenchmark for how long a backlog takes to
+ * drain.
+ *
+ */
+public class RawQueueFileTest {
+
+	File log;
+
+	@Before
+	public void setUp() throws Exception {
+		log = File.createTempFile("rawframes", ".log");
+	}
+
+	@After
+	public void tearDown() {
+		log.delete();
+		new File(log.getPath() + RawQueueFile.OFFSET_EXT).delete();
+	}
+
+	public static String frame(int i, int length) {
+		StringBuilder s = new StringBuilder(i + ",1,DUV");
+		while (s.length() < length)
+			s.append("," + (s.length() % 256));
+		return s.toString();
+	}
+
+	public static RawQueueFile open(File log, final ArrayList<String> lines) throws IOException {
+		RawQueueFile file = new RawQueueFile(log.getPath());
+		lines.clear();
+		file.open(new RawQueueFile.LineLoader() {
+			public boolean load(String line) {
+				if (line.startsWith("x")) return false; // not a frame
+				lines.add(line);
+				return true;
+			}
+		});
+		return file;
+	}
+
+	@Test
+	public void testReopen() throws Exception {
+		ArrayList<String> lines = new ArrayList<String>();
+		RawQueueFile file = open(log, lines);
+		for (int i=0; i < 100; i++)
+			file.append((frame(i, 100) + "\n").getBytes());
+		for (int i=0; i < 30; i++)
+			file.removeHead();
+		// Crash before the offset is saved again, so the frames after the last saved offset are sent again
+		file = open(log, lines);
+		assertEquals(100 - RawQueueFile.OFFSET_SYNC_FRAMES, lines.size());
+		assertEquals(frame(RawQueueFile.OFFSET_SYNC_FRAMES, 100), lines.get(0));
+		for (int i=0; i < 10; i++)
+			file.removeHead();
+		file.save();
+		file = open(log, lines);
+		assertEquals(70, lines.size());
+		assertEquals(frame(30, 100), lines.get(0));
+		assertEquals(frame(99, 100), lines.get(69));
+	}
+
+	@Test
+	public void testCrashRecovery() throws Exception {
+		ArrayList<String> lines = new ArrayList<String>();
+		RawQueueFile file = open(log, lines);
+		for (int i=0; i < 5; i++)
+			file.append((frame(i, 50) + "\n").getBytes());
+		file.removeHead();
+		file.save();
+		// A line that is not a frame is skipped, and a partly written line is removed
+		FileOutputStream out = new FileOutputStream(log, true);
+		out.write("x not a frame\n".getBytes());
+		out.write(frame(5, 50).substring(0, 20).getBytes());
+		out.close();
+		long length = log.length();
+		file = open(log, lines);
+		assertEquals(4, lines.size());
+		assertEquals(length - 20, log.length());
+		file.append((frame(6, 50) + "\n").getBytes());
+		for (int i=0; i < 5; i++)
+			file.removeHead();
+		assertEquals(0, log.length()); // every frame was sent
+		assertFalse(new File(log.getPath() + RawQueueFile.OFFSET_EXT).exists());
+
+		// An earlier version rewrote the log, so the saved offset does not match it and every frame is sent
+		file = open(log, lines);
+		for (int i=0; i < 5; i++)
+			file.append((frame(i, 50) + "\n").getBytes());
+		file.removeHead();
+		file.removeHead();
+		file.save();
+		FileWriter writer = new FileWriter(log);
+		for (int i=3; i < 5; i++)
+			writer.write(frame(i, 50) + "\n");
+		writer.close();
+		open(log, lines);
+		assertEquals(2, lines.size());
+		assertEquals(frame(3, 50), lines.get(0));
+	}
+
+	@Test
+	public void testCompact() throws Exception {
+		ArrayList<String> lines = new ArrayList<String>();
+		RawQueueFile file = open(log, lines);
+		int frames = (int)(3 * RawQueueFile.COMPACT_BYTES / 1000);
+		for (int i=0; i < frames; i++)
+			file.append((frame(i, 999) + "\n").getBytes());
+		long full = log.length();
+		int sent = frames * 2 / 3;
+		for (int i=0; i < sent; i++) {
+			file.removeHead();
+			assertTrue(file.getOffset() <= Math.max(RawQueueFile.COMPACT_BYTES, log.length() - file.getOffset()));
+		}
+		assertTrue(log.length() < full);
+		file.save();
+		open(log, lines);
+		assertEquals(frames - sent, lines.size());
+		assertEquals(frame(sent, 999), lines.get(0));
+		assertEquals(frame(frames - 1, 999), lines.get(lines.size()-1));
+	}
+}
@@ -0,0 +1,322 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import common.Config;
+import common.FoxSpacecraft;
+import common.Spacecraft;
+import telemetry.BitArrayLayout;
+import telemetry.CompactionReport;
+import telemetry.FramePart;
+import telemetry.PayloadCsvWriter;
+import telemetry.PayloadStore;
+import telemetry.SatPayloadTable;
+import telemetry.SegmentCache;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Several readers query a payload table while a writer appends to it and the segment cache offloads segments
+ * as fast as it can.  Every query must see whole segments in order.  A batch of records is saved in one call.  Small
+ * segments are compacted while the writer is running.  Counts and value queries use the zone maps in the index to
+ * skip segments.  Run from the project directory so that the spacecraft files can be found.
+ *
+ */
+public class SatPayloadTableStressTest {
+
+	static final int FOX_ID = TestRecords.FOX_ID;
+	static final int RECORDS = 4000;
+	static final int NEW_RECORDS = 2000;
+	static final long STEP = 60;
+
+	File dir;
+	BitArrayLayout layout;
+	SatPayloadTable table;
+	int cacheSize;
+	ConcurrentLinkedQueue<String> errors = new ConcurrentLinkedQueue<String>();
+	volatile boolean running = true;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = TestRecords.makeLogDirectory("foxdb");
+		new File(dir, PayloadStore.DB_NAME).mkdirs();
+		FoxSpacecraft fox = TestRecords.loadFox1A();
+		layout = fox.getLayoutByName(Spacecraft.REAL_TIME_LAYOUT);
+		cacheSize = Config.segmentCacheSize;
+		table = new SatPayloadTable(10, "stress", false);
+		for (int i=0; i < RECORDS; i++)
+			table.save(makeRecord(i));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Config.segmentCacheSize = cacheSize;
+		table.remove();
+		new File(dir, PayloadStore.DB_NAME).delete();
+		dir.delete();
+	}
+
+	// The value of every field is derived from the uptime, so a reader can check it has the right record
+	private FramePart makeRecord(int i) {
+		long uptime = i * STEP;
+		int[] values = new int[layout.NUMBER_OF_FIELDS];
+		Arrays.fill(values, value(uptime));
+		return TestRecords.makeRecord(layout, 0, uptime, values);
+	}
+
+	private static int value(long uptime) {
+		return (int)(uptime / STEP % 1000);
+	}
+
+	private void check(String[][] data) {
+		long last = -1;
+		for (String[] row : data) {
+			long uptime = Long.parseLong(row[1]);
+			if (uptime <= last)
+				errors.add("Out of order: " + uptime + " after " + last);
+			if (uptime % STEP != 0 || Integer.parseInt(row[2]) != value(uptime))
+				errors.add("Wrong record at " + uptime + ": " + row[2]);
+			last = uptime;
+		}
+	}
+
+	class Reader extends Thread {
+		Random random;
+		int queries = 0;
+		Reader(int seed) { random = new Random(seed); }
+		public void run() {
+			try {
+				while (running) {
+					long from = random.nextInt(RECORDS) * STEP;
+					String[][] data = table.getPayloadData(500, FOX_ID, 0, from, layout.NUMBER_OF_FIELDS, false);
+					check(data);
+					if (data.length == 0 || Long.parseLong(data[0][1]) != from)
+						errors.add("Query from " + from + " started at " + (data.length == 0 ? "nothing" : data[0][1]));
+					check(table.getPayloadData(300, FOX_ID, 0, 0, layout.NUMBER_OF_FIELDS, true));
+					FramePart f = table.getFrame(FOX_ID, from, 0, false);
+					if (f == null || f.uptime != from)
+						errors.add("getFrame " + from + " returned " + (f == null ? "null" : f.uptime));
+					queries++;
+				}
+			} catch (Exception e) {
+				errors.add(e.toString());
+				e.printStackTrace();
+			}
+		}
+	}
+
+	@Test
+	public void testReadersWriterAndOffload() throws Exception {
+		Config.segmentCacheSize = 0; // offload everything that is not in use
+		Reader[] readers = new Reader[4];
+		for (int i=0; i < readers.length; i++) {
+			readers[i] = new Reader(i);
+			readers[i].start();
+		}
+		Thread evictor = new Thread() {
+			public void run() {
+				while (running) {
+					SegmentCache.getInstance().evict();
+					Thread.yield();
+				}
+			}
+		};
+		evictor.start();
+		for (int i=RECORDS; i < RECORDS + NEW_RECORDS; i++) {
+			assertTrue(table.save(makeRecord(i)));
+			if (i % 100 == 0) Thread.sleep(5);
+		}
+		running = false;
+		for (Reader r : readers) {
+			r.join();
+			assertTrue(r.queries > 0);
+		}
+		evictor.join();
+		if (!errors.isEmpty())
+			fail(errors.size() + " errors, first: " + errors.peek());
+
+		// The records written while the readers were running are all there
+		assertEquals(RECORDS + NEW_RECORDS, table.getSize());
+		String[][] all = table.getPayloadData(RECORDS + NEW_RECORDS, FOX_ID, 0, 0, layout.NUMBER_OF_FIELDS, false);
+		assertEquals(RECORDS + NEW_RECORDS, all.length);
+		check(all);
+		assertTrue(errors.isEmpty());
+	}
+
+	@Test
+	public void testBatchSave() throws IOException {
+		ArrayList<FramePart> batch = new ArrayList<FramePart>();
+		for (int i=RECORDS-10; i < RECORDS + NEW_RECORDS; i++)
+			batch.add(makeRecord(i));
+		boolean[] saved = table.save(batch);
+		for (int i=0; i < saved.length; i++)
+			assertEquals(i >= 10, saved[i]); // the first ten are already in the table
+		table.close();
+		SatPayloadTable reopened = new SatPayloadTable(10, "stress", false);
+		assertEquals(RECORDS + NEW_RECORDS, reopened.getSize());
+		check(reopened.getPayloadData(RECORDS + NEW_RECORDS, FOX_ID, 0, 0, layout.NUMBER_OF_FIELDS, false));
+	}
+
+	@Test
+	public void testCompactWhileWriting() throws Exception {
+		// Records saved newest first each start a new segment, as they are older than every segment we have
+		final SatPayloadTable small = new SatPayloadTable(10, "compact", false);
+		try {
+			for (int i=999; i >= 0; i--)
+				small.save(makeRecord(i));
+			small.close();
+			// and a copy of a record is left in one of the segments
+			String seg = dir.getPath() + File.separator + PayloadStore.DB_NAME + File.separator + "compact_0_" + 500*STEP + ".log";
+			FileWriter copy = new FileWriter(seg, true);
+			copy.write(makeRecord(500).toFile(false) + "\n");
+			copy.close();
+
+			final CompactionReport[] report = new CompactionReport[1];
+			Thread compactor = new Thread() {
+				public void run() {
+					try {
+						report[0] = small.compact();
+					} catch (IOException e) {
+						errors.add(e.toString());
+					}
+				}
+			};
+			compactor.start();
+			for (int i=1000; i < 1000 + NEW_RECORDS; i++)
+				assertTrue(small.save(makeRecord(i)));
+			compactor.join();
+			small.close();
+			if (!errors.isEmpty())
+				fail(errors.size() + " errors, first: " + errors.peek());
+			assertEquals(1000, report[0].segments);
+			assertEquals(998, report[0].segmentsRemoved); // the first 999 merge, the last is left for the writer
+			assertEquals(1, report[0].duplicates);
+			assertTrue(report[0].getBytesReclaimed() > 0);
+
+			SatPayloadTable reopened = new SatPayloadTable(10, "compact", false);
+			assertEquals(1000 + NEW_RECORDS, reopened.getSize());
+			String[][] all = reopened.getPayloadData(1000 + NEW_RECORDS, FOX_ID, 0, 0, layout.NUMBER_OF_FIELDS, false);
+			assertEquals(1000 + NEW_RECORDS, all.length);
+			check(all);
+			assertTrue(errors.isEmpty());
+		} finally {
+			small.remove();
+		}
+	}
+
+	@Test
+	public void testZoneMaps() throws IOException {
+		// Each segment of 1000 records has its own value in every field
+		SatPayloadTable zone = new SatPayloadTable(10, "zone", false);
+		try {
+			for (int i=0; i < RECORDS; i++) {
+				int[] values = new int[layout.NUMBER_OF_FIELDS];
+				Arrays.fill(values, i / 1000 * 10);
+				zone.save(TestRecords.makeRecord(layout, 0, i * STEP, values));
+			}
+			zone.close();
+			zone = new SatPayloadTable(10, "zone", false); // the zone maps are read from the index
+			SegmentCache cache = SegmentCache.getInstance();
+			long misses = cache.getMisses();
+			assertEquals(RECORDS-1, zone.getNumberOfPayloadsBetweenTimestamps(0, 0, 0, RECORDS * STEP)); // runs past the end
+			assertEquals(misses, cache.getMisses()); // counted from the index
+			assertEquals(2000, zone.getNumberOfPayloadsBetweenTimestamps(0, 1000 * STEP, 0, 3000 * STEP));
+			assertEquals(misses, cache.getMisses());
+			assertEquals(2400, zone.getNumberOfPayloadsBetweenTimestamps(0, 100 * STEP, 0, 2500 * STEP));
+			assertEquals(misses + 2, cache.getMisses()); // only the segments at each end are loaded
+			assertEquals(2400, zone.getNumberOfPayloadsBetweenTimestamps(0, 100 * STEP, 0, 2500 * STEP)); // and counted once
+			assertEquals(0, zone.getNumberOfPayloadsBetweenTimestamps(0, 2500 * STEP, 0, 100 * STEP));
+
+			misses = cache.getMisses();
+			List<FramePart> found = zone.getFramesWithValue(3, 30, 35, 0, 0, 1, 0);
+			assertEquals(1000, found.size());
+			assertEquals(3000 * STEP, found.get(0).uptime);
+			assertEquals(misses + 1, cache.getMisses()); // the other segments can not have the value
+			assertEquals(0, zone.getFramesWithValue(3, 11, 19, 0, 0, 1, 0).size());
+			found = zone.getFramesWithValue(3, 0, 10, 0, 1500 * STEP, 0, 1600 * STEP);
+			assertEquals(100, found.size());
+			assertEquals(1500 * STEP, found.get(0).uptime);
+		} finally {
+			zone.remove();
+		}
+	}
+
+	@Test
+	public void testExportToCSV() throws IOException {
+		FoxSpacecraft fox = (FoxSpacecraft)Config.satManager.spacecraftList.get(0);
+		SegmentCache cache = SegmentCache.getInstance();
+		long misses = cache.getMisses();
+		StringWriter out = new StringWriter();
+		final long[] reported = new long[1];
+		long rows = table.exportToCSV(new PayloadCsvWriter(out, fox, layout, false, false, new PayloadCsvWriter.Progress() {
+			public boolean update(long rows, long total) {
+				assertEquals(RECORDS, total);
+				reported[0] = rows;
+				return true;
+			}
+		}));
+		assertEquals(RECORDS, rows);
+		assertEquals(RECORDS, reported[0]);
+		assertEquals(misses, cache.getMisses()); // the segments are read without loading them
+		String[] lines = out.toString().split("\n");
+		assertEquals(RECORDS + 1, lines.length);
+		assertTrue(lines[0].startsWith("resets,uptime,type," + layout.fieldName[0] + ","));
+		String[][] data = new String[RECORDS][];
+		for (int i=0; i < RECORDS; i++) {
+			String[] row = lines[i+1].split(",");
+			assertEquals(3 + layout.NUMBER_OF_FIELDS, row.length);
+			data[i] = new String[] {row[0], row[1], row[3]}; // reset, uptime and the first field, as check() expects
+			assertEquals(i * STEP, Long.parseLong(row[1]));
+		}
+		check(data);
+		assertTrue(errors.isEmpty());
+
+		// Cancelled at the first progress report
+		rows = table.exportToCSV(new PayloadCsvWriter(new StringWriter(), fox, layout, true, false, new PayloadCsvWriter.Progress() {
+			public boolean update(long rows, long total) {
+				return false;
+			}
+		}));
+		assertEquals(PayloadCsvWriter.PROGRESS_ROWS, rows);
+	}
+
+	@Test
+	public void testReopen() throws IOException {
+		table.close();
+		SatPayloadTable reopened = new SatPayloadTable(10, "stress", false);
+		assertEquals(RECORDS, reopened.getSize());
+		FramePart f = reopened.getLatest();
+		assertEquals((RECORDS-1) * STEP, f.uptime);
+	}
+}
@@ -0,0 +1,142 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import common.Config;
+import telemetry.SegmentJournal;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+public class SegmentJournalTest {
+
+	File file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("seg", ".log");
+		Config.payloadGroupCommitPeriod = 60000;
+		Config.payloadFsyncPolicy = SegmentJournal.FSYNC_COMMIT;
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		file.delete();
+	}
+
+	private int countLines() throws IOException {
+		return countLines(file);
+	}
+
+	private static int countLines(File file) throws IOException {
+		BufferedReader dis = new BufferedReader(new FileReader(file));
+		int n = 0;
+		try {
+			while (dis.readLine() != null)
+				n++;
+		} finally {
+			dis.close();
+		}
+		return n;
+	}
+
+	@Test
+	public void testGroupCommit() throws IOException {
+		SegmentJournal journal = new SegmentJournal();
+		for (int i=0; i < 10; i++)
+			journal.append(file.getPath(), "1,0," + i);
+		assertTrue(journal.hasPending());
+		assertFalse(journal.commitIfDue()); // commit period has not passed
+		assertEquals(0, file.length());
+		journal.commit();
+		assertFalse(journal.hasPending());
+		assertEquals(10, countLines());
+		journal.append(file.getPath(), "1,0,10");
+		journal.closeAll();
+		assertEquals(11, countLines());
+	}
+
+	@Test
+	public void testRepairTornRecord() throws IOException {
+		FileWriter out = new FileWriter(file);
+		out.write("1,0,1\n1,0,2\n1,0");
+		out.close();
+		assertEquals(2, SegmentJournal.repair(file.getPath()));
+		assertEquals(12, file.length());
+
+		SegmentJournal journal = new SegmentJournal();
+		journal.append(file.getPath(), "1,0,3");
+		journal.closeAll();
+		assertEquals(3, SegmentJournal.repair(file.getPath()));
+	}
+
+	@Test
+	public void testFailedCommitIsRetried() throws Exception {
+		File other = File.createTempFile("seg", ".log");
+		File last = File.createTempFile("seg", ".log");
+		try {
+			SegmentJournal journal = new SegmentJournal();
+			for (int i=0; i < 3; i++) {
+				journal.append(file.getPath(), "1,0," + i);
+				journal.append(other.getPath(), "2,0," + i);
+				journal.append(last.getPath(), "3,0," + i);
+			}
+			// Close the channel of the second file behind the journal's back, so that writing it fails
+			Field field = SegmentJournal.class.getDeclaredField("channels");
+			field.setAccessible(true);
+			Map<?, ?> channels = (Map<?, ?>)field.get(journal);
+			((FileChannel)channels.get(other.getPath())).close();
+			try {
+				journal.commit();
+				fail("The commit should have failed");
+			} catch (IOException e) {
+				// expected
+			}
+			assertTrue(journal.hasPending()); // the records that were not written are kept
+			assertEquals(3, countLines(file));
+			assertEquals(0, countLines(other));
+			assertEquals(0, countLines(last));
+
+			journal.commit();
+			assertFalse(journal.hasPending());
+			assertEquals(3, countLines(file)); // not written again
+			assertEquals(3, countLines(other));
+			assertEquals(3, countLines(last));
+			journal.closeAll();
+		} finally {
+			other.delete();
+			last.delete();
+		}
+	}
+}
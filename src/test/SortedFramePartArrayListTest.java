@@ -0,0 +1,98 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import telemetry.BitArrayLayout;
+import telemetry.FramePart;
+import telemetry.SortedFramePartArrayList;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Check the indexed lookups against the linear scans they replaced.  bench.SortedFramePartArrayListBenchmark times
+ * them with a large number of records loaded.
+ *
+ */
+public class SortedFramePartArrayListTest {
+
+	BitArrayLayout layout;
+	SortedFramePartArrayList list;
+	Random random;
+
+	@Before
+	public void setUp() throws Exception {
+		layout = TestRecords.makeLayout(new String[] {"BATT_A_V"}, new int[] {12});
+		list = new SortedFramePartArrayList(10);
+		random = new Random(1234);
+	}
+
+	private void fill(int n) {
+		for (int i=0; i < n; i++)
+			list.add(TestRecords.makeRecord(layout, 1 + random.nextInt(3), random.nextInt(4), random.nextInt(2000), null, 1));
+	}
+
+	@Test
+	public void testOrderedAndNoDuplicates() {
+		fill(3000);
+		for (int i=1; i < list.size(); i++)
+			assertTrue(list.get(i-1).compareTo(list.get(i)) < 0);
+		FramePart f = list.get(list.size()/2);
+		assertFalse(list.add(TestRecords.makeRecord(layout, f.getType(), f.resets, f.uptime, null, 1)));
+	}
+
+	@Test
+	public void testLookupsMatchLinearScan() {
+		fill(3000);
+		ArrayList<FramePart> copy = new ArrayList<FramePart>(list);
+		for (int resets=-1; resets <= 4; resets++)
+			for (long uptime=-1; uptime <= 2001; uptime+=7)
+				for (int type=1; type <= 3; type++) {
+					assertEquals(TestRecords.linearNearest(copy, uptime, resets, type), list.getNearestFrameIndex(1, uptime, resets, type));
+					assertEquals(TestRecords.linearNearestPrev(copy, uptime, resets, type), list.getNearestPrevFrameIndex(1, uptime, resets, type));
+					assertEquals(TestRecords.linearFrameIndex(copy, uptime, resets), list.getFrameIndex(1, uptime, resets));
+					assertEquals(list.getFrameIndex(1, uptime, resets, type) != -1, list.hasFrame(1, uptime, resets, type));
+				}
+	}
+
+	@Test
+	public void testRemove() {
+		fill(2000);
+		int first = list.getFirstFrameIndex(500, 1);
+		list.removeFrames(first, first + 100);
+		list.remove(0);
+		list.remove(list.size()-1);
+		list.trimToSize();
+		ArrayList<FramePart> copy = new ArrayList<FramePart>(list);
+		for (int resets=0; resets <= 3; resets++)
+			for (long uptime=0; uptime <= 2000; uptime+=3)
+				assertEquals(TestRecords.linearNearest(copy, uptime, resets, 1), list.getNearestFrameIndex(1, uptime, resets, 1));
+		// Changes made outside of add and remove are picked up too
+		list.removeIf(f -> f.uptime < 1000);
+		copy = new ArrayList<FramePart>(list);
+		for (long uptime=0; uptime <= 2000; uptime+=3)
+			assertEquals(TestRecords.linearFrameIndex(copy, uptime, 2), list.getFrameIndex(1, uptime, 2));
+	}
+}
@@ -0,0 +1,240 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.text.SimpleDateFormat;
+import java.util.Random;
+import java.util.StringTokenizer;
+import java.util.TimeZone;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import telemetry.BitArrayLayout;
+import telemetry.FoxFramePart;
+import telemetry.FramePart;
+import telemetry.PayloadRtValues;
+import telemetry.SortedFramePartArrayList;
+import telemetry.SortedFramePartColumns;
+import uk.me.g4dpz.satellite.SatPos;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Check that the records held as columns give the same results as the list of frame parts they replaced.
+ * bench.SortedFramePartColumnsBenchmark measures the heap used by a table of records held each way.
+ *
+ */
+public class SortedFramePartColumnsTest {
+
+	static final int FIELDS = 60;
+	BitArrayLayout layout;
+
+	@Before
+	public void setUp() throws Exception {
+		layout = makeLayout();
+	}
+
+	public static BitArrayLayout makeLayout() {
+		BitArrayLayout lay = TestRecords.makeLayout(FIELDS, 12); // mostly 12 bit values, like an ADC
+		for (int i=0; i < FIELDS; i += 10) {
+			lay.fieldBitLength[i] = 8;
+			lay.fieldBitLength[i+1] = 24;
+		}
+		return lay;
+	}
+
+	public static SortedFramePartColumns.RecordFactory factory(final BitArrayLayout lay) {
+		return new SortedFramePartColumns.RecordFactory() {
+			public FramePart make(int id, int resets, long uptime, String date, int type) {
+				return new PayloadRtValues(id, resets, uptime, date, new StringTokenizer(""), lay);
+			}
+		};
+	}
+
+	public static FramePart makeRecord(BitArrayLayout lay, Random random, int resets, long uptime) {
+		int[] values = new int[FIELDS];
+		for (int i=0; i < FIELDS; i++)
+			values[i] = random.nextInt(1 << Math.min(lay.fieldBitLength[i], 20));
+		String date = String.format("2020%02d%02d%02d%02d%02d", 1 + random.nextInt(12), 1 + random.nextInt(28),
+				random.nextInt(24), random.nextInt(60), random.nextInt(60));
+		return TestRecords.makeRecord(lay, FoxFramePart.TYPE_REAL_TIME, resets, uptime, date, values);
+	}
+
+	private void checkSame(SortedFramePartArrayList list, SortedFramePartColumns columns) {
+		assertEquals(list.size(), columns.size());
+		for (int i=0; i < list.size(); i++) {
+			FramePart f = list.get(i);
+			assertEquals(f.resets, columns.getResets(i));
+			assertEquals(f.uptime, columns.getUptime(i));
+			assertEquals(f.getType(), columns.getType(i));
+			assertArrayEquals(f.fieldValue, columns.getFieldValues(i));
+			for (int n=0; n < FIELDS; n += 7)
+				assertEquals(f.getRawValue(n), columns.getRawValue(i, n));
+			// Asking for a record keeps it as a frame part, so only some are made and the rest stay as columns
+			if (i % 10 == 0) {
+				FramePart g = columns.get(i);
+				assertFalse(f == g);
+				assertSame(g, columns.get(i));
+				assertEquals(f.getClass(), g.getClass());
+				assertEquals(f.getCaptureDate(), g.getCaptureDate());
+				assertEquals(f.newMode, g.newMode);
+				assertArrayEquals(f.fieldValue, g.fieldValue);
+				assertEquals(f.toFile(true), g.toFile(true));
+			}
+		}
+		for (int r=0; r < 4; r++)
+			for (long u=0; u < 1100; u += 13) {
+				assertEquals(list.getNearestFrameIndex(1, u, r), columns.getNearestFrameIndex(1, u, r));
+				assertEquals(list.getNearestPrevFrameIndex(1, u, r), columns.getNearestPrevFrameIndex(1, u, r));
+				assertEquals(list.getFirstFrameIndex(u, r), columns.getFirstFrameIndex(u, r));
+				assertEquals(list.hasFrame(1, u, r), columns.hasFrame(1, u, r));
+			}
+	}
+
+	@Test
+	public void testSameAsFrameParts() {
+		Random random = new Random(1);
+		SortedFramePartArrayList list = new SortedFramePartArrayList(10);
+		SortedFramePartColumns columns = new SortedFramePartColumns(10, factory(layout));
+		for (int i=0; i < 2000; i++) {
+			FramePart f = makeRecord(layout, random, random.nextInt(3), random.nextInt(1000));
+			f.newMode = random.nextInt(4);
+			assertEquals(list.add(f), columns.add(f)); // duplicates are refused by both
+		}
+		checkSame(list, columns);
+		// Offload runs of records, which compacts the blocks, then load more
+		list.removeFrames(100, 900);
+		columns.removeFrames(100, 900);
+		list.removeFrames(0, 50);
+		columns.removeFrames(0, 50);
+		checkSame(list, columns);
+		columns.trimToSize();
+		checkSame(list, columns);
+		for (int i=0; i < 500; i++) {
+			FramePart f = makeRecord(layout, random, 3, i * 2);
+			assertEquals(list.add(f), columns.add(f));
+		}
+		checkSame(list, columns);
+	}
+
+	@Test
+	public void testValuesThatDoNotFit() {
+		SortedFramePartColumns columns = new SortedFramePartColumns(10, factory(layout));
+		Random random = new Random(2);
+		FramePart f = makeRecord(layout, random, 0, 1);
+		FramePart g = makeRecord(layout, random, 0, 2);
+		columns.add(f);
+		g.fieldValue[0] = 300; // does not fit in the 8 bits of the field
+		g.fieldValue[2] = -1;
+		columns.add(g);
+		assertArrayEquals(f.fieldValue, columns.get(0).fieldValue);
+		assertArrayEquals(g.fieldValue, columns.get(1).fieldValue);
+	}
+
+	@Test
+	public void testRecordsHeldAsFrameParts() {
+		SortedFramePartColumns columns = new SortedFramePartColumns(10, factory(layout));
+		int rt = FoxFramePart.TYPE_REAL_TIME;
+		FramePart noDate = TestRecords.makeRecord(layout, rt, 0, 5, null, 1, 2, 3);
+		FramePart otherDate = TestRecords.makeRecord(layout, rt, 0, 6, "2020/03/03 12:00:00", 4, 5, 6);
+		FramePart badDay = TestRecords.makeRecord(layout, rt, 0, 7, "20200231120000", 7, 8, 9);
+		FramePart otherLayout = TestRecords.makeRecord(makeLayout(), rt, 0, 8, "20200301120000", 1);
+		columns.add(otherLayout);
+		columns.add(badDay);
+		columns.add(otherDate);
+		columns.add(noDate);
+		assertNull(columns.get(0).getCaptureDate());
+		assertFalse(noDate == columns.get(0)); // a record with no date is still held as columns
+		assertSame(otherDate, columns.get(1));
+		assertSame(badDay, columns.get(2));
+		assertSame(otherLayout, columns.get(3)); // the factory makes a different layout
+		assertEquals(4, columns.getRawValue(1, 0));
+		columns.removeFrames(1, 3);
+		assertEquals(2, columns.size());
+		assertSame(otherLayout, columns.get(1));
+	}
+
+	@Test
+	public void testChangesAreKept() {
+		SortedFramePartColumns columns = new SortedFramePartColumns(10, factory(layout));
+		Random random = new Random(3);
+		for (int i=0; i < 5; i++)
+			columns.add(makeRecord(layout, random, 0, i));
+		FramePart f = columns.get(2);
+		f.fieldValue[3] = 77;
+		f.setSatPosition(position(0.5, 1.0));
+		assertSame(f, columns.get(2));
+		assertEquals(77, columns.getRawValue(2, 3));
+		assertEquals(f.getSatLatitude(), columns.getSatLatitude(2), 0);
+		// The records either side are still held as columns
+		columns.removeFrames(0, 1);
+		columns.trimToSize();
+		assertSame(f, columns.get(1));
+		assertEquals(4, columns.size());
+		assertEquals(FramePart.NO_POSITION_DATA, columns.getSatLatitude(0), 0);
+	}
+
+	@Test
+	public void testPositionHeldAsColumns() {
+		SortedFramePartColumns columns = new SortedFramePartColumns(10, factory(layout));
+		Random random = new Random(4);
+		FramePart noPosition = makeRecord(layout, random, 0, 1);
+		FramePart withPosition = makeRecord(layout, random, 0, 2);
+		withPosition.setSatPosition(position(-0.25, 2.0));
+		columns.add(noPosition);
+		columns.add(withPosition);
+		columns.add(makeRecord(layout, random, 0, 0));
+		assertEquals(FramePart.NO_POSITION_DATA, columns.getSatLatitude(0), 0);
+		assertEquals(FramePart.NO_POSITION_DATA, columns.getSatLongitude(1), 0);
+		assertEquals(withPosition.getSatLatitude(), columns.getSatLatitude(2), 0);
+		assertEquals(withPosition.getSatLongitude(), columns.getSatLongitude(2), 0);
+		FramePart g = columns.get(2);
+		assertFalse(withPosition == g);
+		assertEquals(withPosition.getSatLatitude(), g.getSatLatitude(), 0);
+		assertEquals(withPosition.getSatAltitude(), g.getSatAltitude(), 0);
+	}
+
+	private static SatPos position(double lat, double lon) {
+		SatPos pos = new SatPos();
+		pos.setLatitude(lat);
+		pos.setLongitude(lon);
+		pos.setAltitude(500);
+		return pos;
+	}
+
+	@Test
+	public void testCaptureDates() throws Exception {
+		SimpleDateFormat format = new SimpleDateFormat("yyyyMMddHHmmss");
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		format.setLenient(false);
+		Random random = new Random(3);
+		for (int i=0; i < 100000; i++) {
+			long millis = (random.nextLong() % 8000000000000L) / 1000 * 1000; // 1716 to 2223
+			String date = format.format(new java.util.Date(millis));
+			assertEquals(date, SortedFramePartColumns.dateString(millis));
+			assertEquals(date, millis, SortedFramePartColumns.dateToMillis(date));
+		}
+		assertEquals(-1, SortedFramePartColumns.dateToMillis("20210229000000"));
+		assertEquals(-1, SortedFramePartColumns.dateToMillis("2021022800000"));
+		assertEquals(-1, SortedFramePartColumns.dateToMillis("2021022800000x"));
+		assertEquals(SortedFramePartColumns.NO_DATE, SortedFramePartColumns.dateToMillis(null));
+	}
+}
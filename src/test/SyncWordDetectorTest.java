@@ -0,0 +1,158 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import decoder.Code8b10b;
+import decoder.CodePRN;
+import decoder.FoxBitStream;
+import decoder.SyncWordDetector;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Check that the shift register finds the 8b10b and PRN sync words at the same positions as the boolean[] window
+ * that the bit stream slid along the bits, including sync words with bits wrong, and that it reports the bit errors
+ * and polarity.  bench.SyncWordDetectorBenchmark times both ways of searching a stream.
+ *
+ */
+public class SyncWordDetectorTest {
+
+	/**
+	 * Random bits with sync words in them, some inverted and some with bits wrong
+	 */
+	public static boolean[] makeStream(int length, boolean[] sync, Random random) {
+		boolean[] stream = new boolean[length];
+		for (int i=0; i < length; i++)
+			stream[i] = random.nextBoolean();
+		for (int p = 50; p + sync.length < length; p += 50 + random.nextInt(200)) {
+			boolean invert = random.nextInt(4) == 0;
+			for (int j=0; j < sync.length; j++)
+				stream[p+j] = sync[j] ^ invert;
+			int errors = random.nextInt(4);
+			for (int e=0; e < errors; e++)
+				stream[p + random.nextInt(sync.length)] ^= true;
+		}
+		return stream;
+	}
+
+	/**
+	 * The positions after the sync words, found as the bit stream did with a window of bits that is shifted along
+	 */
+	public static ArrayList<Integer> findWithWindow(boolean[] stream, int length, boolean prn) {
+		ArrayList<Integer> found = new ArrayList<Integer>();
+		boolean[] syncWord = new boolean[length];
+		int syncWordbitPosition = 0;
+		for (int i=0; i < stream.length; i++) {
+			syncWord[syncWordbitPosition++] = stream[i];
+			if (syncWordbitPosition > length-1) {
+				syncWordbitPosition = length-1;
+				int word = FoxBitStream.binToInt(syncWord);
+				if ((prn && CodePRN.probabllyFrameMarker(syncWord)) ||
+						!prn && (word == Code8b10b.FRAME || word == Code8b10b.NOT_FRAME))
+					found.add(i+1);
+				for (int k=1; k<length; k++)
+					syncWord[k-1] = syncWord[k];
+			}
+		}
+		return found;
+	}
+
+	public static ArrayList<Integer> findWithDetector(boolean[] stream, SyncWordDetector detector) {
+		ArrayList<Integer> found = new ArrayList<Integer>();
+		detector.reset(0);
+		for (int i=0; i < stream.length; i++)
+			if (detector.add(stream[i]))
+				found.add(detector.getPosition());
+		return found;
+	}
+
+	public static SyncWordDetector fskDetector(int tolerance) {
+		return new SyncWordDetector(Code8b10b.FRAME, 10, tolerance, true);
+	}
+
+	public static SyncWordDetector prnDetector() {
+		return new SyncWordDetector(CodePRN.LONG_FRAME_SYNC, CodePRN.getSyncWordLength(), CodePRN.getSyncWordBitErrors(), false);
+	}
+
+	@Test
+	public void testSameAsWindow() {
+		Random random = new Random(1);
+		boolean[] stream = makeStream(100000, FoxBitStream.intToBin10(Code8b10b.FRAME), random);
+		ArrayList<Integer> expected = findWithWindow(stream, 10, false);
+		assertTrue(expected.size() > 100);
+		assertEquals(expected, findWithDetector(stream, fskDetector(0)));
+
+		stream = makeStream(100000, CodePRN.LONG_FRAME_PRN, random);
+		expected = findWithWindow(stream, CodePRN.getSyncWordLength(), true);
+		assertTrue(expected.size() > 100);
+		assertEquals(1, CodePRN.getSyncWordBitErrors());
+		assertEquals(expected, findWithDetector(stream, prnDetector()));
+	}
+
+	@Test
+	public void testErrorsAndPolarity() {
+		SyncWordDetector detector = fskDetector(1);
+		detector.reset(100);
+		boolean[] notFrame = FoxBitStream.intToBin10(Code8b10b.NOT_FRAME);
+		notFrame[3] = !notFrame[3];
+		for (int i=0; i < 9; i++)
+			assertFalse(detector.add(notFrame[i]));
+		assertTrue(detector.add(notFrame[9]));
+		assertEquals(110, detector.getPosition());
+		assertEquals(1, detector.getBitErrors());
+		assertTrue(detector.isInverted());
+		assertEquals(Code8b10b.NOT_FRAME ^ (1 << 6), detector.getRegister());
+
+		// Two bits wrong is not a sync word, unless the tolerance allows it
+		detector.reset(0);
+		boolean[] frame = FoxBitStream.intToBin10(Code8b10b.FRAME);
+		frame[0] = !frame[0];
+		frame[9] = !frame[9];
+		boolean found = false;
+		for (boolean b : frame)
+			found = detector.add(b);
+		assertFalse(found);
+		detector.setTolerance(2);
+		assertFalse(detector.add(true)); // the first bit is now shifted out
+		detector.reset(0);
+		for (boolean b : frame)
+			found = detector.add(b);
+		assertTrue(found);
+		assertEquals(2, detector.getBitErrors());
+		assertFalse(detector.isInverted());
+
+		// The PRN is only found in one polarity
+		SyncWordDetector prn = prnDetector();
+		prn.reset(0);
+		for (boolean b : CodePRN.LONG_FRAME_PRN)
+			found = prn.add(!b);
+		assertFalse(found);
+		for (boolean b : CodePRN.LONG_FRAME_PRN)
+			found = prn.add(b);
+		assertTrue(found);
+		assertEquals(62, prn.getPosition());
+		assertEquals(0, prn.getBitErrors());
+	}
+}
@@ -0,0 +1,104 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import telemetry.BitArrayLayout;
+import telemetry.FramePart;
+import telemetry.TableSegFile;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+public class TableSegFileTest {
+
+	BitArrayLayout layout;
+	File file;
+
+	@Before
+	public void setUp() throws Exception {
+		layout = TestRecords.makeLayout(new String[] {"BATT_A_V", "RSSI", "BIG"}, new int[] {12, 12, 32});
+		file = File.createTempFile("seg", TableSegFile.DAT);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		file.delete();
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		ArrayList<FramePart> parts = new ArrayList<FramePart>();
+		for (int i=0; i < 100; i++)
+			parts.add(TestRecords.makeRecord(layout, 2, 1000 + i*60, i, 4095 - i, 100000 * i - 5));
+		TableSegFile.write(file.getPath(), parts);
+
+		TableSegFile seg = TableSegFile.open(file.getPath());
+		assertEquals(1, seg.getId());
+		assertEquals(100, seg.getNumberOfRecords());
+		assertEquals(100, TableSegFile.countRecords(file.getPath()));
+		assertEquals(3, seg.getNumberOfFields());
+		int[] values = new int[3];
+		for (int i=0; i < 100; i++) {
+			assertEquals(2, seg.getResets(i));
+			assertEquals(1000 + i*60, seg.getUptime(i));
+			assertEquals(parts.get(i).getType(), seg.getType(i));
+			assertEquals("20200303120000", seg.getCaptureDate(i));
+			seg.getFieldValues(i, values);
+			assertEquals(i, values[0]);
+			assertEquals(4095 - i, values[1]);
+			assertEquals(100000 * i - 5, values[2]);
+		}
+	}
+
+	@Test
+	public void testDatFileName() {
+		assertEquals("Fox1rttelemetry_0_100.dat", TableSegFile.getDatFileName("Fox1rttelemetry_0_100.log"));
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotASegment() throws IOException {
+		TableSegFile.open(file.getPath());
+	}
+
+	@Test
+	public void testReplaceWhileOpen() throws IOException {
+		ArrayList<FramePart> parts = new ArrayList<FramePart>();
+		for (int i=0; i < 10; i++)
+			parts.add(TestRecords.makeRecord(layout, 2, 1000 + i*60, i, i, i));
+		TableSegFile.write(file.getPath(), parts);
+		TableSegFile seg = TableSegFile.open(file.getPath());
+		// Nothing holds the file once it is read, so it can be replaced and deleted
+		parts.remove(9);
+		TableSegFile.write(file.getPath(), parts);
+		assertEquals(9, TableSegFile.countRecords(file.getPath()));
+		assertEquals(10, seg.getNumberOfRecords());
+		assertEquals(9, seg.getField(0, 9));
+		assertTrue(file.delete());
+	}
+}
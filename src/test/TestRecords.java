@@ -0,0 +1,178 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.StringTokenizer;
+
+import common.Config;
+import common.FoxSpacecraft;
+import common.SatelliteManager;
+import telemetry.BitArrayLayout;
+import telemetry.FoxFramePart;
+import telemetry.FramePart;
+import telemetry.PayloadMaxValues;
+import telemetry.PayloadMinValues;
+import telemetry.PayloadRtValues;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The layouts, records and spacecraft that the payload table tests are built on.  The linear scans are the lookups
+ * that SortedFramePartArrayList and BitArrayLayout made before they were indexed, kept as the reference that the
+ * indexed lookups are checked against.
+ *
+ */
+public class TestRecords {
+
+	public static final int FOX_ID = 1;
+	public static final String DATE = "20200303120000";
+
+	/**
+	 * A layout with these field names and bit lengths, no conversions and no units
+	 */
+	public static BitArrayLayout makeLayout(String[] names, int[] bits) {
+		BitArrayLayout lay = new BitArrayLayout();
+		lay.NUMBER_OF_FIELDS = names.length;
+		lay.fieldName = names;
+		lay.fieldBitLength = bits;
+		lay.conversion = new int[names.length];
+		lay.fieldUnits = new String[names.length];
+		for (int i=0; i < names.length; i++)
+			lay.fieldUnits[i] = "";
+		return lay;
+	}
+
+	/**
+	 * A layout of fields called FIELD_0, FIELD_1 and so on, all with the same bit length
+	 */
+	public static BitArrayLayout makeLayout(int fields, int bits) {
+		String[] names = new String[fields];
+		int[] lengths = new int[fields];
+		for (int i=0; i < fields; i++) {
+			names[i] = "FIELD_" + i;
+			lengths[i] = bits;
+		}
+		return makeLayout(names, lengths);
+	}
+
+	/**
+	 * A real time, max or min record, parsed from the values in the same way as a line of a payload log
+	 */
+	public static FramePart makeRecord(BitArrayLayout layout, int type, int resets, long uptime, String date, int... values) {
+		StringBuilder line = new StringBuilder();
+		for (int v : values)
+			line.append(v + ",");
+		StringTokenizer st = new StringTokenizer(line.toString(), ",");
+		if (type == FoxFramePart.TYPE_MAX_VALUES) return new PayloadMaxValues(FOX_ID, resets, uptime, date, st, layout);
+		if (type == FoxFramePart.TYPE_MIN_VALUES) return new PayloadMinValues(FOX_ID, resets, uptime, date, st, layout);
+		return new PayloadRtValues(FOX_ID, resets, uptime, date, st, layout);
+	}
+
+	public static FramePart makeRecord(BitArrayLayout layout, int resets, long uptime, int... values) {
+		return makeRecord(layout, FoxFramePart.TYPE_REAL_TIME, resets, uptime, DATE, values);
+	}
+
+	/**
+	 * Load the FOX1A spacecraft as the only one the satellite manager has.  Run from the project directory so that
+	 * the spacecraft files can be found
+	 */
+	public static FoxSpacecraft loadFox1A() throws Exception {
+		Config.currentDir = System.getProperty("user.dir");
+		Config.foxTelemCalcsPosition = false;
+		File user = File.createTempFile("FOX1A", ".dat");
+		user.delete();
+		FoxSpacecraft fox = new FoxSpacecraft(new File(Config.currentDir + File.separator + "spacecraft" + File.separator + "FOX1A_fm.MASTER"), user);
+		user.delete();
+		Config.satManager = new SatelliteManager() {
+			public void init() { } // we add the spacecraft ourselves
+		};
+		Config.satManager.spacecraftList.add(fox);
+		return fox;
+	}
+
+	/**
+	 * Make an empty temporary directory and log the files there
+	 */
+	public static File makeLogDirectory(String prefix) throws IOException {
+		File dir = File.createTempFile(prefix, "");
+		dir.delete();
+		dir.mkdirs();
+		Config.logFileDirectory = dir.getPath();
+		return dir;
+	}
+
+	// The linear scans from before the list was indexed
+	public static int linearNearest(List<FramePart> l, long uptime, int resets, int type) {
+		if (l.size() == 0) return -1;
+		if (resets > l.get(l.size()-1).resets) return l.size()-1;
+		if (resets == l.get(l.size()-1).resets && uptime > l.get(l.size()-1).uptime) return l.size()-1;
+		for (int i=0; i<l.size(); i++)
+			if (compare(l.get(i), uptime, resets, type) <= 0)
+				return i;
+		return -1;
+	}
+
+	public static int linearNearestPrev(List<FramePart> l, long uptime, int resets, int type) {
+		if (l.size() == 0) return -1;
+		if (resets > l.get(l.size()-1).resets) return l.size()-1;
+		if (resets == l.get(l.size()-1).resets && uptime > l.get(l.size()-1).uptime) return l.size()-1;
+		for (int i=0; i<l.size(); i++) {
+			if (compare(l.get(i), uptime, resets, type) == 0)
+				return i;
+			else if (compare(l.get(i), uptime, resets, type) < 0)
+				return i-1;
+		}
+		return -1;
+	}
+
+	public static int linearFrameIndex(List<FramePart> l, long uptime, int resets) {
+		for (int i=0; i<l.size(); i++) {
+			FramePart f = l.get(i);
+			if (f.uptime == uptime && f.resets == resets)
+				return i;
+		}
+		return -1;
+	}
+
+	// The field name lookups from before the layout had an index.  Raw values came from the first field with a name
+	// and converted values from the last
+	public static int linearLast(BitArrayLayout lay, String name) {
+		int pos = BitArrayLayout.ERROR_POSITION;
+		for (int i=0; i < lay.fieldName.length; i++)
+			if (name.equalsIgnoreCase(lay.fieldName[i]))
+				pos = i;
+		return pos;
+	}
+
+	public static int linearFirst(BitArrayLayout lay, String name) {
+		for (int i=0; i < lay.fieldName.length; i++)
+			if (name.equalsIgnoreCase(lay.fieldName[i]))
+				return i;
+		return BitArrayLayout.ERROR_POSITION;
+	}
+
+	private static int compare(FramePart p, long uptime, int resets, int type) {
+		if (resets != p.resets) return resets < p.resets ? -1 : +1;
+		if (uptime != p.uptime) return uptime < p.uptime ? -1 : +1;
+		if (type != p.getType()) return type < p.getType() ? -1 : +1;
+		return 0;
+	}
+}
@@ -0,0 +1,122 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.Test;
+
+import common.TlmServer;
+
+/**
+ *
+ * FOX 1 Telemetry Decoder
+ * @author chris.e.thompson g0kla/ac2cz
+ *
+ * Copyright (C) 2020 amsat.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Check that a batch of frames is sent on one connection to a server that takes several frames, and that only the
+ * first frame is sent to a server that closes the connection after each one, as the server used to.
+ *
+ */
+public class TlmServerBatchTest {
+
+	static final int FRAME_LENGTH = 100;
+	ServerSocket listener;
+	int connections = 0;
+	int received = 0;
+
+	@After
+	public void tearDown() throws IOException {
+		if (listener != null)
+			listener.close();
+	}
+
+	/**
+	 * Start a server that ACKs each frame and takes at most framesPerConnection frames on a connection
+	 */
+	private void startServer(final int framesPerConnection) throws IOException {
+		listener = new ServerSocket(0);
+		Thread server = new Thread(new Runnable() {
+			public void run() {
+				try {
+					while (true) {
+						Socket socket = listener.accept();
+						synchronized (TlmServerBatchTest.this) { connections++; }
+						DataInputStream in = new DataInputStream(socket.getInputStream());
+						OutputStream out = socket.getOutputStream();
+						byte[] frame = new byte[FRAME_LENGTH];
+						try {
+							for (int i=0; i < framesPerConnection; i++) {
+								in.readFully(frame);
+								synchronized (TlmServerBatchTest.this) { received++; }
+								for (int b : TlmServer.OK)
+									out.write(b);
+								out.flush();
+							}
+						} catch (IOException e) {
+							// client closed the connection
+						}
+						socket.close();
+					}
+				} catch (IOException e) {
+					// listener closed
+				}
+			}
+		});
+		server.setDaemon(true);
+		server.start();
+	}
+
+	static ArrayList<byte[]> frames(int n) {
+		ArrayList<byte[]> frames = new ArrayList<byte[]>();
+		for (int i=0; i < n; i++)
+			frames.add(new byte[FRAME_LENGTH]);
+		return frames;
+	}
+
+	@Test
+	public void testBatch() throws Exception {
+		startServer(Integer.MAX_VALUE);
+		TlmServer tlmServer = new TlmServer("localhost", listener.getLocalPort(), TlmServer.AUTO_CLOSE, TlmServer.WAIT_FOR_ACK);
+		assertEquals(10, tlmServer.sendToServer(frames(10), TlmServer.TCP));
+		assertEquals(15, tlmServer.sendToServer(frames(15), TlmServer.TCP));
+		Thread.sleep(100);
+		synchronized (this) {
+			assertEquals(2, connections);
+			assertEquals(25, received);
+		}
+	}
+
+	@Test
+	public void testOneFramePerConnection() throws Exception {
+		startServer(1);
+		TlmServer tlmServer = new TlmServer("localhost", listener.getLocalPort(), TlmServer.AUTO_CLOSE, TlmServer.WAIT_FOR_ACK);
+		assertEquals(1, tlmServer.sendToServer(frames(10), TlmServer.TCP));
+		assertEquals(1, tlmServer.sendToServer(frames(10), TlmServer.TCP));
+		Thread.sleep(100);
+		synchronized (this) {
+			assertEquals(2, connections);
+			assertEquals(2, received);
+		}
+	}
+}